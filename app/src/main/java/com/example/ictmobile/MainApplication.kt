@@ -2,9 +2,19 @@ package com.example.ictmobile
 
 import android.app.Application
 import androidx.multidex.MultiDexApplication
+import com.example.ictmobile.diagnostics.FrameMonitor
+import com.example.ictmobile.diagnostics.ScreenTracker
+import com.example.ictmobile.diagnostics.StallWatchdog
+import com.example.ictmobile.diagnostics.StartupTrace
+import com.example.ictmobile.notifications.CycleNotifications
 
 class MainApplication : MultiDexApplication() {
     override fun onCreate() {
         super.onCreate()
+        StartupTrace.applicationCreating(this)
+        CycleNotifications.createChannels(this)
+        registerActivityLifecycleCallbacks(ScreenTracker)
+        registerActivityLifecycleCallbacks(FrameMonitor)
+        StallWatchdog.start()
     }
 }
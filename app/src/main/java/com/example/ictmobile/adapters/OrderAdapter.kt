@@ -16,6 +16,15 @@ class OrderAdapter(
 ) : RecyclerView.Adapter<OrderAdapter.OrderViewHolder>() {
 
     private val dateFormat = SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault())
+    
+    // Phase boundaries of active orders, computed once; null for orders that never change
+    private val phaseBoundaries = Array(orders.size) { position ->
+        if (orders[position].status == "active") orders[position].phaseBoundaries() else null
+    }
+    // Earliest instant at which each row's progress text changes
+    private val nextChangeAt = LongArray(orders.size) { position ->
+        if (phaseBoundaries[position] != null) Long.MIN_VALUE else Long.MAX_VALUE
+    }
 
     class OrderViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
         val tvMachineName: TextView = itemView.findViewById(R.id.tvMachineName)
@@ -36,7 +45,7 @@ class OrderAdapter(
         val order = orders[position]
         holder.tvMachineName.text = order.machineName
         holder.tvStatus.text = "Status: ${order.status.capitalize()}"
-        holder.tvProgress.text = "Progress: ${order.progress}"
+        bindProgress(holder, position, System.currentTimeMillis())
         holder.tvStartTime.text = "Start: ${dateFormat.format(order.startTime)}"
         holder.tvTotalAmount.text = "RM ${String.format("%.2f", order.totalAmount)}"
         
@@ -45,5 +54,54 @@ class OrderAdapter(
         }
     }
 
+    override fun onBindViewHolder(holder: OrderViewHolder, position: Int, payloads: MutableList<Any>) {
+        if (payloads.contains(PAYLOAD_PROGRESS)) {
+            bindProgress(holder, position, System.currentTimeMillis())
+        } else {
+            super.onBindViewHolder(holder, position, payloads)
+        }
+    }
+    
+    private fun bindProgress(holder: OrderViewHolder, position: Int, nowMillis: Long) {
+        val boundaries = phaseBoundaries[position]
+        if (boundaries == null) {
+            holder.tvProgress.text = "Progress: ${orders[position].progress}"
+            return
+        }
+        
+        val phase = Order.phaseAt(boundaries, nowMillis)
+        val label = Order.PHASE_LABELS[phase]
+        if (phase == Order.PHASE_PENDING || phase == Order.PHASE_COMPLETED) {
+            holder.tvProgress.text = "Progress: $label"
+            nextChangeAt[position] = if (phase == Order.PHASE_PENDING) boundaries[0] else Long.MAX_VALUE
+            return
+        }
+        
+        val end = boundaries[4]
+        val minutesLeft = (end - nowMillis) / Order.MINUTE_MILLIS
+        holder.tvProgress.text = "Progress: $label ($minutesLeft min left)"
+        
+        // Next refresh: the next phase boundary or the next time the minute count drops
+        val nextMinute = end - minutesLeft * Order.MINUTE_MILLIS + 1
+        nextChangeAt[position] = minOf(boundaries[phase], nextMinute)
+    }
+    
+    /**
+     * Called once per tick with the visible range. Rows whose text cannot have changed
+     * cost one comparison; the rest get a payload rebind that only touches tvProgress.
+     */
+    fun refreshProgress(nowMillis: Long, firstVisible: Int, lastVisible: Int) {
+        if (firstVisible == RecyclerView.NO_POSITION) return
+        for (position in firstVisible..minOf(lastVisible, orders.size - 1)) {
+            if (nowMillis >= nextChangeAt[position]) {
+                notifyItemChanged(position, PAYLOAD_PROGRESS)
+            }
+        }
+    }
+
     override fun getItemCount() = orders.size
+    
+    companion object {
+        private const val PAYLOAD_PROGRESS = "progress"
+    }
 }
@@ -6,7 +6,7 @@ import android.view.ViewGroup
 import android.widget.ImageView
 import androidx.recyclerview.widget.RecyclerView
 import com.example.ictmobile.R
-import java.io.IOException
+import com.example.ictmobile.services.AvatarLoader
 
 class ProfilePictureAdapter(
     private val pictures: List<String>,
@@ -26,25 +26,17 @@ class ProfilePictureAdapter(
     override fun onBindViewHolder(holder: PictureViewHolder, position: Int) {
         val pictureName = pictures[position]
         
-        try {
-            val inputStream = holder.itemView.context.assets.open("profilepictures/$pictureName")
-            holder.imageView.setImageBitmap(android.graphics.BitmapFactory.decodeStream(inputStream))
-            inputStream.close()
-        } catch (e: IOException) {
-            // Use default if not found
-            try {
-                val defaultStream = holder.itemView.context.assets.open("profilepictures/king.png")
-                holder.imageView.setImageBitmap(android.graphics.BitmapFactory.decodeStream(defaultStream))
-                defaultStream.close()
-            } catch (e2: Exception) {
-                // Ignore
-            }
-        }
+        AvatarLoader.load(holder.imageView, pictureName)
         
         holder.itemView.setOnClickListener {
             onPictureClick(pictureName)
         }
     }
 
+    override fun onViewRecycled(holder: PictureViewHolder) {
+        super.onViewRecycled(holder)
+        AvatarLoader.clear(holder.imageView)
+    }
+
     override fun getItemCount() = pictures.size
 }
@@ -0,0 +1,189 @@
+package com.example.ictmobile.diagnostics
+
+import android.content.Context
+import android.util.Log
+import com.example.ictmobile.BuildConfig
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * Logging facade: messages are only built for enabled levels, and every logged event
+ * also goes into a ring of the last [RING_CAPACITY] events that can be saved with a bug
+ * report.
+ *
+ * Verbose and debug are gated on BuildConfig.DEBUG, a compile-time constant, so in
+ * release builds those calls reduce to a constant false branch. Info and above are gated
+ * at runtime by [minLevel]. Kotlin callers pass the message as a lambda, which is inlined
+ * and never evaluated when the level is off. Java callers pass a template with `{}`
+ * placeholders and up to three arguments, so a disabled call formats nothing and
+ * allocates no varargs array; arguments that are primitives are still boxed.
+ */
+object AppLog {
+
+    const val VERBOSE = Log.VERBOSE
+    const val DEBUG = Log.DEBUG
+    const val INFO = Log.INFO
+    const val WARN = Log.WARN
+    const val ERROR = Log.ERROR
+
+    private const val RING_CAPACITY = 512
+
+    /** Lowest level logged; levels below INFO also need a debug build. */
+    @JvmStatic
+    @Volatile
+    var minLevel: Int = if (BuildConfig.DEBUG) DEBUG else INFO
+
+    private val ring = EventRing(RING_CAPACITY)
+
+    @JvmStatic
+    fun isDebugEnabled(): Boolean = BuildConfig.DEBUG && DEBUG >= minLevel
+
+    @JvmStatic
+    fun isLoggable(level: Int): Boolean = (level >= INFO || BuildConfig.DEBUG) && level >= minLevel
+
+    // Kotlin: lazily built messages
+
+    inline fun v(tag: String, message: () -> String) {
+        if (BuildConfig.DEBUG && VERBOSE >= minLevel) write(VERBOSE, tag, message(), null)
+    }
+
+    inline fun d(tag: String, message: () -> String) {
+        if (BuildConfig.DEBUG && DEBUG >= minLevel) write(DEBUG, tag, message(), null)
+    }
+
+    inline fun i(tag: String, message: () -> String) {
+        if (INFO >= minLevel) write(INFO, tag, message(), null)
+    }
+
+    inline fun w(tag: String, error: Throwable? = null, message: () -> String) {
+        if (WARN >= minLevel) write(WARN, tag, message(), error)
+    }
+
+    inline fun e(tag: String, error: Throwable? = null, message: () -> String) {
+        if (ERROR >= minLevel) write(ERROR, tag, message(), error)
+    }
+
+    // Java: templates with `{}` placeholders
+
+    @JvmStatic
+    fun d(tag: String, message: String) {
+        if (isDebugEnabled()) write(DEBUG, tag, message, null)
+    }
+
+    @JvmStatic
+    fun d(tag: String, template: String, arg: Any?) {
+        if (isDebugEnabled()) write(DEBUG, tag, format(template, arg, null, null, 1), null)
+    }
+
+    @JvmStatic
+    fun d(tag: String, template: String, arg1: Any?, arg2: Any?) {
+        if (isDebugEnabled()) write(DEBUG, tag, format(template, arg1, arg2, null, 2), null)
+    }
+
+    @JvmStatic
+    fun d(tag: String, template: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isDebugEnabled()) write(DEBUG, tag, format(template, arg1, arg2, arg3, 3), null)
+    }
+
+    @JvmStatic
+    fun w(tag: String, message: String) {
+        if (WARN >= minLevel) write(WARN, tag, message, null)
+    }
+
+    @JvmStatic
+    fun w(tag: String, template: String, arg: Any?) {
+        if (WARN >= minLevel) write(WARN, tag, format(template, arg, null, null, 1), null)
+    }
+
+    @JvmStatic
+    fun w(tag: String, template: String, arg1: Any?, arg2: Any?) {
+        if (WARN >= minLevel) write(WARN, tag, format(template, arg1, arg2, null, 2), null)
+    }
+
+    @JvmStatic
+    fun e(tag: String, message: String) {
+        if (ERROR >= minLevel) write(ERROR, tag, message, null)
+    }
+
+    @JvmStatic
+    fun e(tag: String, message: String, error: Throwable?) {
+        if (ERROR >= minLevel) write(ERROR, tag, message, error)
+    }
+
+    @JvmStatic
+    fun e(tag: String, template: String, arg: Any?) {
+        if (ERROR >= minLevel) write(ERROR, tag, format(template, arg, null, null, 1), null)
+    }
+
+    @JvmStatic
+    fun e(tag: String, template: String, arg: Any?, error: Throwable?) {
+        if (ERROR >= minLevel) write(ERROR, tag, format(template, arg, null, null, 1), error)
+    }
+
+    /** Writes to logcat and the ring; callers have already checked the level. */
+    @PublishedApi
+    internal fun write(level: Int, tag: String, message: String, error: Throwable?) {
+        if (error != null) {
+            Log.println(level, tag, message + '\n' + Log.getStackTraceString(error))
+        } else {
+            Log.println(level, tag, message)
+        }
+        ring.add(System.currentTimeMillis(), level, tag, message, Thread.currentThread().name, error?.toString())
+    }
+
+    /** Replaces the first [count] `{}` placeholders in [template], in order. */
+    private fun format(template: String, arg1: Any?, arg2: Any?, arg3: Any?, count: Int): String {
+        val builder = StringBuilder(template.length + 32)
+        var from = 0
+        for (index in 0 until count) {
+            val at = template.indexOf("{}", from)
+            if (at < 0) break
+            builder.append(template, from, at).append(
+                when (index) {
+                    0 -> arg1
+                    1 -> arg2
+                    else -> arg3
+                }
+            )
+            from = at + 2
+        }
+        return builder.append(template, from, template.length).toString()
+    }
+
+    /** The events still in the ring, oldest first, one per line. */
+    fun recentEvents(): String {
+        val format = SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US)
+        return buildString {
+            for (event in ring.snapshot()) {
+                append(format.format(Date(event.timeMillis))).append(' ')
+                    .append(levelName(event.level)).append('/').append(event.tag)
+                    .append(" [").append(event.thread).append("] ").append(event.message)
+                if (event.error != null) append(" | ").append(event.error)
+                append('\n')
+            }
+        }
+    }
+
+    /** Saves [recentEvents] to files/diagnostics for attaching to a bug report. */
+    fun export(context: Context): File {
+        val dir = File(context.filesDir, "diagnostics").apply { mkdirs() }
+        val stamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+        val file = File(dir, "log-$stamp.txt")
+        file.writeText(recentEvents())
+        return file
+    }
+
+    fun clear() {
+        ring.clear()
+    }
+
+    private fun levelName(level: Int): Char = when (level) {
+        VERBOSE -> 'V'
+        DEBUG -> 'D'
+        INFO -> 'I'
+        WARN -> 'W'
+        else -> 'E'
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.ictmobile.diagnostics
+
+import java.util.SortedMap
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Process-wide named counters (retries, timeouts, breaker trips) for the diagnostics
+ * screen. After a counter's first use, incrementing it is one map read and one atomic add.
+ */
+object Counters {
+
+    private val counters = ConcurrentHashMap<String, AtomicLong>()
+
+    fun increment(name: String) {
+        add(name, 1)
+    }
+
+    fun add(name: String, delta: Long) {
+        val counter = counters[name] ?: counters.getOrPut(name) { AtomicLong() }
+        counter.addAndGet(delta)
+    }
+
+    fun get(name: String): Long = counters[name]?.get() ?: 0L
+
+    /** Current values sorted by name; each value is read atomically, the set is not. */
+    fun snapshot(): SortedMap<String, Long> {
+        val snapshot = TreeMap<String, Long>()
+        for ((name, counter) in counters) {
+            snapshot[name] = counter.get()
+        }
+        return snapshot
+    }
+
+    fun reset() {
+        counters.clear()
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.ictmobile.diagnostics
+
+import android.content.Context
+import com.google.android.gms.tasks.Task
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.QuerySnapshot
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Counts the Firestore documents each FirebaseService call reads, writes and deletes,
+ * attributed to the screen that made the call, for this session (process start or the
+ * last [reset]).
+ *
+ * Counting follows billing: a query costs one read per document returned and at least
+ * one read, a write or delete counts once it succeeds, and results served from the local
+ * cache are counted separately as cached reads since they are free. A transaction's reads
+ * are billed on every attempt, its writes only for the attempt that commits.
+ */
+object DocMeter {
+
+    /** One FirebaseService call; the screen is fixed when the call starts. */
+    class Call internal constructor(private val usage: Usage) {
+        private val stagedWrites = AtomicInteger()
+        private val stagedDeletes = AtomicInteger()
+
+        fun read(docs: Int) {
+            usage.reads.addAndGet(docs.toLong())
+        }
+
+        fun query(snapshot: QuerySnapshot) {
+            if (snapshot.metadata.isFromCache) {
+                usage.cachedReads.addAndGet(snapshot.size().toLong())
+            } else {
+                read(maxOf(1, snapshot.size()))
+            }
+        }
+
+        fun document(snapshot: DocumentSnapshot) {
+            if (snapshot.metadata.isFromCache) {
+                usage.cachedReads.incrementAndGet()
+            } else {
+                read(1)
+            }
+        }
+
+        /** Counts [docs] writes once [task] succeeds. */
+        fun <T> write(task: Task<T>, docs: Int): Task<T> {
+            task.addOnSuccessListener(DIRECT) { usage.writes.addAndGet(docs.toLong()) }
+            return task
+        }
+
+        /** Counts [docs] deletes once [task] succeeds. */
+        fun <T> delete(task: Task<T>, docs: Int): Task<T> {
+            task.addOnSuccessListener(DIRECT) { usage.deletes.addAndGet(docs.toLong()) }
+            return task
+        }
+
+        /** Starts a transaction attempt: writes staged by an earlier attempt never committed. */
+        fun beginAttempt() {
+            stagedWrites.set(0)
+            stagedDeletes.set(0)
+        }
+
+        fun stageWrite(docs: Int) {
+            stagedWrites.addAndGet(docs)
+        }
+
+        fun stageDelete(docs: Int) {
+            stagedDeletes.addAndGet(docs)
+        }
+
+        /** Counts the writes staged by the last attempt once the transaction commits. */
+        fun <T> commit(task: Task<T>): Task<T> {
+            task.addOnSuccessListener(DIRECT) {
+                usage.writes.addAndGet(stagedWrites.get().toLong())
+                usage.deletes.addAndGet(stagedDeletes.get().toLong())
+            }
+            return task
+        }
+    }
+
+    class Usage internal constructor(val screen: String, val operation: String) {
+        internal val calls = AtomicLong()
+        internal val reads = AtomicLong()
+        internal val cachedReads = AtomicLong()
+        internal val writes = AtomicLong()
+        internal val deletes = AtomicLong()
+    }
+
+    /** A consistent-enough copy of one screen/operation row for display. */
+    class Row(
+        val screen: String,
+        val operation: String,
+        val calls: Long,
+        val reads: Long,
+        val cachedReads: Long,
+        val writes: Long,
+        val deletes: Long
+    )
+
+    private const val TAG = "DocMeter"
+    private val DIRECT = Executor { it.run() }
+
+    private val usages = ConcurrentHashMap<String, Usage>()
+
+    @Volatile
+    private var sessionStartedAt = System.currentTimeMillis()
+
+    /** Starts metering one call of [operation] from the current screen. */
+    @JvmStatic
+    fun start(operation: String): Call {
+        val screen = ScreenTracker.current
+        val key = "$screen/$operation"
+        val usage = usages[key] ?: usages.getOrPut(key) { Usage(screen, operation) }
+        usage.calls.incrementAndGet()
+        return Call(usage)
+    }
+
+    /** Rows sorted by billed operations, most expensive first. */
+    fun snapshot(): List<Row> =
+        usages.values
+            .map { Row(it.screen, it.operation, it.calls.get(), it.reads.get(), it.cachedReads.get(), it.writes.get(), it.deletes.get()) }
+            .filter { it.calls > 0 }
+            .sortedByDescending { it.reads + it.writes + it.deletes }
+
+    fun report(): String {
+        val rows = snapshot()
+        val format = SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US)
+        return buildString {
+            append("Document usage since ").append(format.format(Date(sessionStartedAt)))
+                .append(" (generated ").append(format.format(Date())).append(")\n")
+            append(String.format(Locale.US, "Total: %d reads, %d cached, %d writes, %d deletes in %d calls\n",
+                rows.sumOf { it.reads }, rows.sumOf { it.cachedReads }, rows.sumOf { it.writes },
+                rows.sumOf { it.deletes }, rows.sumOf { it.calls }))
+
+            append("\nBy screen\n")
+            rows.groupBy { it.screen }.entries
+                .sortedByDescending { (_, screenRows) -> screenRows.sumOf { it.reads + it.writes + it.deletes } }
+                .forEach { (screen, screenRows) ->
+                    append(String.format(Locale.US, "  %-28s %8d reads %6d writes %6d deletes\n", screen,
+                        screenRows.sumOf { it.reads }, screenRows.sumOf { it.writes }, screenRows.sumOf { it.deletes }))
+                }
+
+            append("\nBy screen and operation\n")
+            append(String.format(Locale.US, "  %-28s %-26s %6s %8s %8s %7s %7s %9s\n",
+                "screen", "operation", "calls", "reads", "cached", "writes", "deletes", "reads/call"))
+            for (row in rows) {
+                append(String.format(Locale.US, "  %-28s %-26s %6d %8d %8d %7d %7d %9.1f\n",
+                    row.screen, row.operation, row.calls, row.reads, row.cachedReads, row.writes, row.deletes,
+                    row.reads.toDouble() / row.calls))
+            }
+        }
+    }
+
+    /** Writes [report] to files/diagnostics and the log, and returns the file. */
+    fun dump(context: Context): File {
+        val report = report()
+        val dir = File(context.filesDir, "diagnostics").apply { mkdirs() }
+        val stamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+        val file = File(dir, "doc-usage-$stamp.txt")
+        file.writeText(report)
+        AppLog.i(TAG) { report }
+        return file
+    }
+
+    fun reset() {
+        usages.clear()
+        sessionStartedAt = System.currentTimeMillis()
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.ictmobile.diagnostics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Fixed-size, lock-free ring of the most recent log events. A writer claims a sequence
+ * number with one atomic increment and publishes its event into that slot, overwriting
+ * the oldest; readers keep only events whose sequence matches the slot they expected, so
+ * a slot being overwritten mid-read is skipped rather than reported out of order.
+ */
+class EventRing(capacity: Int) {
+
+    class Event(
+        val sequence: Long,
+        val timeMillis: Long,
+        val level: Int,
+        val tag: String,
+        val message: String,
+        val thread: String,
+        val error: String?
+    )
+
+    private val mask: Int
+    private val slots: AtomicReferenceArray<Event?>
+    private val next = AtomicLong()
+
+    init {
+        require(capacity > 0 && capacity and (capacity - 1) == 0) { "capacity must be a power of two" }
+        mask = capacity - 1
+        slots = AtomicReferenceArray(capacity)
+    }
+
+    val capacity: Int
+        get() = mask + 1
+
+    fun add(timeMillis: Long, level: Int, tag: String, message: String, thread: String, error: String?) {
+        val sequence = next.getAndIncrement()
+        slots.set((sequence and mask.toLong()).toInt(), Event(sequence, timeMillis, level, tag, message, thread, error))
+    }
+
+    /** Events still in the ring, oldest first. */
+    fun snapshot(): List<Event> {
+        val end = next.get()
+        val start = maxOf(0L, end - capacity)
+        val events = ArrayList<Event>((end - start).toInt())
+        for (sequence in start until end) {
+            val event = slots.get((sequence and mask.toLong()).toInt())
+            if (event != null && event.sequence == sequence) events.add(event)
+        }
+        return events
+    }
+
+    fun clear() {
+        for (i in 0 until capacity) slots.set(i, null)
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.ictmobile.diagnostics
+
+import android.app.Activity
+import android.app.Application
+import android.os.Build
+import android.os.Bundle
+import android.os.Handler
+import android.os.HandlerThread
+import android.view.Choreographer
+import android.view.FrameMetrics
+import android.view.Window
+import androidx.annotation.RequiresApi
+import java.util.SortedMap
+import java.util.TreeMap
+import java.util.WeakHashMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Per-screen frame durations while each Activity is resumed, using the Android vitals
+ * thresholds: a frame over [SLOW_FRAME_MICROS] is slow and one over [FROZEN_FRAME_MICROS]
+ * is frozen.
+ *
+ * On API 24+ the durations come from FrameMetrics, delivered on a background thread, so
+ * measuring adds nothing to the main thread. Older devices fall back to Choreographer:
+ * the gap between consecutive vsync callbacks. That counts every vsync as a frame, idle
+ * ones included, so frame counts there are not comparable with API 24+, but slow and
+ * frozen frames still show where the main thread was blocked.
+ */
+object FrameMonitor : Application.ActivityLifecycleCallbacks {
+
+    const val SLOW_FRAME_MICROS = 16_000L
+    const val FROZEN_FRAME_MICROS = 700_000L
+
+    class FrameStats internal constructor() {
+        internal val durations = LatencyHistogram()
+        internal val slow = AtomicLong()
+        internal val frozen = AtomicLong()
+
+        internal fun record(micros: Long) {
+            durations.record(micros, false)
+            if (micros > SLOW_FRAME_MICROS) slow.incrementAndGet()
+            if (micros > FROZEN_FRAME_MICROS) frozen.incrementAndGet()
+        }
+    }
+
+    class Snapshot(val durations: LatencyHistogram.Snapshot, val slow: Long, val frozen: Long) {
+        val frames: Long
+            get() = durations.count
+
+        val slowRate: Double
+            get() = if (frames == 0L) 0.0 else slow.toDouble() / frames
+    }
+
+    private val stats = ConcurrentHashMap<String, FrameStats>()
+
+    /** Listeners of resumed activities; only touched on the main thread. */
+    private val listeners = WeakHashMap<Activity, Any>()
+
+    private val metricsHandler: Handler by lazy {
+        val thread = HandlerThread("frame-metrics").apply { start() }
+        Handler(thread.looper)
+    }
+
+    private fun statsFor(screen: String): FrameStats = stats[screen] ?: stats.getOrPut(screen) { FrameStats() }
+
+    override fun onActivityResumed(activity: Activity) {
+        val screen = statsFor(activity.javaClass.simpleName)
+        listeners[activity] = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            addMetricsListener(activity.window, screen)
+        } else {
+            VsyncListener(screen).also { it.start() }
+        }
+    }
+
+    override fun onActivityPaused(activity: Activity) {
+        val listener = listeners.remove(activity) ?: return
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            removeMetricsListener(activity.window, listener)
+        } else {
+            (listener as VsyncListener).stop()
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    private fun addMetricsListener(window: Window, screen: FrameStats): Any {
+        val listener = Window.OnFrameMetricsAvailableListener { _, metrics, _ ->
+            screen.record(metrics.getMetric(FrameMetrics.TOTAL_DURATION) / 1_000L)
+        }
+        window.addOnFrameMetricsAvailableListener(listener, metricsHandler)
+        return listener
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    private fun removeMetricsListener(window: Window, listener: Any) {
+        try {
+            window.removeOnFrameMetricsAvailableListener(listener as Window.OnFrameMetricsAvailableListener)
+        } catch (e: IllegalArgumentException) {
+            // The window has already dropped its observers
+        }
+    }
+
+    private class VsyncListener(private val screen: FrameStats) : Choreographer.FrameCallback {
+        private var running = false
+        private var lastFrameNanos = 0L
+
+        fun start() {
+            running = true
+            lastFrameNanos = 0L
+            Choreographer.getInstance().postFrameCallback(this)
+        }
+
+        fun stop() {
+            running = false
+            Choreographer.getInstance().removeFrameCallback(this)
+        }
+
+        override fun doFrame(frameTimeNanos: Long) {
+            if (!running) return
+            if (lastFrameNanos != 0L) screen.record((frameTimeNanos - lastFrameNanos) / 1_000L)
+            lastFrameNanos = frameTimeNanos
+            Choreographer.getInstance().postFrameCallback(this)
+        }
+    }
+
+    /** Screens sorted by name; each screen's numbers are read while frames keep arriving. */
+    fun snapshot(): SortedMap<String, Snapshot> {
+        val result = TreeMap<String, Snapshot>()
+        for ((screen, frames) in stats) {
+            result[screen] = Snapshot(frames.durations.snapshot(), frames.slow.get(), frames.frozen.get())
+        }
+        return result
+    }
+
+    fun reset() {
+        for (frames in stats.values) {
+            frames.durations.reset()
+            frames.slow.set(0)
+            frames.frozen.set(0)
+        }
+    }
+
+    override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) {}
+
+    override fun onActivityStarted(activity: Activity) {}
+
+    override fun onActivityStopped(activity: Activity) {}
+
+    override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) {}
+
+    override fun onActivityDestroyed(activity: Activity) {}
+}
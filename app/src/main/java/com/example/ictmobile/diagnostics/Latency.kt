@@ -0,0 +1,66 @@
+package com.example.ictmobile.diagnostics
+
+import com.google.android.gms.tasks.Task
+import java.util.SortedMap
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Named latency histograms for FirebaseService operations and their sub-steps.
+ *
+ * Callers take `System.nanoTime()` when the work starts and hand it back with the
+ * result; the only hot-path cost is one map lookup and one [LatencyHistogram.record].
+ * Sub-steps use dotted names under their operation, e.g. `createOrder.availability`.
+ */
+object Latency {
+
+    /** Runs completion listeners on whichever thread completes the task. */
+    private val DIRECT = Executor { it.run() }
+
+    private val histograms = ConcurrentHashMap<String, LatencyHistogram>()
+
+    fun histogram(name: String): LatencyHistogram =
+        histograms[name] ?: histograms.getOrPut(name) { LatencyHistogram() }
+
+    /** Records the time from [startedNanos] until [task] settles, failures included. */
+    @JvmStatic
+    fun <T> track(name: String, startedNanos: Long, task: Task<T>): Task<T> {
+        task.addOnCompleteListener(DIRECT) { done ->
+            record(name, startedNanos, !done.isSuccessful)
+        }
+        return task
+    }
+
+    /**
+     * Records the time from the last value stored in [startedNanos] until [task] settles.
+     * For a phase that starts inside the task, such as a transaction's commit after its
+     * function returns; nothing is recorded if the phase never started.
+     */
+    @JvmStatic
+    fun <T> trackFrom(name: String, startedNanos: AtomicLong, task: Task<T>): Task<T> {
+        task.addOnCompleteListener(DIRECT) { done ->
+            val phaseStarted = startedNanos.get()
+            if (phaseStarted != 0L) record(name, phaseStarted, !done.isSuccessful)
+        }
+        return task
+    }
+
+    @JvmStatic
+    fun record(name: String, startedNanos: Long, failed: Boolean) {
+        histogram(name).record((System.nanoTime() - startedNanos) / 1_000L, failed)
+    }
+
+    fun snapshot(): SortedMap<String, LatencyHistogram.Snapshot> {
+        val result = TreeMap<String, LatencyHistogram.Snapshot>()
+        for ((name, histogram) in histograms) {
+            result[name] = histogram.snapshot()
+        }
+        return result
+    }
+
+    fun reset() {
+        for (histogram in histograms.values) histogram.reset()
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.ictmobile.diagnostics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Lock-free latency histogram with fixed log-linear buckets, in microseconds.
+ *
+ * Each power of two is split into [SUB_BUCKETS] equal buckets, so a reported percentile
+ * is at most 12.5% above the true value, from 1 µs up to about 67 s (longer samples
+ * land in the last bucket). Recording is a few shifts plus three atomic adds and a
+ * max CAS; no locks and no allocation. Snapshots read the counters while writers keep
+ * going, so they are consistent to within the samples recorded during the read.
+ */
+class LatencyHistogram {
+
+    class Snapshot(
+        val count: Long,
+        val errors: Long,
+        val meanMicros: Long,
+        val p50Micros: Long,
+        val p90Micros: Long,
+        val p99Micros: Long,
+        val maxMicros: Long
+    ) {
+        val errorRate: Double
+            get() = if (count == 0L) 0.0 else errors.toDouble() / count
+    }
+
+    private val buckets = AtomicLongArray(BUCKET_COUNT)
+    private val count = AtomicLong()
+    private val errors = AtomicLong()
+    private val sumMicros = AtomicLong()
+    private val maxMicros = AtomicLong()
+
+    fun record(micros: Long, failed: Boolean) {
+        val value = if (micros < 0) 0 else micros
+        buckets.incrementAndGet(bucketOf(value))
+        count.incrementAndGet()
+        sumMicros.addAndGet(value)
+        if (failed) errors.incrementAndGet()
+        var max = maxMicros.get()
+        while (value > max && !maxMicros.compareAndSet(max, value)) {
+            max = maxMicros.get()
+        }
+    }
+
+    fun snapshot(): Snapshot {
+        val counts = LongArray(BUCKET_COUNT)
+        var total = 0L
+        for (i in 0 until BUCKET_COUNT) {
+            counts[i] = buckets.get(i)
+            total += counts[i]
+        }
+        val max = maxMicros.get()
+        return Snapshot(
+            count = total,
+            errors = errors.get(),
+            meanMicros = if (total == 0L) 0 else sumMicros.get() / total,
+            p50Micros = minOf(max, percentile(counts, total, 0.50)),
+            p90Micros = minOf(max, percentile(counts, total, 0.90)),
+            p99Micros = minOf(max, percentile(counts, total, 0.99)),
+            maxMicros = max
+        )
+    }
+
+    fun reset() {
+        for (i in 0 until BUCKET_COUNT) buckets.set(i, 0)
+        count.set(0)
+        errors.set(0)
+        sumMicros.set(0)
+        maxMicros.set(0)
+    }
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 3
+        const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        private const val MAX_EXPONENT = 26 // 2^26 µs ≈ 67 s
+        const val BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS
+
+        /**
+         * Values below [SUB_BUCKETS] get a bucket each; above that, the exponent picks
+         * a group of [SUB_BUCKETS] buckets and the next three bits pick one within it.
+         */
+        fun bucketOf(micros: Long): Int {
+            if (micros < SUB_BUCKETS) return micros.toInt()
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(micros)
+            if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1
+            val sub = (micros ushr (exponent - SUB_BUCKET_BITS)).toInt() and (SUB_BUCKETS - 1)
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub
+        }
+
+        /** Largest value that falls in [bucket]. */
+        fun upperBoundOf(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) return bucket.toLong()
+            val exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1
+            val sub = (bucket % SUB_BUCKETS).toLong()
+            val width = 1L shl (exponent - SUB_BUCKET_BITS)
+            return (1L shl exponent) + (sub + 1) * width - 1
+        }
+
+        private fun percentile(counts: LongArray, total: Long, quantile: Double): Long {
+            if (total == 0L) return 0
+            val rank = Math.ceil(total * quantile).toLong().coerceAtLeast(1)
+            var seen = 0L
+            for (i in counts.indices) {
+                seen += counts[i]
+                if (seen >= rank) return upperBoundOf(i)
+            }
+            return upperBoundOf(counts.size - 1)
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.ictmobile.diagnostics
+
+import android.app.Activity
+import android.app.Application
+import android.os.Bundle
+
+/**
+ * Remembers which Activity is in the foreground, so work started from it can be
+ * attributed to that screen. Registered once in MainApplication.
+ */
+object ScreenTracker : Application.ActivityLifecycleCallbacks {
+
+    const val NO_SCREEN = "(background)"
+
+    @Volatile
+    var current: String = NO_SCREEN
+        private set
+
+    // Created as well as resumed: most screens start loading in onCreate, before they
+    // are resumed, and the callbacks run inside super.onCreate().
+    override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) {
+        current = activity.javaClass.simpleName
+    }
+
+    override fun onActivityStarted(activity: Activity) {
+        current = activity.javaClass.simpleName
+    }
+
+    override fun onActivityResumed(activity: Activity) {
+        current = activity.javaClass.simpleName
+    }
+
+    override fun onActivityStopped(activity: Activity) {
+        // A screen returned to is started before the one left is stopped
+        if (current == activity.javaClass.simpleName) current = NO_SCREEN
+    }
+
+    override fun onActivityPaused(activity: Activity) {}
+
+    override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) {}
+
+    override fun onActivityDestroyed(activity: Activity) {}
+}
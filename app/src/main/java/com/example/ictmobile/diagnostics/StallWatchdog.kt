@@ -0,0 +1,103 @@
+package com.example.ictmobile.diagnostics
+
+import android.os.Debug
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import java.util.ArrayDeque
+
+/**
+ * Detects main-thread stalls: a daemon thread posts a heartbeat to the main looper and,
+ * if it has not run within [STALL_THRESHOLD_MS], captures the main thread's stack, so the
+ * report shows what was blocking rather than what ran afterwards. Once the heartbeat
+ * runs, the stall is recorded with its full duration and logged as a warning.
+ *
+ * Checks are spaced out while no screen is in the foreground, and skipped while a
+ * debugger is attached because breakpoints would read as stalls. The last [MAX_STALLS]
+ * stalls are kept.
+ */
+object StallWatchdog {
+
+    const val STALL_THRESHOLD_MS = 500L
+    private const val BACKGROUND_INTERVAL_MS = 5_000L
+    private const val MAX_STALLS = 20
+    private const val TAG = "StallWatchdog"
+
+    class Stall(
+        val timeMillis: Long,
+        val screen: String,
+        val durationMs: Long,
+        val stack: List<StackTraceElement>
+    )
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val stalls = ArrayDeque<Stall>()
+
+    @Volatile
+    private var heartbeatRanAt = 0L
+
+    @Volatile
+    private var started = false
+
+    private val heartbeat = Runnable { heartbeatRanAt = SystemClock.uptimeMillis() }
+
+    /** Starts the watchdog thread; later calls do nothing. */
+    @JvmStatic
+    @Synchronized
+    fun start() {
+        if (started) return
+        started = true
+        Thread(::watch, "stall-watchdog").apply {
+            isDaemon = true
+            priority = Thread.MIN_PRIORITY
+            start()
+        }
+    }
+
+    private fun watch() {
+        while (true) {
+            try {
+                if (ScreenTracker.current == ScreenTracker.NO_SCREEN || Debug.isDebuggerConnected()) {
+                    Thread.sleep(BACKGROUND_INTERVAL_MS)
+                    continue
+                }
+                check()
+            } catch (e: InterruptedException) {
+                return
+            }
+        }
+    }
+
+    private fun check() {
+        heartbeatRanAt = 0L
+        val postedAt = SystemClock.uptimeMillis()
+        mainHandler.post(heartbeat)
+        Thread.sleep(STALL_THRESHOLD_MS)
+        if (heartbeatRanAt != 0L) return
+
+        // Still blocked: capture now, while the culprit is on the stack
+        val screen = ScreenTracker.current
+        val stack = Looper.getMainLooper().thread.stackTrace.toList()
+        val capturedAt = System.currentTimeMillis()
+        while (heartbeatRanAt == 0L) {
+            Thread.sleep(STALL_THRESHOLD_MS / 5)
+        }
+        val stall = Stall(capturedAt, screen, heartbeatRanAt - postedAt, stack)
+        synchronized(stalls) {
+            if (stalls.size == MAX_STALLS) stalls.removeFirst()
+            stalls.addLast(stall)
+        }
+        Counters.increment("main thread stalls")
+        AppLog.w(TAG) {
+            "Main thread stalled ${stall.durationMs} ms on ${stall.screen}\n" +
+                stack.joinToString("\n") { "    at $it" }
+        }
+    }
+
+    /** Recorded stalls, newest first. */
+    fun recent(): List<Stall> = synchronized(stalls) { stalls.toList().asReversed() }
+
+    fun clear() {
+        synchronized(stalls) { stalls.clear() }
+    }
+}
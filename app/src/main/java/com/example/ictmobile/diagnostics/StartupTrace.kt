@@ -0,0 +1,184 @@
+package com.example.ictmobile.diagnostics
+
+import android.app.Activity
+import android.app.ActivityManager
+import android.content.Context
+import android.os.Build
+import android.os.Handler
+import android.os.Looper
+import android.os.Process
+import android.os.SystemClock
+import android.view.ViewTreeObserver
+import java.io.File
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Times each app start from its origin to the first frame of the screen it lands on, and
+ * keeps the last [MAX_ENTRIES] starts in files/diagnostics/startup.log.
+ *
+ * A cold start's origin is process start (API 24+; on older devices, Application.onCreate),
+ * and it records every mark in [MARKS]. A warm start is SplashActivity being created again
+ * in a process that already finished a start; its origin is the splash itself, so it has
+ * no application marks. Each mark is kept once per start, the first time it is reached.
+ * Starts resumed from the recents list do not pass through the splash and are not timed.
+ */
+object StartupTrace {
+
+    const val APP_CREATE = "app onCreate"
+    const val FIREBASE_INIT = "firebase init"
+    const val SPLASH = "splash"
+    const val AUTH_RESOLVED = "auth resolved"
+    const val ROLE_RESOLVED = "role resolved"
+    const val FIRST_FRAME = "first frame"
+
+    /** Marks in the order a start passes them. */
+    val MARKS = listOf(APP_CREATE, FIREBASE_INIT, SPLASH, AUTH_RESOLVED, ROLE_RESOLVED, FIRST_FRAME)
+
+    const val COLD = "cold"
+    const val WARM = "warm"
+
+    private const val TAG = "StartupTrace"
+    private const val LOG_FILE = "startup.log"
+    private const val MAX_ENTRIES = 200
+
+    /** One persisted start: [marks] are milliseconds since its origin. */
+    class Entry(val timeMillis: Long, val kind: String, val destination: String, val marks: Map<String, Long>)
+
+    /** Percentiles of one mark across the logged starts of one kind and destination. */
+    class Row(val start: String, val mark: String, val count: Int, val p50: Long, val p90: Long, val p99: Long)
+
+    private class Run(val kind: String, val originUptime: Long) {
+        val marks = LinkedHashMap<String, Long>()
+    }
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val writer: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "startup-log").apply { isDaemon = true }
+    }
+
+    private var current: Run? = null
+    private var logFile: File? = null
+
+    /**
+     * First thing in Application.onCreate: opens the cold start, unless the process was
+     * started in the background (a broadcast or service) where no screen is coming.
+     */
+    @JvmStatic
+    @Synchronized
+    fun applicationCreating(context: Context) {
+        logFile = File(File(context.filesDir, "diagnostics"), LOG_FILE)
+        val process = ActivityManager.RunningAppProcessInfo()
+        ActivityManager.getMyMemoryState(process)
+        if (process.importance != ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND) return
+        val now = SystemClock.uptimeMillis()
+        val origin = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) Process.getStartUptimeMillis() else now
+        current = Run(COLD, origin)
+        mark(APP_CREATE)
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun mark(name: String) {
+        val run = current ?: return
+        if (!run.marks.containsKey(name)) run.marks[name] = SystemClock.uptimeMillis() - run.originUptime
+    }
+
+    /** Marks the splash, opening a warm start if the last start already finished. */
+    @JvmStatic
+    @Synchronized
+    fun splashCreated() {
+        val run = current
+        if (run == null || run.marks.containsKey(SPLASH)) current = Run(WARM, SystemClock.uptimeMillis())
+        mark(SPLASH)
+    }
+
+    /**
+     * Ends the start in progress, if any, once [activity] has drawn its first frame, and
+     * logs it as landing on [destination].
+     */
+    @JvmStatic
+    fun finishOnFirstFrame(activity: Activity, destination: String) {
+        synchronized(this) { if (current == null) return }
+        val decor = activity.window.decorView
+        decor.viewTreeObserver.addOnDrawListener(object : ViewTreeObserver.OnDrawListener {
+            private var drawn = false
+
+            override fun onDraw() {
+                if (drawn) return
+                drawn = true
+                // onDraw runs before the frame is handed off; the front of the queue runs after
+                mainHandler.postAtFrontOfQueue { finish(destination) }
+                // Listeners cannot be removed while the tree is dispatching onDraw
+                decor.post { decor.viewTreeObserver.removeOnDrawListener(this) }
+            }
+        })
+    }
+
+    private fun finish(destination: String) {
+        val line: String
+        val file: File
+        synchronized(this) {
+            val run = current ?: return
+            mark(FIRST_FRAME)
+            current = null
+            file = logFile ?: return
+            line = System.currentTimeMillis().toString() + '|' + run.kind + '|' + destination + '|' +
+                run.marks.entries.joinToString(",") { "${it.key}=${it.value}" }
+            AppLog.i(TAG) { "${run.kind} start to $destination: ${run.marks}" }
+        }
+        writer.execute { append(file, line) }
+    }
+
+    /** Appends [line] and drops the oldest entries beyond [MAX_ENTRIES]; runs on [writer]. */
+    private fun append(file: File, line: String) {
+        try {
+            file.parentFile?.mkdirs()
+            val lines = if (file.exists()) file.readLines().filter { it.isNotBlank() } else emptyList()
+            val kept = (lines + line).takeLast(MAX_ENTRIES)
+            file.writeText(kept.joinToString("\n", postfix = "\n"))
+        } catch (e: Exception) {
+            AppLog.w(TAG, e) { "Failed to write $file" }
+        }
+    }
+
+    /** The logged starts, oldest first; reads the file on the calling thread. */
+    fun entries(context: Context): List<Entry> {
+        val file = File(File(context.filesDir, "diagnostics"), LOG_FILE)
+        if (!file.exists()) return emptyList()
+        return file.readLines().mapNotNull { parse(it) }
+    }
+
+    private fun parse(line: String): Entry? {
+        val parts = line.split('|')
+        if (parts.size != 4) return null
+        val marks = LinkedHashMap<String, Long>()
+        for (pair in parts[3].split(',')) {
+            val at = pair.indexOf('=')
+            val millis = if (at > 0) pair.substring(at + 1).toLongOrNull() else null
+            if (millis != null) marks[pair.substring(0, at)] = millis
+        }
+        return Entry(parts[0].toLongOrNull() ?: return null, parts[1], parts[2], marks)
+    }
+
+    /** Percentiles per start kind and destination (e.g. "cold/dashboard"), marks in [MARKS] order. */
+    fun summary(context: Context): List<Row> {
+        val rows = ArrayList<Row>()
+        val byStart = entries(context).groupBy { "${it.kind}/${it.destination}" }.toSortedMap()
+        for ((start, entries) in byStart) {
+            for (mark in MARKS) {
+                val values = entries.mapNotNull { it.marks[mark] }.sorted()
+                if (values.isEmpty()) continue
+                rows.add(Row(start, mark, values.size,
+                    percentile(values, 0.50), percentile(values, 0.90), percentile(values, 0.99)))
+            }
+        }
+        return rows
+    }
+
+    /** Nearest-rank percentile of sorted [values]. */
+    private fun percentile(values: List<Long>, quantile: Double): Long {
+        val rank = Math.ceil(values.size * quantile).toInt().coerceIn(1, values.size)
+        return values[rank - 1]
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.ictmobile.diagnostics
+
+import android.content.Context
+import com.google.android.gms.tasks.Task
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Span tracing for booking and payment flows, exported as Chrome trace-event JSON
+ * (opens in Perfetto or chrome://tracing).
+ *
+ * A [Trace] is one run of a flow, such as one createOrder call, and gets its own track in
+ * the viewer. Its spans may start and end on different threads, following the Task
+ * chain; each span records the thread it ended on. [Trace.deliver] closes the trace when
+ * its result reaches the main thread, and the gap between the Task completing and that
+ * moment is recorded as "main thread wait". Only the last [MAX_EVENTS] events are kept.
+ */
+object Tracer {
+
+    private const val MAX_EVENTS = 4096
+    private const val PROCESS_ID = 1
+
+    /** Runs completion listeners on whichever thread completes the task. */
+    private val DIRECT = Executor { it.run() }
+
+    private val events = ConcurrentLinkedQueue<String>()
+    private val eventCount = AtomicInteger()
+    private val nextTraceId = AtomicInteger(1)
+    private val originNanos = System.nanoTime()
+
+    class Trace internal constructor(val id: Int, val name: String) {
+        private val root = Span(this, name, System.nanoTime())
+
+        /** Starts a span; end it with [Span.end]. */
+        fun span(name: String): Span = Span(this, name, System.nanoTime())
+
+        /** Spans [task] from now until it settles. */
+        fun <T> span(name: String, task: Task<T>): Task<T> {
+            val span = span(name)
+            task.addOnCompleteListener(DIRECT) { done -> span.end(!done.isSuccessful) }
+            return task
+        }
+
+        /**
+         * Spans [task] from the last value stored in [startNanos] until it settles, for a
+         * phase that starts inside the task such as a transaction's commit.
+         */
+        fun <T> spanFrom(name: String, startNanos: AtomicLong, task: Task<T>): Task<T> {
+            task.addOnCompleteListener(DIRECT) { done ->
+                val phaseStarted = startNanos.get()
+                if (phaseStarted != 0L) record(name, phaseStarted, !done.isSuccessful)
+            }
+            return task
+        }
+
+        /** Records [name] from [startNanos], taken earlier with System.nanoTime(), until now. */
+        fun record(name: String, startNanos: Long, failed: Boolean) {
+            Span(this, name, startNanos).end(failed)
+        }
+
+        /**
+         * Ends the trace once [task]'s result has been handed to the main thread, recording
+         * how long it queued there. Call last, before the caller adds its own listeners.
+         */
+        fun <T> deliver(task: Task<T>): Task<T> {
+            val completedAt = AtomicLong()
+            task.addOnCompleteListener(DIRECT) { completedAt.set(System.nanoTime()) }
+            task.addOnCompleteListener { done ->
+                record("main thread wait", completedAt.get(), false)
+                root.end(!done.isSuccessful)
+            }
+            return task
+        }
+    }
+
+    class Span internal constructor(private val trace: Trace, private val name: String, private val startNanos: Long) {
+        private val ended = AtomicBoolean()
+
+        fun end() {
+            end(false)
+        }
+
+        fun end(failed: Boolean) {
+            if (ended.compareAndSet(false, true)) {
+                add(completeEvent(trace, name, startNanos, System.nanoTime(), failed))
+            }
+        }
+    }
+
+    /** Starts a trace of one run of [name]; its root span lasts until [Trace.deliver]. */
+    @JvmStatic
+    fun begin(name: String): Trace {
+        val trace = Trace(nextTraceId.getAndIncrement(), name)
+        add("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":$PROCESS_ID,\"tid\":${trace.id}," +
+            "\"args\":{\"name\":\"${escape(name)} #${trace.id}\"}}")
+        return trace
+    }
+
+    private fun completeEvent(trace: Trace, name: String, startNanos: Long, endNanos: Long, failed: Boolean): String {
+        val startMicros = (startNanos - originNanos) / 1_000L
+        val durationMicros = maxOf(0L, (endNanos - startNanos) / 1_000L)
+        return "{\"name\":\"${escape(name)}\",\"cat\":\"${escape(trace.name)}\",\"ph\":\"X\"," +
+            "\"ts\":$startMicros,\"dur\":$durationMicros,\"pid\":$PROCESS_ID,\"tid\":${trace.id}," +
+            "\"args\":{\"thread\":\"${escape(Thread.currentThread().name)}\",\"error\":$failed}}"
+    }
+
+    private fun add(event: String) {
+        events.add(event)
+        if (eventCount.incrementAndGet() > MAX_EVENTS && events.poll() != null) {
+            eventCount.decrementAndGet()
+        }
+    }
+
+    private fun escape(value: String): String = value.replace("\\", "\\\\").replace("\"", "\\\"")
+
+    /** Writes the recorded events to files/traces as a trace-event JSON file. */
+    fun export(context: Context): File {
+        val dir = File(context.filesDir, "traces").apply { mkdirs() }
+        val stamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+        val file = File(dir, "trace-$stamp.json")
+        file.bufferedWriter().use { writer ->
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n")
+            var first = true
+            for (event in events) {
+                if (!first) writer.write(",\n")
+                writer.write(event)
+                first = false
+            }
+            writer.write("\n]}\n")
+        }
+        return file
+    }
+
+    fun clear() {
+        events.clear()
+        eventCount.set(0)
+    }
+}
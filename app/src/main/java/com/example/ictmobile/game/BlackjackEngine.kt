@@ -0,0 +1,94 @@
+package com.example.ictmobile.game
+
+import kotlin.random.Random
+
+/**
+ * The minigame rules without any UI: one fresh shuffled deck per round, the player
+ * and dealer get two cards each (the dealer's first card is face down), the dealer
+ * hits below 17, and a player bust loses without the dealer drawing.
+ *
+ * MinigameActivity drives it step by step so it can animate each card; the payout
+ * simulator calls [playRound] in a tight loop. Hands and deck are reused, so a
+ * round allocates nothing.
+ */
+class BlackjackEngine(random: Random = Random.Default) {
+    private val deck = CardDeck(random)
+    val playerHand = Hand()
+    val dealerHand = Hand()
+
+    /** The dealer card the player can see. */
+    val dealerUpCard: Int
+        get() = dealerHand[1]
+
+    fun startRound() {
+        deck.shuffle()
+        playerHand.clear()
+        dealerHand.clear()
+        playerHand.add(deck.deal())
+        dealerHand.add(deck.deal())
+        playerHand.add(deck.deal())
+        dealerHand.add(deck.deal())
+    }
+
+    fun hitPlayer(): Int {
+        val card = deck.deal()
+        playerHand.add(card)
+        return card
+    }
+
+    fun hitDealer(): Int {
+        val card = deck.deal()
+        dealerHand.add(card)
+        return card
+    }
+
+    fun isPlayerBust(): Boolean = playerHand.score() > 21
+
+    fun hasBlackjack(): Boolean = playerHand.score() == 21
+
+    fun dealerShouldHit(): Boolean = dealerHand.score() < DEALER_STANDS_ON
+
+    fun result(): Int {
+        val playerScore = playerHand.score()
+        if (playerScore > 21) return RESULT_LOSE
+        val dealerScore = dealerHand.score()
+        return when {
+            dealerScore > 21 -> RESULT_WIN
+            playerScore > dealerScore -> RESULT_WIN
+            playerScore < dealerScore -> RESULT_LOSE
+            else -> RESULT_PUSH
+        }
+    }
+
+    /** Plays a whole round with [strategy] and returns one of the RESULT_ constants. */
+    fun playRound(strategy: PlayerStrategy): Int {
+        startRound()
+
+        // 21 on the deal stands automatically, as in the activity
+        if (!hasBlackjack()) {
+            while (strategy.shouldHit(playerHand.score(), playerHand.isSoft(), dealerUpCard)) {
+                hitPlayer()
+                if (isPlayerBust()) return RESULT_LOSE
+            }
+        }
+
+        while (dealerShouldHit()) {
+            hitDealer()
+        }
+        return result()
+    }
+
+    companion object {
+        const val DEALER_STANDS_ON = 17
+
+        const val RESULT_WIN = 0
+        const val RESULT_PUSH = 1
+        const val RESULT_LOSE = 2
+
+        fun resultName(result: Int): String = when (result) {
+            RESULT_WIN -> "win"
+            RESULT_LOSE -> "lose"
+            else -> "push"
+        }
+    }
+}
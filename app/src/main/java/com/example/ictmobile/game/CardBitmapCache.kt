@@ -0,0 +1,127 @@
+package com.example.ictmobile.game
+
+import android.content.res.Resources
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.os.Handler
+import android.os.Looper
+import android.util.LruCache
+import com.example.ictmobile.diagnostics.AppLog
+import java.util.concurrent.Executors
+
+/**
+ * Decoded card bitmaps shared by every minigame session.
+ *
+ * The card PNGs are 1240x1748 and live in the unqualified drawable folder, so
+ * setImageResource would decode them at full size and then scale them up for the
+ * screen density. Here each card is decoded once, on a background thread, to exactly
+ * the height it is shown at: inSampleSize does the coarse power-of-two reduction and
+ * the decoder scales the rest. Sizes are the PNG's own pixels (inScaled is off while
+ * measuring), so the result is the same on every screen density.
+ */
+object CardBitmapCache {
+    private const val TAG = "CardBitmapCache"
+
+    // The 52 cards and the card back, all the same size
+    private const val DECK_BITMAPS = Cards.DECK_SIZE + 1
+    private const val BYTES_PER_PIXEL = 4
+
+    // Budget: 1/8 of the heap. preload shrinks the cards if the whole deck would not fit,
+    // so once it has run every card is a cache hit
+    private val budgetBytes = (Runtime.getRuntime().maxMemory() / 8).toInt()
+    private val cache = object : LruCache<Int, Bitmap>(budgetBytes) {
+        override fun sizeOf(key: Int, value: Bitmap): Int = value.allocationByteCount
+    }
+    private val decoder = Executors.newSingleThreadExecutor()
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    // Height cards are decoded at, fixed by preload
+    @Volatile
+    private var heightPx = 0
+
+    /** The cached bitmap for [resId], or null if it has not been decoded yet. Never decodes. */
+    fun get(resId: Int): Bitmap? = cache.get(resId)
+
+    /**
+     * Decodes [resId] on the decoder thread unless it is cached, then hands it to
+     * [onLoaded] on the main thread; null if it could not be decoded.
+     */
+    fun load(resources: Resources, resId: Int, targetPx: Int, onLoaded: (Bitmap?) -> Unit) {
+        decoder.execute {
+            val bitmap = cache.get(resId) ?: decodeAndCache(resources, resId, targetPx)
+            mainHandler.post { onLoaded(bitmap) }
+        }
+    }
+
+    /**
+     * Decodes the card back and the whole deck off the main thread so dealing never
+     * decodes. [targetPx] is the height the cards are shown at (FIT_CENTER in a square
+     * view is limited by the height, cards being taller than wide).
+     */
+    fun preload(resources: Resources, targetPx: Int, cardBackRes: Int) {
+        decoder.execute {
+            heightPx = fittingHeight(resources, cardBackRes, targetPx)
+            decodeAndCache(resources, cardBackRes, targetPx)
+            for (card in 0 until Cards.DECK_SIZE) {
+                decodeAndCache(resources, CardDrawables.of(card), targetPx)
+            }
+        }
+    }
+
+    private fun decodeAndCache(resources: Resources, resId: Int, targetPx: Int): Bitmap? {
+        cache.get(resId)?.let { return it }
+        val bitmap = decode(resources, resId, if (heightPx > 0) heightPx else targetPx) ?: return null
+        cache.put(resId, bitmap)
+        return bitmap
+    }
+
+    /** [targetPx], or less if the deck decoded at that height would not fit the budget. */
+    private fun fittingHeight(resources: Resources, resId: Int, targetPx: Int): Int {
+        val bounds = bounds(resources, resId)
+        if (bounds.outHeight <= 0 || bounds.outWidth <= 0) return targetPx
+        val cardBytes = targetPx.toLong() * (targetPx.toLong() * bounds.outWidth / bounds.outHeight) * BYTES_PER_PIXEL
+        val deckBytes = cardBytes * DECK_BITMAPS
+        if (deckBytes <= budgetBytes) return targetPx
+        // Bytes grow with the square of the height
+        val fitting = (targetPx * Math.sqrt(budgetBytes.toDouble() / deckBytes)).toInt()
+        AppLog.w(TAG) { "Deck does not fit ${budgetBytes / 1024} KB at ${targetPx}px, decoding at ${fitting}px" }
+        return fitting
+    }
+
+    private fun bounds(resources: Resources, resId: Int): BitmapFactory.Options {
+        val bounds = BitmapFactory.Options().apply {
+            inJustDecodeBounds = true
+            inScaled = false
+        }
+        BitmapFactory.decodeResource(resources, resId, bounds)
+        return bounds
+    }
+
+    private fun decode(resources: Resources, resId: Int, heightPx: Int): Bitmap? {
+        return try {
+            val bounds = bounds(resources, resId)
+
+            var sampleSize = 1
+            while (bounds.outHeight / (sampleSize * 2) >= heightPx) {
+                sampleSize *= 2
+            }
+            val sampledHeight = bounds.outHeight / sampleSize
+
+            val options = BitmapFactory.Options().apply {
+                inSampleSize = sampleSize
+                // Scale from the sampled height to heightPx while decoding; setting both
+                // densities keeps decodeResource from applying the screen density instead
+                inScaled = sampledHeight > heightPx
+                inDensity = sampledHeight
+                inTargetDensity = heightPx
+            }
+            BitmapFactory.decodeResource(resources, resId, options)?.apply {
+                // Pixels are already final, so drawables must not rescale them for density
+                density = resources.displayMetrics.densityDpi
+            }
+        } catch (e: Exception) {
+            AppLog.e(TAG, e) { "Failed to decode card bitmap: ${e.message}" }
+            null
+        }
+    }
+}
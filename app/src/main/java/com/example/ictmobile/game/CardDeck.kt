@@ -0,0 +1,33 @@
+package com.example.ictmobile.game
+
+import kotlin.random.Random
+
+/**
+ * A single 52-card deck kept in one IntArray. Shuffling is a Fisher-Yates done lazily:
+ * each deal swaps a random remaining card to the top, so a round costs one RNG call
+ * per card actually dealt and nothing is allocated after construction.
+ */
+class CardDeck(private val random: Random = Random.Default) {
+    private val cards = IntArray(Cards.DECK_SIZE) { it }
+    private var top = Cards.DECK_SIZE
+
+    val remaining: Int
+        get() = top
+
+    /** Returns every card to the deck; the order is randomised as cards are dealt. */
+    fun shuffle() {
+        top = cards.size
+    }
+
+    fun deal(): Int {
+        if (top == 0) {
+            shuffle()
+        }
+        val j = random.nextInt(top)
+        top--
+        val card = cards[j]
+        cards[j] = cards[top]
+        cards[top] = card
+        return card
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.ictmobile.game
+
+import com.example.ictmobile.R
+
+/** Drawable for each int-encoded card, kept apart from [Cards] so the rules stay Android-free. */
+object CardDrawables {
+    // Drawable per card, built once from R constants instead of resources.getIdentifier
+    private val DRAWABLES = intArrayOf(
+        R.drawable.ace_clover, R.drawable.ace_diamond, R.drawable.ace_love, R.drawable.ace_spade,
+        R.drawable.card_2_clover, R.drawable.card_2_diamond, R.drawable.card_2_love, R.drawable.card_2_spade,
+        R.drawable.card_3_clover, R.drawable.card_3_diamond, R.drawable.card_3_love, R.drawable.card_3_spade,
+        R.drawable.card_4_clover, R.drawable.card_4_diamond, R.drawable.card_4_love, R.drawable.card_4_spade,
+        R.drawable.card_5_clover, R.drawable.card_5_diamond, R.drawable.card_5_love, R.drawable.card_5_spade,
+        R.drawable.card_6_clover, R.drawable.card_6_diamond, R.drawable.card_6_love, R.drawable.card_6_spade,
+        R.drawable.card_7_clover, R.drawable.card_7_diamond, R.drawable.card_7_love, R.drawable.card_7_spade,
+        R.drawable.card_8_clover, R.drawable.card_8_diamond, R.drawable.card_8_love, R.drawable.card_8_spade,
+        R.drawable.card_9_clover, R.drawable.card_9_diamond, R.drawable.card_9_love, R.drawable.card_9_spade,
+        R.drawable.card_10_clover, R.drawable.card_10_diamond, R.drawable.card_10_love, R.drawable.card_10_spade,
+        R.drawable.jack_clover, R.drawable.jack_diamond, R.drawable.jack_love, R.drawable.jack_spade,
+        R.drawable.queen_clover, R.drawable.queen_diamond, R.drawable.queen_love, R.drawable.queen_spade,
+        R.drawable.king_clover, R.drawable.king_diamond, R.drawable.king_love, R.drawable.king_spade
+    )
+
+    fun of(card: Int): Int = DRAWABLES[card]
+}
@@ -0,0 +1,35 @@
+package com.example.ictmobile.game
+
+/**
+ * Int-encoded playing cards. A card is `rank * 4 + suit`, so the whole deck is 0..51
+ * and every lookup below is a plain array index. Nothing here touches Android, so the
+ * rules engine and the payout simulator can run on a plain JVM.
+ *
+ * Ranks: 0 = A, 1..9 = 2..10, 10 = J, 11 = Q, 12 = K
+ * Suits: 0 = clover, 1 = diamond, 2 = love, 3 = spade (matches the drawable names)
+ */
+object Cards {
+    const val DECK_SIZE = 52
+    const val SUIT_COUNT = 4
+    const val RANK_ACE = 0
+
+    val SUITS = arrayOf("clover", "diamond", "love", "spade")
+    val RANKS = arrayOf("A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K")
+
+    // Blackjack value per rank (ace counted as 11, adjusted in Hand.score)
+    private val RANK_VALUES = intArrayOf(11, 2, 3, 4, 5, 6, 7, 8, 9, 10, 10, 10, 10)
+
+    fun of(rank: Int, suit: Int): Int = rank * SUIT_COUNT + suit
+
+    fun rank(card: Int): Int = card / SUIT_COUNT
+
+    fun suit(card: Int): Int = card % SUIT_COUNT
+
+    fun value(card: Int): Int = RANK_VALUES[card / SUIT_COUNT]
+
+    fun isAce(card: Int): Boolean = card / SUIT_COUNT == RANK_ACE
+
+    fun rankName(card: Int): String = RANKS[card / SUIT_COUNT]
+
+    fun suitName(card: Int): String = SUITS[card % SUIT_COUNT]
+}
@@ -0,0 +1,57 @@
+package com.example.ictmobile.game
+
+/**
+ * Fixed-capacity blackjack hand. The largest hand that can still be under 21 is
+ * eleven cards (four aces, four twos, three threes), plus the card that busts it.
+ */
+class Hand {
+    private val cards = IntArray(MAX_CARDS)
+
+    var size: Int = 0
+        private set
+
+    operator fun get(index: Int): Int = cards[index]
+
+    fun add(card: Int) {
+        cards[size++] = card
+    }
+
+    fun clear() {
+        size = 0
+    }
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun last(): Int = cards[size - 1]
+
+    fun score(): Int = evaluate() and SCORE_MASK
+
+    /** True when an ace is still being counted as 11. */
+    fun isSoft(): Boolean = evaluate() and SOFT != 0
+
+    /** The score, with [SOFT] set when an ace is still counted as 11, from one pass. */
+    private fun evaluate(): Int {
+        var score = 0
+        var aces = 0
+        for (i in 0 until size) {
+            val card = cards[i]
+            if (Cards.isAce(card)) aces++
+            score += Cards.value(card)
+        }
+
+        // Adjust for aces
+        while (score > 21 && aces > 0) {
+            score -= 10
+            aces--
+        }
+        return if (aces > 0) score or SOFT else score
+    }
+
+    companion object {
+        const val MAX_CARDS = 12
+
+        // No hand scores anywhere near 256, so the flag sits above the score bits
+        private const val SOFT = 1 shl 8
+        private const val SCORE_MASK = SOFT - 1
+    }
+}
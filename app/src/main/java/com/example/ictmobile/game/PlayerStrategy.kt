@@ -0,0 +1,33 @@
+package com.example.ictmobile.game
+
+/** Decides whether the player draws another card. Implementations must not allocate. */
+fun interface PlayerStrategy {
+    fun shouldHit(playerScore: Int, soft: Boolean, dealerUpCard: Int): Boolean
+
+    companion object {
+        /** Hits below a fixed total, like a cautious casual player. */
+        fun standOn(total: Int): PlayerStrategy = PlayerStrategy { score, _, _ -> score < total }
+
+        /** Mimics the dealer: hit below 17. */
+        val MIMIC_DEALER: PlayerStrategy = standOn(17)
+
+        /** Hit/stand part of standard basic strategy (this game has no double or split). */
+        val BASIC: PlayerStrategy = PlayerStrategy { score, soft, dealerUpCard ->
+            val up = Cards.value(dealerUpCard)
+            if (soft) {
+                when {
+                    score >= 19 -> false
+                    score == 18 -> up >= 9
+                    else -> true
+                }
+            } else {
+                when {
+                    score >= 17 -> false
+                    score >= 13 -> up >= 7
+                    score == 12 -> up < 4 || up >= 7
+                    else -> true
+                }
+            }
+        }
+    }
+}
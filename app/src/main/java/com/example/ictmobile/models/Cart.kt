@@ -0,0 +1,55 @@
+package com.example.ictmobile.models
+
+import java.util.Date
+
+/** One booking waiting in the cart, priced the same way the order will be. */
+data class CartItem(
+    val machine: Machine,
+    val temperature: String,
+    val startTime: Date,
+    val endTime: Date
+) {
+    val durationMinutes: Long
+        get() = (endTime.time - startTime.time) / 60_000L
+
+    val amount: Double
+        get() = machine.price * (durationMinutes / 60.0)
+
+    fun overlaps(other: CartItem): Boolean =
+        machine.id == other.machine.id && startTime.before(other.endTime) && other.startTime.before(endTime)
+}
+
+/**
+ * Bookings collected for one checkout. Items on the same machine may not overlap; the
+ * booking transaction checks them again against everyone else's holds.
+ */
+class Cart {
+    private val items = mutableListOf<CartItem>()
+
+    val size: Int
+        get() = items.size
+
+    val isFull: Boolean
+        get() = items.size >= MAX_ITEMS
+
+    val total: Double
+        get() = items.sumOf { it.amount }
+
+    fun items(): List<CartItem> = items.toList()
+
+    /** Adds [item] unless the cart is full or it overlaps an item already in it. */
+    fun add(item: CartItem): Boolean {
+        if (isFull || items.any { it.overlaps(item) }) return false
+        items.add(item)
+        return true
+    }
+
+    fun clear() {
+        items.clear()
+    }
+
+    companion object {
+        /** Keeps the checkout transaction well under Firestore's 500 writes. */
+        const val MAX_ITEMS = 6
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.ictmobile.models
+
+import com.google.firebase.Timestamp
+import java.util.Date
+
+data class MinigameRound(
+    val id: String = "",
+    val userId: String = "",
+    val result: String = "", // "win", "lose", "push"
+    val playerHand: List<Map<String, String>> = emptyList(), // [{rank, suit}]
+    val dealerHand: List<Map<String, String>> = emptyList(),
+    val playerScore: Int = 0,
+    val dealerScore: Int = 0,
+    val tokenId: String = "",
+    val voucherId: String? = null,
+    val playedAt: Date = Date()
+) {
+    companion object {
+        fun fromMap(map: Map<String, Any?>): MinigameRound {
+            val playedAtTimestamp = map["played_at"] as? Timestamp
+
+            @Suppress("UNCHECKED_CAST")
+            return MinigameRound(
+                id = map["id"] as? String ?: "",
+                userId = map["user_id"] as? String ?: "",
+                result = map["result"] as? String ?: "",
+                playerHand = map["player_hand"] as? List<Map<String, String>> ?: emptyList(),
+                dealerHand = map["dealer_hand"] as? List<Map<String, String>> ?: emptyList(),
+                playerScore = (map["player_score"] as? Number)?.toInt() ?: 0,
+                dealerScore = (map["dealer_score"] as? Number)?.toInt() ?: 0,
+                tokenId = map["token_id"] as? String ?: "",
+                voucherId = map["voucher_id"] as? String,
+                playedAt = playedAtTimestamp?.toDate() ?: Date()
+            )
+        }
+
+        fun toMap(round: MinigameRound): Map<String, Any> {
+            val map = mutableMapOf<String, Any>(
+                "user_id" to round.userId,
+                "result" to round.result,
+                "player_hand" to round.playerHand,
+                "dealer_hand" to round.dealerHand,
+                "player_score" to round.playerScore,
+                "dealer_score" to round.dealerScore,
+                "token_id" to round.tokenId,
+                "played_at" to com.google.firebase.Timestamp(round.playedAt.time / 1000, ((round.playedAt.time % 1000) * 1000000).toInt())
+            )
+
+            round.voucherId?.let { map["voucher_id"] = it }
+
+            return map
+        }
+    }
+}
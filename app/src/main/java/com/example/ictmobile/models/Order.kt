@@ -15,39 +15,69 @@ data class Order(
     val totalAmount: Double = 0.0,
     val paymentId: String = "",
     val createdAt: Date = Date(),
-    val updatedAt: Date? = null
+    val updatedAt: Date? = null,
+    // Set by completePayment; false while unpaid, and on orders from before checkout leases
+    val paid: Boolean = false
 ) {
     val progress: String
-        get() {
-            if (status == "completed") return "Completed"
-            if (status == "cancelled") return "Cancelled"
-            if (status == "pending") return "Pending"
-            
-            val now = Date()
-            if (now < startTime) return "Pending"
-            if (now >= endTime) return "Completed"
-            
-            val totalDuration = (endTime.time - startTime.time) / (1000 * 60) // minutes
-            val elapsed = (now.time - startTime.time) / (1000 * 60) // minutes
-            val progressPercent = (elapsed.toDouble() / totalDuration.toDouble()) * 100
-            
-            return when {
-                progressPercent < 30 -> "Washing"
-                progressPercent < 60 -> "Rinsing"
-                progressPercent < 90 -> "Drying"
-                else -> "Finalizing"
-            }
-        }
+        get() = progressAt(System.currentTimeMillis())
     
     val timeRemaining: Int?
-        get() {
-            if (status != "active") return null
-            val now = Date()
-            if (now >= endTime) return 0
-            return ((endTime.time - now.time) / (1000 * 60)).toInt() // minutes
-        }
+        get() = timeRemainingAt(System.currentTimeMillis())
+    
+    fun progressAt(nowMillis: Long): String {
+        if (status == "completed") return "Completed"
+        if (status == "cancelled") return "Cancelled"
+        if (status == "pending") return "Pending"
+        
+        return PHASE_LABELS[phaseAt(phaseBoundaries(), nowMillis)]
+    }
+    
+    /**
+     * Wall-clock instants where the cycle moves to the next phase:
+     * [start, rinse starts, drying starts, finalizing starts, end].
+     * Matches the old minute-granular 30/60/90% thresholds exactly.
+     */
+    fun phaseBoundaries(): LongArray {
+        val start = startTime.time
+        val end = endTime.time
+        val totalMinutes = (end - start) / MINUTE_MILLIS
+        return longArrayOf(
+            start,
+            start + ceilDiv(totalMinutes * 30, 100) * MINUTE_MILLIS,
+            start + ceilDiv(totalMinutes * 60, 100) * MINUTE_MILLIS,
+            start + ceilDiv(totalMinutes * 90, 100) * MINUTE_MILLIS,
+            end
+        )
+    }
+    
+    fun timeRemainingAt(nowMillis: Long): Int? {
+        if (status != "active") return null
+        if (nowMillis >= endTime.time) return 0
+        return ((endTime.time - nowMillis) / (1000 * 60)).toInt() // minutes
+    }
     
     companion object {
+        const val MINUTE_MILLIS = 60_000L
+        
+        const val PHASE_PENDING = 0
+        const val PHASE_COMPLETED = 5
+        val PHASE_LABELS = arrayOf("Pending", "Washing", "Rinsing", "Drying", "Finalizing", "Completed")
+        
+        /** Index into [PHASE_LABELS] for [nowMillis]; only comparisons, no allocation. */
+        fun phaseAt(boundaries: LongArray, nowMillis: Long): Int {
+            if (nowMillis < boundaries[0]) return PHASE_PENDING
+            if (nowMillis >= boundaries[4]) return PHASE_COMPLETED
+            return when {
+                nowMillis < boundaries[1] -> 1
+                nowMillis < boundaries[2] -> 2
+                nowMillis < boundaries[3] -> 3
+                else -> 4
+            }
+        }
+        
+        private fun ceilDiv(a: Long, b: Long): Long = (a + b - 1) / b
+        
         fun fromMap(map: Map<String, Any?>): Order {
             val startTimeTimestamp = map["start_time"] as? Timestamp
             val endTimeTimestamp = map["end_time"] as? Timestamp
@@ -84,7 +114,8 @@ data class Order(
                 totalAmount = totalAmount,
                 paymentId = paymentId,
                 createdAt = createdAtTimestamp?.toDate() ?: Date(),
-                updatedAt = updatedAtTimestamp?.toDate()
+                updatedAt = updatedAtTimestamp?.toDate(),
+                paid = map["paid"] as? Boolean ?: false
             )
         }
         
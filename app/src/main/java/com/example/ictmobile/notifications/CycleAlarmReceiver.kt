@@ -0,0 +1,36 @@
+package com.example.ictmobile.notifications
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+
+class CycleAlarmReceiver : BroadcastReceiver() {
+
+    override fun onReceive(context: Context, intent: Intent) {
+        val orderId = intent.getStringExtra(EXTRA_ORDER_ID)
+        val machineName = intent.getStringExtra(EXTRA_MACHINE_NAME)?.ifEmpty { null } ?: "Your machine"
+        when (intent.action) {
+            ACTION_CYCLE_START -> {
+                if (orderId == null) return
+                val endMillis = intent.getLongExtra(EXTRA_END_MILLIS, 0)
+                if (endMillis > System.currentTimeMillis()) {
+                    CycleNotifications.showRunning(context, orderId, machineName, endMillis)
+                }
+            }
+            ACTION_CYCLE_END -> {
+                if (orderId == null) return
+                CycleNotifications.showFinished(context, orderId, machineName)
+                CycleAlarmScheduler.forget(context, orderId)
+            }
+            Intent.ACTION_BOOT_COMPLETED -> CycleAlarmScheduler.rescheduleAll(context)
+        }
+    }
+
+    companion object {
+        const val ACTION_CYCLE_START = "com.example.ictmobile.action.CYCLE_START"
+        const val ACTION_CYCLE_END = "com.example.ictmobile.action.CYCLE_END"
+        const val EXTRA_ORDER_ID = "order_id"
+        const val EXTRA_MACHINE_NAME = "machine_name"
+        const val EXTRA_END_MILLIS = "end_millis"
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ictmobile.notifications
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import com.example.ictmobile.models.Order
+
+/**
+ * Schedules one alarm at an order's start_time and one at its end_time. Only paid
+ * orders that are not cancelled or completed get them; any other order has its alarms
+ * cancelled. Scheduling is idempotent per order (the PendingIntents are keyed by order
+ * id), so it is safe to call again whenever an order is loaded or changes.
+ *
+ * Scheduled cycles are also kept in SharedPreferences so [CycleAlarmReceiver] can
+ * re-arm them after a reboot, when AlarmManager forgets everything.
+ */
+object CycleAlarmScheduler {
+    private const val PREFS = "cycle_alarms"
+
+    fun schedule(context: Context, order: Order) {
+        if (!order.paid || order.status == "cancelled" || order.status == "completed") {
+            cancel(context, order.id)
+            return
+        }
+        schedule(context, order.id, order.machineName, order.startTime.time, order.endTime.time)
+    }
+
+    fun schedule(context: Context, orderId: String, machineName: String, startMillis: Long, endMillis: Long) {
+        if (orderId.isEmpty()) return
+        val now = System.currentTimeMillis()
+        if (endMillis <= now) {
+            cancel(context, orderId)
+            return
+        }
+
+        prefs(context).edit()
+            .putString(orderId, "$startMillis|$endMillis|$machineName")
+            .apply()
+
+        if (startMillis <= now) {
+            CycleNotifications.showRunning(context, orderId, machineName, endMillis)
+        } else {
+            setAlarm(context, startMillis, pendingIntent(context, CycleAlarmReceiver.ACTION_CYCLE_START, orderId, machineName, endMillis))
+        }
+        setAlarm(context, endMillis, pendingIntent(context, CycleAlarmReceiver.ACTION_CYCLE_END, orderId, machineName, endMillis))
+    }
+
+    fun cancel(context: Context, orderId: String) {
+        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        alarmManager.cancel(pendingIntent(context, CycleAlarmReceiver.ACTION_CYCLE_START, orderId, "", 0))
+        alarmManager.cancel(pendingIntent(context, CycleAlarmReceiver.ACTION_CYCLE_END, orderId, "", 0))
+        CycleNotifications.cancel(context, orderId)
+        forget(context, orderId)
+    }
+
+    fun forget(context: Context, orderId: String) {
+        prefs(context).edit().remove(orderId).apply()
+    }
+
+    /** Re-arms every stored cycle, e.g. after boot. */
+    fun rescheduleAll(context: Context) {
+        for ((orderId, value) in prefs(context).all) {
+            val parts = (value as? String)?.split("|", limit = 3) ?: continue
+            if (parts.size < 3) continue
+            val start = parts[0].toLongOrNull() ?: continue
+            val end = parts[1].toLongOrNull() ?: continue
+            schedule(context, orderId, parts[2], start, end)
+        }
+    }
+
+    private fun setAlarm(context: Context, triggerAtMillis: Long, operation: PendingIntent) {
+        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        val canExact = Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()
+        when {
+            Build.VERSION.SDK_INT < Build.VERSION_CODES.M ->
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAtMillis, operation)
+            canExact ->
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMillis, operation)
+            // Exact alarm access revoked: still fire, within the system's idle window
+            else ->
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMillis, operation)
+        }
+    }
+
+    private fun pendingIntent(context: Context, action: String, orderId: String, machineName: String, endMillis: Long): PendingIntent {
+        val intent = Intent(context, CycleAlarmReceiver::class.java)
+            .setAction(action)
+            // Data makes the PendingIntent unique per order
+            .setData(android.net.Uri.parse("laundroyale://order/$orderId"))
+            .putExtra(CycleAlarmReceiver.EXTRA_ORDER_ID, orderId)
+            .putExtra(CycleAlarmReceiver.EXTRA_MACHINE_NAME, machineName)
+            .putExtra(CycleAlarmReceiver.EXTRA_END_MILLIS, endMillis)
+        return PendingIntent.getBroadcast(
+            context,
+            0,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
+        )
+    }
+
+    private fun prefs(context: Context) = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
+}
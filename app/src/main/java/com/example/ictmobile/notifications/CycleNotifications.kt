@@ -0,0 +1,89 @@
+package com.example.ictmobile.notifications
+
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import androidx.core.app.NotificationCompat
+import androidx.core.app.NotificationManagerCompat
+import com.example.ictmobile.R
+import com.example.ictmobile.diagnostics.AppLog
+import com.example.ictmobile.ui.customer.OrderDetailActivity
+
+/**
+ * The two notifications of a machine cycle: an ongoing one while it runs, whose
+ * countdown is a system chronometer (the app is not woken to update it), and a
+ * one-off alert when it ends. Both use the order's hash as the notification id.
+ */
+object CycleNotifications {
+    const val CHANNEL_ONGOING = "cycle_ongoing"
+    const val CHANNEL_DONE = "cycle_done"
+
+    fun createChannels(context: Context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return
+        val manager = context.getSystemService(NotificationManager::class.java)
+        manager.createNotificationChannel(
+            NotificationChannel(CHANNEL_ONGOING, "Machine in use", NotificationManager.IMPORTANCE_LOW)
+        )
+        manager.createNotificationChannel(
+            NotificationChannel(CHANNEL_DONE, "Cycle finished", NotificationManager.IMPORTANCE_HIGH)
+        )
+    }
+
+    fun showRunning(context: Context, orderId: String, machineName: String, endMillis: Long) {
+        val notification = NotificationCompat.Builder(context, CHANNEL_ONGOING)
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setContentTitle("$machineName is running")
+            .setContentText("Time remaining")
+            .setWhen(endMillis)
+            .setShowWhen(true)
+            .setUsesChronometer(true)
+            .setChronometerCountDown(true)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .setContentIntent(openOrder(context, orderId))
+            .build()
+        notify(context, orderId, notification)
+    }
+
+    fun showFinished(context: Context, orderId: String, machineName: String) {
+        val notification = NotificationCompat.Builder(context, CHANNEL_DONE)
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setContentTitle("$machineName is done")
+            .setContentText("Your laundry is ready for pickup")
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setAutoCancel(true)
+            .setContentIntent(openOrder(context, orderId))
+            .build()
+        notify(context, orderId, notification)
+    }
+
+    fun cancel(context: Context, orderId: String) {
+        NotificationManagerCompat.from(context).cancel(orderId.hashCode())
+    }
+
+    private fun notify(context: Context, orderId: String, notification: android.app.Notification) {
+        val manager = NotificationManagerCompat.from(context)
+        if (!manager.areNotificationsEnabled()) return
+        try {
+            manager.notify(orderId.hashCode(), notification)
+        } catch (e: SecurityException) {
+            // POST_NOTIFICATIONS not granted
+            AppLog.w("CycleNotifications") { "Cannot post notification: ${e.message}" }
+        }
+    }
+
+    private fun openOrder(context: Context, orderId: String): PendingIntent {
+        val intent = Intent(context, OrderDetailActivity::class.java)
+            .putExtra("order_id", orderId)
+            .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK or Intent.FLAG_ACTIVITY_CLEAR_TOP)
+        return PendingIntent.getActivity(
+            context,
+            orderId.hashCode(),
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
+        )
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.ictmobile.scheduling
+
+/**
+ * Free/busy state of a set of machines over the 24-hour booking window, one
+ * [MinuteBitset] per machine. Minute 0 is [windowStart], which should be on a minute
+ * boundary.
+ *
+ * Nothing can be booked to start after the window, so any time past its end is free;
+ * a slot near the end of the window only has to fit the minutes that are inside it.
+ */
+class AvailabilityGrid(val windowStart: Long, machineIds: List<String>) {
+    val machineIds: List<String> = machineIds.toList()
+    private val rows = Array(this.machineIds.size) { MinuteBitset(WINDOW_MINUTES) }
+    private val rowIndex = HashMap<String, Int>(this.machineIds.size * 2)
+
+    init {
+        for (i in this.machineIds.indices) {
+            rowIndex[this.machineIds[i]] = i
+        }
+    }
+
+    val windowEnd: Long
+        get() = windowStart + WINDOW_MINUTES * MINUTE_MILLIS
+
+    fun indexOf(machineId: String): Int = rowIndex[machineId] ?: -1
+
+    fun row(index: Int): MinuteBitset = rows[index]
+
+    /** Marks every minute that [startMillis, endMillis) touches as busy. */
+    fun markBusy(machineId: String, startMillis: Long, endMillis: Long) {
+        val index = indexOf(machineId)
+        if (index < 0) return
+        rows[index].setRange(minuteFloor(startMillis), minuteCeil(endMillis))
+    }
+
+    fun isFree(machineId: String, startMillis: Long, endMillis: Long): Boolean {
+        val index = indexOf(machineId)
+        if (index < 0) return false
+        return rows[index].isFree(minuteFloor(startMillis), minuteCeil(endMillis))
+    }
+
+    /** Earliest start at or after [fromMillis] with [durationMinutes] free, or -1. */
+    fun earliestStart(machineId: String, fromMillis: Long, durationMinutes: Int): Long {
+        val index = indexOf(machineId)
+        if (index < 0) return -1L
+        val minute = rows[index].earliestFree(minuteCeil(fromMillis), durationMinutes)
+        return if (minute < 0) -1L else windowStart + minute * MINUTE_MILLIS
+    }
+
+    fun clear() {
+        for (row in rows) {
+            row.clear()
+        }
+    }
+
+    private fun minuteFloor(millis: Long): Int =
+        Math.floorDiv(millis - windowStart, MINUTE_MILLIS).coerceIn(0L, WINDOW_MINUTES.toLong()).toInt()
+
+    private fun minuteCeil(millis: Long): Int =
+        Math.floorDiv(millis - windowStart + MINUTE_MILLIS - 1, MINUTE_MILLIS).coerceIn(0L, WINDOW_MINUTES.toLong()).toInt()
+
+    companion object {
+        const val WINDOW_MINUTES = 24 * 60
+        const val MINUTE_MILLIS = 60_000L
+
+        fun floorToMinute(millis: Long): Long = millis - Math.floorMod(millis, MINUTE_MILLIS)
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.ictmobile.scheduling
+
+/**
+ * Schedules a wash followed by a dry as a two-stage flow shop: one washer, then one
+ * dryer that starts no earlier than the wash ends and no more than
+ * [MAX_HANDOFF_MINUTES] after it, so clothes are not left sitting wet.
+ *
+ * Every washer/dryer pair is searched jointly. For a pair, the earliest feasible wash
+ * start also gives the earliest finish (the dryer's next free run only moves later as
+ * the wash does), so each pair walks its wash starts forward until the dryer's next
+ * free run falls within the hand-off window. The pair finishing first wins, then the
+ * one with the shorter hand-off, then the earlier wash.
+ */
+object ChainScheduler {
+    const val MAX_HANDOFF_MINUTES = 15
+
+    class Chain(
+        val washerIndex: Int,
+        val washStart: Int,
+        val dryerIndex: Int,
+        val dryStart: Int,
+        val finish: Int,
+        val handoff: Int
+    )
+
+    fun schedule(
+        grid: AvailabilityGrid,
+        washers: IntArray,
+        dryers: IntArray,
+        fromMinute: Int,
+        latestWashStart: Int,
+        washMinutes: Int,
+        dryMinutes: Int
+    ): Chain? {
+        var best: Chain? = null
+        for (w in washers) {
+            val washer = grid.row(w)
+            for (d in dryers) {
+                val dryer = grid.row(d)
+                var washStart = washer.earliestFree(fromMinute, washMinutes)
+                while (washStart in 0..latestWashStart) {
+                    val washEnd = washStart + washMinutes
+                    val dryStart = dryer.earliestFree(washEnd, dryMinutes)
+                    if (dryStart < 0) break
+                    if (dryStart - washEnd <= MAX_HANDOFF_MINUTES) {
+                        val finish = dryStart + dryMinutes
+                        val handoff = dryStart - washEnd
+                        if (best == null || isBetter(finish, handoff, washStart, best)) {
+                            best = Chain(w, washStart, d, dryStart, finish, handoff)
+                        }
+                        break
+                    }
+                    // Latest wash that could still hand off to this dryer run, moving forward
+                    washStart = washer.earliestFree(dryStart - MAX_HANDOFF_MINUTES - washMinutes, washMinutes)
+                }
+            }
+        }
+        return best
+    }
+
+    private fun isBetter(finish: Int, handoff: Int, washStart: Int, best: Chain): Boolean {
+        if (finish != best.finish) return finish < best.finish
+        if (handoff != best.handoff) return handoff < best.handoff
+        return washStart < best.washStart
+    }
+}
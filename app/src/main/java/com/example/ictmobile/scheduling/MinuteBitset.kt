@@ -0,0 +1,108 @@
+package com.example.ictmobile.scheduling
+
+/**
+ * Busy minutes of one machine, one bit per minute packed into longs: minute i is bit
+ * (i and 63) of word (i ushr 6). Scans skip 64 minutes at a time and use
+ * numberOfTrailingZeros to land on the exact minute inside a word.
+ */
+class MinuteBitset(val size: Int) {
+    private val words = LongArray((size + 63) ushr 6)
+
+    fun isBusy(minute: Int): Boolean = words[minute ushr 6] and (1L shl minute) != 0L
+
+    /** Marks [from, to) busy; the range is clipped to the bitset. */
+    fun setRange(from: Int, to: Int) {
+        val lo = maxOf(from, 0)
+        val hi = minOf(to, size)
+        if (lo >= hi) return
+
+        val first = lo ushr 6
+        val last = (hi - 1) ushr 6
+        val firstMask = -1L shl lo
+        val lastMask = -1L ushr (63 - ((hi - 1) and 63))
+        if (first == last) {
+            words[first] = words[first] or (firstMask and lastMask)
+            return
+        }
+        words[first] = words[first] or firstMask
+        for (i in first + 1 until last) {
+            words[i] = -1L
+        }
+        words[last] = words[last] or lastMask
+    }
+
+    fun clear() {
+        words.fill(0L)
+    }
+
+    /** First busy minute at or after [from], or [size] if there is none. */
+    fun nextBusy(from: Int): Int {
+        if (from >= size) return size
+        var i = maxOf(from, 0) ushr 6
+        var word = words[i] and (-1L shl maxOf(from, 0))
+        while (true) {
+            if (word != 0L) {
+                return minOf((i shl 6) + java.lang.Long.numberOfTrailingZeros(word), size)
+            }
+            if (++i == words.size) return size
+            word = words[i]
+        }
+    }
+
+    /** First free minute at or after [from], or [size] if there is none. */
+    fun nextFree(from: Int): Int {
+        if (from >= size) return size
+        var i = maxOf(from, 0) ushr 6
+        var word = words[i].inv() and (-1L shl maxOf(from, 0))
+        while (true) {
+            if (word != 0L) {
+                // Bits past size in the last word are never set, so they read as free
+                return minOf((i shl 6) + java.lang.Long.numberOfTrailingZeros(word), size)
+            }
+            if (++i == words.size) return size
+            word = words[i].inv()
+        }
+    }
+
+    /** Last busy minute before [before], or -1 if there is none. */
+    fun lastBusy(before: Int): Int {
+        val end = minOf(before, size)
+        if (end <= 0) return -1
+        var i = (end - 1) ushr 6
+        var word = words[i] and (-1L ushr (63 - ((end - 1) and 63)))
+        while (true) {
+            if (word != 0L) {
+                return (i shl 6) + 63 - java.lang.Long.numberOfLeadingZeros(word)
+            }
+            if (--i < 0) return -1
+            word = words[i]
+        }
+    }
+
+    fun isFree(from: Int, to: Int): Boolean = nextBusy(from) >= minOf(to, size)
+
+    /**
+     * Start of the first run of [length] free minutes beginning at or after [from], or -1.
+     * Time past the end of the bitset counts as free, so a run may start as late as
+     * size - 1 and continue beyond it.
+     */
+    fun earliestFree(from: Int, length: Int): Int {
+        var start = nextFree(from)
+        while (start < size) {
+            val busy = nextBusy(start)
+            if (busy == size || busy - start >= length) {
+                return start
+            }
+            start = nextFree(busy)
+        }
+        return -1
+    }
+
+    fun busyCount(): Int {
+        var count = 0
+        for (word in words) {
+            count += java.lang.Long.bitCount(word)
+        }
+        return count
+    }
+}
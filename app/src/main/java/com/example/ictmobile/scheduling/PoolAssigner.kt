@@ -0,0 +1,111 @@
+package com.example.ictmobile.scheduling
+
+/**
+ * Picks a machine and start time for an "any washer" / "any dryer" booking from an
+ * in-memory [AvailabilityGrid] of the whole pool.
+ *
+ * [Policy.FIRST_FIT] is what the old flow amounts to: the earliest start on the first
+ * machine that has one. [Policy.BEST_FIT] treats each machine's free time as holes and
+ * places the booking where it leaves the least idle time behind: gaps shorter than the
+ * minimum booking can never be sold, so those count as waste first, then the tightest
+ * hole wins (keeping long holes for long bookings), then the earlier start.
+ */
+object PoolAssigner {
+    const val MIN_BOOKING_MINUTES = 30
+
+    enum class Policy { FIRST_FIT, BEST_FIT }
+
+    class Assignment(val machineIndex: Int, val startMinute: Int)
+
+    /**
+     * Chooses among the grid rows in [pool] a start in [fromMinute, latestStart] with
+     * [duration] free minutes, or null if none of them has one.
+     */
+    fun assign(
+        grid: AvailabilityGrid,
+        pool: IntArray,
+        fromMinute: Int,
+        latestStart: Int,
+        duration: Int,
+        policy: Policy = Policy.BEST_FIT
+    ): Assignment? {
+        return when (policy) {
+            Policy.FIRST_FIT -> firstFit(grid, pool, fromMinute, latestStart, duration)
+            Policy.BEST_FIT -> bestFit(grid, pool, fromMinute, latestStart, duration)
+        }
+    }
+
+    private fun firstFit(grid: AvailabilityGrid, pool: IntArray, from: Int, latestStart: Int, duration: Int): Assignment? {
+        var bestIndex = -1
+        var bestStart = Int.MAX_VALUE
+        for (index in pool) {
+            val start = grid.row(index).earliestFree(from, duration)
+            if (start in 0..latestStart && start < bestStart) {
+                bestIndex = index
+                bestStart = start
+            }
+        }
+        return if (bestIndex < 0) null else Assignment(bestIndex, bestStart)
+    }
+
+    private fun bestFit(grid: AvailabilityGrid, pool: IntArray, from: Int, latestStart: Int, duration: Int): Assignment? {
+        var bestIndex = -1
+        var bestStart = 0
+        var bestWaste = Int.MAX_VALUE
+        var bestHole = Int.MAX_VALUE
+
+        for (index in pool) {
+            val bits = grid.row(index)
+            val size = bits.size
+            var start = bits.nextFree(from)
+            while (start <= latestStart && start < size) {
+                val holeEnd = bits.nextBusy(start)
+                val holeStart = bits.lastBusy(start) + 1
+                val closedLeft = holeStart > 0
+                val closedRight = holeEnd < size
+                if (!closedRight || holeEnd - start >= duration) {
+                    val hole = if (closedLeft && closedRight) holeEnd - holeStart else Int.MAX_VALUE
+
+                    // Flush against the left end of the hole (or as early as the window allows)
+                    var candidate = start
+                    var waste = waste(candidate, duration, holeStart, holeEnd, closedLeft, closedRight)
+                    // Flush against the next booking, if that still starts inside the window
+                    val rightAligned = holeEnd - duration
+                    if (closedRight && rightAligned > start && rightAligned <= latestStart) {
+                        val rightWaste = waste(rightAligned, duration, holeStart, holeEnd, closedLeft, closedRight)
+                        if (rightWaste < waste) {
+                            candidate = rightAligned
+                            waste = rightWaste
+                        }
+                    }
+
+                    if (waste < bestWaste ||
+                        (waste == bestWaste && hole < bestHole) ||
+                        (waste == bestWaste && hole == bestHole && candidate < bestStart)) {
+                        bestIndex = index
+                        bestStart = candidate
+                        bestWaste = waste
+                        bestHole = hole
+                    }
+                }
+                if (!closedRight) break
+                start = bits.nextFree(holeEnd)
+            }
+        }
+        return if (bestIndex < 0) null else Assignment(bestIndex, bestStart)
+    }
+
+    /** Idle minutes a booking at [start] strands on either side that no booking could fill. */
+    private fun waste(start: Int, duration: Int, holeStart: Int, holeEnd: Int, closedLeft: Boolean, closedRight: Boolean): Int {
+        var waste = 0
+        if (closedLeft) {
+            val before = start - holeStart
+            if (before in 1 until MIN_BOOKING_MINUTES) waste += before
+        }
+        if (closedRight) {
+            val after = holeEnd - start - duration
+            if (after in 1 until MIN_BOOKING_MINUTES) waste += after
+        }
+        return waste
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.ictmobile.scheduling
+
+/**
+ * Layout of the slot lock documents that make booking a machine linearizable.
+ *
+ * Each machine's time is cut into [BUCKET_MINUTES] buckets. The lock document for a
+ * bucket, `slot_locks/{machineId}_{bucket}`, holds every booking that touches it as
+ * `holds.{orderId} = {start_ms, end_ms}`. A booking transaction reads only the lock
+ * documents its own buckets map to (at most seven for a 3-hour booking), checks the
+ * exact intervals inside them, and writes its hold into each. Firestore fails the
+ * commit if any of those documents changed since they were read, so two bookings that
+ * could overlap always touch a common document and can never both commit.
+ *
+ * A new booking's hold is a lease: it carries `lease_expires_ms` and stops counting
+ * once that passes, so an abandoned checkout frees its slot after [LEASE_MINUTES]
+ * even before the sweeper gets to it. Paying converts the lease into a confirmed hold
+ * by rewriting it without the expiry.
+ *
+ * Each commit writes a lock document once, through [Changes], and lists the orders
+ * whose holds it adds, rewrites or drops in `order_ids`; the rules check every one of
+ * them belongs to the caller. At most [MAX_HOLDS_PER_WRITE] may change per write.
+ */
+object SlotLocks {
+    const val BUCKET_MINUTES = 30
+    const val BUCKET_MILLIS = BUCKET_MINUTES * 60_000L
+
+    const val FIELD_MACHINE_ID = "machine_id"
+    const val FIELD_BUCKET_START = "bucket_start"
+    const val FIELD_HOLDS = "holds"
+    const val FIELD_START = "start_ms"
+    const val FIELD_END = "end_ms"
+    const val FIELD_LEASE_EXPIRES = "lease_expires_ms"
+    const val FIELD_ORDER_IDS = "order_ids"
+
+    // Must match the rules; two bookings of 30 minutes or more can share a bucket
+    const val MAX_HOLDS_PER_WRITE = 4
+
+    const val LEASE_MINUTES = 10
+    const val LEASE_MILLIS = LEASE_MINUTES * 60_000L
+
+    /** One order's booking of [machineId], as read back from its lock documents. */
+    class Hold(val orderId: String, val machineId: String, val startMillis: Long, val endMillis: Long)
+
+    /**
+     * Hold changes staged for one commit, grouped by lock document so each gets a single
+     * write. A value is a hold map, or the store's delete marker to drop the hold.
+     */
+    class Changes {
+        class Lock(val machineId: String, val bucket: Long) {
+            val holds = LinkedHashMap<String, Any>()
+        }
+
+        private val byId = LinkedHashMap<String, Lock>()
+
+        val locks: Collection<Lock>
+            get() = byId.values
+
+        /** True if every lock [startMillis, endMillis) maps to can take one more change. */
+        fun fits(machineId: String, startMillis: Long, endMillis: Long): Boolean {
+            for (bucket in bucketOf(startMillis)..bucketOf(endMillis - 1)) {
+                val lock = byId[lockId(machineId, bucket)] ?: continue
+                if (lock.holds.size >= MAX_HOLDS_PER_WRITE) return false
+            }
+            return true
+        }
+
+        /** Sets [orderId]'s entry to [value] in every lock [startMillis, endMillis) maps to. */
+        fun put(machineId: String, startMillis: Long, endMillis: Long, orderId: String, value: Any) {
+            for (bucket in bucketOf(startMillis)..bucketOf(endMillis - 1)) {
+                byId.getOrPut(lockId(machineId, bucket)) { Lock(machineId, bucket) }.holds[orderId] = value
+            }
+        }
+    }
+
+    fun bucketOf(millis: Long): Long = Math.floorDiv(millis, BUCKET_MILLIS)
+
+    /** Lock document IDs covering [startMillis, endMillis) on one machine, in time order. */
+    fun lockIds(machineId: String, startMillis: Long, endMillis: Long): List<String> {
+        val first = bucketOf(startMillis)
+        val last = bucketOf(endMillis - 1)
+        val ids = ArrayList<String>((last - first + 1).toInt())
+        for (bucket in first..last) {
+            ids.add(lockId(machineId, bucket))
+        }
+        return ids
+    }
+
+    fun lockId(machineId: String, bucket: Long): String = "${machineId}_$bucket"
+
+    /** A confirmed hold, kept until the booking is cancelled. */
+    fun hold(startMillis: Long, endMillis: Long): Map<String, Any> =
+        mapOf(FIELD_START to startMillis, FIELD_END to endMillis)
+
+    /** A checkout hold that lapses at [expiresAtMillis] unless payment confirms it. */
+    fun lease(startMillis: Long, endMillis: Long, expiresAtMillis: Long): Map<String, Any> =
+        mapOf(FIELD_START to startMillis, FIELD_END to endMillis, FIELD_LEASE_EXPIRES to expiresAtMillis)
+
+    /** True if [hold] is a lease that has lapsed by [nowMillis]; confirmed holds never do. */
+    fun isExpired(hold: Map<*, *>, nowMillis: Long): Boolean {
+        val expiresAt = (hold[FIELD_LEASE_EXPIRES] as? Number)?.toLong() ?: return false
+        return expiresAt <= nowMillis
+    }
+
+    /**
+     * ID of a live hold in [holds] (a lock document's holds map) that overlaps
+     * [startMillis, endMillis), or null if the interval is free. Leases that lapsed by
+     * [nowMillis] and the hold of [ignoreOrderId] itself are skipped.
+     */
+    fun conflictingHold(
+        holds: Map<String, Any?>?,
+        startMillis: Long,
+        endMillis: Long,
+        nowMillis: Long,
+        ignoreOrderId: String?
+    ): String? {
+        if (holds == null) return null
+        for ((orderId, value) in holds) {
+            if (orderId == ignoreOrderId) continue
+            val hold = value as? Map<*, *> ?: continue
+            if (isExpired(hold, nowMillis)) continue
+            val start = (hold[FIELD_START] as? Number)?.toLong() ?: continue
+            val end = (hold[FIELD_END] as? Number)?.toLong() ?: continue
+            if (startMillis < end && start < endMillis) {
+                return orderId
+            }
+        }
+        return null
+    }
+
+    /**
+     * Live holds in [holds] (the holds map of a lock document for [machineId]) that
+     * overlap [startMillis, endMillis). Leases that lapsed by [nowMillis] are skipped.
+     */
+    fun liveHolds(
+        machineId: String,
+        holds: Map<String, Any?>?,
+        startMillis: Long,
+        endMillis: Long,
+        nowMillis: Long
+    ): List<Hold> {
+        if (holds == null) return emptyList()
+        val live = ArrayList<Hold>(holds.size)
+        for ((orderId, value) in holds) {
+            val hold = value as? Map<*, *> ?: continue
+            if (isExpired(hold, nowMillis)) continue
+            val start = (hold[FIELD_START] as? Number)?.toLong() ?: continue
+            val end = (hold[FIELD_END] as? Number)?.toLong() ?: continue
+            if (startMillis < end && start < endMillis) {
+                live.add(Hold(orderId, machineId, start, end))
+            }
+        }
+        return live
+    }
+}
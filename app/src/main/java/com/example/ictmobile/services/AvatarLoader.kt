@@ -0,0 +1,40 @@
+package com.example.ictmobile.services
+
+import android.net.Uri
+import android.widget.ImageView
+import com.bumptech.glide.Glide
+import com.bumptech.glide.load.engine.DiskCacheStrategy
+
+/**
+ * Loads profile pictures from assets/profilepictures for the picker grid, settings and
+ * the minigame header.
+ *
+ * Glide decodes off the main thread, downsamples to the ImageView's size, keeps the
+ * decoded bitmaps in its memory LRU and writes the downsampled result to its disk
+ * cache, so a picture is decoded at full size at most once per install.
+ */
+object AvatarLoader {
+    const val DEFAULT_PICTURE = "king.png"
+    private const val ASSET_DIR = "file:///android_asset/profilepictures/"
+
+    fun load(target: ImageView, pictureName: String?) {
+        val name = if (pictureName.isNullOrEmpty()) DEFAULT_PICTURE else pictureName
+        Glide.with(target)
+            .load(assetUri(name))
+            .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+            .dontAnimate()
+            // Use default if not found
+            .error(
+                Glide.with(target)
+                    .load(assetUri(DEFAULT_PICTURE))
+                    .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+            )
+            .into(target)
+    }
+
+    fun clear(target: ImageView) {
+        Glide.with(target).clear(target)
+    }
+
+    private fun assetUri(name: String): Uri = Uri.parse(ASSET_DIR + name)
+}
@@ -0,0 +1,168 @@
+package com.example.ictmobile.services
+
+import android.os.SystemClock
+import com.example.ictmobile.diagnostics.Counters
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.TaskCompletionSource
+import com.google.android.gms.tasks.Tasks
+import com.google.firebase.FirebaseNetworkException
+import com.google.firebase.firestore.FirebaseFirestoreException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.random.Random
+
+/**
+ * Runs FirebaseService calls under a deadline, retrying transient failures with
+ * exponential backoff and full jitter, behind one circuit breaker for the backend.
+ *
+ * Only infrastructure failures are retried: the Firestore codes in [RETRYABLE_CODES]
+ * and network errors. Anything else (validation, not found, permission denied, a slot
+ * that is taken) is the backend's answer and goes straight back to the caller. Only
+ * the codes in [BREAKER_CODES], network errors and timeouts count against the breaker;
+ * an aborted transaction is retried but is contention, not an outage. Writes may only
+ * use a retrying policy when they carry an idempotency key, since a timed-out attempt
+ * can still commit.
+ *
+ * A timed-out attempt is abandoned, not cancelled; Tasks have no cancellation. Counts of
+ * calls, retries, timeouts, failures and fast-failed calls go to [Counters] as
+ * `call.<operation>.<event>`.
+ */
+object CallExecutor {
+
+    class Policy(
+        val deadlineMillis: Long,
+        val maxAttempts: Int,
+        val baseDelayMillis: Long,
+        val maxDelayMillis: Long
+    ) {
+        companion object {
+            /** Reads, which are always safe to repeat. */
+            @JvmField
+            val READ = Policy(10_000L, 4, 250L, 2_000L)
+
+            /** Writes guarded by an idempotency key, so a replay returns the first result. */
+            @JvmField
+            val IDEMPOTENT_WRITE = Policy(20_000L, 3, 500L, 4_000L)
+        }
+    }
+
+    class CircuitOpenException : Exception("Service is temporarily unavailable. Please try again shortly.")
+
+    private const val BREAKER_FAILURE_THRESHOLD = 5
+    private const val BREAKER_OPEN_MILLIS = 30_000L
+
+    private val RETRYABLE_CODES = setOf(
+        FirebaseFirestoreException.Code.UNAVAILABLE,
+        FirebaseFirestoreException.Code.DEADLINE_EXCEEDED,
+        FirebaseFirestoreException.Code.RESOURCE_EXHAUSTED,
+        FirebaseFirestoreException.Code.ABORTED
+    )
+
+    private val BREAKER_CODES = setOf(
+        FirebaseFirestoreException.Code.UNAVAILABLE,
+        FirebaseFirestoreException.Code.DEADLINE_EXCEEDED,
+        FirebaseFirestoreException.Code.RESOURCE_EXHAUSTED
+    )
+
+    private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "CallExecutor").apply { isDaemon = true }
+    }
+
+    val breaker = CircuitBreaker("call.backend", BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS)
+
+    /** Runs [call] as [operation] under [policy]; the returned task settles exactly once. */
+    fun <T> execute(operation: String, policy: Policy, call: () -> Task<T>): Task<T> {
+        val source = TaskCompletionSource<T>()
+        Counters.increment("call.$operation.calls")
+        attempt(operation, policy, call, source, SystemClock.elapsedRealtime() + policy.deadlineMillis, 1)
+        return source.task
+    }
+
+    /** True for failures worth another attempt: the backend or network, not the request. */
+    fun isRetryable(error: Exception): Boolean = matches(error, RETRYABLE_CODES)
+
+    /** True for failures that suggest the backend is down or overloaded. */
+    fun tripsBreaker(error: Exception): Boolean = matches(error, BREAKER_CODES)
+
+    private fun matches(error: Exception, codes: Set<FirebaseFirestoreException.Code>): Boolean {
+        var cause: Throwable? = error
+        while (cause != null) {
+            if (cause is FirebaseFirestoreException) return cause.code in codes
+            if (cause is FirebaseNetworkException) return true
+            cause = cause.cause
+        }
+        return false
+    }
+
+    private fun <T> attempt(
+        operation: String,
+        policy: Policy,
+        call: () -> Task<T>,
+        source: TaskCompletionSource<T>,
+        deadline: Long,
+        attemptNumber: Int
+    ) {
+        if (!breaker.allow()) {
+            Counters.increment("call.$operation.rejected")
+            source.trySetException(CircuitOpenException())
+            return
+        }
+
+        val settled = AtomicBoolean(false)
+        val timeout = scheduler.schedule({
+            if (settled.compareAndSet(false, true)) {
+                Counters.increment("call.$operation.timeouts")
+                breaker.onFailure()
+                source.trySetException(FirebaseFirestoreException(
+                    "$operation timed out", FirebaseFirestoreException.Code.DEADLINE_EXCEEDED))
+            }
+        }, maxOf(0L, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS)
+
+        val task = try {
+            call()
+        } catch (e: Exception) {
+            Tasks.forException(e)
+        }
+        task.addOnCompleteListener(scheduler) { done ->
+            if (!settled.compareAndSet(false, true)) {
+                return@addOnCompleteListener // the deadline already answered
+            }
+            timeout.cancel(false)
+            if (done.isSuccessful) {
+                breaker.onSuccess()
+                source.trySetResult(done.result)
+                return@addOnCompleteListener
+            }
+
+            val error = done.exception ?: Exception("$operation failed")
+            if (tripsBreaker(error)) {
+                breaker.onFailure()
+            } else {
+                breaker.onIgnored()
+            }
+            if (!isRetryable(error)) {
+                source.trySetException(error)
+                return@addOnCompleteListener
+            }
+
+            val delay = backoffMillis(policy, attemptNumber)
+            if (attemptNumber >= policy.maxAttempts || SystemClock.elapsedRealtime() + delay >= deadline) {
+                Counters.increment("call.$operation.failures")
+                source.trySetException(error)
+                return@addOnCompleteListener
+            }
+            Counters.increment("call.$operation.retries")
+            scheduler.schedule({
+                attempt(operation, policy, call, source, deadline, attemptNumber + 1)
+            }, delay, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /** Full jitter: uniform in [0, min(max, base * 2^(attempt - 1))]. */
+    internal fun backoffMillis(policy: Policy, attemptNumber: Int, random: Random = Random.Default): Long {
+        val ceiling = minOf(policy.maxDelayMillis, policy.baseDelayMillis shl minOf(attemptNumber - 1, 20))
+        return random.nextLong(ceiling + 1)
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.ictmobile.services
+
+import android.os.SystemClock
+import com.example.ictmobile.diagnostics.Counters
+
+/**
+ * Stops calling the backend while it is failing. After [failureThreshold] consecutive
+ * infrastructure failures the breaker opens and every call fails fast for [openMillis];
+ * then a single trial call is let through (half-open). Its success closes the breaker,
+ * its failure opens it again for another [openMillis]. An outcome that says nothing
+ * about the backend's health (a rejected request, a contended transaction) is reported
+ * through [onIgnored] and neither counts towards opening nor closes the breaker.
+ */
+class CircuitBreaker(
+    private val name: String,
+    private val failureThreshold: Int,
+    private val openMillis: Long,
+    private val clock: () -> Long = { SystemClock.elapsedRealtime() }
+) {
+
+    enum class State { CLOSED, OPEN, HALF_OPEN }
+
+    private var state = State.CLOSED
+    private var consecutiveFailures = 0
+    private var openedAt = 0L
+    private var trialInFlight = false
+
+    @Synchronized
+    fun state(): State = state
+
+    /** True if a call may go ahead now; false means fail fast. */
+    @Synchronized
+    fun allow(): Boolean {
+        return when (state) {
+            State.CLOSED -> true
+            State.OPEN -> {
+                if (clock() - openedAt < openMillis) {
+                    false
+                } else {
+                    state = State.HALF_OPEN
+                    trialInFlight = true
+                    true
+                }
+            }
+            State.HALF_OPEN -> {
+                if (trialInFlight) {
+                    false
+                } else {
+                    trialInFlight = true
+                    true
+                }
+            }
+        }
+    }
+
+    /** The call succeeded. */
+    @Synchronized
+    fun onSuccess() {
+        consecutiveFailures = 0
+        trialInFlight = false
+        state = State.CLOSED
+    }
+
+    /** The backend was unreachable, overloaded or too slow. */
+    @Synchronized
+    fun onFailure() {
+        consecutiveFailures++
+        trialInFlight = false
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                Counters.increment("$name.breaker_opened")
+            }
+            state = State.OPEN
+            openedAt = clock()
+        }
+    }
+
+    /**
+     * The call failed for a reason of its own. Leaves the failure count and the state as
+     * they are; a half-open breaker lets the next call through as its trial.
+     */
+    @Synchronized
+    fun onIgnored() {
+        trialInFlight = false
+    }
+}
@@ -1,17 +1,39 @@
 package com.example.ictmobile.services;
 
-import android.util.Log;
+import android.content.Context;
+import com.example.ictmobile.diagnostics.AppLog;
+import com.example.ictmobile.diagnostics.DocMeter;
+import com.example.ictmobile.diagnostics.Latency;
+import com.example.ictmobile.diagnostics.StartupTrace;
+import com.example.ictmobile.diagnostics.Tracer;
 import com.example.ictmobile.models.*;
+import com.example.ictmobile.scheduling.AvailabilityGrid;
+import com.example.ictmobile.scheduling.ChainScheduler;
+import com.example.ictmobile.scheduling.PoolAssigner;
+import com.example.ictmobile.scheduling.SlotLocks;
+import com.example.ictmobile.utils.CsvWriter;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.auth.GetTokenResult;
 import com.google.firebase.firestore.*;
 import com.google.firebase.Timestamp;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FirebaseService {
     private static final String TAG = "FirebaseService";
@@ -26,10 +48,42 @@ public class FirebaseService {
     private static final String COLLECTION_PAYMENTS = "payments";
     private static final String COLLECTION_TOKENS = "tokens";
     private static final String COLLECTION_VOUCHERS = "vouchers";
+    private static final String COLLECTION_MINIGAME_ROUNDS = "minigame_rounds";
+    private static final String COLLECTION_SLOT_LOCKS = "slot_locks";
+    private static final String COLLECTION_COMMANDS = "commands";
+    
+    // Slot lock documents read per page of the booking timeline query
+    private static final int AVAILABILITY_PAGE_SIZE = 500;
+    
+    // Expired checkout leases released per sweeper transaction (each touches up to 9 docs)
+    private static final int LEASE_SWEEP_BATCH = 50;
+    
+    // How long a command's result is kept for replays (a TTL policy on expires_at deletes it)
+    private static final long COMMAND_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final String COMMAND_BOOKING = "booking";
+    private static final String COMMAND_PAYMENT = "payment";
+    
+    // Machine catalog bundle: packaged asset, or a newer copy dropped into files/bundles
+    private static final String CATALOG_BUNDLE = "machine-catalog.bundle";
+    private static final String QUERY_MACHINE_CATALOG = "machine-catalog";
+    private Task<Void> catalogBundle;
+    
+    // Order export: orders per page, payments remembered across pages, and Firestore's
+    // limit on values in one whereIn
+    private static final int EXPORT_PAGE_SIZE = 500;
+    private static final int EXPORT_PAYMENT_WINDOW = 2000;
+    private static final int WHERE_IN_LIMIT = 30;
+    private static final String[] EXPORT_COLUMNS = {
+        "order_id", "created_at", "user_id", "machine_id", "machine_name", "temperature",
+        "start_time", "end_time", "status", "total_amount", "paid", "payment_id",
+        "payment_status", "payment_amount", "payment_method", "transaction_id", "paid_at"
+    };
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
     
     private FirebaseService() {
         auth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
+        StartupTrace.mark(StartupTrace.FIREBASE_INIT);
     }
     
     public static synchronized FirebaseService getInstance() {
@@ -43,10 +97,45 @@ public class FirebaseService {
         return auth.getCurrentUser();
     }
     
+    // ==================== Instrumentation ====================
+    
+    /** The work of one operation, given the document meter for this call. */
+    private interface Operation<T> {
+        Task<T> start(DocMeter.Call meter) throws Exception;
+    }
+    
+    /** The work of one traced operation, given its document meter and trace. */
+    private interface TracedOperation<T> {
+        Task<T> start(DocMeter.Call meter, Tracer.Trace trace) throws Exception;
+    }
+    
+    /**
+     * Runs one operation under the latency histogram and document meter named after it.
+     * Every public method goes through here (or traced), so none has to time or meter
+     * itself; an exception thrown while starting the work fails the returned task.
+     */
+    private <T> Task<T> instrumented(String name, Operation<T> operation) {
+        long started = System.nanoTime();
+        DocMeter.Call meter = DocMeter.start(name);
+        Task<T> task;
+        try {
+            task = operation.start(meter);
+        } catch (Exception e) {
+            task = Tasks.forException(e);
+        }
+        return Latency.track(name, started, task);
+    }
+    
+    /** Like instrumented, and also traces the operation until its result reaches the main thread. */
+    private <T> Task<T> traced(String name, TracedOperation<T> operation) {
+        Tracer.Trace trace = Tracer.begin(name);
+        return trace.deliver(instrumented(name, meter -> operation.start(meter, trace)));
+    }
+    
     // ==================== Authentication ====================
     
     public Task<User> register(String email, String password, String name, String phone) {
-        return auth.createUserWithEmailAndPassword(email, password)
+        return instrumented("register", meter -> auth.createUserWithEmailAndPassword(email, password)
             .continueWithTask(task -> {
                 if (!task.isSuccessful()) {
                     throw task.getException();
@@ -68,15 +157,15 @@ public class FirebaseService {
                 );
                 
                 Map<String, Object> userMap = User.Companion.toMap(user);
-                return db.collection(COLLECTION_USERS)
+                return meter.write(db.collection(COLLECTION_USERS)
                     .document(firebaseUser.getUid())
-                    .set(userMap)
+                    .set(userMap), 1)
                     .continueWith(task1 -> user);
-            });
+            }));
     }
     
     public Task<User> login(String email, String password) {
-        return auth.signInWithEmailAndPassword(email, password)
+        return instrumented("login", meter -> auth.signInWithEmailAndPassword(email, password)
             .continueWithTask(task -> {
                 if (!task.isSuccessful()) {
                     throw task.getException();
@@ -87,8 +176,9 @@ public class FirebaseService {
                     throw new Exception("Login failed");
                 }
                 
-                return getUserById(firebaseUser.getUid());
-            });
+                return getUserById(firebaseUser.getUid())
+                    .continueWithTask(userTask -> refreshAdminClaim(firebaseUser, userTask));
+            }));
     }
     
     public void logout() {
@@ -96,7 +186,7 @@ public class FirebaseService {
     }
     
     public Task<User> getUserById(String userId) {
-        return db.collection(COLLECTION_USERS)
+        return instrumented("getUserById", meter -> db.collection(COLLECTION_USERS)
             .document(userId)
             .get()
             .continueWith(task -> {
@@ -105,6 +195,7 @@ public class FirebaseService {
                 }
                 
                 DocumentSnapshot doc = task.getResult();
+                meter.document(doc);
                 if (doc == null || !doc.exists()) {
                     throw new Exception("User not found");
                 }
@@ -116,7 +207,7 @@ public class FirebaseService {
                 
                 data.put("id", doc.getId());
                 return User.Companion.fromMap(data);
-            });
+            }));
     }
     
     public Task<User> getCurrentUserData() {
@@ -124,35 +215,63 @@ public class FirebaseService {
         if (firebaseUser == null) {
             return Tasks.forException(new Exception("No user logged in"));
         }
-        return getUserById(firebaseUser.getUid());
+        return getUserById(firebaseUser.getUid())
+            .continueWithTask(userTask -> refreshAdminClaim(firebaseUser, userTask));
+    }
+    
+    /**
+     * Security rules check the admin custom claim, which only reaches the ID token when it
+     * is next refreshed; an admin whose cached token predates the claim gets a fresh one
+     * before the admin screens start writing.
+     */
+    private Task<User> refreshAdminClaim(FirebaseUser firebaseUser, Task<User> userTask) {
+        if (!userTask.isSuccessful() || !userTask.getResult().isAdmin()) {
+            return userTask;
+        }
+        User user = userTask.getResult();
+        return firebaseUser.getIdToken(false).continueWithTask(tokenTask -> {
+            if (tokenTask.isSuccessful() && hasAdminClaim(tokenTask.getResult())) {
+                return Tasks.forResult(user);
+            }
+            return firebaseUser.getIdToken(true).continueWith(refreshed -> {
+                if (!refreshed.isSuccessful() || !hasAdminClaim(refreshed.getResult())) {
+                    AppLog.w(TAG, "User {} has the admin role but no admin claim; admin writes will be denied", user.getId());
+                }
+                return user;
+            });
+        });
+    }
+    
+    private static boolean hasAdminClaim(GetTokenResult token) {
+        return Boolean.TRUE.equals(token.getClaims().get("admin"));
     }
     
     public Task<Void> updateUser(User user) {
         Map<String, Object> userMap = User.Companion.toMap(user);
-        return db.collection(COLLECTION_USERS)
+        return instrumented("updateUser", meter -> meter.write(db.collection(COLLECTION_USERS)
             .document(user.getId())
-            .update(userMap);
+            .update(userMap), 1));
     }
     
     // ==================== Machines ====================
     
     public Task<List<Machine>> getMachines(String type) {
-        Log.d(TAG, "Getting machines, type: " + (type != null ? type : "all"));
+        AppLog.d(TAG, "Getting machines, type: {}", type != null ? type : "all");
         CollectionReference machinesRef = db.collection(COLLECTION_MACHINES);
         Query query = type != null && !type.isEmpty() 
             ? machinesRef.whereEqualTo("type", type)
             : machinesRef;
-            
-        return query.get().continueWith(task -> {
+        
+        return instrumented("getMachines", meter -> query.get().continueWith(task -> {
             if (!task.isSuccessful()) {
                 Exception exception = task.getException();
-                Log.e(TAG, "Failed to get machines: " + exception.getMessage(), exception);
+                AppLog.e(TAG, "Failed to get machines", exception);
                 
                 // Check if it's a permission error
                 if (exception instanceof FirebaseFirestoreException) {
                     FirebaseFirestoreException firestoreException = (FirebaseFirestoreException) exception;
                     if (firestoreException.getCode() == FirebaseFirestoreException.Code.PERMISSION_DENIED) {
-                        Log.w(TAG, "Permission denied accessing machines. Returning empty list.");
+                        AppLog.w(TAG, "Permission denied accessing machines. Returning empty list.");
                         // Return empty list instead of throwing - UI won't freeze
                         return new ArrayList<Machine>();
                     }
@@ -162,28 +281,101 @@ public class FirebaseService {
             }
             
             QuerySnapshot result = task.getResult();
-            Log.d(TAG, "Got " + result.size() + " machines from Firestore");
+            meter.query(result);
+            AppLog.d(TAG, "Got {} machines from Firestore", result.size());
             
-            List<Machine> machines = new ArrayList<>();
-            for (QueryDocumentSnapshot doc : result) {
-                try {
-                    Map<String, Object> data = doc.getData();
-                    if (data != null) {
-                        data.put("id", doc.getId());
-                        machines.add(Machine.Companion.fromMap(data));
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error parsing machine document: " + e.getMessage(), e);
+            List<Machine> machines = parseMachines(result);
+            AppLog.d(TAG, "Successfully parsed {} machines", machines.size());
+            return machines;
+        }));
+    }
+    
+    /**
+     * The whole machine catalog from the local cache only, for painting the booking screen
+     * before the server answers. Resolves the bundle's named query once the catalog
+     * bundle is loaded; fails when the cache has no machines yet.
+     */
+    public Task<List<Machine>> getCachedMachines(Context context) {
+        return instrumented("getCachedMachines", meter -> loadCatalogBundle(context)
+            .continueWithTask(loaded -> db.getNamedQuery(QUERY_MACHINE_CATALOG))
+            .continueWithTask(named -> {
+                Query query = named.isSuccessful() && named.getResult() != null
+                    ? named.getResult()
+                    : db.collection(COLLECTION_MACHINES);
+                return query.get(Source.CACHE);
+            })
+            .continueWith(task -> {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
                 }
+                
+                QuerySnapshot result = task.getResult();
+                meter.query(result);
+                if (result.isEmpty()) {
+                    throw new Exception("No cached machines");
+                }
+                return parseMachines(result);
+            }));
+    }
+    
+    /**
+     * Seeds the local cache from the machine catalog bundle, once per process; later
+     * calls return the same task. A bundle in files/bundles, pushed there to refresh the
+     * catalog without a release, is used instead of the packaged asset. Firestore skips a
+     * bundle that is not newer than one it already loaded.
+     */
+    public synchronized Task<Void> loadCatalogBundle(Context context) {
+        if (catalogBundle != null) {
+            return catalogBundle;
+        }
+        catalogBundle = instrumented("loadCatalogBundle", meter -> {
+            InputStream bundle;
+            try {
+                File local = new File(new File(context.getFilesDir(), "bundles"), CATALOG_BUNDLE);
+                bundle = local.exists()
+                    ? new FileInputStream(local)
+                    : context.getAssets().open("bundles/" + CATALOG_BUNDLE);
+            } catch (IOException e) {
+                AppLog.w(TAG, "No machine catalog bundle: {}", e.getMessage());
+                throw e;
             }
             
-            Log.d(TAG, "Successfully parsed " + machines.size() + " machines");
-            return machines;
+            return db.loadBundle(bundle)
+                .continueWith(task -> {
+                    try {
+                        bundle.close();
+                    } catch (IOException e) {
+                        // Nothing left to read
+                    }
+                    if (!task.isSuccessful()) {
+                        AppLog.w(TAG, "Failed to load machine catalog bundle: {}", task.getException().getMessage());
+                        throw task.getException();
+                    }
+                    AppLog.d(TAG, "Machine catalog bundle loaded: {} documents", task.getResult().getTotalDocuments());
+                    return null;
+                });
         });
+        return catalogBundle;
+    }
+    
+    private List<Machine> parseMachines(QuerySnapshot result) {
+        List<Machine> machines = new ArrayList<>();
+        for (QueryDocumentSnapshot doc : result) {
+            try {
+                Map<String, Object> data = doc.getData();
+                if (data != null) {
+                    data.put("id", doc.getId());
+                    machines.add(Machine.Companion.fromMap(data));
+                }
+            } catch (Exception e) {
+                AppLog.e(TAG, "Error parsing machine document {}", doc.getId(), e);
+            }
+        }
+        return machines;
     }
     
     public Task<Machine> getMachineById(String machineId) {
-        return db.collection(COLLECTION_MACHINES)
+        return instrumented("getMachineById", meter -> db.collection(COLLECTION_MACHINES)
             .document(machineId)
             .get()
             .continueWith(task -> {
@@ -192,6 +384,7 @@ public class FirebaseService {
                 }
                 
                 DocumentSnapshot doc = task.getResult();
+                meter.document(doc);
                 if (doc == null || !doc.exists()) {
                     throw new Exception("Machine not found");
                 }
@@ -199,233 +392,129 @@ public class FirebaseService {
                 Map<String, Object> data = doc.getData();
                 data.put("id", doc.getId());
                 return Machine.Companion.fromMap(data);
-            });
+            }));
     }
     
     public Task<String> createMachine(Machine machine) {
         Map<String, Object> machineMap = Machine.Companion.toMap(machine);
-        return db.collection(COLLECTION_MACHINES)
-            .add(machineMap)
+        return instrumented("createMachine", meter -> meter.write(db.collection(COLLECTION_MACHINES)
+            .add(machineMap), 1)
             .continueWith(task -> {
                 if (!task.isSuccessful()) {
                     throw task.getException();
                 }
                 return task.getResult().getId();
-            });
+            }));
     }
     
     public Task<Void> updateMachine(String machineId, Machine machine) {
         Map<String, Object> machineMap = Machine.Companion.toMap(machine);
-        return db.collection(COLLECTION_MACHINES)
+        return instrumented("updateMachine", meter -> meter.write(db.collection(COLLECTION_MACHINES)
             .document(machineId)
-            .update(machineMap);
+            .update(machineMap), 1));
     }
     
     public Task<Void> deleteMachine(String machineId) {
-        return db.collection(COLLECTION_MACHINES)
+        return instrumented("deleteMachine", meter -> meter.delete(db.collection(COLLECTION_MACHINES)
             .document(machineId)
-            .delete();
+            .delete(), 1));
     }
     
     // ==================== Orders ====================
     
+    /**
+     * Books one machine. idempotencyKey identifies this booking request: a retry with the
+     * same key returns the order the first attempt created instead of booking again.
+     */
     public Task<String> createOrder(String userId, String machineId, String temperature, 
-                                   Date startTime, Date endTime) {
-        return getMachineById(machineId).continueWithTask(task -> {
-            if (!task.isSuccessful()) {
-                throw task.getException();
-            }
-            
-            Machine machine = task.getResult();
-            
-            // Validate duration (30 minutes to 3 hours)
-            long durationMinutes = TimeUnit.MILLISECONDS.toMinutes(endTime.getTime() - startTime.getTime());
-            if (durationMinutes < 30) {
-                throw new Exception("Minimum booking duration is 30 minutes");
-            }
-            if (durationMinutes > 180) {
-                throw new Exception("Maximum booking duration is 3 hours");
-            }
-            
-            // Check machine availability
-            return isMachineAvailableForTimeSlot(machineId, startTime, endTime)
-                .continueWithTask(availableTask -> {
-                    if (!availableTask.isSuccessful() || !availableTask.getResult()) {
-                        throw new Exception("Machine is not available for the selected time slot");
-                    }
-                    
-                    if (!machine.getStatus().equals("available")) {
-                        throw new Exception("Machine is currently unavailable for maintenance");
-                    }
-                    
-                    // Calculate total amount
-                    double hours = durationMinutes / 60.0;
-                    double totalAmount = machine.getPrice() * hours;
-                    
-                    // Determine status
-                    String status = startTime.after(new Date()) ? "pending" : "active";
-                    
-                    // Create order
-                    Order order = new Order(
-                        "",
-                        userId,
-                        machineId,
-                        machine.getMachineName(),
-                        temperature,
-                        startTime,
-                        endTime,
-                        status,
-                        totalAmount,
-                        "",
-                        new Date(),
-                        null
-                    );
-                    
-                    Map<String, Object> orderMap = Order.Companion.toMap(order);
-                    // Add machine_name directly to order for faster loading
-                    orderMap.put("machine_name", machine.getMachineName());
-                    return db.collection(COLLECTION_ORDERS)
-                        .add(orderMap)
-                        .continueWithTask(orderTask -> {
-                            if (!orderTask.isSuccessful()) {
-                                throw orderTask.getException();
-                            }
-                            
-                            String orderId = orderTask.getResult().getId();
-                            
-                            // Create payment record
-                            Payment payment = new Payment(
-                                "",
-                                orderId,
-                                totalAmount,
-                                "pending",
-                                null,
-                                null,
-                                null
-                            );
-                            
-                            Map<String, Object> paymentMap = Payment.Companion.toMap(payment);
-                            return db.collection(COLLECTION_PAYMENTS)
-                                .add(paymentMap)
-                                .continueWithTask(paymentTask -> {
-                                    if (!paymentTask.isSuccessful()) {
-                                        throw paymentTask.getException();
-                                    }
-                                    
-                                    String paymentId = paymentTask.getResult().getId();
-                                    Log.d(TAG, "Payment created with ID: " + paymentId + " for order: " + orderId);
-                                    
-                                    // Update order with payment ID
-                                    return db.collection(COLLECTION_ORDERS)
-                                        .document(orderId)
-                                        .update("payment_id", paymentId)
-                                        .continueWith(updateTask -> {
-                                            if (!updateTask.isSuccessful()) {
-                                                Log.e(TAG, "Failed to update order with payment_id: " + updateTask.getException().getMessage());
-                                                throw updateTask.getException();
-                                            }
-                                            Log.d(TAG, "Order updated with payment_id successfully: " + orderId);
-                                            return orderId;
-                                        });
-                                });
-                        });
-                });
+                                   Date startTime, Date endTime, String idempotencyKey) {
+        return traced("createOrder", (meter, trace) -> {
+            Task<Machine> machineTask = trace.span("getMachineById", getMachineById(machineId));
+            return machineTask.continueWithTask(task -> {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                
+                Machine machine = task.getResult();
+                
+                // Validate duration (30 minutes to 3 hours)
+                long durationMinutes = TimeUnit.MILLISECONDS.toMinutes(endTime.getTime() - startTime.getTime());
+                if (durationMinutes < 30) {
+                    throw new Exception("Minimum booking duration is 30 minutes");
+                }
+                if (durationMinutes > 180) {
+                    throw new Exception("Maximum booking duration is 3 hours");
+                }
+                
+                if (!machine.getStatus().equals("available")) {
+                    throw new Exception("Machine is currently unavailable for maintenance");
+                }
+                
+                // Availability is checked against the slot locks inside the same transaction
+                // that writes the order, so two bookings for one slot cannot both succeed
+                return commitOrdersWithPayment(userId, Collections.singletonList(temperature), Collections.singletonList(machine),
+                    Collections.singletonList(startTime), Collections.singletonList(endTime), idempotencyKey, trace);
+            });
         });
     }
     
-    public Task<Boolean> isMachineAvailableForTimeSlot(String machineId, Date startTime, Date endTime) {
-        Timestamp startTimestamp = new Timestamp(startTime);
-        Timestamp endTimestamp = new Timestamp(endTime);
-        
-        // Get all orders for this machine that overlap with the time slot
-        // and have completed payments
-        return db.collection(COLLECTION_ORDERS)
-            .whereEqualTo("machine_id", machineId)
-            .whereNotEqualTo("status", "cancelled")
+    /**
+     * Every live booking that overlaps [windowStart, windowEnd), for the booking
+     * timeline: confirmed holds, plus checkout leases that are still running. Read from
+     * the slot locks, which carry only machine, order ID and interval, so no customer
+     * can see another's orders. Every booking is held in each bucket it touches, so the
+     * lock documents whose bucket starts inside the window cover it; they are read in
+     * pages until none are left, and a failure fails the whole load rather than
+     * leaving slots looking free.
+     */
+    public Task<List<SlotLocks.Hold>> getBookingsInWindow(Date windowStart, Date windowEnd) {
+        long start = windowStart.getTime();
+        long end = windowEnd.getTime();
+        Query query = db.collection(COLLECTION_SLOT_LOCKS)
+            .whereGreaterThanOrEqualTo(SlotLocks.FIELD_BUCKET_START,
+                new Timestamp(new Date(SlotLocks.INSTANCE.bucketOf(start) * SlotLocks.BUCKET_MILLIS)))
+            .whereLessThan(SlotLocks.FIELD_BUCKET_START, new Timestamp(windowEnd))
+            .orderBy(SlotLocks.FIELD_BUCKET_START)
+            .limit(AVAILABILITY_PAGE_SIZE);
+        return instrumented("getBookingsInWindow", meter ->
+            getBookingsInWindow(query, null, start, end, System.currentTimeMillis(), new LinkedHashMap<>(), meter));
+    }
+    
+    private Task<List<SlotLocks.Hold>> getBookingsInWindow(Query query, DocumentSnapshot after, long windowStart, long windowEnd,
+                                                           long now, Map<String, SlotLocks.Hold> bookings, DocMeter.Call meter) {
+        return (after == null ? query : query.startAfter(after))
             .get()
-            .continueWithTask(ordersTask -> {
-                if (!ordersTask.isSuccessful()) {
-                    Exception exception = ordersTask.getException();
-                    // Check if it's a permission error
-                    if (exception instanceof FirebaseFirestoreException) {
-                        FirebaseFirestoreException firestoreException = (FirebaseFirestoreException) exception;
-                        if (firestoreException.getCode() == FirebaseFirestoreException.Code.PERMISSION_DENIED) {
-                            // If permission denied, assume available (will be caught by Firestore rules on write)
-                            // But log it for debugging
-                            Log.w(TAG, "Permission denied checking availability, assuming available. Please deploy Firestore security rules.");
-                            return Tasks.forResult(true);
-                        }
-                    }
-                    // For other errors, throw exception
-                    throw exception != null ? exception : new Exception("Failed to check machine availability");
+            .continueWithTask(task -> {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
                 }
-                
-                // Get all payment IDs for these orders
-                List<String> orderIds = new ArrayList<>();
-                for (QueryDocumentSnapshot doc : ordersTask.getResult()) {
-                    orderIds.add(doc.getId());
+                QuerySnapshot page = task.getResult();
+                meter.query(page);
+                for (DocumentSnapshot lockDoc : page.getDocuments()) {
+                    String machineId = lockDoc.getString(SlotLocks.FIELD_MACHINE_ID);
+                    Object stored = lockDoc.get(SlotLocks.FIELD_HOLDS);
+                    if (machineId == null || !(stored instanceof Map)) {
+                        continue;
+                    }
+                    // A booking spans up to seven buckets; keep it once
+                    for (SlotLocks.Hold hold : SlotLocks.INSTANCE.liveHolds(
+                            machineId, (Map<String, Object>) stored, windowStart, windowEnd, now)) {
+                        bookings.put(hold.getOrderId(), hold);
+                    }
                 }
                 
-                if (orderIds.isEmpty()) {
-                    return Tasks.forResult(true);
+                if (page.size() < AVAILABILITY_PAGE_SIZE) {
+                    AppLog.d(TAG, "Loaded {} bookings in window", bookings.size());
+                    return Tasks.forResult(new ArrayList<>(bookings.values()));
                 }
-                
-                // Check if any of these orders have completed payments and overlap
-                return db.collection(COLLECTION_PAYMENTS)
-                    .whereIn("order_id", orderIds)
-                    .whereEqualTo("status", "completed")
-                    .get()
-                    .continueWithTask(paymentsTask -> {
-                        if (!paymentsTask.isSuccessful()) {
-                            Exception exception = paymentsTask.getException();
-                            // Check if it's a permission error
-                            if (exception instanceof FirebaseFirestoreException) {
-                                FirebaseFirestoreException firestoreException = (FirebaseFirestoreException) exception;
-                                if (firestoreException.getCode() == FirebaseFirestoreException.Code.PERMISSION_DENIED) {
-                                    // If permission denied, assume available (will be caught by Firestore rules on write)
-                                    Log.w(TAG, "Permission denied checking payments, assuming available. Please deploy Firestore security rules.");
-                                    return Tasks.forResult(true);
-                                }
-                            }
-                            // For other errors, throw exception
-                            throw exception != null ? exception : new Exception("Failed to check payment status");
-                        }
-                        
-                        Set<String> completedOrderIds = new HashSet<>();
-                        for (QueryDocumentSnapshot doc : paymentsTask.getResult()) {
-                            String orderId = doc.getString("order_id");
-                            if (orderId != null) {
-                                completedOrderIds.add(orderId);
-                            }
-                        }
-                        
-                        // Check for overlapping time slots
-                        for (QueryDocumentSnapshot orderDoc : ordersTask.getResult()) {
-                            String orderId = orderDoc.getId();
-                            if (!completedOrderIds.contains(orderId)) {
-                                continue;
-                            }
-                            
-                            Timestamp orderStart = orderDoc.getTimestamp("start_time");
-                            Timestamp orderEnd = orderDoc.getTimestamp("end_time");
-                            
-                            if (orderStart != null && orderEnd != null) {
-                                // Check if time slots overlap: start1 < end2 AND start2 < end1
-                                if (startTimestamp.compareTo(orderEnd) < 0 && 
-                                    endTimestamp.compareTo(orderStart) > 0) {
-                                    return Tasks.forResult(false);
-                                }
-                            }
-                        }
-                        
-                        return Tasks.forResult(true);
-                    });
+                DocumentSnapshot last = page.getDocuments().get(page.size() - 1);
+                return getBookingsInWindow(query, last, windowStart, windowEnd, now, bookings, meter);
             });
     }
     
     public Task<List<Order>> getOrders(String userId) {
         // Try with orderBy first, fallback to without if index missing
-        return db.collection(COLLECTION_ORDERS)
+        return instrumented("getOrders", meter -> db.collection(COLLECTION_ORDERS)
             .whereEqualTo("user_id", userId)
             .orderBy("created_at", Query.Direction.DESCENDING)
             .get()
@@ -436,7 +525,7 @@ public class FirebaseService {
                     if (exception instanceof FirebaseFirestoreException) {
                         FirebaseFirestoreException firestoreException = (FirebaseFirestoreException) exception;
                         if (firestoreException.getCode() == FirebaseFirestoreException.Code.FAILED_PRECONDITION) {
-                            Log.w(TAG, "Orders index not found, fetching without orderBy");
+                            AppLog.w(TAG, "Orders index not found, fetching without orderBy");
                             return db.collection(COLLECTION_ORDERS)
                                 .whereEqualTo("user_id", userId)
                                 .get()
@@ -444,18 +533,19 @@ public class FirebaseService {
                                     if (!fallbackTask.isSuccessful()) {
                                         return Tasks.forException(fallbackTask.getException());
                                     }
-                                    return processOrdersResult(fallbackTask.getResult());
+                                    return processOrdersResult(fallbackTask.getResult(), meter);
                                 });
                         }
                     }
                     return Tasks.forException(exception);
                 }
-                return processOrdersResult(task.getResult());
-            });
+                return processOrdersResult(task.getResult(), meter);
+            }));
     }
     
-    private Task<List<Order>> processOrdersResult(QuerySnapshot result) {
+    private Task<List<Order>> processOrdersResult(QuerySnapshot result, DocMeter.Call meter) {
         // Process orders without blocking - don't fetch machine/payment data synchronously
+        meter.query(result);
         List<Order> orders = new ArrayList<>();
         Date now = new Date();
         
@@ -475,13 +565,13 @@ public class FirebaseService {
                     
                     if ("pending".equals(status) && !startDate.after(now)) {
                         // Update to active (async, don't wait)
-                        doc.getReference().update("status", "active");
+                        meter.write(doc.getReference().update("status", "active"), 1);
                         status = "active";
                         data.put("status", "active");
                     }
                     if ("active".equals(status) && !endDate.after(now)) {
                         // Update to completed (async, don't wait)
-                        doc.getReference().update("status", "completed");
+                        meter.write(doc.getReference().update("status", "completed"), 1);
                         status = "completed";
                         data.put("status", "completed");
                     }
@@ -509,7 +599,7 @@ public class FirebaseService {
                 Order order = Order.Companion.fromMap(data);
                 orders.add(order);
             } catch (Exception e) {
-                Log.e(TAG, "Error processing order document: " + e.getMessage(), e);
+                AppLog.e(TAG, "Error processing order document {}", doc.getId(), e);
                 // Continue with next order
             }
         }
@@ -521,25 +611,26 @@ public class FirebaseService {
     }
     
     public Task<Order> getOrderById(String orderId) {
-        return db.collection(COLLECTION_ORDERS)
-            .document(orderId)
-            .get()
+        return traced("getOrderById", (meter, trace) -> trace.span("order read", db.collection(COLLECTION_ORDERS)
+                .document(orderId)
+                .get())
             .continueWithTask(task -> {
                 if (!task.isSuccessful()) {
                     Exception exception = task.getException();
-                    Log.e(TAG, "Failed to get order document: " + exception.getMessage(), exception);
+                    AppLog.e(TAG, "Failed to get order document {}", orderId, exception);
                     throw exception;
                 }
                 
                 DocumentSnapshot doc = task.getResult();
+                meter.document(doc);
                 if (doc == null || !doc.exists()) {
-                    Log.e(TAG, "Order document not found: " + orderId);
+                    AppLog.e(TAG, "Order document not found: {}", orderId);
                     throw new Exception("Order not found");
                 }
                 
                 Map<String, Object> data = doc.getData();
                 if (data == null) {
-                    Log.e(TAG, "Order document data is null: " + orderId);
+                    AppLog.e(TAG, "Order document data is null: {}", orderId);
                     throw new Exception("Order data is null");
                 }
                 
@@ -548,14 +639,17 @@ public class FirebaseService {
                 // Get machine - handle errors gracefully
                 String machineId = doc.getString("machine_id");
                 if (machineId != null) {
+                    Tracer.Span machineLookup = trace.span("machine lookup (blocking)");
                     try {
                         Machine machine = Tasks.await(getMachineById(machineId));
+                        machineLookup.end();
                         if (machine != null) {
                             Map<String, Object> machineMap = Machine.Companion.toMap(machine);
                             data.put("machine", machineMap);
                         }
                     } catch (Exception e) {
-                        Log.w(TAG, "Failed to get machine for order: " + e.getMessage());
+                        machineLookup.end(true);
+                        AppLog.w(TAG, "Failed to get machine for order: {}", e.getMessage());
                         // Continue without machine data - order can still be displayed
                     }
                 }
@@ -563,8 +657,10 @@ public class FirebaseService {
                 // Get payment - handle errors gracefully, payment might not exist yet
                 String paymentId = doc.getString("payment_id");
                 if (paymentId != null && !paymentId.isEmpty()) {
+                    Tracer.Span paymentLookup = trace.span("payment lookup (blocking)");
                     try {
                         Payment payment = Tasks.await(getPaymentById(paymentId));
+                        paymentLookup.end();
                         if (payment != null) {
                             Map<String, Object> paymentMap = Payment.Companion.toMap(payment);
                             paymentMap.put("id", payment.getId());
@@ -574,29 +670,666 @@ public class FirebaseService {
                             data.put("payment", paymentMap);
                         }
                     } catch (Exception e) {
-                        Log.w(TAG, "Failed to get payment for order: " + e.getMessage());
+                        paymentLookup.end(true);
+                        AppLog.w(TAG, "Failed to get payment for order: {}", e.getMessage());
                         // Continue without payment data - payment might be created asynchronously
                         // Set payment_id directly so Order model can extract it
                         data.put("payment_id", paymentId);
                     }
                 } else {
-                    Log.w(TAG, "Order has no payment_id: " + orderId);
+                    AppLog.w(TAG, "Order has no payment_id: {}", orderId);
                 }
                 
                 try {
                     Order order = Order.Companion.fromMap(data);
                     return Tasks.forResult(order);
                 } catch (Exception e) {
-                    Log.e(TAG, "Failed to create Order from map: " + e.getMessage(), e);
+                    AppLog.e(TAG, "Failed to create Order {} from map", orderId, e);
                     throw new Exception("Failed to parse order data: " + e.getMessage());
                 }
+            }));
+    }
+    
+    // ==================== Pool booking ====================
+    
+    /**
+     * Books "any washer" or "any dryer": loads the pool and its bookings for the next
+     * 24 hours into an in-memory grid, lets PoolAssigner pick the best-fit machine and a
+     * start in [earliestStart, latestStart], then writes the order and its payment in one
+     * transaction so neither exists without the other. A retry with the same
+     * idempotencyKey returns the first attempt's order.
+     */
+    public Task<String> createPoolOrder(String userId, String machineType, String temperature,
+                                        Date earliestStart, Date latestStart, int durationMinutes,
+                                        String idempotencyKey) {
+        if (durationMinutes < 30) {
+            return Tasks.forException(new Exception("Minimum booking duration is 30 minutes"));
+        }
+        if (durationMinutes > 180) {
+            return Tasks.forException(new Exception("Maximum booking duration is 3 hours"));
+        }
+        
+        return traced("createPoolOrder", (meter, trace) -> {
+            Task<List<Machine>> poolTask = trace.span("getMachines", getMachines(machineType));
+            return poolTask.continueWithTask(machinesTask -> {
+                if (!machinesTask.isSuccessful()) {
+                    throw machinesTask.getException();
+                }
+                
+                List<Machine> pool = new ArrayList<>();
+                List<String> machineIds = new ArrayList<>();
+                for (Machine machine : machinesTask.getResult()) {
+                    if ("available".equals(machine.getStatus())) {
+                        pool.add(machine);
+                        machineIds.add(machine.getId());
+                    }
+                }
+                if (pool.isEmpty()) {
+                    throw new Exception("No " + machineType + "s are available right now");
+                }
+                
+                long windowStart = AvailabilityGrid.Companion.floorToMinute(System.currentTimeMillis());
+                AvailabilityGrid grid = new AvailabilityGrid(windowStart, machineIds);
+                return trace.span("getBookingsInWindow", getBookingsInWindow(new Date(windowStart), new Date(grid.getWindowEnd())))
+                    .continueWithTask(bookingsTask -> {
+                        if (!bookingsTask.isSuccessful()) {
+                            throw bookingsTask.getException();
+                        }
+                        for (SlotLocks.Hold booking : bookingsTask.getResult()) {
+                            grid.markBusy(booking.getMachineId(), booking.getStartMillis(), booking.getEndMillis());
+                        }
+                        
+                        long assignStarted = System.nanoTime();
+                        int[] rows = new int[pool.size()];
+                        for (int i = 0; i < rows.length; i++) {
+                            rows[i] = i;
+                        }
+                        int fromMinute = (int) Math.max(0, (earliestStart.getTime() - windowStart + AvailabilityGrid.MINUTE_MILLIS - 1) / AvailabilityGrid.MINUTE_MILLIS);
+                        int latestMinute = (int) Math.min(AvailabilityGrid.WINDOW_MINUTES - 1, (latestStart.getTime() - windowStart) / AvailabilityGrid.MINUTE_MILLIS);
+                        PoolAssigner.Assignment assignment = PoolAssigner.INSTANCE.assign(
+                            grid, rows, fromMinute, latestMinute, durationMinutes, PoolAssigner.Policy.BEST_FIT);
+                        Latency.record("createPoolOrder.assign", assignStarted, assignment == null);
+                        trace.record("assign", assignStarted, assignment == null);
+                        if (assignment == null) {
+                            throw new Exception("No " + machineType + " is free for " + durationMinutes + " minutes in the selected window");
+                        }
+                        
+                        Machine machine = pool.get(assignment.getMachineIndex());
+                        Date startTime = new Date(windowStart + assignment.getStartMinute() * AvailabilityGrid.MINUTE_MILLIS);
+                        Date endTime = new Date(startTime.getTime() + TimeUnit.MINUTES.toMillis(durationMinutes));
+                        AppLog.d(TAG, "Pool booking assigned {} at {}", machine.getId(), startTime);
+                        return commitOrdersWithPayment(userId, Collections.singletonList(temperature), Collections.singletonList(machine),
+                            Collections.singletonList(startTime), Collections.singletonList(endTime), idempotencyKey, trace);
+                    });
+            });
+        });
+    }
+    
+    /**
+     * Books a wash and then a dry in one go: loads every machine and the bookings
+     * for the next 24 hours, lets ChainScheduler pick the washer/dryer pair that finishes
+     * first with the wash starting in [earliestStart, latestWashStart], then writes both
+     * orders and one combined payment in a single transaction. Returns the washer order's
+     * ID; a retry with the same idempotencyKey returns the first attempt's.
+     */
+    public Task<String> createChainedOrder(String userId, String temperature, Date earliestStart,
+                                           Date latestWashStart, int washMinutes, int dryMinutes,
+                                           String idempotencyKey) {
+        if (washMinutes < 30 || dryMinutes < 30) {
+            return Tasks.forException(new Exception("Minimum booking duration is 30 minutes"));
+        }
+        if (washMinutes > 180 || dryMinutes > 180) {
+            return Tasks.forException(new Exception("Maximum booking duration is 3 hours"));
+        }
+        
+        return traced("createChainedOrder", (meter, trace) -> {
+            Task<List<Machine>> allMachinesTask = trace.span("getMachines", getMachines(null));
+            return allMachinesTask.continueWithTask(machinesTask -> {
+                if (!machinesTask.isSuccessful()) {
+                    throw machinesTask.getException();
+                }
+                
+                List<Machine> machines = new ArrayList<>();
+                List<String> machineIds = new ArrayList<>();
+                List<Integer> washerRows = new ArrayList<>();
+                List<Integer> dryerRows = new ArrayList<>();
+                for (Machine machine : machinesTask.getResult()) {
+                    if (!"available".equals(machine.getStatus())) {
+                        continue;
+                    }
+                    if ("washer".equals(machine.getType())) {
+                        washerRows.add(machines.size());
+                    } else if ("dryer".equals(machine.getType())) {
+                        dryerRows.add(machines.size());
+                    } else {
+                        continue;
+                    }
+                    machines.add(machine);
+                    machineIds.add(machine.getId());
+                }
+                if (washerRows.isEmpty() || dryerRows.isEmpty()) {
+                    throw new Exception("Wash and dry needs an available washer and dryer");
+                }
+                
+                long windowStart = AvailabilityGrid.Companion.floorToMinute(System.currentTimeMillis());
+                AvailabilityGrid grid = new AvailabilityGrid(windowStart, machineIds);
+                return trace.span("getBookingsInWindow", getBookingsInWindow(new Date(windowStart), new Date(grid.getWindowEnd())))
+                    .continueWithTask(bookingsTask -> {
+                        if (!bookingsTask.isSuccessful()) {
+                            throw bookingsTask.getException();
+                        }
+                        for (SlotLocks.Hold booking : bookingsTask.getResult()) {
+                            grid.markBusy(booking.getMachineId(), booking.getStartMillis(), booking.getEndMillis());
+                        }
+                        
+                        long scheduleStarted = System.nanoTime();
+                        int fromMinute = (int) Math.max(0, (earliestStart.getTime() - windowStart + AvailabilityGrid.MINUTE_MILLIS - 1) / AvailabilityGrid.MINUTE_MILLIS);
+                        int latestMinute = (int) Math.min(AvailabilityGrid.WINDOW_MINUTES - 1, (latestWashStart.getTime() - windowStart) / AvailabilityGrid.MINUTE_MILLIS);
+                        ChainScheduler.Chain chain = ChainScheduler.INSTANCE.schedule(
+                            grid, toIntArray(washerRows), toIntArray(dryerRows), fromMinute, latestMinute, washMinutes, dryMinutes);
+                        Latency.record("createChainedOrder.schedule", scheduleStarted, chain == null);
+                        trace.record("schedule", scheduleStarted, chain == null);
+                        if (chain == null) {
+                            throw new Exception("No washer and dryer are free back-to-back in the selected window");
+                        }
+                        
+                        Machine washer = machines.get(chain.getWasherIndex());
+                        Machine dryer = machines.get(chain.getDryerIndex());
+                        Date washStart = new Date(windowStart + chain.getWashStart() * AvailabilityGrid.MINUTE_MILLIS);
+                        Date dryStart = new Date(windowStart + chain.getDryStart() * AvailabilityGrid.MINUTE_MILLIS);
+                        AppLog.d(TAG, "Chained booking: {} then {}, wash at {}", washer.getId(), dryer.getId(), washStart);
+                        return commitOrdersWithPayment(
+                            userId,
+                            Arrays.asList(temperature, temperature),
+                            Arrays.asList(washer, dryer),
+                            Arrays.asList(washStart, dryStart),
+                            Arrays.asList(
+                                new Date(washStart.getTime() + TimeUnit.MINUTES.toMillis(washMinutes)),
+                                new Date(dryStart.getTime() + TimeUnit.MINUTES.toMillis(dryMinutes))
+                            ),
+                            idempotencyKey,
+                            trace
+                        );
+                    });
+            });
+        });
+    }
+    
+    private static int[] toIntArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+    
+    /**
+     * Writes pending orders and one pending payment covering all of them in one
+     * transaction that also claims each order's slot locks (see SlotLocks). Fails with
+     * "Machine is not available" if any slot is already held. The claims are checkout
+     * leases: they lapse after SlotLocks.LEASE_MINUTES unless completePayment confirms
+     * them, and each order records the expiry in lease_expires_at for the sweeper.
+     * Every order carries the payment's ID; the payment's order_id is the first order
+     * and order_ids lists them all. Returns the first order's ID, which is also recorded
+     * under idempotencyKey in the command log so a replay returns it without writing.
+     */
+    private Task<String> commitOrdersWithPayment(String userId, List<String> temperatures, List<Machine> machines,
+                                                 List<Date> startTimes, List<Date> endTimes, String idempotencyKey,
+                                                 Tracer.Trace trace) {
+        return instrumented("commitOrdersWithPayment", meter -> trace.span("commitOrdersWithPayment",
+            commitOrdersWithPayment(userId, temperatures, machines, startTimes, endTimes, idempotencyKey, trace, meter)));
+    }
+    
+    private Task<String> commitOrdersWithPayment(String userId, List<String> temperatures, List<Machine> machines,
+                                                 List<Date> startTimes, List<Date> endTimes, String idempotencyKey,
+                                                 Tracer.Trace trace, DocMeter.Call meter) {
+        DocumentReference paymentRef = db.collection(COLLECTION_PAYMENTS).document();
+        List<DocumentReference> orderRefs = new ArrayList<>();
+        List<String> orderIds = new ArrayList<>();
+        for (int i = 0; i < machines.size(); i++) {
+            DocumentReference orderRef = db.collection(COLLECTION_ORDERS).document();
+            orderRefs.add(orderRef);
+            orderIds.add(orderRef.getId());
+        }
+        
+        // Sub-steps per transaction attempt: the slot lock reads (availability) and the commit
+        AtomicLong commitStarted = new AtomicLong();
+        Task<String> commit = db.runTransaction(transaction -> {
+            long attemptStarted = System.nanoTime();
+            meter.beginAttempt();
+            String replayed = replayedResult(transaction, idempotencyKey, COMMAND_BOOKING, meter);
+            if (replayed != null) {
+                trace.record("replayed", attemptStarted, false);
+                return replayed;
+            }
+            
+            long now = System.currentTimeMillis();
+            long leaseExpiresAt = now + SlotLocks.LEASE_MILLIS;
+            
+            // All reads must happen before any write. Holds claimed earlier in this
+            // transaction are tracked too, so a cart cannot overlap itself.
+            Map<String, Map<String, Object>> holdsByLock = new HashMap<>();
+            for (int i = 0; i < machines.size(); i++) {
+                String machineId = machines.get(i).getId();
+                long start = startTimes.get(i).getTime();
+                long end = endTimes.get(i).getTime();
+                for (String lockId : SlotLocks.INSTANCE.lockIds(machineId, start, end)) {
+                    Map<String, Object> holds = holdsByLock.get(lockId);
+                    if (holds == null) {
+                        DocumentSnapshot lockDoc = transaction.get(db.collection(COLLECTION_SLOT_LOCKS).document(lockId));
+                        meter.read(1);
+                        holds = new HashMap<>();
+                        Object stored = lockDoc.get(SlotLocks.FIELD_HOLDS);
+                        if (stored instanceof Map) {
+                            holds.putAll((Map<String, Object>) stored);
+                        }
+                        holdsByLock.put(lockId, holds);
+                    }
+                    if (SlotLocks.INSTANCE.conflictingHold(holds, start, end, now, null) != null) {
+                        Latency.record("commitOrdersWithPayment.availability", attemptStarted, true);
+                        trace.record("slot locks read", attemptStarted, true);
+                        throw new FirebaseFirestoreException("Machine is not available for the selected time slot",
+                            FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+                    }
+                    holds.put(orderIds.get(i), SlotLocks.INSTANCE.lease(start, end, leaseExpiresAt));
+                }
+            }
+            
+            Latency.record("commitOrdersWithPayment.availability", attemptStarted, false);
+            trace.record("slot locks read", attemptStarted, false);
+            long writesStarted = System.nanoTime();
+            
+            double totalAmount = 0;
+            SlotLocks.Changes lockChanges = new SlotLocks.Changes();
+            for (int i = 0; i < machines.size(); i++) {
+                Machine machine = machines.get(i);
+                Date startTime = startTimes.get(i);
+                Date endTime = endTimes.get(i);
+                long durationMinutes = TimeUnit.MILLISECONDS.toMinutes(endTime.getTime() - startTime.getTime());
+                double amount = machine.getPrice() * (durationMinutes / 60.0);
+                String status = startTime.after(new Date()) ? "pending" : "active";
+                
+                Order order = new Order(
+                    "",
+                    userId,
+                    machine.getId(),
+                    machine.getMachineName(),
+                    temperatures.get(i),
+                    startTime,
+                    endTime,
+                    status,
+                    amount,
+                    paymentRef.getId(),
+                    new Date(),
+                    null,
+                    false
+                );
+                Map<String, Object> orderMap = Order.Companion.toMap(order);
+                // Add machine_name directly to order for faster loading
+                orderMap.put("machine_name", machine.getMachineName());
+                orderMap.put("payment_id", paymentRef.getId());
+                orderMap.put("paid", false);
+                orderMap.put("lease_expires_at", new Timestamp(new Date(leaseExpiresAt)));
+                transaction.set(orderRefs.get(i), orderMap);
+                meter.stageWrite(1);
+                totalAmount += amount;
+                
+                long start = startTime.getTime();
+                long end = endTime.getTime();
+                lockChanges.put(machine.getId(), start, end, orderIds.get(i), SlotLocks.INSTANCE.lease(start, end, leaseExpiresAt));
+            }
+            stageSlotLocks(transaction, lockChanges, meter);
+            
+            Payment payment = new Payment("", orderIds.get(0), totalAmount, "pending", null, null, null);
+            Map<String, Object> paymentMap = Payment.Companion.toMap(payment);
+            if (orderIds.size() > 1) {
+                paymentMap.put("order_ids", orderIds);
+            }
+            transaction.set(paymentRef, paymentMap);
+            meter.stageWrite(1);
+            recordCommand(transaction, idempotencyKey, userId, COMMAND_BOOKING, orderIds.get(0), meter);
+            
+            AppLog.d(TAG, "Orders {} and payment {} committed", orderIds, paymentRef.getId());
+            trace.record("stage writes", writesStarted, false);
+            commitStarted.set(System.nanoTime());
+            return orderIds.get(0);
+        });
+        return trace.spanFrom("commit", commitStarted,
+            Latency.trackFrom("commitOrdersWithPayment.commit", commitStarted, meter.commit(commit)));
+    }
+    
+    /**
+     * Orders settled by one payment, in booking order. Filtered by user so the query
+     * satisfies the orders read rule.
+     */
+    public Task<List<Order>> getOrdersByPaymentId(String userId, String paymentId) {
+        return instrumented("getOrdersByPaymentId", meter -> db.collection(COLLECTION_ORDERS)
+            .whereEqualTo("user_id", userId)
+            .whereEqualTo("payment_id", paymentId)
+            .get()
+            .continueWith(task -> {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                meter.query(task.getResult());
+                List<Order> orders = new ArrayList<>();
+                for (QueryDocumentSnapshot doc : task.getResult()) {
+                    Map<String, Object> data = doc.getData();
+                    data.put("id", doc.getId());
+                    orders.add(Order.Companion.fromMap(data));
+                }
+                orders.sort((o1, o2) -> o1.getStartTime().compareTo(o2.getStartTime()));
+                return orders;
+            }));
+    }
+    
+    // ==================== Cart ====================
+    
+    /**
+     * Books every item in a cart with one transaction and one pending payment for the
+     * combined total (see commitOrdersWithPayment), so the user checks out once however
+     * many machines they booked. Machines are re-read first so prices and maintenance
+     * status are current. Returns the first order's ID; a retry with the same
+     * idempotencyKey returns the first attempt's.
+     */
+    public Task<String> checkoutCart(String userId, List<CartItem> items, String idempotencyKey) {
+        if (items.isEmpty()) {
+            return Tasks.forException(new Exception("Your cart is empty"));
+        }
+        if (items.size() > Cart.MAX_ITEMS) {
+            return Tasks.forException(new Exception("A cart holds at most " + Cart.MAX_ITEMS + " bookings"));
+        }
+        for (CartItem item : items) {
+            if (item.getDurationMinutes() < 30) {
+                return Tasks.forException(new Exception("Minimum booking duration is 30 minutes"));
+            }
+            if (item.getDurationMinutes() > 180) {
+                return Tasks.forException(new Exception("Maximum booking duration is 3 hours"));
+            }
+        }
+        
+        return traced("checkoutCart", (meter, trace) -> {
+            Task<List<Machine>> allMachinesTask = trace.span("getMachines", getMachines(null));
+            return allMachinesTask.continueWithTask(machinesTask -> {
+                if (!machinesTask.isSuccessful()) {
+                    throw machinesTask.getException();
+                }
+                Map<String, Machine> machinesById = new HashMap<>();
+                for (Machine machine : machinesTask.getResult()) {
+                    machinesById.put(machine.getId(), machine);
+                }
+                
+                List<Machine> machines = new ArrayList<>();
+                List<String> temperatures = new ArrayList<>();
+                List<Date> startTimes = new ArrayList<>();
+                List<Date> endTimes = new ArrayList<>();
+                for (CartItem item : items) {
+                    Machine machine = machinesById.get(item.getMachine().getId());
+                    if (machine == null || !"available".equals(machine.getStatus())) {
+                        throw new Exception(item.getMachine().getMachineName() + " is currently unavailable for maintenance");
+                    }
+                    machines.add(machine);
+                    temperatures.add(item.getTemperature());
+                    startTimes.add(item.getStartTime());
+                    endTimes.add(item.getEndTime());
+                }
+                AppLog.d(TAG, "Checking out cart of {} bookings", items.size());
+                return commitOrdersWithPayment(userId, temperatures, machines, startTimes, endTimes, idempotencyKey, trace);
             });
+        });
+    }
+    
+    // ==================== Checkout leases ====================
+    
+    /**
+     * Reads, inside a checkout transaction, the orders it settles and the slot locks of
+     * those still on a checkout lease, and returns the unpaid orders. A lapsed lease is
+     * still honoured if nobody has claimed the slot since; if someone has, or the
+     * sweeper has already cancelled the order, the checkout fails before anything is
+     * written.
+     */
+    private List<DocumentSnapshot> readUnpaidOrders(Transaction transaction, List<String> orderIds, long now,
+                                                    DocMeter.Call meter)
+            throws FirebaseFirestoreException {
+        List<DocumentSnapshot> unpaidOrders = new ArrayList<>();
+        for (String orderId : orderIds) {
+            DocumentSnapshot orderDoc = transaction.get(db.collection(COLLECTION_ORDERS).document(orderId));
+            meter.read(1);
+            if (!orderDoc.exists() || Boolean.TRUE.equals(orderDoc.getBoolean("paid"))) {
+                continue;
+            }
+            if ("cancelled".equals(orderDoc.getString("status"))) {
+                throw new FirebaseFirestoreException("Your slot reservation has expired. Please book again.",
+                    FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
+            unpaidOrders.add(orderDoc);
+            
+            Timestamp startTime = orderDoc.getTimestamp("start_time");
+            Timestamp endTime = orderDoc.getTimestamp("end_time");
+            if (orderDoc.getTimestamp("lease_expires_at") == null || startTime == null || endTime == null) {
+                // Booked before checkout leases, nothing to confirm
+                continue;
+            }
+            long start = startTime.toDate().getTime();
+            long end = endTime.toDate().getTime();
+            for (String lockId : SlotLocks.INSTANCE.lockIds(orderDoc.getString("machine_id"), start, end)) {
+                DocumentSnapshot lockDoc = transaction.get(db.collection(COLLECTION_SLOT_LOCKS).document(lockId));
+                meter.read(1);
+                Object holds = lockDoc.get(SlotLocks.FIELD_HOLDS);
+                if (holds instanceof Map && SlotLocks.INSTANCE.conflictingHold(
+                        (Map<String, Object>) holds, start, end, now, orderId) != null) {
+                    throw new FirebaseFirestoreException("Your slot reservation has expired and the slot was taken. Please book again.",
+                        FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+                }
+            }
+        }
+        return unpaidOrders;
+    }
+    
+    /**
+     * Stages one write per lock document in changes. Each hold named there is replaced
+     * whole, or dropped, and order_ids lists them for the rules; merging only those
+     * fields leaves every other booking's hold as it was, and creates the lock document
+     * if it does not exist yet.
+     */
+    private void stageSlotLocks(Transaction transaction, SlotLocks.Changes changes, DocMeter.Call meter) {
+        for (SlotLocks.Changes.Lock lock : changes.getLocks()) {
+            List<String> orderIds = new ArrayList<>(lock.getHolds().keySet());
+            Map<String, Object> lockMap = new HashMap<>();
+            lockMap.put(SlotLocks.FIELD_MACHINE_ID, lock.getMachineId());
+            lockMap.put(SlotLocks.FIELD_BUCKET_START, new Timestamp(new Date(lock.getBucket() * SlotLocks.BUCKET_MILLIS)));
+            lockMap.put(SlotLocks.FIELD_HOLDS, new HashMap<>(lock.getHolds()));
+            lockMap.put(SlotLocks.FIELD_ORDER_IDS, orderIds);
+            
+            List<FieldPath> fields = new ArrayList<>();
+            fields.add(FieldPath.of(SlotLocks.FIELD_MACHINE_ID));
+            fields.add(FieldPath.of(SlotLocks.FIELD_BUCKET_START));
+            fields.add(FieldPath.of(SlotLocks.FIELD_ORDER_IDS));
+            for (String orderId : orderIds) {
+                fields.add(FieldPath.of(SlotLocks.FIELD_HOLDS, orderId));
+            }
+            transaction.set(
+                db.collection(COLLECTION_SLOT_LOCKS).document(SlotLocks.INSTANCE.lockId(lock.getMachineId(), lock.getBucket())),
+                lockMap,
+                SetOptions.mergeFieldPaths(fields)
+            );
+            meter.stageWrite(1);
+        }
+    }
+    
+    /** Adds orderDoc's holds to changes: confirmed if confirm, otherwise dropped. */
+    private static void changeHolds(SlotLocks.Changes changes, DocumentSnapshot orderDoc, boolean confirm) {
+        long start = orderDoc.getTimestamp("start_time").toDate().getTime();
+        long end = orderDoc.getTimestamp("end_time").toDate().getTime();
+        changes.put(orderDoc.getString("machine_id"), start, end, orderDoc.getId(),
+            confirm ? SlotLocks.INSTANCE.hold(start, end) : FieldValue.delete());
+    }
+    
+    /**
+     * Releases userId's checkout leases that lapsed without payment: cancels the order,
+     * marks its payment expired and drops its holds from the slot locks. Only the
+     * caller's own orders are swept, as no one may list anyone else's; a lapsed lease
+     * already counts as free for every booking, so leaving other users' to them costs
+     * nothing. Works through the backlog LEASE_SWEEP_BATCH orders per transaction; every
+     * order is re-read inside the transaction, so one paid in the meantime is left
+     * alone. Returns the IDs of the orders it cancelled.
+     */
+    public Task<List<String>> releaseExpiredLeases(String userId) {
+        return instrumented("releaseExpiredLeases", meter -> releaseExpiredLeases(userId, new ArrayList<>(), meter));
+    }
+    
+    private Task<List<String>> releaseExpiredLeases(String userId, List<String> released, DocMeter.Call meter) {
+        return db.collection(COLLECTION_ORDERS)
+            .whereEqualTo("user_id", userId)
+            .whereLessThan("lease_expires_at", Timestamp.now())
+            .limit(LEASE_SWEEP_BATCH)
+            .get()
+            .continueWithTask(task -> {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                QuerySnapshot page = task.getResult();
+                meter.query(page);
+                if (page.isEmpty()) {
+                    return Tasks.forResult(released);
+                }
+                
+                return meter.commit(db.runTransaction(transaction -> {
+                    meter.beginAttempt();
+                    long now = System.currentTimeMillis();
+                    List<DocumentSnapshot> expired = new ArrayList<>();
+                    SlotLocks.Changes lockChanges = new SlotLocks.Changes();
+                    for (DocumentSnapshot candidate : page.getDocuments()) {
+                        DocumentSnapshot orderDoc = transaction.get(candidate.getReference());
+                        meter.read(1);
+                        Timestamp leaseExpiresAt = orderDoc.getTimestamp("lease_expires_at");
+                        if (!orderDoc.exists() || leaseExpiresAt == null || leaseExpiresAt.toDate().getTime() > now
+                                || Boolean.TRUE.equals(orderDoc.getBoolean("paid"))) {
+                            continue;
+                        }
+                        // Left for the next sweep if its locks already change too many holds
+                        long start = orderDoc.getTimestamp("start_time").toDate().getTime();
+                        long end = orderDoc.getTimestamp("end_time").toDate().getTime();
+                        if (!lockChanges.fits(orderDoc.getString("machine_id"), start, end)) {
+                            continue;
+                        }
+                        changeHolds(lockChanges, orderDoc, false);
+                        expired.add(orderDoc);
+                    }
+                    
+                    for (DocumentSnapshot orderDoc : expired) {
+                        transaction.update(orderDoc.getReference(),
+                            "status", "cancelled",
+                            "lease_expires_at", FieldValue.delete(),
+                            "updated_at", new Timestamp(new Date(now)));
+                        meter.stageWrite(1);
+                        
+                        String paymentId = orderDoc.getString("payment_id");
+                        if (paymentId != null && !paymentId.isEmpty()) {
+                            transaction.update(db.collection(COLLECTION_PAYMENTS).document(paymentId), "status", "expired");
+                            meter.stageWrite(1);
+                        }
+                    }
+                    stageSlotLocks(transaction, lockChanges, meter);
+                    List<String> expiredIds = new ArrayList<>();
+                    for (DocumentSnapshot orderDoc : expired) {
+                        expiredIds.add(orderDoc.getId());
+                    }
+                    return expiredIds;
+                })).continueWithTask(sweepTask -> {
+                    if (!sweepTask.isSuccessful()) {
+                        throw sweepTask.getException();
+                    }
+                    released.addAll(sweepTask.getResult());
+                    AppLog.d(TAG, "Released {} expired checkout lease(s)", sweepTask.getResult().size());
+                    // A short page is the end of the backlog; an empty sweep means the rest
+                    // were paid or re-leased meanwhile, so stop rather than spin
+                    if (page.size() < LEASE_SWEEP_BATCH || sweepTask.getResult().isEmpty()) {
+                        return Tasks.forResult(released);
+                    }
+                    return releaseExpiredLeases(userId, released, meter);
+                });
+            });
+    }
+    
+    /**
+     * Cancels an order and drops its holds from the slot locks in the same transaction,
+     * so a cancelled booking never keeps its machine. Completed and already cancelled
+     * orders are refused.
+     */
+    public Task<Void> cancelOrder(String orderId) {
+        return instrumented("cancelOrder", meter -> meter.commit(db.runTransaction(transaction -> {
+            meter.beginAttempt();
+            DocumentSnapshot orderDoc = transaction.get(db.collection(COLLECTION_ORDERS).document(orderId));
+            meter.read(1);
+            if (!orderDoc.exists()) {
+                throw new FirebaseFirestoreException("Order not found", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            String status = orderDoc.getString("status");
+            if ("cancelled".equals(status) || "completed".equals(status)) {
+                throw new FirebaseFirestoreException("This order can no longer be cancelled",
+                    FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
+            
+            transaction.update(orderDoc.getReference(),
+                "status", "cancelled",
+                "lease_expires_at", FieldValue.delete(),
+                "updated_at", Timestamp.now());
+            meter.stageWrite(1);
+            SlotLocks.Changes lockChanges = new SlotLocks.Changes();
+            changeHolds(lockChanges, orderDoc, false);
+            stageSlotLocks(transaction, lockChanges, meter);
+            AppLog.d(TAG, "Order {} cancelled and its slot released", orderId);
+            return null;
+        })));
+    }
+    
+    // ==================== Command log ====================
+    
+    /**
+     * Result of the command already run under idempotencyKey, or null if there is none
+     * (or no key was given). Read inside the caller's transaction, so a replay racing the
+     * first attempt either sees its committed result or retries until it does.
+     */
+    private String replayedResult(Transaction transaction, String idempotencyKey, String type, DocMeter.Call meter)
+            throws FirebaseFirestoreException {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return null;
+        }
+        DocumentSnapshot commandDoc = transaction.get(db.collection(COLLECTION_COMMANDS).document(idempotencyKey));
+        meter.read(1);
+        if (!commandDoc.exists()) {
+            return null;
+        }
+        if (!type.equals(commandDoc.getString("type"))) {
+            throw new FirebaseFirestoreException("Idempotency key was already used for a different request",
+                FirebaseFirestoreException.Code.INVALID_ARGUMENT);
+        }
+        AppLog.d(TAG, "Replaying {} command {}", type, idempotencyKey);
+        return commandDoc.getString("result");
+    }
+    
+    /** Records a command's result under its idempotency key, in the caller's transaction. */
+    private void recordCommand(Transaction transaction, String idempotencyKey, String userId,
+                               String type, String result, DocMeter.Call meter) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Object> command = new HashMap<>();
+        command.put("user_id", userId);
+        command.put("type", type);
+        command.put("result", result);
+        command.put("created_at", new Timestamp(new Date(now)));
+        command.put("expires_at", new Timestamp(new Date(now + COMMAND_TTL_MILLIS)));
+        transaction.set(db.collection(COLLECTION_COMMANDS).document(idempotencyKey), command);
+        meter.stageWrite(1);
     }
     
     // ==================== Payments ====================
     
     public Task<Payment> getPaymentById(String paymentId) {
-        return db.collection(COLLECTION_PAYMENTS)
+        return instrumented("getPaymentById", meter -> db.collection(COLLECTION_PAYMENTS)
             .document(paymentId)
             .get()
             .continueWith(task -> {
@@ -605,6 +1338,7 @@ public class FirebaseService {
                 }
                 
                 DocumentSnapshot doc = task.getResult();
+                meter.document(doc);
                 if (doc == null || !doc.exists()) {
                     throw new Exception("Payment not found");
                 }
@@ -612,307 +1346,159 @@ public class FirebaseService {
                 Map<String, Object> data = doc.getData();
                 data.put("id", doc.getId());
                 return Payment.Companion.fromMap(data);
-            });
+            }));
     }
     
-    public Task<Void> completePayment(String paymentId, String paymentMethod, String voucherId) {
-        Log.d(TAG, "=== completePayment START ===");
-        Log.d(TAG, "paymentId=" + paymentId + ", method=" + paymentMethod + ", voucherId=" + (voucherId != null ? voucherId : "null"));
-        return getPaymentById(paymentId).continueWithTask(task -> {
-            if (!task.isSuccessful()) {
-                Log.e(TAG, "Failed to get payment: " + task.getException().getMessage());
-                throw task.getException();
+    /**
+     * Checks out a payment in one transaction: confirms the checkout leases of every
+     * order it covers, applies at most one voucher to the combined total, completes the
+     * payment, marks the orders paid and awards one token per order. The attempt is
+     * recorded under idempotencyKey in the same transaction, so a retry after a timeout
+     * succeeds without a second transaction ID or more tokens; a payment completed under
+     * another key is left as it is too.
+     */
+    public Task<Void> completePayment(String paymentId, String paymentMethod, String voucherId,
+                                      String idempotencyKey) {
+        return traced("completePayment", (meter, trace) ->
+            completePayment(paymentId, paymentMethod, voucherId, idempotencyKey, meter, trace));
+    }
+    
+    private Task<Void> completePayment(String paymentId, String paymentMethod, String voucherId,
+                                       String idempotencyKey, DocMeter.Call meter, Tracer.Trace trace) {
+        AppLog.d(TAG, "completePayment paymentId={}, method={}, voucherId={}", paymentId, paymentMethod, voucherId);
+        DocumentReference paymentRef = db.collection(COLLECTION_PAYMENTS).document(paymentId);
+        // Sub-steps per transaction attempt: the reads (payment, voucher, orders, leases) and the commit
+        AtomicLong commitStarted = new AtomicLong();
+        Task<Void> commit = db.runTransaction(transaction -> {
+            long attemptStarted = System.nanoTime();
+            meter.beginAttempt();
+            String replayed = replayedResult(transaction, idempotencyKey, COMMAND_PAYMENT, meter);
+            trace.record("command log read", attemptStarted, false);
+            if (replayed != null) {
+                if (!replayed.equals(paymentId)) {
+                    throw new FirebaseFirestoreException("Idempotency key was already used for another payment",
+                        FirebaseFirestoreException.Code.INVALID_ARGUMENT);
+                }
+                return null;
             }
-            Log.d(TAG, "Payment retrieved successfully");
             
-            Payment payment = task.getResult();
-            final double[] finalAmount = {payment.getAmount()};
-            final String[] orderIdFromPayment = {payment.getOrderId()}; // Get order ID from payment
+            long paymentReadStarted = System.nanoTime();
+            DocumentSnapshot paymentDoc = transaction.get(paymentRef);
+            trace.record("payment read", paymentReadStarted, false);
+            meter.read(1);
+            if (!paymentDoc.exists()) {
+                throw new FirebaseFirestoreException("Payment not found", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            String paymentStatus = paymentDoc.getString("status");
+            if ("completed".equals(paymentStatus)) {
+                AppLog.w(TAG, "Payment already completed: {}", paymentId);
+                return null;
+            }
+            if ("expired".equals(paymentStatus)) {
+                throw new FirebaseFirestoreException("Your slot reservation has expired. Please book again.",
+                    FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
             
-            // Apply voucher discount if provided
-            if (voucherId != null && !voucherId.isEmpty()) {
-                return getVoucherById(voucherId).continueWithTask(voucherTask -> {
-                    if (voucherTask.isSuccessful()) {
-                        Voucher voucher = voucherTask.getResult();
-                        if (voucher.isValid() && voucher.getType().equals("rm5_off")) {
-                            finalAmount[0] = Math.max(0, finalAmount[0] - 5.0);
-                            // Mark voucher as used
-                            Map<String, Object> voucherUpdate = new HashMap<>();
-                            voucherUpdate.put("used", true);
-                            voucherUpdate.put("order_id", payment.getOrderId());
-                            db.collection(COLLECTION_VOUCHERS)
-                                .document(voucherId)
-                                .update(voucherUpdate);
-                        }
-                    }
-                    
-                    // Complete payment
-                    String transactionId = "TXN-" + UUID.randomUUID().toString().toUpperCase();
-                    Map<String, Object> paymentUpdate = new HashMap<>();
-                    paymentUpdate.put("status", "completed");
-                    paymentUpdate.put("payment_method", paymentMethod);
-                    paymentUpdate.put("transaction_id", transactionId);
-                    paymentUpdate.put("paid_at", new Timestamp(new Date()));
-                    paymentUpdate.put("amount", finalAmount[0]);
-                    
-                    return db.collection(COLLECTION_PAYMENTS)
-                        .document(paymentId)
-                        .update(paymentUpdate)
-                        .continueWithTask(updateTask -> {
-                            if (!updateTask.isSuccessful()) {
-                                Log.e(TAG, "Failed to update payment: " + updateTask.getException().getMessage());
-                                return Tasks.forException(updateTask.getException());
-                            }
-                            
-                            Log.d(TAG, "Payment updated successfully, now updating order and creating token");
-                            
-                            // Use order ID from payment if available, otherwise query
-                            if (orderIdFromPayment[0] != null && !orderIdFromPayment[0].isEmpty()) {
-                                Log.d(TAG, "Using order ID from payment: " + orderIdFromPayment[0]);
-                                String orderId = orderIdFromPayment[0];
-                                return db.collection(COLLECTION_ORDERS)
-                                    .document(orderId)
-                                    .get()
-                                    .continueWithTask(orderTask -> {
-                                        if (!orderTask.isSuccessful()) {
-                                            Log.e(TAG, "Failed to get order: " + orderTask.getException().getMessage());
-                                            return Tasks.forException(orderTask.getException());
-                                        }
-                                        
-                                        DocumentSnapshot orderDoc = orderTask.getResult();
-                                        if (!orderDoc.exists()) {
-                                            Log.w(TAG, "No order found with ID: " + orderId);
-                                            return Tasks.forResult(null);
-                                        }
-                                        
-                                        Log.d(TAG, "Found order: " + orderId);
-                                        
-                                        // Determine order status
-                                        Timestamp startTime = orderDoc.getTimestamp("start_time");
-                                        String status = (startTime != null && startTime.toDate().after(new Date())) 
-                                            ? "pending" : "active";
-                                        
-                                        orderDoc.getReference().update("status", status);
-                                        Log.d(TAG, "Order status updated to: " + status);
-                                        
-                                        // Award token
-                                        String userId = orderDoc.getString("user_id");
-                                        if (userId == null || userId.isEmpty()) {
-                                            Log.e(TAG, "User ID is null or empty for order: " + orderId);
-                                            return Tasks.forResult(null);
-                                        }
-                                        
-                                        Log.d(TAG, "Creating token for user: " + userId + ", order: " + orderId);
-                                        Token token = new Token(
-                                            "",
-                                            userId,
-                                            orderId,
-                                            false
-                                        );
-                                        Map<String, Object> tokenMap = Token.Companion.toMap(token);
-                                        
-                                        // Create token as part of the task chain
-                                        return db.collection(COLLECTION_TOKENS).add(tokenMap)
-                                            .continueWith(tokenTask -> {
-                                                if (tokenTask.isSuccessful()) {
-                                                    String tokenId = tokenTask.getResult().getId();
-                                                    Log.d(TAG, "Token created successfully! ID: " + tokenId + " for user: " + userId + ", order: " + orderId);
-                                                } else {
-                                                    Log.e(TAG, "Failed to create token: " + tokenTask.getException().getMessage(), tokenTask.getException());
-                                                }
-                                                return null;
-                                            });
-                                    });
-                            } else {
-                                // Fallback: query by payment_id if orderId not in payment
-                                Log.w(TAG, "Order ID not found in payment, querying by payment_id: " + paymentId);
-                                return db.collection(COLLECTION_ORDERS)
-                                    .whereEqualTo("payment_id", paymentId)
-                                    .get()
-                                    .continueWithTask(orderTask -> {
-                                        if (!orderTask.isSuccessful()) {
-                                            Log.e(TAG, "Failed to get order: " + orderTask.getException().getMessage());
-                                            return Tasks.forException(orderTask.getException());
-                                        }
-                                        
-                                        if (orderTask.getResult().isEmpty()) {
-                                            Log.w(TAG, "No order found for payment_id: " + paymentId);
-                                            return Tasks.forResult(null);
-                                        }
-                                        
-                                        DocumentSnapshot orderDoc = orderTask.getResult().getDocuments().get(0);
-                                        String orderId = orderDoc.getId();
-                                        Log.d(TAG, "Found order: " + orderId);
-                                        
-                                        // Determine order status
-                                        Timestamp startTime = orderDoc.getTimestamp("start_time");
-                                        String status = (startTime != null && startTime.toDate().after(new Date())) 
-                                            ? "pending" : "active";
-                                        
-                                        orderDoc.getReference().update("status", status);
-                                        Log.d(TAG, "Order status updated to: " + status);
-                                        
-                                        // Award token
-                                        String userId = orderDoc.getString("user_id");
-                                        if (userId == null || userId.isEmpty()) {
-                                            Log.e(TAG, "User ID is null or empty for order: " + orderId);
-                                            return Tasks.forResult(null);
-                                        }
-                                        
-                                        Log.d(TAG, "Creating token for user: " + userId + ", order: " + orderId);
-                                        Token token = new Token(
-                                            "",
-                                            userId,
-                                            orderId,
-                                            false
-                                        );
-                                        Map<String, Object> tokenMap = Token.Companion.toMap(token);
-                                        
-                                        // Create token as part of the task chain
-                                        return db.collection(COLLECTION_TOKENS).add(tokenMap)
-                                            .continueWith(tokenTask -> {
-                                                if (tokenTask.isSuccessful()) {
-                                                    String tokenId = tokenTask.getResult().getId();
-                                                    Log.d(TAG, "Token created successfully! ID: " + tokenId + " for user: " + userId + ", order: " + orderId);
-                                                } else {
-                                                    Log.e(TAG, "Failed to create token: " + tokenTask.getException().getMessage(), tokenTask.getException());
-                                                }
-                                                return null;
-                                            });
-                                    });
-                            }
-                        });
-                });
+            // A wash-and-dry or cart payment lists all its orders in order_ids
+            List<String> orderIds = new ArrayList<>();
+            Object linked = paymentDoc.get("order_ids");
+            if (linked instanceof List) {
+                for (Object orderId : (List<?>) linked) {
+                    orderIds.add(String.valueOf(orderId));
+                }
             } else {
-                // Complete payment without voucher
-                String transactionId = "TXN-" + UUID.randomUUID().toString().toUpperCase();
-                Map<String, Object> paymentUpdate = new HashMap<>();
-                paymentUpdate.put("status", "completed");
-                paymentUpdate.put("payment_method", paymentMethod);
-                paymentUpdate.put("transaction_id", transactionId);
-                paymentUpdate.put("paid_at", new Timestamp(new Date()));
+                String orderId = paymentDoc.getString("order_id");
+                if (orderId != null && !orderId.isEmpty()) {
+                    orderIds.add(orderId);
+                }
+            }
+            if (orderIds.isEmpty()) {
+                throw new FirebaseFirestoreException("Payment is not linked to an order",
+                    FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
+            
+            DocumentReference voucherRef = null;
+            Voucher voucher = null;
+            if (voucherId != null && !voucherId.isEmpty()) {
+                voucherRef = db.collection(COLLECTION_VOUCHERS).document(voucherId);
+                long voucherReadStarted = System.nanoTime();
+                DocumentSnapshot voucherDoc = transaction.get(voucherRef);
+                trace.record("voucher read", voucherReadStarted, false);
+                meter.read(1);
+                if (voucherDoc.exists()) {
+                    Map<String, Object> data = voucherDoc.getData();
+                    data.put("id", voucherDoc.getId());
+                    voucher = Voucher.Companion.fromMap(data);
+                }
+            }
+            
+            long now = System.currentTimeMillis();
+            long ordersReadStarted = System.nanoTime();
+            List<DocumentSnapshot> unpaidOrders = readUnpaidOrders(transaction, orderIds, now, meter);
+            trace.record("order and slot lock reads", ordersReadStarted, false);
+            Latency.record("completePayment.reads", attemptStarted, false);
+            long writesStarted = System.nanoTime();
+            
+            // All reads are done; everything below is written together
+            Double storedAmount = paymentDoc.getDouble("amount");
+            double amount = storedAmount != null ? storedAmount : 0;
+            boolean voucherApplied = voucher != null && voucher.isValid() && voucher.getType().equals("rm5_off");
+            if (voucherApplied) {
+                amount = Math.max(0, amount - 5.0);
+                transaction.update(voucherRef, "used", true, "order_id", orderIds.get(0));
+                meter.stageWrite(1);
+            } else if (voucherRef != null) {
+                AppLog.w(TAG, "Voucher {} cannot be used, charging full price", voucherId);
+            }
+            
+            Map<String, Object> paymentUpdate = new HashMap<>();
+            paymentUpdate.put("status", "completed");
+            paymentUpdate.put("payment_method", paymentMethod);
+            paymentUpdate.put("transaction_id", "TXN-" + UUID.randomUUID().toString().toUpperCase());
+            paymentUpdate.put("paid_at", new Timestamp(new Date(now)));
+            paymentUpdate.put("amount", amount);
+            if (voucherApplied) {
+                paymentUpdate.put("voucher_id", voucherId);
+            }
+            transaction.update(paymentRef, paymentUpdate);
+            meter.stageWrite(1);
+            FirebaseUser currentUser = auth.getCurrentUser();
+            recordCommand(transaction, idempotencyKey, currentUser != null ? currentUser.getUid() : "",
+                COMMAND_PAYMENT, paymentId, meter);
+            
+            SlotLocks.Changes lockChanges = new SlotLocks.Changes();
+            for (DocumentSnapshot orderDoc : unpaidOrders) {
+                Timestamp startTime = orderDoc.getTimestamp("start_time");
+                String status = (startTime != null && startTime.toDate().getTime() > now) ? "pending" : "active";
+                transaction.update(orderDoc.getReference(),
+                    "status", status,
+                    "paid", true,
+                    "lease_expires_at", FieldValue.delete());
+                if (orderDoc.getTimestamp("lease_expires_at") != null) {
+                    // Replacing the hold drops its lease expiry
+                    changeHolds(lockChanges, orderDoc, true);
+                }
                 
-                return db.collection(COLLECTION_PAYMENTS)
-                    .document(paymentId)
-                    .update(paymentUpdate)
-                    .continueWithTask(updateTask -> {
-                        if (!updateTask.isSuccessful()) {
-                            Log.e(TAG, "Failed to update payment: " + updateTask.getException().getMessage());
-                            return Tasks.forException(updateTask.getException());
-                        }
-                        
-                        Log.d(TAG, "Payment updated successfully, now updating order and creating token");
-                        
-                        // Use order ID from payment if available, otherwise query
-                        if (orderIdFromPayment[0] != null && !orderIdFromPayment[0].isEmpty()) {
-                            Log.d(TAG, "Using order ID from payment: " + orderIdFromPayment[0]);
-                            String orderId = orderIdFromPayment[0];
-                            return db.collection(COLLECTION_ORDERS)
-                                .document(orderId)
-                                .get()
-                                .continueWithTask(orderTask -> {
-                                    if (!orderTask.isSuccessful()) {
-                                        Log.e(TAG, "Failed to get order: " + orderTask.getException().getMessage());
-                                        return Tasks.forException(orderTask.getException());
-                                    }
-                                    
-                                    DocumentSnapshot orderDoc = orderTask.getResult();
-                                    if (!orderDoc.exists()) {
-                                        Log.w(TAG, "No order found with ID: " + orderId);
-                                        return Tasks.forResult(null);
-                                    }
-                                    
-                                    Log.d(TAG, "Found order: " + orderId);
-                                    
-                                    Timestamp startTime = orderDoc.getTimestamp("start_time");
-                                    String status = (startTime != null && startTime.toDate().after(new Date())) 
-                                        ? "pending" : "active";
-                                    
-                                    orderDoc.getReference().update("status", status);
-                                    Log.d(TAG, "Order status updated to: " + status);
-                                    
-                                    String userId = orderDoc.getString("user_id");
-                                    if (userId == null || userId.isEmpty()) {
-                                        Log.e(TAG, "User ID is null or empty for order: " + orderId);
-                                        return Tasks.forResult(null);
-                                    }
-                                    
-                                    Log.d(TAG, "Creating token for user: " + userId + ", order: " + orderId);
-                                    Token token = new Token("", userId, orderId, false);
-                                    Map<String, Object> tokenMap = Token.Companion.toMap(token);
-                                    
-                                    // Create token as part of the task chain
-                                    return db.collection(COLLECTION_TOKENS).add(tokenMap)
-                                        .continueWith(tokenTask -> {
-                                            if (tokenTask.isSuccessful()) {
-                                                String tokenId = tokenTask.getResult().getId();
-                                                Log.d(TAG, "Token created successfully! ID: " + tokenId + " for user: " + userId + ", order: " + orderId);
-                                            } else {
-                                                Log.e(TAG, "Failed to create token: " + tokenTask.getException().getMessage(), tokenTask.getException());
-                                            }
-                                            return null;
-                                        });
-                                });
-                        } else {
-                            // Fallback: query by payment_id if orderId not in payment
-                            Log.w(TAG, "Order ID not found in payment, querying by payment_id: " + paymentId);
-                            return db.collection(COLLECTION_ORDERS)
-                                .whereEqualTo("payment_id", paymentId)
-                                .get()
-                                .continueWithTask(orderTask -> {
-                                    if (!orderTask.isSuccessful()) {
-                                        Log.e(TAG, "Failed to get order: " + orderTask.getException().getMessage());
-                                        return Tasks.forException(orderTask.getException());
-                                    }
-                                    
-                                    if (orderTask.getResult().isEmpty()) {
-                                        Log.w(TAG, "No order found for payment_id: " + paymentId);
-                                        return Tasks.forResult(null);
-                                    }
-                                    
-                                    DocumentSnapshot orderDoc = orderTask.getResult().getDocuments().get(0);
-                                    String orderId = orderDoc.getId();
-                                    Log.d(TAG, "Found order: " + orderId);
-                                    
-                                    Timestamp startTime = orderDoc.getTimestamp("start_time");
-                                    String status = (startTime != null && startTime.toDate().after(new Date())) 
-                                        ? "pending" : "active";
-                                    
-                                    orderDoc.getReference().update("status", status);
-                                    Log.d(TAG, "Order status updated to: " + status);
-                                    
-                                    String userId = orderDoc.getString("user_id");
-                                    if (userId == null || userId.isEmpty()) {
-                                        Log.e(TAG, "User ID is null or empty for order: " + orderId);
-                                        return Tasks.forResult(null);
-                                    }
-                                    
-                                    Log.d(TAG, "Creating token for user: " + userId + ", order: " + orderId);
-                                    Token token = new Token("", userId, orderId, false);
-                                    Map<String, Object> tokenMap = Token.Companion.toMap(token);
-                                    
-                                    // Create token as part of the task chain
-                                    return db.collection(COLLECTION_TOKENS).add(tokenMap)
-                                        .continueWith(tokenTask -> {
-                                            if (tokenTask.isSuccessful()) {
-                                                String tokenId = tokenTask.getResult().getId();
-                                                Log.d(TAG, "Token created successfully! ID: " + tokenId + " for user: " + userId + ", order: " + orderId);
-                                            } else {
-                                                Log.e(TAG, "Failed to create token: " + tokenTask.getException().getMessage(), tokenTask.getException());
-                                            }
-                                            return null;
-                                        });
-                                });
-                        }
-                    });
+                // Keyed by the order: the rules allow one token per order, issued as it is paid
+                Token token = new Token("", orderDoc.getString("user_id"), orderDoc.getId(), false);
+                transaction.set(db.collection(COLLECTION_TOKENS).document(orderDoc.getId()), Token.Companion.toMap(token));
+                meter.stageWrite(2);
             }
+            stageSlotLocks(transaction, lockChanges, meter);
+            
+            AppLog.d(TAG, "Payment {} completed for {} order(s), amount {}", paymentId, unpaidOrders.size(), amount);
+            trace.record("stage writes (payment, voucher, orders, tokens)", writesStarted, false);
+            commitStarted.set(System.nanoTime());
+            return null;
         });
+        return trace.spanFrom("commit", commitStarted,
+            Latency.trackFrom("completePayment.commit", commitStarted, meter.commit(commit)));
     }
     
     // ==================== Tokens ====================
     
     public Task<Integer> getAvailableTokensCount(String userId) {
-        return db.collection(COLLECTION_TOKENS)
+        return instrumented("getAvailableTokensCount", meter -> db.collection(COLLECTION_TOKENS)
             .whereEqualTo("user_id", userId)
             .whereEqualTo("used", false)
             .get()
@@ -920,30 +1506,15 @@ public class FirebaseService {
                 if (!task.isSuccessful()) {
                     return 0;
                 }
+                meter.query(task.getResult());
                 return task.getResult().size();
-            });
-    }
-    
-    public Task<Void> useToken(String userId) {
-        return db.collection(COLLECTION_TOKENS)
-            .whereEqualTo("user_id", userId)
-            .whereEqualTo("used", false)
-            .limit(1)
-            .get()
-            .continueWithTask(task -> {
-                if (!task.isSuccessful() || task.getResult().isEmpty()) {
-                    throw new Exception("No available tokens");
-                }
-                
-                DocumentSnapshot tokenDoc = task.getResult().getDocuments().get(0);
-                return tokenDoc.getReference().update("used", true);
-            });
+            }));
     }
     
     // ==================== Vouchers ====================
     
     public Task<List<Voucher>> getVouchers(String userId) {
-        return db.collection(COLLECTION_VOUCHERS)
+        return instrumented("getVouchers", meter -> db.collection(COLLECTION_VOUCHERS)
             .whereEqualTo("user_id", userId)
             .orderBy("created_at", Query.Direction.DESCENDING)
             .get()
@@ -955,7 +1526,7 @@ public class FirebaseService {
                         FirebaseFirestoreException firestoreException = (FirebaseFirestoreException) exception;
                         if (firestoreException.getCode() == FirebaseFirestoreException.Code.FAILED_PRECONDITION) {
                             // Index required - try without orderBy as fallback
-                            Log.w(TAG, "Vouchers index not found, fetching without orderBy. Please create the index. " +
+                            AppLog.w(TAG, "Vouchers index not found, fetching without orderBy. Please create the index. " +
                                 "Click the link in the error message to create it automatically.");
                             return db.collection(COLLECTION_VOUCHERS)
                                 .whereEqualTo("user_id", userId)
@@ -964,6 +1535,7 @@ public class FirebaseService {
                                     if (!fallbackTask.isSuccessful()) {
                                         throw fallbackTask.getException();
                                     }
+                                    meter.query(fallbackTask.getResult());
                                     List<Voucher> vouchers = new ArrayList<>();
                                     for (QueryDocumentSnapshot doc : fallbackTask.getResult()) {
                                         Map<String, Object> data = doc.getData();
@@ -986,6 +1558,7 @@ public class FirebaseService {
                     return Tasks.forException(exception);
                 }
                 
+                meter.query(task.getResult());
                 List<Voucher> vouchers = new ArrayList<>();
                 for (QueryDocumentSnapshot doc : task.getResult()) {
                     Map<String, Object> data = doc.getData();
@@ -993,11 +1566,11 @@ public class FirebaseService {
                     vouchers.add(Voucher.Companion.fromMap(data));
                 }
                 return Tasks.forResult(vouchers);
-            });
+            }));
     }
     
     public Task<Voucher> getVoucherById(String voucherId) {
-        return db.collection(COLLECTION_VOUCHERS)
+        return instrumented("getVoucherById", meter -> db.collection(COLLECTION_VOUCHERS)
             .document(voucherId)
             .get()
             .continueWith(task -> {
@@ -1006,6 +1579,7 @@ public class FirebaseService {
                 }
                 
                 DocumentSnapshot doc = task.getResult();
+                meter.document(doc);
                 if (doc == null || !doc.exists()) {
                     throw new Exception("Voucher not found");
                 }
@@ -1013,15 +1587,15 @@ public class FirebaseService {
                 Map<String, Object> data = doc.getData();
                 data.put("id", doc.getId());
                 return Voucher.Companion.fromMap(data);
-            });
+            }));
     }
     
-    public Task<String> createVoucher(String userId, String type) {
+    private Voucher newVoucher(String userId, String type) {
         Calendar calendar = Calendar.getInstance();
         calendar.add(Calendar.DAY_OF_YEAR, 30);
         Date expiresAt = calendar.getTime();
         
-        Voucher voucher = new Voucher(
+        return new Voucher(
             "",
             userId,
             type,
@@ -1030,28 +1604,105 @@ public class FirebaseService {
             expiresAt,
             new Date()
         );
-        
-        Map<String, Object> voucherMap = Voucher.Companion.toMap(voucher);
-        return db.collection(COLLECTION_VOUCHERS)
-            .add(voucherMap)
-            .continueWith(task -> {
+    }
+    
+    // ==================== Minigame ====================
+    
+    /**
+     * Settles one token round in a single transaction: marks one unused token as used
+     * by this round, issues an RM5 voucher on a win and appends the round record. Either
+     * all three writes land or none do, and two rounds can never spend the same token;
+     * the security rules check each voucher against the round and the token it spent.
+     *
+     * Transactions cannot run queries, so the user's unused tokens are listed first
+     * and then re-read inside the transaction, which also yields the new balance.
+     */
+    public Task<Integer> settleRound(String userId, String result,
+                                     List<Map<String, String>> playerHand, List<Map<String, String>> dealerHand,
+                                     int playerScore, int dealerScore) {
+        return instrumented("settleRound", meter -> db.collection(COLLECTION_TOKENS)
+            .whereEqualTo("user_id", userId)
+            .whereEqualTo("used", false)
+            .get()
+            .continueWithTask(task -> {
                 if (!task.isSuccessful()) {
                     throw task.getException();
                 }
-                return task.getResult().getId();
-            });
+                meter.query(task.getResult());
+                if (task.getResult().isEmpty()) {
+                    throw new Exception("No available tokens");
+                }
+                
+                List<DocumentReference> candidates = new ArrayList<>();
+                for (QueryDocumentSnapshot doc : task.getResult()) {
+                    candidates.add(doc.getReference());
+                }
+                
+                DocumentReference roundRef = db.collection(COLLECTION_MINIGAME_ROUNDS).document();
+                DocumentReference voucherRef = "win".equals(result)
+                    ? db.collection(COLLECTION_VOUCHERS).document() : null;
+                
+                return meter.commit(db.runTransaction(transaction -> {
+                    meter.beginAttempt();
+                    // All reads must happen before any write
+                    DocumentReference tokenRef = null;
+                    int unused = 0;
+                    for (DocumentReference ref : candidates) {
+                        DocumentSnapshot tokenDoc = transaction.get(ref);
+                        meter.read(1);
+                        if (tokenDoc.exists() && Boolean.FALSE.equals(tokenDoc.getBoolean("used"))) {
+                            unused++;
+                            if (tokenRef == null) {
+                                tokenRef = ref;
+                            }
+                        }
+                    }
+                    if (tokenRef == null) {
+                        throw new FirebaseFirestoreException("No available tokens",
+                            FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+                    }
+                    
+                    transaction.update(tokenRef, "used", true, "round_id", roundRef.getId());
+                    meter.stageWrite(1);
+                    
+                    if (voucherRef != null) {
+                        Map<String, Object> voucherMap = Voucher.Companion.toMap(newVoucher(userId, "rm5_off"));
+                        voucherMap.put("round_id", roundRef.getId());
+                        transaction.set(voucherRef, voucherMap);
+                        meter.stageWrite(1);
+                    }
+                    
+                    MinigameRound round = new MinigameRound(
+                        "",
+                        userId,
+                        result,
+                        playerHand,
+                        dealerHand,
+                        playerScore,
+                        dealerScore,
+                        tokenRef.getId(),
+                        voucherRef != null ? voucherRef.getId() : null,
+                        new Date()
+                    );
+                    transaction.set(roundRef, MinigameRound.Companion.toMap(round));
+                    meter.stageWrite(1);
+                    
+                    return unused - 1;
+                }));
+            }));
     }
     
     // ==================== Admin ====================
     
     public Task<List<User>> getAllUsers() {
-        return db.collection(COLLECTION_USERS)
+        return instrumented("getAllUsers", meter -> db.collection(COLLECTION_USERS)
             .get()
             .continueWith(task -> {
                 if (!task.isSuccessful()) {
                     throw task.getException();
                 }
                 
+                meter.query(task.getResult());
                 List<User> users = new ArrayList<>();
                 for (QueryDocumentSnapshot doc : task.getResult()) {
                     Map<String, Object> data = doc.getData();
@@ -1059,13 +1710,13 @@ public class FirebaseService {
                     users.add(User.Companion.fromMap(data));
                 }
                 return users;
-            });
+            }));
     }
     
     public Task<Void> deleteUser(String userId) {
-        return db.collection(COLLECTION_USERS)
+        return instrumented("deleteUser", meter -> meter.delete(db.collection(COLLECTION_USERS)
             .document(userId)
-            .delete();
+            .delete(), 1));
     }
     
     public Task<Map<String, Object>> getAnalytics() {
@@ -1084,7 +1735,7 @@ public class FirebaseService {
         Timestamp yearStartTimestamp = new Timestamp(yearStart);
         
         // Get all payments
-        return db.collection(COLLECTION_PAYMENTS)
+        return instrumented("getAnalytics", meter -> db.collection(COLLECTION_PAYMENTS)
             .whereEqualTo("status", "completed")
             .get()
             .continueWithTask(paymentsTask -> {
@@ -1092,6 +1743,7 @@ public class FirebaseService {
                     throw paymentsTask.getException();
                 }
                 
+                meter.query(paymentsTask.getResult());
                 final double[] totalRevenue = {0};
                 final double[] monthlyRevenue = {0};
                 final double[] yearlyRevenue = {0};
@@ -1117,6 +1769,9 @@ public class FirebaseService {
                 // Get orders count
                 return db.collection(COLLECTION_ORDERS).get()
                     .continueWithTask(ordersTask -> {
+                        if (ordersTask.isSuccessful()) {
+                            meter.query(ordersTask.getResult());
+                        }
                         int totalOrders = ordersTask.isSuccessful() ? ordersTask.getResult().size() : 0;
                         
                         // Get monthly orders
@@ -1124,12 +1779,18 @@ public class FirebaseService {
                             .whereGreaterThanOrEqualTo("created_at", monthStartTimestamp)
                             .get()
                             .continueWithTask(monthlyOrdersTask -> {
+                                if (monthlyOrdersTask.isSuccessful()) {
+                                    meter.query(monthlyOrdersTask.getResult());
+                                }
                                 int monthlyOrders = monthlyOrdersTask.isSuccessful() 
                                     ? monthlyOrdersTask.getResult().size() : 0;
                                 
                                 // Get users count
                                 return db.collection(COLLECTION_USERS).get()
                                     .continueWithTask(usersTask -> {
+                                        if (usersTask.isSuccessful()) {
+                                            meter.query(usersTask.getResult());
+                                        }
                                         int totalUsers = usersTask.isSuccessful() 
                                             ? usersTask.getResult().size() : 0;
                                         
@@ -1139,6 +1800,7 @@ public class FirebaseService {
                                             .continueWithTask(activeUsersTask -> {
                                                 final int[] activeUsers = {0};
                                                 if (activeUsersTask.isSuccessful()) {
+                                                    meter.query(activeUsersTask.getResult());
                                                     for (QueryDocumentSnapshot doc : activeUsersTask.getResult()) {
                                                         // Check if user has orders this month
                                                         String userId = doc.getId();
@@ -1156,6 +1818,7 @@ public class FirebaseService {
                                                         int dryers = 0;
                                                         
                                                         if (machinesTask.isSuccessful()) {
+                                                            meter.query(machinesTask.getResult());
                                                             for (QueryDocumentSnapshot doc : machinesTask.getResult()) {
                                                                 String type = doc.getString("type");
                                                                 if ("washer".equals(type)) washers++;
@@ -1195,6 +1858,147 @@ public class FirebaseService {
                                     });
                             });
                     });
-            });
+            }));
+    }
+    
+    // ==================== Export ====================
+    
+    /** Rows written so far, out of the order count taken when the export started. */
+    public interface ExportProgress {
+        void onProgress(long rowsWritten, long totalRows);
+    }
+    
+    /**
+     * Streams every order, joined with its payment, to a gzip-compressed CSV at {@code file}
+     * and returns the number of rows. Memory stays flat whatever the collection size: orders
+     * are paged by document id with a cursor, each page's payments are fetched by id in
+     * batches, and only the last {@value #EXPORT_PAYMENT_WINDOW} payments are remembered
+     * (cart checkouts share one payment across neighbouring orders). The file only appears
+     * once complete. Runs on its own thread, one export at a time; {@code progress} is
+     * called on that thread after each page.
+     */
+    public Task<Long> exportOrdersCsv(File file, ExportProgress progress) {
+        return instrumented("exportOrdersCsv", meter ->
+            Tasks.call(exportExecutor, () -> writeOrdersCsv(file, progress, meter)));
+    }
+    
+    private long writeOrdersCsv(File file, ExportProgress progress, DocMeter.Call meter) throws Exception {
+        long total = Tasks.await(db.collection(COLLECTION_ORDERS).count().get(AggregateSource.SERVER)).getCount();
+        // A count is billed one read per 1000 entries counted
+        meter.read((int) Math.max(1, (total + 999) / 1000));
+        progress.onProgress(0, total);
+        
+        Map<String, DocumentSnapshot> payments = new LinkedHashMap<String, DocumentSnapshot>(EXPORT_PAYMENT_WINDOW, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DocumentSnapshot> eldest) {
+                return size() > EXPORT_PAYMENT_WINDOW;
+            }
+        };
+        
+        File partial = new File(file.getPath() + ".part");
+        File dir = file.getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        long rows = 0;
+        Query firstPage = db.collection(COLLECTION_ORDERS)
+            .orderBy(FieldPath.documentId())
+            .limit(EXPORT_PAGE_SIZE);
+        try (CsvWriter csv = new CsvWriter(new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(partial), 64 * 1024), StandardCharsets.UTF_8)))) {
+            csv.row(EXPORT_COLUMNS);
+            DocumentSnapshot last = null;
+            while (true) {
+                Query pageQuery = last == null ? firstPage : firstPage.startAfter(last);
+                QuerySnapshot page = Tasks.await(pageQuery.get(Source.SERVER));
+                meter.query(page);
+                if (page.isEmpty()) {
+                    break;
+                }
+                
+                fetchPayments(page, payments, meter);
+                for (DocumentSnapshot order : page.getDocuments()) {
+                    String paymentId = order.getString("payment_id");
+                    writeOrderRow(csv, order, paymentId != null ? payments.get(paymentId) : null);
+                    rows++;
+                }
+                progress.onProgress(rows, Math.max(total, rows));
+                
+                if (page.size() < EXPORT_PAGE_SIZE) {
+                    break;
+                }
+                last = page.getDocuments().get(page.size() - 1);
+            }
+        } catch (Exception e) {
+            partial.delete();
+            throw e;
+        }
+        
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new Exception("Could not save export to " + file);
+        }
+        AppLog.d(TAG, "Exported {} orders to {}", rows, file);
+        return rows;
+    }
+    
+    /**
+     * Makes sure every payment the page refers to is in the window, fetching the missing
+     * ones in parallel whereIn batches. Payments already there are touched so the page's
+     * own entries are the last to be evicted.
+     */
+    private void fetchPayments(QuerySnapshot page, Map<String, DocumentSnapshot> payments, DocMeter.Call meter) throws Exception {
+        Set<String> missing = new LinkedHashSet<>();
+        for (DocumentSnapshot order : page.getDocuments()) {
+            String paymentId = order.getString("payment_id");
+            if (paymentId != null && !paymentId.isEmpty() && payments.get(paymentId) == null) {
+                missing.add(paymentId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        
+        List<String> ids = new ArrayList<>(missing);
+        List<Task<QuerySnapshot>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += WHERE_IN_LIMIT) {
+            batches.add(db.collection(COLLECTION_PAYMENTS)
+                .whereIn(FieldPath.documentId(), ids.subList(from, Math.min(ids.size(), from + WHERE_IN_LIMIT)))
+                .get(Source.SERVER));
+        }
+        List<QuerySnapshot> results = Tasks.await(Tasks.whenAllSuccess(batches));
+        for (QuerySnapshot batch : results) {
+            meter.query(batch);
+            for (DocumentSnapshot payment : batch.getDocuments()) {
+                payments.put(payment.getId(), payment);
+            }
+        }
+    }
+    
+    private static void writeOrderRow(CsvWriter csv, DocumentSnapshot order, DocumentSnapshot payment) {
+        csv.field(order.getId());
+        csv.field(order.getDate("created_at"));
+        csv.field(order.getString("user_id"));
+        csv.field(order.getString("machine_id"));
+        csv.field(order.getString("machine_name"));
+        csv.field(order.getString("temperature"));
+        csv.field(order.getDate("start_time"));
+        csv.field(order.getDate("end_time"));
+        csv.field(order.getString("status"));
+        csv.field(order.getDouble("total_amount"));
+        csv.field(order.getBoolean("paid"));
+        csv.field(order.getString("payment_id"));
+        if (payment != null) {
+            csv.field(payment.getString("status"));
+            csv.field(payment.getDouble("amount"));
+            csv.field(payment.getString("payment_method"));
+            csv.field(payment.getString("transaction_id"));
+            csv.field(payment.getDate("paid_at"));
+        } else {
+            for (int i = 0; i < 5; i++) {
+                csv.field((String) null);
+            }
+        }
+        csv.endRow();
     }
 }
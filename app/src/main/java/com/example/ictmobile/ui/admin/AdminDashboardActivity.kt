@@ -5,6 +5,7 @@ import android.os.Bundle
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import com.example.ictmobile.databinding.ActivityAdminDashboardBinding
+import com.example.ictmobile.diagnostics.StartupTrace
 import com.example.ictmobile.services.FirebaseService
 import com.example.ictmobile.ui.auth.LoginActivity
 
@@ -16,6 +17,7 @@ class AdminDashboardActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         binding = ActivityAdminDashboardBinding.inflate(layoutInflater)
         setContentView(binding.root)
+        StartupTrace.finishOnFirstFrame(this, "admin dashboard")
         
         setupClickListeners()
         loadAnalytics()
@@ -34,6 +36,12 @@ class AdminDashboardActivity : AppCompatActivity() {
             startActivity(Intent(this, AnalyticsActivity::class.java))
         }
         
+        // Hidden entry to the diagnostics screen
+        binding.tvAdminTitle.setOnLongClickListener {
+            startActivity(Intent(this, DiagnosticsActivity::class.java))
+            true
+        }
+        
         binding.btnLogout.setOnClickListener {
             firebaseService.logout()
             startActivity(Intent(this, LoginActivity::class.java))
@@ -1,10 +1,15 @@
 package com.example.ictmobile.ui.admin
 
 import android.os.Bundle
+import android.view.View
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import com.example.ictmobile.databinding.ActivityAnalyticsBinding
 import com.example.ictmobile.services.FirebaseService
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
 
 class AnalyticsActivity : AppCompatActivity() {
     private lateinit var binding: ActivityAnalyticsBinding
@@ -16,6 +21,42 @@ class AnalyticsActivity : AppCompatActivity() {
         setContentView(binding.root)
         
         loadAnalytics()
+        binding.btnExportOrders.setOnClickListener { exportOrders() }
+    }
+    
+    /**
+     * Writes every order with its payment to a .csv.gz under the app's external files
+     * (Android/data/<package>/files/exports), reachable over USB without root.
+     */
+    private fun exportOrders() {
+        val dir = getExternalFilesDir("exports") ?: File(filesDir, "exports")
+        val stamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+        val file = File(dir, "orders-$stamp.csv.gz")
+        
+        binding.btnExportOrders.isEnabled = false
+        binding.progressExport.progress = 0
+        binding.progressExport.visibility = View.VISIBLE
+        binding.tvExportStatus.visibility = View.VISIBLE
+        binding.tvExportStatus.text = "Counting orders..."
+        
+        firebaseService.exportOrdersCsv(file) { written, total ->
+            runOnUiThread {
+                if (isDestroyed) return@runOnUiThread
+                binding.progressExport.progress = if (total == 0L) 0 else (written * 1000 / total).toInt()
+                binding.tvExportStatus.text = "Exported $written of $total orders"
+            }
+        }
+            .addOnSuccessListener { rows ->
+                binding.btnExportOrders.isEnabled = true
+                binding.progressExport.visibility = View.GONE
+                binding.tvExportStatus.text = "Exported $rows orders to ${file.absolutePath}"
+            }
+            .addOnFailureListener { exception ->
+                binding.btnExportOrders.isEnabled = true
+                binding.progressExport.visibility = View.GONE
+                binding.tvExportStatus.text = "Export failed: ${exception.message}"
+                Toast.makeText(this, "Export failed: ${exception.message}", Toast.LENGTH_SHORT).show()
+            }
     }
     
     private fun loadAnalytics() {
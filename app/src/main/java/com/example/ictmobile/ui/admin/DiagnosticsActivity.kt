@@ -0,0 +1,184 @@
+package com.example.ictmobile.ui.admin
+
+import android.content.Context
+import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.widget.Toast
+import androidx.appcompat.app.AppCompatActivity
+import com.example.ictmobile.databinding.ActivityDiagnosticsBinding
+import com.example.ictmobile.diagnostics.AppLog
+import com.example.ictmobile.diagnostics.Counters
+import com.example.ictmobile.diagnostics.DocMeter
+import com.example.ictmobile.diagnostics.FrameMonitor
+import com.example.ictmobile.diagnostics.Latency
+import com.example.ictmobile.diagnostics.StallWatchdog
+import com.example.ictmobile.diagnostics.StartupTrace
+import com.example.ictmobile.diagnostics.Tracer
+import java.io.File
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Hidden admin screen (long-press the dashboard title) showing per-operation latency
+ * percentiles, call counts and error rates, the Firestore documents each screen read
+ * and wrote, and each screen's frame times and main-thread stalls, since the process
+ * started or the last reset; plus startup times across the logged app starts, which
+ * Reset leaves alone. The startup log and the report files are read and written on a
+ * background thread; only the in-memory snapshots are taken on the main thread.
+ */
+class DiagnosticsActivity : AppCompatActivity() {
+    private lateinit var binding: ActivityDiagnosticsBinding
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        binding = ActivityDiagnosticsBinding.inflate(layoutInflater)
+        setContentView(binding.root)
+
+        binding.btnRefresh.setOnClickListener { render() }
+        binding.btnDumpReport.setOnClickListener { save("report") { DocMeter.dump(it) } }
+        binding.btnExportLog.setOnClickListener { save("log") { AppLog.export(it) } }
+        binding.btnExportTrace.setOnClickListener { save("trace") { Tracer.export(it) } }
+        binding.btnReset.setOnClickListener {
+            Latency.reset()
+            Counters.reset()
+            DocMeter.reset()
+            Tracer.clear()
+            FrameMonitor.reset()
+            StallWatchdog.clear()
+            render()
+            Toast.makeText(this, "Diagnostics reset", Toast.LENGTH_SHORT).show()
+        }
+    }
+
+    override fun onResume() {
+        super.onResume()
+        render()
+    }
+
+    /** Runs [write] on the io thread and reports where it saved [what], or why it could not. */
+    private fun save(what: String, write: (Context) -> File) {
+        val context = applicationContext
+        io.execute {
+            val message = try {
+                "${what.replaceFirstChar { it.uppercase() }} saved to ${write(context).absolutePath}"
+            } catch (e: Exception) {
+                "Failed to save $what: ${e.message}"
+            }
+            mainHandler.post { Toast.makeText(context, message, Toast.LENGTH_LONG).show() }
+        }
+    }
+
+    private fun render() {
+        val latency = Latency.snapshot().filterValues { it.count > 0 }
+        binding.tvLatency.text = if (latency.isEmpty()) {
+            "No calls recorded yet"
+        } else {
+            val nameWidth = maxOf(9, latency.keys.maxOf { it.length })
+            buildString {
+                append(String.format(Locale.US, "%-${nameWidth}s %6s %5s %7s %7s %7s %7s",
+                    "operation", "count", "err%", "p50", "p90", "p99", "max"))
+                for ((name, stats) in latency) {
+                    append('\n')
+                    append(String.format(Locale.US, "%-${nameWidth}s %6d %5.1f %7s %7s %7s %7s",
+                        name, stats.count, stats.errorRate * 100,
+                        millis(stats.p50Micros), millis(stats.p90Micros),
+                        millis(stats.p99Micros), millis(stats.maxMicros)))
+                }
+            }
+        }
+
+        val usage = DocMeter.snapshot()
+        binding.tvDocUsage.text = if (usage.isEmpty()) {
+            "No documents read yet"
+        } else {
+            val screenWidth = maxOf(6, usage.maxOf { it.screen.length })
+            val operationWidth = maxOf(9, usage.maxOf { it.operation.length })
+            buildString {
+                append(String.format(Locale.US, "%-${screenWidth}s %-${operationWidth}s %5s %7s %6s %6s %6s",
+                    "screen", "operation", "calls", "reads", "cached", "writes", "dels"))
+                for (row in usage) {
+                    append('\n')
+                    append(String.format(Locale.US, "%-${screenWidth}s %-${operationWidth}s %5d %7d %6d %6d %6d",
+                        row.screen, row.operation, row.calls, row.reads, row.cachedReads, row.writes, row.deletes))
+                }
+            }
+        }
+
+        val frames = FrameMonitor.snapshot().filterValues { it.frames > 0 }
+        binding.tvFrames.text = if (frames.isEmpty()) {
+            "No frames recorded yet"
+        } else {
+            val screenWidth = maxOf(6, frames.keys.maxOf { it.length })
+            buildString {
+                append(String.format(Locale.US, "%-${screenWidth}s %7s %6s %6s %6s %6s %6s",
+                    "screen", "frames", "slow%", "frozen", "p50", "p90", "p99"))
+                for ((screen, stats) in frames) {
+                    append('\n')
+                    append(String.format(Locale.US, "%-${screenWidth}s %7d %6.1f %6d %6s %6s %6s",
+                        screen, stats.frames, stats.slowRate * 100, stats.frozen,
+                        millis(stats.durations.p50Micros), millis(stats.durations.p90Micros),
+                        millis(stats.durations.p99Micros)))
+                }
+            }
+        }
+
+        val stalls = StallWatchdog.recent()
+        binding.tvStalls.text = if (stalls.isEmpty()) {
+            "No stalls detected"
+        } else {
+            val format = SimpleDateFormat("HH:mm:ss", Locale.US)
+            stalls.joinToString("\n\n") { stall ->
+                // The top frames are enough to spot the culprit; full stacks are in the log
+                "${format.format(Date(stall.timeMillis))}  ${stall.screen}  ${stall.durationMs} ms\n" +
+                    stall.stack.take(STACK_LINES).joinToString("\n") { "  at $it" }
+            }
+        }
+
+        val counters = Counters.snapshot()
+        binding.tvCounters.text = if (counters.isEmpty()) {
+            "No counters yet"
+        } else {
+            counters.entries.joinToString("\n") { "${it.key}  ${it.value}" }
+        }
+
+        // The startup log is a file, so it is parsed off the main thread
+        val context = applicationContext
+        io.execute {
+            val startup = StartupTrace.summary(context)
+            mainHandler.post { if (!isDestroyed) renderStartup(startup) }
+        }
+    }
+
+    private fun renderStartup(startup: List<StartupTrace.Row>) {
+        binding.tvStartup.text = if (startup.isEmpty()) {
+            "No starts logged yet"
+        } else {
+            val startWidth = maxOf(5, startup.maxOf { it.start.length })
+            val markWidth = maxOf(4, startup.maxOf { it.mark.length })
+            buildString {
+                append(String.format(Locale.US, "%-${startWidth}s %-${markWidth}s %4s %6s %6s %6s",
+                    "start", "mark", "n", "p50", "p90", "p99"))
+                for (row in startup) {
+                    append('\n')
+                    append(String.format(Locale.US, "%-${startWidth}s %-${markWidth}s %4d %6d %6d %6d",
+                        row.start, row.mark, row.count, row.p50, row.p90, row.p99))
+                }
+            }
+        }
+    }
+
+    private fun millis(micros: Long): String = String.format(Locale.US, "%.1f", micros / 1000.0)
+
+    companion object {
+        private const val STACK_LINES = 8
+
+        private val mainHandler = Handler(Looper.getMainLooper())
+        private val io: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "diagnostics-io").apply { isDaemon = true }
+        }
+    }
+}
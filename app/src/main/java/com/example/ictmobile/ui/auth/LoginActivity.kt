@@ -6,6 +6,7 @@ import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import com.example.ictmobile.R
 import com.example.ictmobile.databinding.ActivityLoginBinding
+import com.example.ictmobile.diagnostics.StartupTrace
 import com.example.ictmobile.services.FirebaseService
 import com.example.ictmobile.ui.customer.DashboardActivity
 import com.example.ictmobile.ui.admin.AdminDashboardActivity
@@ -18,6 +19,7 @@ class LoginActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         binding = ActivityLoginBinding.inflate(layoutInflater)
         setContentView(binding.root)
+        StartupTrace.finishOnFirstFrame(this, "login")
         
         binding.btnLogin.setOnClickListener {
             val email = binding.etEmail.text.toString().trim()
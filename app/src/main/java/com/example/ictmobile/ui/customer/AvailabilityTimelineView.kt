@@ -0,0 +1,195 @@
+package com.example.ictmobile.ui.customer
+
+import android.content.Context
+import android.graphics.Canvas
+import android.graphics.Paint
+import android.util.AttributeSet
+import android.view.MotionEvent
+import android.view.View
+import com.example.ictmobile.R
+import com.example.ictmobile.scheduling.AvailabilityGrid
+import java.util.TimeZone
+
+/**
+ * One row per machine across the 24-hour booking window: free time in green, booked
+ * time in red, the pending selection outlined in gold. Busy runs are walked straight
+ * off the minute bitsets, so a redraw is a handful of rects per row and allocates
+ * nothing.
+ */
+class AvailabilityTimelineView @JvmOverloads constructor(
+    context: Context,
+    attrs: AttributeSet? = null
+) : View(context, attrs) {
+
+    fun interface OnSlotTappedListener {
+        fun onSlotTapped(machineIndex: Int, millis: Long)
+    }
+
+    private val density = resources.displayMetrics.density
+    private val rowHeight = 28 * density
+    private val rowGap = 4 * density
+    private val headerHeight = 18 * density
+    private val labelWidth = 76 * density
+
+    private val freePaint = Paint().apply { color = context.getColor(R.color.green) }
+    private val busyPaint = Paint().apply { color = context.getColor(R.color.red_accent) }
+    private val selectionPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+        color = context.getColor(R.color.gold)
+        style = Paint.Style.STROKE
+        strokeWidth = 3 * density
+    }
+    private val tickPaint = Paint().apply {
+        color = context.getColor(R.color.text_light)
+        strokeWidth = density
+    }
+    private val labelPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+        color = context.getColor(R.color.royal_blue_dark)
+        textSize = 12 * density
+    }
+    private val selectedLabelPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+        color = context.getColor(R.color.gold_dark)
+        textSize = 12 * density
+        isFakeBoldText = true
+    }
+    private val hourPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+        color = context.getColor(R.color.text_light)
+        textSize = 10 * density
+    }
+
+    private var grid: AvailabilityGrid? = null
+    private var labels: List<String> = emptyList()
+
+    // Minute offsets of every third local hour inside the window, and their labels
+    private var tickMinutes = IntArray(0)
+    private var tickLabels = emptyArray<String>()
+
+    private var selectedRow = -1
+    private var selectionStart = 0
+    private var selectionEnd = 0
+
+    var onSlotTappedListener: OnSlotTappedListener? = null
+
+    fun setGrid(grid: AvailabilityGrid, labels: List<String>, timeZone: TimeZone) {
+        this.grid = grid
+        this.labels = labels
+
+        // First local hour boundary at or after the window start
+        val offset = timeZone.getOffset(grid.windowStart)
+        val minuteOfDay = Math.floorMod((grid.windowStart + offset) / AvailabilityGrid.MINUTE_MILLIS, MINUTES_PER_DAY.toLong()).toInt()
+        val firstHour = (minuteOfDay + 59) / 60
+        val ticks = ArrayList<Int>()
+        val names = ArrayList<String>()
+        var hour = firstHour
+        while (true) {
+            val minute = hour * 60 - minuteOfDay
+            if (minute >= AvailabilityGrid.WINDOW_MINUTES) break
+            if (hour % 3 == 0) {
+                ticks.add(minute)
+                names.add(String.format("%02d", hour % 24))
+            }
+            hour++
+        }
+        tickMinutes = ticks.toIntArray()
+        tickLabels = names.toTypedArray()
+
+        requestLayout()
+        invalidate()
+    }
+
+    fun setSelection(machineIndex: Int, startMillis: Long, endMillis: Long) {
+        val grid = grid ?: return
+        selectedRow = machineIndex
+        selectionStart = ((startMillis - grid.windowStart) / AvailabilityGrid.MINUTE_MILLIS).toInt()
+        selectionEnd = ((endMillis - grid.windowStart) / AvailabilityGrid.MINUTE_MILLIS).toInt()
+        invalidate()
+    }
+
+    fun clearSelection() {
+        selectedRow = -1
+        invalidate()
+    }
+
+    override fun onMeasure(widthMeasureSpec: Int, heightMeasureSpec: Int) {
+        val rows = labels.size
+        val height = headerHeight + rows * (rowHeight + rowGap) + paddingTop + paddingBottom
+        setMeasuredDimension(
+            getDefaultSize(suggestedMinimumWidth, widthMeasureSpec),
+            resolveSize(height.toInt(), heightMeasureSpec)
+        )
+    }
+
+    override fun onDraw(canvas: Canvas) {
+        super.onDraw(canvas)
+        val grid = grid ?: return
+        val left = paddingLeft + labelWidth
+        val right = (width - paddingRight).toFloat()
+        val perMinute = (right - left) / AvailabilityGrid.WINDOW_MINUTES
+        val top = paddingTop.toFloat()
+
+        for (i in tickMinutes.indices) {
+            val x = left + tickMinutes[i] * perMinute
+            canvas.drawText(tickLabels[i], x - hourPaint.measureText(tickLabels[i]) / 2, top + headerHeight - 6 * density, hourPaint)
+        }
+
+        val window = AvailabilityGrid.WINDOW_MINUTES
+        for (row in labels.indices) {
+            val rowTop = top + headerHeight + row * (rowHeight + rowGap)
+            val rowBottom = rowTop + rowHeight
+            val label = labels[row]
+            canvas.drawText(
+                label, 0, label.length,
+                paddingLeft.toFloat(), rowTop + rowHeight / 2 - (labelPaint.ascent() + labelPaint.descent()) / 2,
+                if (row == selectedRow) selectedLabelPaint else labelPaint
+            )
+
+            canvas.drawRect(left, rowTop, right, rowBottom, freePaint)
+            val bits = grid.row(row)
+            var start = bits.nextBusy(0)
+            while (start < window) {
+                val end = bits.nextFree(start)
+                canvas.drawRect(left + start * perMinute, rowTop, left + end * perMinute, rowBottom, busyPaint)
+                start = bits.nextBusy(end)
+            }
+
+            if (row == selectedRow && selectionEnd > 0 && selectionStart < window) {
+                val from = left + maxOf(selectionStart, 0) * perMinute
+                val to = left + minOf(selectionEnd, window) * perMinute
+                canvas.drawRect(from, rowTop, maxOf(to, from + selectionPaint.strokeWidth), rowBottom, selectionPaint)
+            }
+        }
+
+        for (minute in tickMinutes) {
+            val x = left + minute * perMinute
+            canvas.drawLine(x, top + headerHeight, x, top + headerHeight + labels.size * (rowHeight + rowGap), tickPaint)
+        }
+    }
+
+    override fun onTouchEvent(event: MotionEvent): Boolean {
+        val grid = grid ?: return false
+        when (event.actionMasked) {
+            MotionEvent.ACTION_DOWN -> return true
+            MotionEvent.ACTION_UP -> {
+                val left = paddingLeft + labelWidth
+                val right = (width - paddingRight).toFloat()
+                val row = ((event.y - paddingTop - headerHeight) / (rowHeight + rowGap)).toInt()
+                if (event.x < left || event.y < paddingTop + headerHeight || row !in labels.indices) {
+                    return false
+                }
+                val minute = ((event.x - left) / (right - left) * AvailabilityGrid.WINDOW_MINUTES).toInt()
+                    .coerceIn(0, AvailabilityGrid.WINDOW_MINUTES - 1)
+                performClick()
+                onSlotTappedListener?.onSlotTapped(row, grid.windowStart + minute * AvailabilityGrid.MINUTE_MILLIS)
+                return true
+            }
+        }
+        return super.onTouchEvent(event)
+    }
+
+    override fun performClick(): Boolean {
+        return super.performClick()
+    }
+
+    companion object {
+        private const val MINUTES_PER_DAY = 24 * 60
+    }
+}
@@ -10,21 +10,44 @@ import androidx.recyclerview.widget.GridLayoutManager
 import com.example.ictmobile.R
 import com.example.ictmobile.adapters.MachineAdapter
 import com.example.ictmobile.databinding.ActivityBookMachineBinding
+import com.example.ictmobile.diagnostics.AppLog
+import com.example.ictmobile.models.Cart
+import com.example.ictmobile.models.CartItem
 import com.example.ictmobile.models.Machine
+import com.example.ictmobile.notifications.CycleAlarmScheduler
+import com.example.ictmobile.scheduling.AvailabilityGrid
+import com.example.ictmobile.scheduling.ChainScheduler
+import com.example.ictmobile.scheduling.SlotLocks
+import com.example.ictmobile.services.CallExecutor
 import com.example.ictmobile.services.FirebaseService
+import java.text.SimpleDateFormat
 import java.util.*
 
 class BookMachineActivity : AppCompatActivity() {
     private lateinit var binding: ActivityBookMachineBinding
     private val firebaseService = FirebaseService.getInstance()
     private val malaysiaTimeZone = TimeZone.getTimeZone("Asia/Kuala_Lumpur")
+    private var machines: List<Machine> = emptyList()
+    private var availabilityGrid: AvailabilityGrid? = null
+    private var availabilityError: String? = null
     private var selectedMachine: Machine? = null
+    private var selectedPoolType: String? = null // "washer" or "dryer" when booking any machine of a type
+    private var chainedBooking = false // any washer followed by any dryer
+    private var selectedDryDuration: Int = 60 // minutes, for chained bookings
     private var selectedTemperature: String = "warm" // cold, warm, hot
     private var selectedDate: Calendar? = null
     private var selectedTime: Calendar? = null
     private var selectedDuration: Int = 60 // minutes
     private var datePickerDialog: DatePickerDialog? = null
     private var timePickerDialog: TimePickerDialog? = null
+    private val cart = Cart()
+    // Idempotency key of the request being submitted, kept while the request is unchanged
+    // so a retry after a timeout replays the first attempt instead of booking twice
+    private var requestKey: String? = null
+    private var requestFingerprint: String? = null
+    private val cartTimeFormat = SimpleDateFormat("dd/MM HH:mm", Locale.getDefault()).apply {
+        timeZone = malaysiaTimeZone
+    }
     
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -39,6 +62,7 @@ class BookMachineActivity : AppCompatActivity() {
         setupDurationSpinner()
         setupClickListeners()
         loadMachines()
+        releaseExpiredLeases()
     }
     
     override fun onDestroy() {
@@ -65,12 +89,19 @@ class BookMachineActivity : AppCompatActivity() {
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item)
         binding.spinnerDuration.adapter = adapter
         binding.spinnerDuration.setSelection(1) // Default to 1 hour
+        binding.spinnerDryDuration.adapter = adapter
+        binding.spinnerDryDuration.setSelection(1)
     }
     
     private fun setupClickListeners() {
         binding.btnSelectDate.setOnClickListener { showDatePicker() }
         binding.btnSelectTime.setOnClickListener { showTimePicker() }
         binding.btnNow.setOnClickListener { setToNearestAvailableTime() }
+        binding.btnAnyWasher.setOnClickListener { selectPool("washer") }
+        binding.btnAnyDryer.setOnClickListener { selectPool("dryer") }
+        binding.btnWashDry.setOnClickListener { selectWashAndDry() }
+        binding.timelineAvailability.onSlotTappedListener =
+            AvailabilityTimelineView.OnSlotTappedListener { index, millis -> onTimelineTapped(index, millis) }
         
         binding.rbCold.setOnClickListener { selectedTemperature = "cold"; updatePrice() }
         binding.rbWarm.setOnClickListener { selectedTemperature = "warm"; updatePrice() }
@@ -78,70 +109,252 @@ class BookMachineActivity : AppCompatActivity() {
         
         binding.spinnerDuration.onItemSelectedListener = object : android.widget.AdapterView.OnItemSelectedListener {
             override fun onItemSelected(parent: android.widget.AdapterView<*>?, view: android.view.View?, position: Int, id: Long) {
-                selectedDuration = when (position) {
-                    0 -> 30
-                    1 -> 60
-                    2 -> 90
-                    3 -> 120
-                    4 -> 150
-                    5 -> 180
-                    else -> 60
-                }
+                selectedDuration = durationForPosition(position)
+                updatePrice()
+                updateTimelineSelection()
+            }
+            override fun onNothingSelected(parent: android.widget.AdapterView<*>?) {}
+        }
+        
+        binding.spinnerDryDuration.onItemSelectedListener = object : android.widget.AdapterView.OnItemSelectedListener {
+            override fun onItemSelected(parent: android.widget.AdapterView<*>?, view: android.view.View?, position: Int, id: Long) {
+                selectedDryDuration = durationForPosition(position)
                 updatePrice()
             }
             override fun onNothingSelected(parent: android.widget.AdapterView<*>?) {}
         }
         
         binding.btnBookNow.setOnClickListener { createBooking() }
+        binding.btnAddToCart.setOnClickListener { addToCart() }
+        binding.btnClearCart.setOnClickListener {
+            cart.clear()
+            updateCartUI()
+        }
+        binding.btnCheckout.setOnClickListener { checkoutCart() }
+    }
+    
+    private fun durationForPosition(position: Int): Int {
+        return when (position) {
+            0 -> 30
+            1 -> 60
+            2 -> 90
+            3 -> 120
+            4 -> 150
+            5 -> 180
+            else -> 60
+        }
     }
     
     private fun loadMachines() {
-        android.util.Log.d("BookMachine", "Starting to load machines...")
+        AppLog.d("BookMachine") { "Starting to load machines..." }
         binding.progressBar.visibility = android.view.View.VISIBLE
         
-        firebaseService.getMachines(null)
+        // Paint the cached (or bundled) catalog right away; the server result replaces it
+        firebaseService.getCachedMachines(this)
             .addOnSuccessListener { machines ->
-                android.util.Log.d("BookMachine", "Machines loaded successfully: ${machines.size} machines")
-                binding.progressBar.visibility = android.view.View.GONE
-                
-                try {
-                    val adapter = MachineAdapter(machines) { machine ->
-                        selectedMachine = machine
-                        updateSelectedMachineUI()
-                        updatePrice()
-                    }
-                    binding.rvMachines.adapter = adapter
-                    android.util.Log.d("BookMachine", "Adapter set successfully")
-                } catch (e: Exception) {
-                    android.util.Log.e("BookMachine", "Error setting adapter: ${e.message}", e)
-                    Toast.makeText(this, "Error displaying machines: ${e.message}", Toast.LENGTH_SHORT).show()
+                if (this.machines.isEmpty()) {
+                    AppLog.d("BookMachine") { "Showing ${machines.size} cached machines" }
+                    showMachines(machines)
                 }
             }
+        
+        CallExecutor.execute("getMachines", CallExecutor.Policy.READ) { firebaseService.getMachines(null) }
+            .addOnSuccessListener { machines ->
+                AppLog.d("BookMachine") { "Machines loaded successfully: ${machines.size} machines" }
+                binding.progressBar.visibility = android.view.View.GONE
+                // Keep the cached list (and the selection in it) when nothing changed
+                if (machines != this.machines) showMachines(machines)
+                loadAvailability()
+            }
             .addOnFailureListener { exception ->
-                android.util.Log.e("BookMachine", "Failed to load machines: ${exception.message}", exception)
+                AppLog.e("BookMachine", exception) { "Failed to load machines: ${exception.message}" }
                 binding.progressBar.visibility = android.view.View.GONE
                 Toast.makeText(this, "Failed to load machines: ${exception.message}", Toast.LENGTH_LONG).show()
             }
     }
     
-    private fun updateSelectedMachineUI() {
-        selectedMachine?.let { machine ->
-            // Use the same formatting logic as the adapter
-            val displayName = when {
-                machine.machineName.isNotEmpty() -> machine.machineName
-                machine.id.isNotEmpty() -> {
-                    // Format ID like "dryer_1" -> "Dryer 1" or "washer_1" -> "Washer 1"
-                    machine.id.replace("_", " ").split(" ").joinToString(" ") { word ->
-                        word.lowercase().replaceFirstChar { it.uppercase() }
-                    }
+    private fun showMachines(machines: List<Machine>) {
+        this.machines = machines
+        // A machine picked from the cached list takes the server's price and status
+        selectedMachine?.let { picked ->
+            selectedMachine = machines.find { it.id == picked.id }
+            updateSelectedMachineUI()
+            updatePrice()
+        }
+        try {
+            val adapter = MachineAdapter(machines) { machine ->
+                selectedMachine = machine
+                selectedPoolType = null
+                setChainedBooking(false)
+                updateSelectedMachineUI()
+                updatePrice()
+                updateTimelineSelection()
+            }
+            binding.rvMachines.adapter = adapter
+            AppLog.d("BookMachine") { "Adapter set successfully" }
+        } catch (e: Exception) {
+            AppLog.e("BookMachine", e) { "Error setting adapter: ${e.message}" }
+            Toast.makeText(this, "Error displaying machines: ${e.message}", Toast.LENGTH_SHORT).show()
+        }
+    }
+    
+    /**
+     * Loads every booking in the next 24 hours (paid, or held by a running checkout
+     * lease) from the slot locks and folds them into per-machine minute bitsets for the
+     * timeline and the "Now" search. If that fails the grid stays unset, so nothing is
+     * offered as free.
+     */
+    private fun loadAvailability() {
+        val windowStart = AvailabilityGrid.floorToMinute(System.currentTimeMillis())
+        val grid = AvailabilityGrid(windowStart, machines.map { it.id })
+        
+        CallExecutor.execute("getBookingsInWindow", CallExecutor.Policy.READ) {
+            firebaseService.getBookingsInWindow(Date(windowStart), Date(grid.windowEnd))
+        }
+            .addOnSuccessListener { bookings ->
+                for (booking in bookings) {
+                    grid.markBusy(booking.machineId, booking.startMillis, booking.endMillis)
                 }
-                else -> "Unknown Machine"
+                availabilityGrid = grid
+                availabilityError = null
+                binding.timelineAvailability.setGrid(grid, machines.map { displayName(it) }, malaysiaTimeZone)
+                binding.tvTimelineHint.text = "Red is booked. Tap a row to pick the first free slot from that time."
+                updateTimelineSelection()
+                AppLog.d("BookMachine") { "Availability loaded: ${bookings.size} bookings" }
             }
-            binding.tvSelectedMachine.text = "Selected: $displayName"
-            binding.tvSelectedMachine.visibility = android.view.View.VISIBLE
-            android.util.Log.d("BookMachine", "Selected machine - Name: '${machine.machineName}', ID: '${machine.id}', Display: '$displayName'")
-        } ?: run {
-            binding.tvSelectedMachine.visibility = android.view.View.GONE
+            .addOnFailureListener { exception ->
+                AppLog.e("BookMachine", exception) { "Failed to load availability: ${exception.message}" }
+                availabilityGrid = null
+                availabilityError = "Availability unavailable: ${exception.message}"
+                binding.tvTimelineHint.text = availabilityError
+            }
+    }
+    
+    /**
+     * Opportunistic sweep of the user's abandoned checkouts. Lapsed leases already show
+     * as free, so this only tidies their orders and slot locks and nothing waits on it.
+     * Any alarms still set for a cancelled order go with it.
+     */
+    private fun releaseExpiredLeases() {
+        val currentUser = firebaseService.getCurrentUser() ?: return
+        firebaseService.releaseExpiredLeases(currentUser.uid)
+            .addOnSuccessListener { released ->
+                for (orderId in released) {
+                    CycleAlarmScheduler.cancel(applicationContext, orderId)
+                }
+                AppLog.d("BookMachine") { "Released ${released.size} expired checkout leases" }
+            }
+            .addOnFailureListener { exception ->
+                AppLog.w("BookMachine") { "Lease sweep failed: ${exception.message}" }
+            }
+    }
+    
+    private fun displayName(machine: Machine): String {
+        return when {
+            machine.machineName.isNotEmpty() -> machine.machineName
+            machine.id.isNotEmpty() -> {
+                // Format ID like "dryer_1" -> "Dryer 1" or "washer_1" -> "Washer 1"
+                machine.id.replace("_", " ").split(" ").joinToString(" ") { word ->
+                    word.lowercase().replaceFirstChar { it.uppercase() }
+                }
+            }
+            else -> "Unknown Machine"
+        }
+    }
+    
+    private fun onTimelineTapped(index: Int, millis: Long) {
+        val machine = machines[index]
+        if (machine.status != "available") {
+            Toast.makeText(this, "${displayName(machine)} is unavailable", Toast.LENGTH_SHORT).show()
+            return
+        }
+        selectedMachine = machine
+        selectedPoolType = null
+        setChainedBooking(false)
+        updateSelectedMachineUI()
+        updatePrice()
+        selectEarliestFreeSlot(millis)
+    }
+    
+    private fun selectPool(type: String) {
+        selectedPoolType = type
+        selectedMachine = null
+        setChainedBooking(false)
+        updateSelectedMachineUI()
+        updatePrice()
+        updateTimelineSelection()
+    }
+    
+    private fun selectWashAndDry() {
+        selectedPoolType = null
+        selectedMachine = null
+        setChainedBooking(true)
+        updateSelectedMachineUI()
+        updatePrice()
+        updateTimelineSelection()
+    }
+    
+    private fun setChainedBooking(enabled: Boolean) {
+        chainedBooking = enabled
+        binding.layoutDryDuration.visibility = if (enabled) android.view.View.VISIBLE else android.view.View.GONE
+    }
+    
+    /** Wash start of the wash + dry pair that finishes first, or -1. */
+    private fun earliestWashAndDry(grid: AvailabilityGrid, fromMillis: Long): Long {
+        val available = machines.indices.filter { machines[it].status == "available" }
+        val washers = available.filter { machines[it].type == "washer" }.toIntArray()
+        val dryers = available.filter { machines[it].type == "dryer" }.toIntArray()
+        val fromMinute = ((fromMillis - grid.windowStart + AvailabilityGrid.MINUTE_MILLIS - 1) / AvailabilityGrid.MINUTE_MILLIS).toInt()
+        val chain = ChainScheduler.schedule(
+            grid, washers, dryers, fromMinute, AvailabilityGrid.WINDOW_MINUTES - 1, selectedDuration, selectedDryDuration
+        ) ?: return -1L
+        return grid.windowStart + chain.washStart * AvailabilityGrid.MINUTE_MILLIS
+    }
+    
+    /** Start time picked in the date and time fields, or null if either is missing. */
+    private fun selectedStartMillis(): Long? {
+        val date = selectedDate ?: return null
+        val time = selectedTime ?: return null
+        return Calendar.getInstance(malaysiaTimeZone).apply {
+            timeInMillis = date.timeInMillis
+            set(Calendar.HOUR_OF_DAY, time.get(Calendar.HOUR_OF_DAY))
+            set(Calendar.MINUTE, time.get(Calendar.MINUTE))
+            set(Calendar.SECOND, 0)
+            set(Calendar.MILLISECOND, 0)
+        }.timeInMillis
+    }
+    
+    private fun updateTimelineSelection() {
+        val grid = availabilityGrid ?: return
+        val index = selectedMachine?.let { grid.indexOf(it.id) } ?: -1
+        val start = selectedStartMillis()
+        if (index < 0 || start == null) {
+            binding.timelineAvailability.clearSelection()
+            return
+        }
+        binding.timelineAvailability.setSelection(index, start, start + selectedDuration * AvailabilityGrid.MINUTE_MILLIS)
+    }
+    
+    private fun updateSelectedMachineUI() {
+        val machine = selectedMachine
+        val poolType = selectedPoolType
+        when {
+            machine != null -> {
+                // Use the same formatting logic as the adapter
+                val displayName = displayName(machine)
+                binding.tvSelectedMachine.text = "Selected: $displayName"
+                binding.tvSelectedMachine.visibility = android.view.View.VISIBLE
+                AppLog.d("BookMachine") { "Selected machine - Name: '${machine.machineName}', ID: '${machine.id}', Display: '$displayName'" }
+            }
+            chainedBooking -> {
+                binding.tvSelectedMachine.text = "Selected: Wash + Dry (any washer, then any dryer as soon as it ends)"
+                binding.tvSelectedMachine.visibility = android.view.View.VISIBLE
+            }
+            poolType != null -> {
+                binding.tvSelectedMachine.text = "Selected: Any $poolType (best fit, starts within ${POOL_START_FLEX_MINUTES / 60} hour of your time)"
+                binding.tvSelectedMachine.visibility = android.view.View.VISIBLE
+            }
+            else -> binding.tvSelectedMachine.visibility = android.view.View.GONE
         }
     }
     
@@ -221,30 +434,63 @@ class BookMachineActivity : AppCompatActivity() {
     }
     
     private fun setToNearestAvailableTime() {
-        val now = Calendar.getInstance(malaysiaTimeZone)
-        val nearestTime = Calendar.getInstance(malaysiaTimeZone).apply {
-            // Add 1 minute to current time
+        // Earliest allowed start: the next whole minute after now + 1 minute
+        val earliestAllowed = Calendar.getInstance(malaysiaTimeZone).apply {
             add(Calendar.MINUTE, 1)
-            // Round up to the next minute (clear seconds and milliseconds)
             set(Calendar.SECOND, 0)
             set(Calendar.MILLISECOND, 0)
         }
+        selectEarliestFreeSlot(earliestAllowed.timeInMillis)
+    }
+    
+    /** Sets date and time to the selected machine's first free slot at or after [fromMillis]. */
+    private fun selectEarliestFreeSlot(fromMillis: Long) {
+        val poolType = selectedPoolType
+        val machine = selectedMachine
+        if (machine == null && poolType == null && !chainedBooking) {
+            Toast.makeText(this, "Please select a machine", Toast.LENGTH_SHORT).show()
+            return
+        }
+        val grid = availabilityGrid
+        if (grid == null) {
+            Toast.makeText(this, availabilityError ?: "Availability is still loading", Toast.LENGTH_SHORT).show()
+            return
+        }
         
-        // Check if the nearest time is within 24 hours
+        val minimumStart = Calendar.getInstance(malaysiaTimeZone).apply {
+            add(Calendar.MINUTE, 1)
+            set(Calendar.SECOND, 0)
+            set(Calendar.MILLISECOND, 0)
+        }.timeInMillis
+        val from = maxOf(fromMillis, minimumStart)
+        val start = if (machine != null) {
+            grid.earliestStart(machine.id, from, selectedDuration)
+        } else if (chainedBooking) {
+            earliestWashAndDry(grid, from)
+        } else {
+            // Earliest start on any available machine of the pool type
+            machines.filter { it.type == poolType && it.status == "available" }
+                .map { grid.earliestStart(it.id, from, selectedDuration) }
+                .filter { it >= 0 }
+                .minOrNull() ?: -1L
+        }
+        
+        // Check the slot is within 24 hours
         val maxDateTime = Calendar.getInstance(malaysiaTimeZone).apply {
             add(Calendar.HOUR_OF_DAY, 24)
         }
-        
-        if (nearestTime.after(maxDateTime)) {
-            Toast.makeText(this, "Cannot book more than 24 hours in advance", Toast.LENGTH_SHORT).show()
+        if (start < 0 || start > maxDateTime.timeInMillis) {
+            Toast.makeText(this, "No free ${selectedDuration}-minute slot in the next 24 hours", Toast.LENGTH_SHORT).show()
             return
         }
         
         // Set date and time
         selectedDate = Calendar.getInstance(malaysiaTimeZone).apply {
-            timeInMillis = nearestTime.timeInMillis
+            timeInMillis = start
+        }
+        selectedTime = Calendar.getInstance(malaysiaTimeZone).apply {
+            timeInMillis = start
         }
-        selectedTime = nearestTime
         
         // Update displays
         updateDateDisplay()
@@ -253,7 +499,7 @@ class BookMachineActivity : AppCompatActivity() {
         // Validate
         validateDateTime()
         
-        Toast.makeText(this, "Time set to nearest available slot", Toast.LENGTH_SHORT).show()
+        Toast.makeText(this, "Time set to earliest free slot: ${binding.btnSelectTime.text}", Toast.LENGTH_SHORT).show()
     }
     
     private fun validateDateTime() {
@@ -293,11 +539,13 @@ class BookMachineActivity : AppCompatActivity() {
                 updateTimeDisplay()
             }
         }
+        updateTimelineSelection()
     }
     
     private fun updatePrice() {
-        selectedMachine?.let { machine ->
-            val hours = selectedDuration / 60.0
+        if (selectedMachine != null || selectedPoolType != null || chainedBooking) {
+            val minutes = if (chainedBooking) selectedDuration + selectedDryDuration else selectedDuration
+            val hours = minutes / 60.0
             val basePrice = when (selectedTemperature) {
                 "cold" -> 4.0
                 "warm" -> 5.0
@@ -306,13 +554,13 @@ class BookMachineActivity : AppCompatActivity() {
             }
             val totalPrice = basePrice * hours
             binding.tvPrice.text = "RM ${String.format("%.2f", totalPrice)}"
-        } ?: run {
+        } else {
             binding.tvPrice.text = "RM 0.00"
         }
     }
     
     private fun createBooking() {
-        if (selectedMachine == null) {
+        if (selectedMachine == null && selectedPoolType == null && !chainedBooking) {
             Toast.makeText(this, "Please select a machine", Toast.LENGTH_SHORT).show()
             return
         }
@@ -359,35 +607,179 @@ class BookMachineActivity : AppCompatActivity() {
         binding.progressBar.visibility = android.view.View.VISIBLE
         binding.btnBookNow.isEnabled = false
         
-        android.util.Log.d("BookMachine", "Creating order with startTime: ${startTime.time}, endTime: ${endTime.time}")
+        AppLog.d("BookMachine") { "Creating order with startTime: ${startTime.time}, endTime: ${endTime.time}" }
+        
+        // Captured once, so a retry books exactly what this tap asked for
+        val poolType = selectedPoolType
+        val machineId = selectedMachine?.id
+        val chained = chainedBooking
+        val temperature = selectedTemperature
+        val duration = selectedDuration
+        val dryDuration = selectedDryDuration
+        val idempotencyKey = idempotencyKeyFor(
+            "book|$machineId|$poolType|$chained|${startTime.timeInMillis}|$duration|$dryDuration|$temperature"
+        )
+        val operation = when {
+            chained -> "createChainedOrder"
+            poolType != null -> "createPoolOrder"
+            else -> "createOrder"
+        }
+        // Safe to retry: the idempotency key makes a repeated attempt replay the first one
+        val orderTask = CallExecutor.execute(operation, CallExecutor.Policy.IDEMPOTENT_WRITE) {
+            if (chained) {
+                // Washer starts in the flex window, dryer follows as soon as one is free
+                val latestStart = Date(startTime.timeInMillis + POOL_START_FLEX_MINUTES * AvailabilityGrid.MINUTE_MILLIS)
+                firebaseService.createChainedOrder(
+                    currentUser.uid,
+                    temperature,
+                    startTime.time,
+                    latestStart,
+                    duration,
+                    dryDuration,
+                    idempotencyKey
+                )
+            } else if (poolType != null) {
+                // Any machine of the type, starting anywhere in the flex window after the chosen time
+                val latestStart = Date(startTime.timeInMillis + POOL_START_FLEX_MINUTES * AvailabilityGrid.MINUTE_MILLIS)
+                firebaseService.createPoolOrder(
+                    currentUser.uid,
+                    poolType,
+                    temperature,
+                    startTime.time,
+                    latestStart,
+                    duration,
+                    idempotencyKey
+                )
+            } else {
+                firebaseService.createOrder(
+                    currentUser.uid,
+                    machineId!!,
+                    temperature,
+                    startTime.time,
+                    endTime.time,
+                    idempotencyKey
+                )
+            }
+        }
         
-        firebaseService.createOrder(
-            currentUser.uid,
-            selectedMachine!!.id,
-            selectedTemperature,
-            startTime.time,
-            endTime.time
-        ).addOnSuccessListener { orderId ->
+        orderTask.addOnSuccessListener { orderId ->
             binding.progressBar.visibility = android.view.View.GONE
             binding.btnBookNow.isEnabled = true
-            android.util.Log.d("BookMachine", "Order created successfully with ID: $orderId")
-            Toast.makeText(this, "Booking created successfully!", Toast.LENGTH_SHORT).show()
-            
-            // Dismiss any open dialogs before navigating
-            datePickerDialog?.dismiss()
-            timePickerDialog?.dismiss()
-            
-            // Navigate to payment
-            val intent = android.content.Intent(this, PaymentActivity::class.java)
-            intent.putExtra("order_id", orderId)
-            android.util.Log.d("BookMachine", "Navigating to PaymentActivity with order_id: $orderId")
-            startActivity(intent)
-            finish()
+            AppLog.d("BookMachine") { "Order created successfully with ID: $orderId" }
+            Toast.makeText(this, "Slot held for ${SlotLocks.LEASE_MINUTES} minutes. Complete payment to confirm.", Toast.LENGTH_LONG).show()
+            openPayment(orderId)
         }.addOnFailureListener { exception ->
             binding.progressBar.visibility = android.view.View.GONE
             binding.btnBookNow.isEnabled = true
-            android.util.Log.e("BookMachine", "Booking failed: ${exception.message}", exception)
+            AppLog.e("BookMachine", exception) { "Booking failed: ${exception.message}" }
             Toast.makeText(this, "Booking failed: ${exception.message}", Toast.LENGTH_LONG).show()
         }
     }
+    
+    /** Reuses the current key while [fingerprint] (the request's inputs) is unchanged. */
+    private fun idempotencyKeyFor(fingerprint: String): String {
+        val key = requestKey
+        if (key != null && fingerprint == requestFingerprint) {
+            return key
+        }
+        return UUID.randomUUID().toString().also {
+            requestKey = it
+            requestFingerprint = fingerprint
+        }
+    }
+    
+    private fun openPayment(orderId: String) {
+        // Dismiss any open dialogs before navigating
+        datePickerDialog?.dismiss()
+        timePickerDialog?.dismiss()
+        
+        // Navigate to payment
+        val intent = android.content.Intent(this, PaymentActivity::class.java)
+        intent.putExtra("order_id", orderId)
+        AppLog.d("BookMachine") { "Navigating to PaymentActivity with order_id: $orderId" }
+        startActivity(intent)
+        finish()
+    }
+    
+    /** Puts the selected machine and time in the cart instead of booking it straight away. */
+    private fun addToCart() {
+        val machine = selectedMachine
+        if (machine == null) {
+            Toast.makeText(this, "Pick a specific machine to add it to the cart", Toast.LENGTH_SHORT).show()
+            return
+        }
+        val start = selectedStartMillis()
+        if (start == null) {
+            Toast.makeText(this, "Please select date and time", Toast.LENGTH_SHORT).show()
+            return
+        }
+        if (start < System.currentTimeMillis() + AvailabilityGrid.MINUTE_MILLIS) {
+            Toast.makeText(this, "Selected time must be at least 1 minute in the future", Toast.LENGTH_SHORT).show()
+            return
+        }
+        val end = start + selectedDuration * AvailabilityGrid.MINUTE_MILLIS
+        if (availabilityGrid?.isFree(machine.id, start, end) == false) {
+            Toast.makeText(this, "${displayName(machine)} is already booked at that time", Toast.LENGTH_SHORT).show()
+            return
+        }
+        if (cart.isFull) {
+            Toast.makeText(this, "A cart holds at most ${Cart.MAX_ITEMS} bookings", Toast.LENGTH_SHORT).show()
+            return
+        }
+        if (!cart.add(CartItem(machine, selectedTemperature, Date(start), Date(end)))) {
+            Toast.makeText(this, "That overlaps a booking already in your cart", Toast.LENGTH_SHORT).show()
+            return
+        }
+        updateCartUI()
+        Toast.makeText(this, "${displayName(machine)} added to cart", Toast.LENGTH_SHORT).show()
+    }
+    
+    private fun updateCartUI() {
+        if (cart.size == 0) {
+            binding.layoutCart.visibility = android.view.View.GONE
+            return
+        }
+        binding.layoutCart.visibility = android.view.View.VISIBLE
+        val lines = cart.items().joinToString("\n") { item ->
+            "${displayName(item.machine)}: ${cartTimeFormat.format(item.startTime)}, ${item.durationMinutes} min (${item.temperature})"
+        }
+        binding.tvCartSummary.text = "Cart: ${cart.size} booking(s)\n$lines\nTotal: RM ${String.format("%.2f", cart.total)}"
+    }
+    
+    /** Books everything in the cart with one transaction and one payment. */
+    private fun checkoutCart() {
+        val currentUser = firebaseService.getCurrentUser()
+        if (currentUser == null) {
+            Toast.makeText(this, "User not logged in", Toast.LENGTH_SHORT).show()
+            return
+        }
+        
+        binding.progressBar.visibility = android.view.View.VISIBLE
+        binding.btnCheckout.isEnabled = false
+        val items = cart.items()
+        val idempotencyKey = idempotencyKeyFor("cart|$items")
+        CallExecutor.execute("checkoutCart", CallExecutor.Policy.IDEMPOTENT_WRITE) {
+            firebaseService.checkoutCart(currentUser.uid, items, idempotencyKey)
+        }
+            .addOnSuccessListener { orderId ->
+                binding.progressBar.visibility = android.view.View.GONE
+                binding.btnCheckout.isEnabled = true
+                AppLog.d("BookMachine") { "Cart checked out, first order: $orderId" }
+                cart.clear()
+                updateCartUI()
+                Toast.makeText(this, "Slots held for ${SlotLocks.LEASE_MINUTES} minutes. Complete payment to confirm.", Toast.LENGTH_LONG).show()
+                openPayment(orderId)
+            }
+            .addOnFailureListener { exception ->
+                binding.progressBar.visibility = android.view.View.GONE
+                binding.btnCheckout.isEnabled = true
+                AppLog.e("BookMachine", exception) { "Cart checkout failed: ${exception.message}" }
+                Toast.makeText(this, "Checkout failed: ${exception.message}", Toast.LENGTH_LONG).show()
+            }
+    }
+    
+    companion object {
+        // How far past the chosen time a pool booking may be placed
+        private const val POOL_START_FLEX_MINUTES = 60
+    }
 }
@@ -2,14 +2,14 @@ package com.example.ictmobile.ui.customer
 
 import android.content.Intent
 import android.os.Bundle
-import android.os.Handler
-import android.os.Looper
 import android.view.Gravity
 import android.view.View
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import androidx.drawerlayout.widget.DrawerLayout
 import com.example.ictmobile.databinding.ActivityDashboardBinding
+import com.example.ictmobile.diagnostics.StartupTrace
+import com.example.ictmobile.services.CallExecutor
 import com.example.ictmobile.services.FirebaseService
 import com.example.ictmobile.ui.auth.LoginActivity
 import com.example.ictmobile.ui.customer.BookMachineActivity
@@ -17,62 +17,62 @@ import com.example.ictmobile.ui.customer.OrderHistoryActivity
 import com.example.ictmobile.ui.customer.MinigameActivity
 import com.example.ictmobile.ui.customer.VouchersActivity
 import com.example.ictmobile.ui.customer.SettingsActivity
-import java.text.SimpleDateFormat
+import com.example.ictmobile.utils.SecondTicker
+import com.example.ictmobile.utils.TimeFormat
 import java.util.*
 
 class DashboardActivity : AppCompatActivity() {
     private lateinit var binding: ActivityDashboardBinding
     private val firebaseService = FirebaseService.getInstance()
-    private val handler = Handler(Looper.getMainLooper())
     private val malaysiaTimeZone = TimeZone.getTimeZone("Asia/Kuala_Lumpur")
-    private val clockRunnable = object : Runnable {
-        override fun run() {
-            updateClock()
-            handler.postDelayed(this, 1000)
-        }
-    }
+    
+    // Reused every tick; the date is only rewritten when the day changes
+    private val clockChars = CharArray(TimeFormat.CLOCK_LENGTH)
+    private val dateChars = CharArray(TimeFormat.DATE_LENGTH)
+    private var shownEpochDay = Long.MIN_VALUE
     
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         binding = ActivityDashboardBinding.inflate(layoutInflater)
         setContentView(binding.root)
+        StartupTrace.finishOnFirstFrame(this, "dashboard")
         
         loadUserData()
         setupClickListeners()
         setupSidebar()
         startClock()
+        requestNotificationPermission()
     }
     
-    private fun startClock() {
-        updateClock()
-        handler.postDelayed(clockRunnable, 1000)
+    private fun requestNotificationPermission() {
+        // Needed on Android 13+ for cycle start/end notifications
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU &&
+            checkSelfPermission(android.Manifest.permission.POST_NOTIFICATIONS) != android.content.pm.PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(arrayOf(android.Manifest.permission.POST_NOTIFICATIONS), 0)
+        }
     }
     
-    private fun updateClock() {
-        try {
-            val calendar = Calendar.getInstance(malaysiaTimeZone)
-            
-            // Format time as "HH : MM : SS" (with spaces around colons)
-            val hours = String.format("%02d", calendar.get(Calendar.HOUR_OF_DAY))
-            val minutes = String.format("%02d", calendar.get(Calendar.MINUTE))
-            val seconds = String.format("%02d", calendar.get(Calendar.SECOND))
-            binding.tvClockTime.text = "$hours : $minutes : $seconds"
-            binding.tvClockTime.visibility = android.view.View.VISIBLE
-            
-            // Format date as "DD/MM/YYYY"
-            val day = String.format("%02d", calendar.get(Calendar.DAY_OF_MONTH))
-            val month = String.format("%02d", calendar.get(Calendar.MONTH) + 1)
-            val year = calendar.get(Calendar.YEAR)
-            binding.tvClockDate.text = "$day/$month/$year"
-            binding.tvClockDate.visibility = android.view.View.VISIBLE
-        } catch (e: Exception) {
-            android.util.Log.e("DashboardActivity", "Error updating clock: ${e.message}")
-        }
+    private fun startClock() {
+        binding.tvClockTime.visibility = android.view.View.VISIBLE
+        binding.tvClockDate.visibility = android.view.View.VISIBLE
+        // Ticks only while the dashboard is started
+        SecondTicker.bind(this) { now -> updateClock(now) }
     }
     
-    override fun onDestroy() {
-        super.onDestroy()
-        handler.removeCallbacks(clockRunnable)
+    private fun updateClock(nowMillis: Long) {
+        val localMillis = TimeFormat.localMillis(nowMillis, malaysiaTimeZone)
+        
+        // Format time as "HH : MM : SS" (with spaces around colons)
+        val clockLength = TimeFormat.formatClock(localMillis, clockChars)
+        binding.tvClockTime.setText(clockChars, 0, clockLength)
+        
+        // Format date as "DD/MM/YYYY"
+        val epochDay = TimeFormat.epochDay(localMillis)
+        if (epochDay != shownEpochDay) {
+            shownEpochDay = epochDay
+            val dateLength = TimeFormat.formatDate(epochDay, dateChars)
+            binding.tvClockDate.setText(dateChars, 0, dateLength)
+        }
     }
     
     private fun setupSidebar() {
@@ -130,7 +130,7 @@ class DashboardActivity : AppCompatActivity() {
     private fun loadTokenCount() {
         val currentUser = firebaseService.getCurrentUser()
         if (currentUser != null) {
-            firebaseService.getAvailableTokensCount(currentUser.uid)
+            CallExecutor.execute("getAvailableTokensCount", CallExecutor.Policy.READ) { firebaseService.getAvailableTokensCount(currentUser.uid) }
                 .addOnSuccessListener { count ->
                     binding.tvTokens.text = "Tokens: $count"
                 }
@@ -1,12 +1,21 @@
 package com.example.ictmobile.ui.customer
 
 import android.os.Bundle
+import android.view.View
+import android.widget.ImageView
+import android.widget.LinearLayout
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import com.example.ictmobile.R
 import com.example.ictmobile.databinding.ActivityMinigameBinding
+import com.example.ictmobile.diagnostics.AppLog
+import com.example.ictmobile.game.BlackjackEngine
+import com.example.ictmobile.game.CardBitmapCache
+import com.example.ictmobile.game.CardDrawables
+import com.example.ictmobile.game.Cards
+import com.example.ictmobile.game.Hand
+import com.example.ictmobile.services.AvatarLoader
 import com.example.ictmobile.services.FirebaseService
-import kotlin.random.Random
 
 class MinigameActivity : AppCompatActivity() {
     private lateinit var binding: ActivityMinigameBinding
@@ -16,44 +25,25 @@ class MinigameActivity : AppCompatActivity() {
     private var gameStarted = false
     private var gameEnded = false
     
-    // Card data
-    private val suits = listOf("clover", "diamond", "love", "spade")
-    private val ranks = listOf("A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K")
-    private val deck = mutableListOf<Card>()
-    private val dealerHand = mutableListOf<Card>()
-    private val playerHand = mutableListOf<Card>()
+    // Game rules live in the engine; the activity only animates its state
+    private val engine = BlackjackEngine()
+    private val dealerHand get() = engine.dealerHand
+    private val playerHand get() = engine.playerHand
     
-    data class Card(val rank: String, val suit: String) {
-        val value: Int
-            get() = when (rank) {
-                "A" -> 11 // Will be adjusted in score calculation
-                "J", "Q", "K" -> 10
-                else -> rank.toIntOrNull() ?: 0
-            }
-        
-        val imageName: String
-            get() {
-                // For numbered cards (2-10), use card_ prefix
-                return if (rank.matches(Regex("[0-9]+"))) {
-                    "card_${rank}_${suit}.png"
-                } else {
-                    val rankName = when (rank) {
-                        "A" -> "Ace"
-                        "J" -> "jack"
-                        "Q" -> "queen"
-                        "K" -> "king"
-                        else -> rank
-                    }
-                    "${rankName.lowercase()}_${suit}.png"
-                }
-            }
-    }
+    // Card views are created once per slot and reused across rounds
+    private val dealerCardViews = ArrayList<ImageView>(Hand.MAX_CARDS)
+    private val playerCardViews = ArrayList<ImageView>(Hand.MAX_CARDS)
+    private var cardSizePx = 0
     
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         binding = ActivityMinigameBinding.inflate(layoutInflater)
         setContentView(binding.root)
         
+        // Make cards bigger - 120dp instead of app_icon_size
+        cardSizePx = (120 * resources.displayMetrics.density).toInt()
+        CardBitmapCache.preload(resources, cardSizePx, R.drawable.cardback)
+        
         binding.btnBack.setOnClickListener {
             finish()
         }
@@ -68,32 +58,12 @@ class MinigameActivity : AppCompatActivity() {
         if (currentUser != null) {
             firebaseService.getCurrentUserData()
                 .addOnSuccessListener { user ->
-                    try {
-                        val pictureName = user.profilePicture.ifEmpty { "king.png" }
-                        val inputStream = assets.open("profilepictures/$pictureName")
-                        binding.ivPlayerAvatar.setImageBitmap(android.graphics.BitmapFactory.decodeStream(inputStream))
-                        inputStream.close()
-                    } catch (e: Exception) {
-                        // Use default if not found
-                        try {
-                            val defaultStream = assets.open("profilepictures/king.png")
-                            binding.ivPlayerAvatar.setImageBitmap(android.graphics.BitmapFactory.decodeStream(defaultStream))
-                            defaultStream.close()
-                        } catch (e2: Exception) {
-                            android.util.Log.e("Minigame", "Failed to load profile picture: ${e2.message}")
-                        }
-                    }
+                    AvatarLoader.load(binding.ivPlayerAvatar, user.profilePicture)
                 }
                 .addOnFailureListener { exception ->
-                    android.util.Log.e("Minigame", "Failed to load user data: ${exception.message}")
+                    AppLog.e("Minigame", exception) { "Failed to load user data: ${exception.message}" }
                     // Load default picture
-                    try {
-                        val defaultStream = assets.open("profilepictures/king.png")
-                        binding.ivPlayerAvatar.setImageBitmap(android.graphics.BitmapFactory.decodeStream(defaultStream))
-                        defaultStream.close()
-                    } catch (e: Exception) {
-                        // Ignore
-                    }
+                    AvatarLoader.load(binding.ivPlayerAvatar, null)
                 }
         }
     }
@@ -103,12 +73,16 @@ class MinigameActivity : AppCompatActivity() {
         if (currentUser != null) {
             firebaseService.getAvailableTokensCount(currentUser.uid)
                 .addOnSuccessListener { count ->
-                    availableTokens = count
-                    binding.tvTokenCount.text = "Tokens Available: $count"
+                    showTokenCount(count)
                 }
         }
     }
     
+    private fun showTokenCount(count: Int) {
+        availableTokens = count
+        binding.tvTokenCount.text = "Tokens Available: $count"
+    }
+    
     private fun setupClickListeners() {
         binding.btnPlayWithToken.setOnClickListener { startGame(false) }
         binding.btnFreeplay.setOnClickListener { startGame(true) }
@@ -117,76 +91,51 @@ class MinigameActivity : AppCompatActivity() {
         binding.btnPlayAgain.setOnClickListener { resetGame() }
     }
     
-    private fun createDeck() {
-        deck.clear()
-        for (rank in ranks) {
-            for (suit in suits) {
-                deck.add(Card(rank, suit))
-            }
-        }
-        deck.shuffle()
+    private fun calculateScore(hand: Hand): Int {
+        return hand.score()
     }
     
-    private fun dealCard(): Card {
-        if (deck.isEmpty()) {
-            createDeck()
+    private fun setCardImage(imageView: ImageView, resId: Int) {
+        val bitmap = CardBitmapCache.get(resId)
+        if (bitmap != null) {
+            imageView.tag = null
+            imageView.setImageBitmap(bitmap)
+            return
         }
-        return deck.removeAt(deck.size - 1)
-    }
-    
-    private fun calculateScore(hand: List<Card>): Int {
-        var score = 0
-        var aces = 0
         
-        for (card in hand) {
-            if (card.rank == "A") {
-                aces++
-                score += 11
-            } else {
-                score += card.value
+        // Dealt before the preload reached this card: show the back and decode it off the
+        // main thread, unless the view has been given another card by then
+        imageView.tag = resId
+        imageView.setImageBitmap(CardBitmapCache.get(R.drawable.cardback))
+        CardBitmapCache.load(resources, resId, cardSizePx) { loaded ->
+            if (loaded != null && imageView.tag == resId) {
+                imageView.setImageBitmap(loaded)
             }
         }
-        
-        // Adjust for aces
-        while (score > 21 && aces > 0) {
-            score -= 10
-            aces--
-        }
-        
-        return score
-    }
-    
-    private fun getCardResource(card: Card): Int {
-        // Remove .png extension and use the image name directly
-        val resourceName = card.imageName.replace(".png", "")
-        return resources.getIdentifier(resourceName, "drawable", packageName)
     }
     
-    private fun displayCard(container: android.widget.LinearLayout, card: Card, hidden: Boolean) {
-        val imageView = android.widget.ImageView(this)
-        // Make cards bigger - 120dp instead of app_icon_size
-        val cardSize = (120 * resources.displayMetrics.density).toInt()
-        val layoutParams = android.widget.LinearLayout.LayoutParams(
-            cardSize,
-            cardSize
-        ).apply {
-            marginEnd = 12
-        }
-        imageView.layoutParams = layoutParams
-        imageView.scaleType = android.widget.ImageView.ScaleType.FIT_CENTER
-        
-        if (hidden) {
-            imageView.setImageResource(R.drawable.cardback)
+    private fun displayCard(container: LinearLayout, views: ArrayList<ImageView>, index: Int, card: Int, hidden: Boolean) {
+        val imageView = if (index < views.size) {
+            views[index]
         } else {
-            val resId = getCardResource(card)
-            if (resId != 0) {
-                imageView.setImageResource(resId)
-            } else {
-                imageView.setImageResource(R.drawable.cardback)
+            ImageView(this).apply {
+                layoutParams = LinearLayout.LayoutParams(cardSizePx, cardSizePx).apply {
+                    marginEnd = 12
+                }
+                scaleType = ImageView.ScaleType.FIT_CENTER
+                container.addView(this)
+                views.add(this)
             }
         }
         
-        container.addView(imageView)
+        setCardImage(imageView, if (hidden) R.drawable.cardback else CardDrawables.of(card))
+        imageView.visibility = View.VISIBLE
+    }
+    
+    private fun hideCards(views: ArrayList<ImageView>) {
+        for (i in views.indices) {
+            views[i].visibility = View.GONE
+        }
     }
     
     private fun updateDisplay() {
@@ -197,18 +146,12 @@ class MinigameActivity : AppCompatActivity() {
             val dealerScore = calculateScore(dealerHand)
             binding.tvDealerScore.text = "Dealer Score: $dealerScore"
             // Reveal dealer's hidden card
-            if (binding.llDealerHand.childCount > 0) {
-                val firstCardView = binding.llDealerHand.getChildAt(0) as? android.widget.ImageView
-                if (firstCardView != null && dealerHand.isNotEmpty()) {
-                    val resId = getCardResource(dealerHand[0])
-                    if (resId != 0) {
-                        firstCardView.setImageResource(resId)
-                    }
-                }
+            if (dealerCardViews.isNotEmpty() && !dealerHand.isEmpty()) {
+                setCardImage(dealerCardViews[0], CardDrawables.of(dealerHand[0]))
             }
         } else {
-            // Show only first card value for dealer
-            val visibleScore = if (dealerHand.isNotEmpty()) calculateScore(listOf(dealerHand[0])) else 0
+            // Show only the face-up card's value; dealerHand[0] is the hole card
+            val visibleScore = if (dealerHand.size > 1) Cards.value(engine.dealerUpCard) else 0
             binding.tvDealerScore.text = "Dealer Score: $visibleScore+"
         }
     }
@@ -223,26 +166,17 @@ class MinigameActivity : AppCompatActivity() {
         
         gameStarted = true
         gameEnded = false
-        createDeck()
-        dealerHand.clear()
-        playerHand.clear()
         
         // Clear hands
-        binding.llDealerHand.removeAllViews()
-        binding.llPlayerHand.removeAllViews()
+        hideCards(dealerCardViews)
+        hideCards(playerCardViews)
         
         // Deal initial cards
-        playerHand.add(dealCard())
-        displayCard(binding.llPlayerHand, playerHand.last(), false)
-        
-        dealerHand.add(dealCard())
-        displayCard(binding.llDealerHand, dealerHand.last(), true) // Hidden
-        
-        playerHand.add(dealCard())
-        displayCard(binding.llPlayerHand, playerHand.last(), false)
-        
-        dealerHand.add(dealCard())
-        displayCard(binding.llDealerHand, dealerHand.last(), false)
+        engine.startRound()
+        displayCard(binding.llPlayerHand, playerCardViews, 0, playerHand[0], false)
+        displayCard(binding.llDealerHand, dealerCardViews, 0, dealerHand[0], true) // Hidden
+        displayCard(binding.llPlayerHand, playerCardViews, 1, playerHand[1], false)
+        displayCard(binding.llDealerHand, dealerCardViews, 1, dealerHand[1], false)
         
         updateDisplay()
         
@@ -251,7 +185,7 @@ class MinigameActivity : AppCompatActivity() {
         binding.resultScreen.visibility = android.view.View.GONE
         
         // Check for blackjack
-        if (calculateScore(playerHand) == 21) {
+        if (engine.hasBlackjack()) {
             android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
                 stand()
             }, 1000)
@@ -260,14 +194,14 @@ class MinigameActivity : AppCompatActivity() {
     
     private fun hit() {
         if (!gameStarted || gameEnded) return
+        // Already bust, the round is about to end
+        if (engine.isPlayerBust()) return
         
-        val newCard = dealCard()
-        playerHand.add(newCard)
-        displayCard(binding.llPlayerHand, newCard, false)
+        val card = engine.hitPlayer()
+        displayCard(binding.llPlayerHand, playerCardViews, playerHand.size - 1, card, false)
         updateDisplay()
         
-        val score = calculateScore(playerHand)
-        if (score > 21) {
+        if (engine.isPlayerBust()) {
             android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
                 endGame("lose")
             }, 500)
@@ -287,25 +221,13 @@ class MinigameActivity : AppCompatActivity() {
     }
     
     private fun drawDealerCards() {
-        var dealerScore = calculateScore(dealerHand)
-        
-        while (dealerScore < 17) {
-            val newCard = dealCard()
-            dealerHand.add(newCard)
-            displayCard(binding.llDealerHand, newCard, false)
-            dealerScore = calculateScore(dealerHand)
+        while (engine.dealerShouldHit()) {
+            val card = engine.hitDealer()
+            displayCard(binding.llDealerHand, dealerCardViews, dealerHand.size - 1, card, false)
             updateDisplay()
         }
         
-        val playerScore = calculateScore(playerHand)
-        val finalDealerScore = calculateScore(dealerHand)
-        
-        val result = when {
-            finalDealerScore > 21 -> "win"
-            playerScore > finalDealerScore -> "win"
-            playerScore < finalDealerScore -> "lose"
-            else -> "push"
-        }
+        val result = BlackjackEngine.resultName(engine.result())
         
         android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
             endGame(result)
@@ -342,25 +264,15 @@ class MinigameActivity : AppCompatActivity() {
         val currentUser = firebaseService.getCurrentUser()
         if (currentUser == null) return
         
-        val dealerHandData = dealerHand.map { mapOf("rank" to it.rank, "suit" to it.suit) }
-        val playerHandData = playerHand.map { mapOf("rank" to it.rank, "suit" to it.suit) }
+        val dealerHandData = (0 until dealerHand.size).map { mapOf("rank" to Cards.rankName(dealerHand[it]), "suit" to Cards.suitName(dealerHand[it])) }
+        val playerHandData = (0 until playerHand.size).map { mapOf("rank" to Cards.rankName(playerHand[it]), "suit" to Cards.suitName(playerHand[it])) }
         val playerScore = calculateScore(playerHand)
         val dealerScore = calculateScore(dealerHand)
         
-        // Use token first
-        firebaseService.useToken(currentUser.uid)
-            .addOnSuccessListener {
-                // Token used, now submit result
-                // Note: FirebaseService needs a playMinigame method
-                // For now, we'll just use the token and create voucher if win
-                if (result == "win") {
-                    firebaseService.createVoucher(currentUser.uid, "rm5_off")
-                        .addOnSuccessListener {
-                            loadTokenCount()
-                        }
-                } else {
-                    loadTokenCount()
-                }
+        // Debit the token, issue the voucher on a win and record the round in one transaction
+        firebaseService.settleRound(currentUser.uid, result, playerHandData, dealerHandData, playerScore, dealerScore)
+            .addOnSuccessListener { balance ->
+                showTokenCount(balance)
             }
             .addOnFailureListener { exception ->
                 Toast.makeText(this, "Failed to process game: ${exception.message}", Toast.LENGTH_SHORT).show()
@@ -373,8 +285,8 @@ class MinigameActivity : AppCompatActivity() {
         gameEnded = false
         dealerHand.clear()
         playerHand.clear()
-        binding.llDealerHand.removeAllViews()
-        binding.llPlayerHand.removeAllViews()
+        hideCards(dealerCardViews)
+        hideCards(playerCardViews)
         
         binding.startScreen.visibility = android.view.View.VISIBLE
         binding.gameScreen.visibility = android.view.View.GONE
@@ -1,13 +1,15 @@
 package com.example.ictmobile.ui.customer
 
 import android.os.Bundle
-import android.os.Handler
-import android.os.Looper
 import android.widget.Toast
+import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import com.example.ictmobile.databinding.ActivityOrderDetailBinding
 import com.example.ictmobile.models.Order
+import com.example.ictmobile.notifications.CycleAlarmScheduler
+import com.example.ictmobile.services.CallExecutor
 import com.example.ictmobile.services.FirebaseService
+import com.example.ictmobile.utils.SecondTicker
 import java.text.SimpleDateFormat
 import java.util.*
 
@@ -16,8 +18,10 @@ class OrderDetailActivity : AppCompatActivity() {
     private val firebaseService = FirebaseService.getInstance()
     private var order: Order? = null
     private val dateFormat = SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault())
-    private val handler = Handler(Looper.getMainLooper())
-    private var updateRunnable: Runnable? = null
+    
+    // Last values written, so a tick only touches the views when the minute changes
+    private var shownProgress: String? = null
+    private var shownMinutes = -1
     
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -26,6 +30,7 @@ class OrderDetailActivity : AppCompatActivity() {
         
         val orderId = intent.getStringExtra("order_id")
         if (orderId != null) {
+            binding.btnCancelOrder.setOnClickListener { confirmCancel(orderId) }
             loadOrder(orderId)
             startProgressUpdates()
         } else {
@@ -36,10 +41,11 @@ class OrderDetailActivity : AppCompatActivity() {
     
     private fun loadOrder(orderId: String) {
         binding.progressBar.visibility = android.view.View.VISIBLE
-        firebaseService.getOrderById(orderId)
+        CallExecutor.execute("getOrderById", CallExecutor.Policy.READ) { firebaseService.getOrderById(orderId) }
             .addOnSuccessListener { order ->
                 this.order = order
                 binding.progressBar.visibility = android.view.View.GONE
+                CycleAlarmScheduler.schedule(applicationContext, order)
                 displayOrderDetails()
             }
             .addOnFailureListener { exception ->
@@ -53,38 +59,69 @@ class OrderDetailActivity : AppCompatActivity() {
         order?.let { order ->
             binding.tvMachineName.text = order.machineName
             binding.tvStatus.text = "Status: ${order.status.capitalize()}"
-            binding.tvProgress.text = "Progress: ${order.progress}"
+            val now = System.currentTimeMillis()
+            shownProgress = order.progressAt(now)
+            binding.tvProgress.text = "Progress: $shownProgress"
             binding.tvStartTime.text = "Start: ${dateFormat.format(order.startTime)}"
             binding.tvEndTime.text = "End: ${dateFormat.format(order.endTime)}"
             binding.tvTotalAmount.text = "RM ${String.format("%.2f", order.totalAmount)}"
             
-            order.timeRemaining?.let { minutes ->
+            order.timeRemainingAt(now)?.let { minutes ->
+                shownMinutes = minutes
                 binding.tvTimeRemaining.text = "Time Remaining: $minutes minutes"
                 binding.tvTimeRemaining.visibility = android.view.View.VISIBLE
             } ?: run {
                 binding.tvTimeRemaining.visibility = android.view.View.GONE
             }
+            
+            val cancellable = order.status != "cancelled" && order.status != "completed"
+            binding.btnCancelOrder.visibility = if (cancellable) android.view.View.VISIBLE else android.view.View.GONE
         }
     }
     
+    private fun confirmCancel(orderId: String) {
+        AlertDialog.Builder(this)
+            .setTitle("Cancel Order")
+            .setMessage("Are you sure you want to cancel this order? Its slot will be released.")
+            .setPositiveButton("Cancel Order") { _, _ -> cancelOrder(orderId) }
+            .setNegativeButton("Keep Order", null)
+            .show()
+    }
+    
+    // Not retried: a repeat after a commit whose reply was lost fails as already cancelled
+    private fun cancelOrder(orderId: String) {
+        binding.progressBar.visibility = android.view.View.VISIBLE
+        binding.btnCancelOrder.isEnabled = false
+        firebaseService.cancelOrder(orderId)
+            .addOnSuccessListener {
+                binding.btnCancelOrder.isEnabled = true
+                CycleAlarmScheduler.cancel(applicationContext, orderId)
+                Toast.makeText(this, "Order cancelled", Toast.LENGTH_SHORT).show()
+                loadOrder(orderId)
+            }
+            .addOnFailureListener { exception ->
+                binding.progressBar.visibility = android.view.View.GONE
+                binding.btnCancelOrder.isEnabled = true
+                Toast.makeText(this, "Failed to cancel order: ${exception.message}", Toast.LENGTH_SHORT).show()
+            }
+    }
+    
     private fun startProgressUpdates() {
-        updateRunnable = object : Runnable {
-            override fun run() {
-                order?.let { order ->
-                    // Update progress and time remaining
-                    binding.tvProgress.text = "Progress: ${order.progress}"
-                    order.timeRemaining?.let { minutes ->
+        SecondTicker.bind(this) { now ->
+            order?.let { order ->
+                // Update progress and time remaining
+                val progress = order.progressAt(now)
+                if (progress != shownProgress) {
+                    shownProgress = progress
+                    binding.tvProgress.text = "Progress: $progress"
+                }
+                order.timeRemainingAt(now)?.let { minutes ->
+                    if (minutes != shownMinutes) {
+                        shownMinutes = minutes
                         binding.tvTimeRemaining.text = "Time Remaining: $minutes minutes"
                     }
                 }
-                handler.postDelayed(this, 60000) // Update every minute
             }
         }
-        handler.post(updateRunnable!!)
-    }
-    
-    override fun onDestroy() {
-        super.onDestroy()
-        updateRunnable?.let { handler.removeCallbacks(it) }
     }
 }
@@ -7,12 +7,17 @@ import androidx.appcompat.app.AppCompatActivity
 import androidx.recyclerview.widget.LinearLayoutManager
 import com.example.ictmobile.adapters.OrderAdapter
 import com.example.ictmobile.databinding.ActivityOrderHistoryBinding
+import com.example.ictmobile.diagnostics.AppLog
 import com.example.ictmobile.models.Order
+import com.example.ictmobile.notifications.CycleAlarmScheduler
+import com.example.ictmobile.services.CallExecutor
 import com.example.ictmobile.services.FirebaseService
+import com.example.ictmobile.utils.SecondTicker
 
 class OrderHistoryActivity : AppCompatActivity() {
     private lateinit var binding: ActivityOrderHistoryBinding
     private val firebaseService = FirebaseService.getInstance()
+    private var adapter: OrderAdapter? = null
     
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -23,8 +28,18 @@ class OrderHistoryActivity : AppCompatActivity() {
             finish()
         }
         
-        binding.rvOrders.layoutManager = LinearLayoutManager(this)
+        val layoutManager = LinearLayoutManager(this)
+        binding.rvOrders.layoutManager = layoutManager
         loadOrders()
+        
+        // Keep active cycles' progress live while the list is on screen
+        SecondTicker.bind(this) { now ->
+            adapter?.refreshProgress(
+                now,
+                layoutManager.findFirstVisibleItemPosition(),
+                layoutManager.findLastVisibleItemPosition()
+            )
+        }
     }
     
     private fun loadOrders() {
@@ -36,14 +51,17 @@ class OrderHistoryActivity : AppCompatActivity() {
         }
         
         binding.progressBar.visibility = android.view.View.VISIBLE
-        android.util.Log.d("OrderHistory", "Loading orders for user: ${currentUser.uid}")
+        AppLog.d("OrderHistory") { "Loading orders for user: ${currentUser.uid}" }
         
-        firebaseService.getOrders(currentUser.uid)
+        CallExecutor.execute("getOrders", CallExecutor.Policy.READ) { firebaseService.getOrders(currentUser.uid) }
             .addOnSuccessListener { orders ->
                 binding.progressBar.visibility = android.view.View.GONE
-                android.util.Log.d("OrderHistory", "Loaded ${orders.size} orders")
+                AppLog.d("OrderHistory") { "Loaded ${orders.size} orders" }
+                // Re-arm alarms for paid cycles, running or upcoming, in case their times
+                // changed; unpaid and finished orders have theirs cancelled
+                orders.forEach { CycleAlarmScheduler.schedule(applicationContext, it) }
                 if (orders.isEmpty()) {
-                    android.util.Log.w("OrderHistory", "No orders found for user")
+                    AppLog.w("OrderHistory", "No orders found for user")
                     binding.tvEmpty.visibility = android.view.View.VISIBLE
                     binding.rvOrders.visibility = android.view.View.GONE
                 } else {
@@ -55,11 +73,12 @@ class OrderHistoryActivity : AppCompatActivity() {
                         startActivity(intent)
                     }
                     binding.rvOrders.adapter = adapter
+                    this.adapter = adapter
                 }
             }
             .addOnFailureListener { exception ->
                 binding.progressBar.visibility = android.view.View.GONE
-                android.util.Log.e("OrderHistory", "Failed to load orders: ${exception.message}", exception)
+                AppLog.e("OrderHistory", exception) { "Failed to load orders: ${exception.message}" }
                 Toast.makeText(this, "Failed to load orders: ${exception.message}", Toast.LENGTH_LONG).show()
             }
     }
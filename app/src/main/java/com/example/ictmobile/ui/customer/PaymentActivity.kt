@@ -5,8 +5,11 @@ import android.widget.ArrayAdapter
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import com.example.ictmobile.databinding.ActivityPaymentBinding
+import com.example.ictmobile.diagnostics.AppLog
 import com.example.ictmobile.models.Order
 import com.example.ictmobile.models.Voucher
+import com.example.ictmobile.notifications.CycleAlarmScheduler
+import com.example.ictmobile.services.CallExecutor
 import com.example.ictmobile.services.FirebaseService
 import java.text.SimpleDateFormat
 import java.util.*
@@ -15,8 +18,12 @@ class PaymentActivity : AppCompatActivity() {
     private lateinit var binding: ActivityPaymentBinding
     private val firebaseService = FirebaseService.getInstance()
     private var order: Order? = null
+    // Every order this payment settles (a wash-and-dry booking or a cart has several)
+    private var linkedOrders: List<Order> = emptyList()
     private var selectedVoucher: Voucher? = null
     private var availableVouchers: List<Voucher> = emptyList()
+    // One key per checkout screen: a retry or second tap replays the first payment
+    private val paymentKey = UUID.randomUUID().toString()
     private val malaysiaTimeZone = TimeZone.getTimeZone("Asia/Kuala_Lumpur")
     private val dateFormat = SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault()).apply {
         timeZone = malaysiaTimeZone
@@ -47,44 +54,46 @@ class PaymentActivity : AppCompatActivity() {
         binding.spinnerPaymentMethod.adapter = adapter
     }
     
-    private fun loadOrder(orderId: String, retryCount: Int = 0) {
+    private fun loadOrder(orderId: String) {
         binding.progressBar.visibility = android.view.View.VISIBLE
-        android.util.Log.d("PaymentActivity", "Loading order with ID: $orderId (attempt ${retryCount + 1})")
+        AppLog.d("PaymentActivity") { "Loading order with ID: $orderId" }
         
-        firebaseService.getOrderById(orderId)
+        // Transient failures are retried with backoff inside the executor; anything it
+        // gives up on is final
+        CallExecutor.execute("getOrderById", CallExecutor.Policy.READ) { firebaseService.getOrderById(orderId) }
             .addOnSuccessListener { order ->
-                android.util.Log.d("PaymentActivity", "Order loaded successfully: ${order.id}, paymentId: ${order.paymentId}")
+                AppLog.d("PaymentActivity") { "Order loaded successfully: ${order.id}, paymentId: ${order.paymentId}" }
                 this.order = order
                 binding.progressBar.visibility = android.view.View.GONE
-                
-                // If paymentId is missing, wait a bit and retry (payment might still be creating)
-                if (order.paymentId.isBlank() && retryCount < 3) {
-                    android.util.Log.w("PaymentActivity", "Order paymentId is empty, retrying in 1 second...")
-                    android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
-                        loadOrder(orderId, retryCount + 1)
-                    }, 1000)
-                } else {
+                displayOrderDetails()
+                loadLinkedOrders(order)
+            }
+            .addOnFailureListener { exception ->
+                AppLog.e("PaymentActivity", exception) { "Failed to load order: ${exception.message}" }
+                binding.progressBar.visibility = android.view.View.GONE
+                Toast.makeText(this, "Failed to load order: ${exception.message}", Toast.LENGTH_LONG).show()
+                // Wait a bit before finishing to show the error message
+                android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
+                    finish()
+                }, 2000)
+            }
+    }
+    
+    private fun loadLinkedOrders(order: Order) {
+        val currentUser = firebaseService.getCurrentUser() ?: return
+        if (order.paymentId.isBlank()) return
+        
+        CallExecutor.execute("getOrdersByPaymentId", CallExecutor.Policy.READ) {
+            firebaseService.getOrdersByPaymentId(currentUser.uid, order.paymentId)
+        }
+            .addOnSuccessListener { orders ->
+                if (orders.size > 1) {
+                    linkedOrders = orders
                     displayOrderDetails()
                 }
             }
             .addOnFailureListener { exception ->
-                android.util.Log.e("PaymentActivity", "Failed to load order: ${exception.message}", exception)
-                
-                // Retry if it's a temporary error and we haven't exceeded retry limit
-                if (retryCount < 2 && (exception.message?.contains("not found") == true || 
-                    exception.message?.contains("permission") == true)) {
-                    android.util.Log.w("PaymentActivity", "Retrying order load in 1 second...")
-                    android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
-                        loadOrder(orderId, retryCount + 1)
-                    }, 1000)
-                } else {
-                    binding.progressBar.visibility = android.view.View.GONE
-                    Toast.makeText(this, "Failed to load order: ${exception.message}", Toast.LENGTH_LONG).show()
-                    // Wait a bit before finishing to show the error message
-                    android.os.Handler(android.os.Looper.getMainLooper()).postDelayed({
-                        finish()
-                    }, 2000)
-                }
+                AppLog.w("PaymentActivity") { "Failed to load linked orders: ${exception.message}" }
             }
     }
     
@@ -98,7 +107,7 @@ class PaymentActivity : AppCompatActivity() {
                 }
                 .addOnFailureListener { exception ->
                     // Log error but don't block payment - vouchers are optional
-                    android.util.Log.w("PaymentActivity", "Failed to load vouchers: ${exception.message}")
+                    AppLog.w("PaymentActivity") { "Failed to load vouchers: ${exception.message}" }
                 }
         }
     }
@@ -122,21 +131,24 @@ class PaymentActivity : AppCompatActivity() {
     
     private fun displayOrderDetails() {
         order?.let { order ->
-            binding.tvMachineName.text = order.machineName
+            val orders = linkedOrders.ifEmpty { listOf(order) }
+            binding.tvMachineName.text = orders.joinToString(" + ") { it.machineName }
             // Fix deprecated capitalize() - use replaceFirstChar instead
-            val tempText = order.temperature.replaceFirstChar { 
-                if (it.isLowerCase()) it.titlecase(Locale.getDefault()) else it.toString() 
+            val tempText = orders.map { it.temperature }.distinct().joinToString(" / ") { temperature ->
+                temperature.replaceFirstChar { 
+                    if (it.isLowerCase()) it.titlecase(Locale.getDefault()) else it.toString() 
+                }
             }
             binding.tvTemperature.text = "Temperature: $tempText"
-            binding.tvStartTime.text = "Start: ${dateFormat.format(order.startTime)}"
-            binding.tvEndTime.text = "End: ${dateFormat.format(order.endTime)}"
+            binding.tvStartTime.text = "Start: ${dateFormat.format(orders.first().startTime)}"
+            binding.tvEndTime.text = "End: ${dateFormat.format(orders.last().endTime)}"
             updateTotalAmount()
         }
     }
     
     private fun updateTotalAmount() {
         order?.let { order ->
-            var total = order.totalAmount
+            var total = linkedOrders.ifEmpty { listOf(order) }.sumOf { it.totalAmount }
             selectedVoucher?.let { voucher ->
                 if (voucher.type == "rm5_off") {
                     total = (total - 5.0).coerceAtLeast(0.0)
@@ -163,7 +175,7 @@ class PaymentActivity : AppCompatActivity() {
         // Check if payment ID exists
         if (order.paymentId.isBlank()) {
             Toast.makeText(this, "Payment information not found. Please try again.", Toast.LENGTH_SHORT).show()
-            android.util.Log.e("PaymentActivity", "Order paymentId is empty for order: ${order.id}")
+            AppLog.e("PaymentActivity") { "Order paymentId is empty for order: ${order.id}" }
             return
         }
         
@@ -173,34 +185,67 @@ class PaymentActivity : AppCompatActivity() {
         val voucherId = selectedVoucher?.id
         
         // Get payment ID from order
-        android.util.Log.d("PaymentActivity", "Processing payment for order: ${order.id}, paymentId: ${order.paymentId}")
-        firebaseService.getPaymentById(order.paymentId)
+        AppLog.d("PaymentActivity") { "Processing payment for order: ${order.id}, paymentId: ${order.paymentId}" }
+        CallExecutor.execute("getPaymentById", CallExecutor.Policy.READ) { firebaseService.getPaymentById(order.paymentId) }
             .addOnSuccessListener { payment ->
-                android.util.Log.d("PaymentActivity", "Payment retrieved: ${payment.id}, calling completePayment...")
-                firebaseService.completePayment(payment.id, paymentMethod, voucherId)
+                AppLog.d("PaymentActivity") { "Payment retrieved: ${payment.id}, calling completePayment..." }
+                // Safe to retry: paymentKey makes a repeated attempt replay the first one
+                CallExecutor.execute("completePayment", CallExecutor.Policy.IDEMPOTENT_WRITE) {
+                    firebaseService.completePayment(payment.id, paymentMethod, voucherId, paymentKey)
+                }
                     .addOnSuccessListener {
-                        android.util.Log.d("PaymentActivity", "Payment completed successfully!")
-                        binding.progressBar.visibility = android.view.View.GONE
-                        binding.btnPayNow.isEnabled = true
+                        AppLog.d("PaymentActivity") { "Payment completed successfully!" }
                         Toast.makeText(this, "Payment completed successfully! Token awarded.", Toast.LENGTH_SHORT).show()
-                        
-                        // Navigate to order history
-                        val intent = android.content.Intent(this, OrderHistoryActivity::class.java)
-                        startActivity(intent)
-                        finish()
+                        scheduleCycleAlarms(order)
                     }
                     .addOnFailureListener { exception ->
                         binding.progressBar.visibility = android.view.View.GONE
                         binding.btnPayNow.isEnabled = true
-                        android.util.Log.e("PaymentActivity", "Payment completion failed: ${exception.message}", exception)
+                        AppLog.e("PaymentActivity", exception) { "Payment completion failed: ${exception.message}" }
                         Toast.makeText(this, "Payment failed: ${exception.message}", Toast.LENGTH_LONG).show()
                     }
             }
             .addOnFailureListener { exception ->
                 binding.progressBar.visibility = android.view.View.GONE
                 binding.btnPayNow.isEnabled = true
-                android.util.Log.e("PaymentActivity", "Failed to get payment: ${exception.message}", exception)
+                AppLog.e("PaymentActivity", exception) { "Failed to get payment: ${exception.message}" }
                 Toast.makeText(this, "Failed to process payment: ${exception.message}", Toast.LENGTH_LONG).show()
             }
     }
+    
+    /**
+     * Alerts the user when each cycle starts and ends. The orders are re-read rather than
+     * taken from linkedOrders, which may still be loading or have failed to load, so every
+     * order the payment settled gets its alarms with the paid state the server recorded.
+     */
+    private fun scheduleCycleAlarms(order: Order) {
+        val currentUser = firebaseService.getCurrentUser()
+        if (currentUser == null) {
+            openOrderHistory()
+            return
+        }
+        CallExecutor.execute("getOrdersByPaymentId", CallExecutor.Policy.READ) {
+            firebaseService.getOrdersByPaymentId(currentUser.uid, order.paymentId)
+        }
+            .addOnSuccessListener { orders ->
+                for (paidOrder in orders) {
+                    CycleAlarmScheduler.schedule(applicationContext, paidOrder)
+                }
+                openOrderHistory()
+            }
+            .addOnFailureListener { exception ->
+                AppLog.w("PaymentActivity") { "Failed to reload paid orders: ${exception.message}" }
+                Toast.makeText(this, "Payment completed, but cycle reminders could not be set: ${exception.message}",
+                    Toast.LENGTH_LONG).show()
+                openOrderHistory()
+            }
+    }
+    
+    private fun openOrderHistory() {
+        binding.progressBar.visibility = android.view.View.GONE
+        binding.btnPayNow.isEnabled = true
+        val intent = android.content.Intent(this, OrderHistoryActivity::class.java)
+        startActivity(intent)
+        finish()
+    }
 }
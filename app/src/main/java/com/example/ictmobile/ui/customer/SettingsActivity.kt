@@ -7,7 +7,9 @@ import androidx.appcompat.app.AppCompatActivity
 import androidx.recyclerview.widget.GridLayoutManager
 import com.example.ictmobile.adapters.ProfilePictureAdapter
 import com.example.ictmobile.databinding.ActivitySettingsBinding
+import com.example.ictmobile.diagnostics.AppLog
 import com.example.ictmobile.models.User
+import com.example.ictmobile.services.AvatarLoader
 import com.example.ictmobile.services.FirebaseService
 import java.io.IOException
 
@@ -31,7 +33,7 @@ class SettingsActivity : AppCompatActivity() {
             loadUserData()
             setupClickListeners()
         } catch (e: Exception) {
-            android.util.Log.e("SettingsActivity", "Error in onCreate: ${e.message}", e)
+            AppLog.e("SettingsActivity", e) { "Error in onCreate: ${e.message}" }
             Toast.makeText(this, "Error loading settings: ${e.message}", Toast.LENGTH_LONG).show()
             finish()
         }
@@ -82,20 +84,7 @@ class SettingsActivity : AppCompatActivity() {
     }
     
     private fun loadProfilePicture(pictureName: String) {
-        try {
-            val inputStream = assets.open("profilepictures/$pictureName")
-            binding.ivCurrentProfile.setImageBitmap(android.graphics.BitmapFactory.decodeStream(inputStream))
-            inputStream.close()
-        } catch (e: Exception) {
-            // Use default if not found
-            try {
-                val defaultStream = assets.open("profilepictures/king.png")
-                binding.ivCurrentProfile.setImageBitmap(android.graphics.BitmapFactory.decodeStream(defaultStream))
-                defaultStream.close()
-            } catch (e2: Exception) {
-                // Ignore
-            }
-        }
+        AvatarLoader.load(binding.ivCurrentProfile, pictureName)
     }
     
     private fun setupClickListeners() {
@@ -7,6 +7,7 @@ import androidx.recyclerview.widget.LinearLayoutManager
 import com.example.ictmobile.adapters.VoucherAdapter
 import com.example.ictmobile.databinding.ActivityVouchersBinding
 import com.example.ictmobile.models.Voucher
+import com.example.ictmobile.services.CallExecutor
 import com.example.ictmobile.services.FirebaseService
 import java.text.SimpleDateFormat
 import java.util.*
@@ -41,7 +42,7 @@ class VouchersActivity : AppCompatActivity() {
         }
         
         binding.progressBar.visibility = android.view.View.VISIBLE
-        firebaseService.getVouchers(currentUser.uid)
+        CallExecutor.execute("getVouchers", CallExecutor.Policy.READ) { firebaseService.getVouchers(currentUser.uid) }
             .addOnSuccessListener { vouchers ->
                 binding.progressBar.visibility = android.view.View.GONE
                 
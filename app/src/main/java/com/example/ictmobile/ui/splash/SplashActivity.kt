@@ -6,6 +6,7 @@ import android.os.Handler
 import android.os.Looper
 import androidx.appcompat.app.AppCompatActivity
 import com.example.ictmobile.R
+import com.example.ictmobile.diagnostics.StartupTrace
 import com.example.ictmobile.services.FirebaseService
 import com.example.ictmobile.ui.auth.LoginActivity
 import com.example.ictmobile.ui.customer.DashboardActivity
@@ -15,15 +16,20 @@ class SplashActivity : AppCompatActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_splash)
+        StartupTrace.splashCreated()
+        // Seed the machine catalog into the cache while the splash is up
+        FirebaseService.getInstance().loadCatalogBundle(applicationContext)
         
         Handler(Looper.getMainLooper()).postDelayed({
             val firebaseService = FirebaseService.getInstance()
             val currentUser = firebaseService.getCurrentUser()
+            StartupTrace.mark(StartupTrace.AUTH_RESOLVED)
             
             if (currentUser != null) {
                 // User is logged in, check role and navigate accordingly
                 firebaseService.getCurrentUserData()
                     .addOnSuccessListener { user ->
+                        StartupTrace.mark(StartupTrace.ROLE_RESOLVED)
                         val intent = if (user.isAdmin()) {
                             Intent(this, AdminDashboardActivity::class.java)
                         } else {
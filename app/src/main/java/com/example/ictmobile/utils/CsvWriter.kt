@@ -0,0 +1,74 @@
+package com.example.ictmobile.utils
+
+import java.io.Closeable
+import java.io.Writer
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.TimeZone
+
+/**
+ * RFC 4180 CSV writer for streaming exports. Each field goes straight to [out], quoted
+ * only when it contains a comma, quote or line break, so nothing is buffered beyond
+ * the writer's own buffer. Null values become empty fields; dates are written in UTC
+ * ISO-8601. Not thread-safe.
+ */
+class CsvWriter(private val out: Writer) : Closeable {
+
+    private val timestampFormat = SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US).apply {
+        timeZone = TimeZone.getTimeZone("UTC")
+    }
+    private var fieldsInRow = 0
+
+    fun field(value: String?) {
+        separate()
+        if (value != null) writeEscaped(value)
+    }
+
+    fun field(value: Double?) {
+        separate()
+        if (value != null) out.write(value.toString())
+    }
+
+    fun field(value: Boolean?) {
+        separate()
+        if (value != null) out.write(if (value) "true" else "false")
+    }
+
+    fun field(value: Date?) {
+        separate()
+        if (value != null) out.write(timestampFormat.format(value))
+    }
+
+    fun endRow() {
+        out.write("\r\n")
+        fieldsInRow = 0
+    }
+
+    /** Writes a whole row, such as the header. */
+    fun row(vararg values: String) {
+        for (value in values) field(value)
+        endRow()
+    }
+
+    private fun separate() {
+        if (fieldsInRow++ > 0) out.write(','.code)
+    }
+
+    private fun writeEscaped(value: String) {
+        if (value.none { it == ',' || it == '"' || it == '\n' || it == '\r' }) {
+            out.write(value)
+            return
+        }
+        out.write('"'.code)
+        for (c in value) {
+            if (c == '"') out.write('"'.code)
+            out.write(c.code)
+        }
+        out.write('"'.code)
+    }
+
+    override fun close() {
+        out.close()
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.ictmobile.utils
+
+import android.os.Handler
+import android.os.Looper
+import androidx.lifecycle.DefaultLifecycleObserver
+import androidx.lifecycle.LifecycleOwner
+
+/**
+ * One main-thread tick per wall-clock second, shared by every visible clock and countdown.
+ *
+ * Screens subscribe with [bind]; they receive ticks only between onStart and onStop, and
+ * when nothing is subscribed the ticker stops posting entirely. Each tick is scheduled
+ * for the next second boundary of System.currentTimeMillis, so all clocks flip together.
+ */
+object SecondTicker {
+
+    fun interface Listener {
+        fun onTick(nowMillis: Long)
+    }
+
+    private val handler = Handler(Looper.getMainLooper())
+
+    // Copy-on-write so a tick never allocates and listeners may unsubscribe mid-tick
+    private var listeners = emptyArray<Listener>()
+    private var running = false
+
+    private val tick = object : Runnable {
+        override fun run() {
+            val now = System.currentTimeMillis()
+            val current = listeners
+            for (i in current.indices) {
+                current[i].onTick(now)
+            }
+            if (listeners.isEmpty()) {
+                running = false
+            } else {
+                handler.postDelayed(this, delayToNextSecond())
+            }
+        }
+    }
+
+    /** Ticks [listener] while [owner] is started, starting with an immediate tick. */
+    fun bind(owner: LifecycleOwner, listener: Listener) {
+        owner.lifecycle.addObserver(object : DefaultLifecycleObserver {
+            override fun onStart(owner: LifecycleOwner) {
+                add(listener)
+                listener.onTick(System.currentTimeMillis())
+            }
+
+            override fun onStop(owner: LifecycleOwner) {
+                remove(listener)
+            }
+        })
+    }
+
+    fun add(listener: Listener) {
+        if (listeners.contains(listener)) return
+        listeners = listeners + listener
+        if (!running) {
+            running = true
+            handler.postDelayed(tick, delayToNextSecond())
+        }
+    }
+
+    fun remove(listener: Listener) {
+        listeners = listeners.filter { it !== listener }.toTypedArray()
+        if (listeners.isEmpty() && running) {
+            handler.removeCallbacks(tick)
+            running = false
+        }
+    }
+
+    private fun delayToNextSecond(): Long = 1000 - System.currentTimeMillis() % 1000
+}
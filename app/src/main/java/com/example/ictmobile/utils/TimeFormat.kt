@@ -0,0 +1,59 @@
+package com.example.ictmobile.utils
+
+import java.util.TimeZone
+
+/**
+ * Clock and date formatting into caller-owned char buffers, for text refreshed every
+ * second. Fields are derived from epoch millis with integer arithmetic instead of a
+ * Calendar, and digits are written directly instead of going through String.format.
+ * Pass the buffer to TextView.setText(char[], int, int), which does not copy it.
+ */
+object TimeFormat {
+    const val CLOCK_LENGTH = 12 // "HH : MM : SS"
+    const val DATE_LENGTH = 10 // "DD/MM/YYYY"
+
+    private const val MILLIS_PER_DAY = 86_400_000L
+
+    fun localMillis(utcMillis: Long, timeZone: TimeZone): Long = utcMillis + timeZone.getOffset(utcMillis)
+
+    /** Days since 1970-01-01 in local time. */
+    fun epochDay(localMillis: Long): Long = Math.floorDiv(localMillis, MILLIS_PER_DAY)
+
+    /** Writes "HH : MM : SS" and returns the number of chars written. */
+    fun formatClock(localMillis: Long, out: CharArray): Int {
+        val secondOfDay = (Math.floorMod(localMillis, MILLIS_PER_DAY) / 1000).toInt()
+        writeTwoDigits(out, 0, secondOfDay / 3600)
+        out[2] = ' '; out[3] = ':'; out[4] = ' '
+        writeTwoDigits(out, 5, secondOfDay / 60 % 60)
+        out[7] = ' '; out[8] = ':'; out[9] = ' '
+        writeTwoDigits(out, 10, secondOfDay % 60)
+        return CLOCK_LENGTH
+    }
+
+    /** Writes "DD/MM/YYYY" for [epochDay] and returns the number of chars written. */
+    fun formatDate(epochDay: Long, out: CharArray): Int {
+        // Civil-from-days (proleptic Gregorian), all integer math
+        val z = epochDay + 719_468
+        val era = Math.floorDiv(z, 146_097L)
+        val doe = z - era * 146_097
+        val yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365
+        val doy = doe - (365 * yoe + yoe / 4 - yoe / 100)
+        val mp = (5 * doy + 2) / 153
+        val day = (doy - (153 * mp + 2) / 5 + 1).toInt()
+        val month = (if (mp < 10) mp + 3 else mp - 9).toInt()
+        val year = (yoe + era * 400 + if (month <= 2) 1 else 0).toInt()
+
+        writeTwoDigits(out, 0, day)
+        out[2] = '/'
+        writeTwoDigits(out, 3, month)
+        out[5] = '/'
+        writeTwoDigits(out, 6, year / 100)
+        writeTwoDigits(out, 8, year % 100)
+        return DATE_LENGTH
+    }
+
+    fun writeTwoDigits(out: CharArray, offset: Int, value: Int) {
+        out[offset] = ('0' + value / 10)
+        out[offset + 1] = ('0' + value % 10)
+    }
+}
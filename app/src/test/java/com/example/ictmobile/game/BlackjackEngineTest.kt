@@ -0,0 +1,118 @@
+package com.example.ictmobile.game
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class BlackjackEngineTest {
+
+    @Test
+    fun dealsTwoDistinctCardsEach() {
+        val engine = BlackjackEngine(Random(1))
+        repeat(ROUNDS) {
+            engine.startRound()
+            assertEquals(2, engine.playerHand.size)
+            assertEquals(2, engine.dealerHand.size)
+            val dealt = setOf(engine.playerHand[0], engine.playerHand[1], engine.dealerHand[0], engine.dealerHand[1])
+            assertEquals(4, dealt.size)
+        }
+    }
+
+    @Test
+    fun upCardIsTheDealersSecondCard() {
+        val engine = BlackjackEngine(Random(2))
+        repeat(ROUNDS) {
+            engine.startRound()
+            assertEquals(engine.dealerHand[1], engine.dealerUpCard)
+        }
+    }
+
+    @Test
+    fun playerBustLosesWhateverTheDealerHolds() {
+        val engine = engine(player = intArrayOf(KING, QUEEN, 5), dealer = intArrayOf(KING, 6, KING))
+        assertTrue(engine.isPlayerBust())
+        assertEquals(BlackjackEngine.RESULT_LOSE, engine.result())
+    }
+
+    @Test
+    fun dealerBustWins() {
+        val engine = engine(player = intArrayOf(KING, 2), dealer = intArrayOf(KING, 6, 9))
+        assertEquals(BlackjackEngine.RESULT_WIN, engine.result())
+    }
+
+    @Test
+    fun higherScoreWinsAndTiesPush() {
+        assertEquals(BlackjackEngine.RESULT_WIN,
+            engine(player = intArrayOf(KING, 9), dealer = intArrayOf(KING, 8)).result())
+        assertEquals(BlackjackEngine.RESULT_LOSE,
+            engine(player = intArrayOf(KING, 7), dealer = intArrayOf(KING, 8)).result())
+        assertEquals(BlackjackEngine.RESULT_PUSH,
+            engine(player = intArrayOf(KING, 8), dealer = intArrayOf(9, ACE, 8)).result())
+    }
+
+    @Test
+    fun blackjackOnTheDeal() {
+        val engine = engine(player = intArrayOf(ACE, KING), dealer = intArrayOf(KING, 7))
+        assertTrue(engine.hasBlackjack())
+        assertEquals(BlackjackEngine.RESULT_WIN, engine.result())
+    }
+
+    @Test
+    fun dealerHitsBelowSeventeenAndStandsOnSoftSeventeen() {
+        assertTrue(engine(player = intArrayOf(KING, 9), dealer = intArrayOf(KING, 6)).dealerShouldHit())
+        assertFalse(engine(player = intArrayOf(KING, 9), dealer = intArrayOf(KING, 7)).dealerShouldHit())
+        assertFalse(engine(player = intArrayOf(KING, 9), dealer = intArrayOf(ACE, 6)).dealerShouldHit())
+    }
+
+    @Test
+    fun playRoundFollowsTheRules() {
+        val engine = BlackjackEngine(Random(3))
+        repeat(ROUNDS) {
+            val result = engine.playRound(PlayerStrategy.BASIC)
+            val player = engine.playerHand.score()
+            val dealer = engine.dealerHand.score()
+            if (player > 21) {
+                assertEquals(BlackjackEngine.RESULT_LOSE, result)
+                // The dealer does not draw once the player has bust
+                assertEquals(2, engine.dealerHand.size)
+            } else {
+                assertTrue(dealer >= BlackjackEngine.DEALER_STANDS_ON)
+                val expected = when {
+                    dealer > 21 || player > dealer -> BlackjackEngine.RESULT_WIN
+                    player < dealer -> BlackjackEngine.RESULT_LOSE
+                    else -> BlackjackEngine.RESULT_PUSH
+                }
+                assertEquals(expected, result)
+            }
+        }
+    }
+
+    @Test
+    fun seededRoundsRepeat() {
+        val first = BlackjackEngine(Random(4))
+        val second = BlackjackEngine(Random(4))
+        repeat(ROUNDS) {
+            assertEquals(first.playRound(PlayerStrategy.BASIC), second.playRound(PlayerStrategy.BASIC))
+        }
+    }
+
+    /** An engine whose hands hold [player] and [dealer], in [HandTest.hand]'s notation. */
+    private fun engine(player: IntArray, dealer: IntArray): BlackjackEngine {
+        val engine = BlackjackEngine(Random(0))
+        engine.startRound()
+        engine.playerHand.clear()
+        engine.dealerHand.clear()
+        player.forEachIndexed { i, value -> engine.playerHand.add(Cards.of(value - 1, i % Cards.SUIT_COUNT)) }
+        dealer.forEachIndexed { i, value -> engine.dealerHand.add(Cards.of(value - 1, i % Cards.SUIT_COUNT)) }
+        return engine
+    }
+
+    companion object {
+        private const val ROUNDS = 10_000
+        private const val ACE = HandTest.ACE
+        private const val QUEEN = HandTest.QUEEN
+        private const val KING = HandTest.KING
+    }
+}
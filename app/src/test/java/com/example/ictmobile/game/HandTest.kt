@@ -0,0 +1,98 @@
+package com.example.ictmobile.game
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class HandTest {
+
+    @Test
+    fun hardTotalsAddUp() {
+        val hand = hand(KING, 7)
+        assertEquals(17, hand.score())
+        assertFalse(hand.isSoft())
+    }
+
+    @Test
+    fun aceCountsElevenWhileItFits() {
+        val hand = hand(ACE, 6)
+        assertEquals(17, hand.score())
+        assertTrue(hand.isSoft())
+    }
+
+    @Test
+    fun aceDropsToOneInsteadOfBusting() {
+        val hand = hand(ACE, 6, 9)
+        assertEquals(16, hand.score())
+        assertFalse(hand.isSoft())
+    }
+
+    @Test
+    fun onlyAsManyAcesDropAsNeeded() {
+        val pair = hand(ACE, ACE)
+        assertEquals(12, pair.score())
+        assertTrue(pair.isSoft())
+
+        val four = hand(ACE, ACE, ACE, ACE)
+        assertEquals(14, four.score())
+        assertTrue(four.isSoft())
+
+        val hard = hand(ACE, ACE, 9, KING)
+        assertEquals(21, hard.score())
+        assertFalse(hard.isSoft())
+    }
+
+    @Test
+    fun blackjackIsSoftTwentyOne() {
+        for (ten in intArrayOf(10, JACK, QUEEN, KING)) {
+            val hand = hand(ACE, ten)
+            assertEquals(21, hand.score())
+            assertTrue(hand.isSoft())
+        }
+    }
+
+    @Test
+    fun bustStaysBust() {
+        val hand = hand(KING, QUEEN, 2)
+        assertEquals(22, hand.score())
+        assertFalse(hand.isSoft())
+
+        val withAce = hand(ACE, KING, QUEEN, 5)
+        assertEquals(26, withAce.score())
+        assertFalse(withAce.isSoft())
+    }
+
+    @Test
+    fun largestHandFits() {
+        // Four aces, four twos, three threes: 21, and one more card busts it
+        val hand = hand(ACE, ACE, ACE, ACE, 2, 2, 2, 2, 3, 3, 3)
+        assertEquals(21, hand.score())
+        hand.add(Cards.of(1, 0))
+        assertEquals(Hand.MAX_CARDS, hand.size)
+        assertEquals(23, hand.score())
+    }
+
+    @Test
+    fun clearEmptiesTheHand() {
+        val hand = hand(KING, 9)
+        hand.clear()
+        assertTrue(hand.isEmpty())
+        assertEquals(0, hand.score())
+        assertFalse(hand.isSoft())
+    }
+
+    companion object {
+        const val ACE = 1
+        const val JACK = 11
+        const val QUEEN = 12
+        const val KING = 13
+
+        /** A hand of [values], where 1 is an ace, 2..10 are pips and 11..13 are J, Q, K. */
+        fun hand(vararg values: Int): Hand {
+            val hand = Hand()
+            values.forEachIndexed { i, value -> hand.add(Cards.of(value - 1, i % Cards.SUIT_COUNT)) }
+            return hand
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.ictmobile.game
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+/**
+ * Monte Carlo estimate of how often a token round pays out a voucher.
+ *
+ * Rounds are split across a fork/join pool. Each leaf owns its own engine and RNG
+ * (seeded from the run seed and the leaf's first round index, so results do not
+ * depend on scheduling) and only counts outcomes into three longs.
+ *
+ * Lives in the unit-test source set so it is not packaged into the APK; run main from
+ * the IDE on the JVM, e.g. with arguments "500000000 basic".
+ */
+class PayoutSimulator(
+    private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+    private val voucherValue: Double = VOUCHER_VALUE_RM
+) {
+
+    data class Report(
+        val rounds: Long,
+        val wins: Long,
+        val pushes: Long,
+        val losses: Long,
+        val voucherValue: Double,
+        val elapsedMs: Long
+    ) {
+        val winRate: Double get() = wins.toDouble() / rounds
+        val pushRate: Double get() = pushes.toDouble() / rounds
+        val loseRate: Double get() = losses.toDouble() / rounds
+
+        /** Expected voucher cost of one token in RM. */
+        val costPerToken: Double get() = winRate * voucherValue
+
+        /** Half-width of the 95% normal-approximation interval for a rate. */
+        fun margin(rate: Double): Double = Z_95 * sqrt(rate * (1 - rate) / rounds)
+
+        override fun toString(): String {
+            val winMargin = margin(winRate)
+            return buildString {
+                append("rounds=").append(rounds).append(" (").append(elapsedMs).append(" ms)\n")
+                append(String.format("win  %.5f +/- %.5f%n", winRate, winMargin))
+                append(String.format("push %.5f +/- %.5f%n", pushRate, margin(pushRate)))
+                append(String.format("lose %.5f +/- %.5f%n", loseRate, margin(loseRate)))
+                append(String.format("voucher cost per token RM %.4f +/- %.4f", costPerToken, winMargin * voucherValue))
+            }
+        }
+    }
+
+    fun run(rounds: Long, strategy: PlayerStrategy, seed: Long = System.nanoTime()): Report {
+        require(rounds > 0) { "rounds must be positive" }
+        val start = System.currentTimeMillis()
+        val counts = pool.invoke(RoundsTask(0, rounds, strategy, seed))
+        return Report(
+            rounds = rounds,
+            wins = counts[BlackjackEngine.RESULT_WIN],
+            pushes = counts[BlackjackEngine.RESULT_PUSH],
+            losses = counts[BlackjackEngine.RESULT_LOSE],
+            voucherValue = voucherValue,
+            elapsedMs = System.currentTimeMillis() - start
+        )
+    }
+
+    private class RoundsTask(
+        private val from: Long,
+        private val to: Long,
+        private val strategy: PlayerStrategy,
+        private val seed: Long
+    ) : RecursiveTask<LongArray>() {
+
+        override fun compute(): LongArray {
+            if (to - from <= LEAF_ROUNDS) {
+                return simulate()
+            }
+            val mid = (from + to) ushr 1
+            val left = RoundsTask(from, mid, strategy, seed)
+            left.fork()
+            val right = RoundsTask(mid, to, strategy, seed).compute()
+            val leftCounts = left.join()
+            for (i in right.indices) {
+                right[i] += leftCounts[i]
+            }
+            return right
+        }
+
+        private fun simulate(): LongArray {
+            val engine = BlackjackEngine(Random(seed xor (from * SEED_MIX)))
+            var wins = 0L
+            var pushes = 0L
+            var losses = 0L
+            var i = from
+            while (i < to) {
+                when (engine.playRound(strategy)) {
+                    BlackjackEngine.RESULT_WIN -> wins++
+                    BlackjackEngine.RESULT_PUSH -> pushes++
+                    else -> losses++
+                }
+                i++
+            }
+            return longArrayOf(wins, pushes, losses)
+        }
+    }
+
+    companion object {
+        const val VOUCHER_VALUE_RM = 5.0
+
+        private const val LEAF_ROUNDS = 1L shl 20
+        private const val SEED_MIX = -0x61c8864680b583ebL // golden ratio constant
+        private const val Z_95 = 1.959964
+
+        private val STRATEGIES = mapOf(
+            "basic" to PlayerStrategy.BASIC,
+            "dealer" to PlayerStrategy.MIMIC_DEALER,
+            "cautious" to PlayerStrategy.standOn(13)
+        )
+
+        @JvmStatic
+        fun main(args: Array<String>) {
+            val rounds = args.getOrNull(0)?.toLongOrNull() ?: 100_000_000L
+            val names = args.getOrNull(1)?.let { listOf(it) } ?: STRATEGIES.keys.toList()
+            val simulator = PayoutSimulator()
+            println("threads=${simulator.pool.parallelism}")
+            for (name in names) {
+                val strategy = STRATEGIES[name] ?: error("Unknown strategy: $name")
+                println("== $name ==")
+                println(simulator.run(rounds, strategy))
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.ictmobile.scheduling
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AvailabilityGridTest {
+
+    private val start = 1_700_000_040_000L
+    private val grid = AvailabilityGrid(start, listOf("w1", "w2"))
+
+    @Test
+    fun busyIntervalsRoundOutToWholeMinutes() {
+        grid.markBusy("w1", at(60) + 30_000L, at(90) + 1L)
+        assertTrue(grid.isFree("w1", at(0), at(60)))
+        assertFalse(grid.isFree("w1", at(60), at(61)))
+        assertFalse(grid.isFree("w1", at(90), at(91)))
+        assertTrue(grid.isFree("w1", at(91), at(120)))
+        assertTrue(grid.isFree("w2", at(60), at(91)))
+    }
+
+    @Test
+    fun earliestStartFindsAFreeRun() {
+        grid.markBusy("w1", at(0), at(60))
+        grid.markBusy("w1", at(80), at(200))
+        assertEquals(at(60), grid.earliestStart("w1", at(0), 20))
+        assertEquals(at(200), grid.earliestStart("w1", at(0), 30))
+        // A start between minutes rounds up
+        assertEquals(at(201), grid.earliestStart("w1", at(200) + 1L, 30))
+    }
+
+    @Test
+    fun timePastTheWindowIsFree() {
+        val last = AvailabilityGrid.WINDOW_MINUTES
+        grid.markBusy("w1", at(0), at(last - 30))
+        assertEquals(at(last - 30), grid.earliestStart("w1", at(0), 180))
+        assertTrue(grid.isFree("w1", at(last - 30), at(last + 150)))
+    }
+
+    @Test
+    fun unknownMachinesAreNeverFree() {
+        assertEquals(-1, grid.indexOf("d9"))
+        assertFalse(grid.isFree("d9", at(0), at(30)))
+        assertEquals(-1L, grid.earliestStart("d9", at(0), 30))
+        grid.markBusy("d9", at(0), at(30))
+        assertTrue(grid.isFree("w1", at(0), at(30)))
+    }
+
+    @Test
+    fun clearFreesEveryMachine() {
+        grid.markBusy("w1", at(0), at(600))
+        grid.markBusy("w2", at(300), at(900))
+        grid.clear()
+        assertEquals(0, grid.row(0).busyCount())
+        assertEquals(0, grid.row(1).busyCount())
+    }
+
+    private fun at(minute: Int): Long = start + minute * AvailabilityGrid.MINUTE_MILLIS
+}
@@ -0,0 +1,82 @@
+package com.example.ictmobile.scheduling
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ChainSchedulerTest {
+
+    private val grid = AvailabilityGrid(0L, listOf("w1", "w2", "d1", "d2"))
+    private val washer = grid.row(0)
+    private val dryer = grid.row(2)
+
+    @Test
+    fun dryStartsRightAfterTheWashWhenFree() {
+        val chain = schedule()
+        assertEquals(0, chain.washStart)
+        assertEquals(WASH, chain.dryStart)
+        assertEquals(0, chain.handoff)
+    }
+
+    @Test
+    fun handoffOfExactlyTheMaximumIsAccepted() {
+        dryer.setRange(0, WASH + ChainScheduler.MAX_HANDOFF_MINUTES)
+        val chain = schedule()
+        assertEquals(0, chain.washStart)
+        assertEquals(ChainScheduler.MAX_HANDOFF_MINUTES, chain.handoff)
+    }
+
+    @Test
+    fun longerHandoffDelaysTheWash() {
+        // Starting the wash at 0 would leave the clothes wet for 16 minutes
+        dryer.setRange(0, WASH + ChainScheduler.MAX_HANDOFF_MINUTES + 1)
+        val chain = schedule()
+        assertEquals(1, chain.washStart)
+        assertEquals(WASH + ChainScheduler.MAX_HANDOFF_MINUTES + 1, chain.dryStart)
+        assertEquals(ChainScheduler.MAX_HANDOFF_MINUTES, chain.handoff)
+    }
+
+    @Test
+    fun handoffNeverExceedsTheMaximum() {
+        washer.setRange(WASH, 200)
+        dryer.setRange(0, 76)
+        val chain = schedule()
+        // The only wash before 200 would hand off after 46 minutes
+        assertEquals(200, chain.washStart)
+        assertEquals(200 + WASH, chain.dryStart)
+        assertTrue(chain.handoff <= ChainScheduler.MAX_HANDOFF_MINUTES)
+    }
+
+    @Test
+    fun noChainWhenTheWashWouldStartTooLate() {
+        washer.setRange(WASH, 200)
+        dryer.setRange(0, 76)
+        assertNull(ChainScheduler.schedule(grid, intArrayOf(0), intArrayOf(2), 0, 199, WASH, DRY))
+    }
+
+    @Test
+    fun pairFinishingFirstWins() {
+        grid.row(2).setRange(0, 300)
+        grid.row(1).setRange(0, 40)
+        val chain = ChainScheduler.schedule(grid, intArrayOf(0, 1), intArrayOf(2, 3), 0, LATEST, WASH, DRY)
+        assertNotNull(chain)
+        assertEquals(0, chain!!.washerIndex)
+        assertEquals(3, chain.dryerIndex)
+        assertEquals(WASH + DRY, chain.finish)
+    }
+
+    private fun schedule(): ChainScheduler.Chain {
+        val chain = ChainScheduler.schedule(grid, intArrayOf(0), intArrayOf(2), 0, LATEST, WASH, DRY)
+        assertNotNull(chain)
+        assertEquals(chain!!.dryStart - (chain.washStart + WASH), chain.handoff)
+        return chain
+    }
+
+    companion object {
+        private const val WASH = 30
+        private const val DRY = 40
+        private const val LATEST = AvailabilityGrid.WINDOW_MINUTES - 1
+    }
+}
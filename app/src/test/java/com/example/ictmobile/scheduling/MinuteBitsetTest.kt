@@ -0,0 +1,141 @@
+package com.example.ictmobile.scheduling
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class MinuteBitsetTest {
+
+    @Test
+    fun setRangeWithinOneWord() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(3, 10)
+        assertFalse(bits.isBusy(2))
+        for (minute in 3 until 10) assertTrue(bits.isBusy(minute))
+        assertFalse(bits.isBusy(10))
+        assertEquals(7, bits.busyCount())
+    }
+
+    @Test
+    fun setRangeAcrossWordBoundaries() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(60, 200)
+        assertFalse(bits.isBusy(59))
+        assertTrue(bits.isBusy(63))
+        assertTrue(bits.isBusy(64))
+        assertTrue(bits.isBusy(127))
+        assertTrue(bits.isBusy(128))
+        assertTrue(bits.isBusy(199))
+        assertFalse(bits.isBusy(200))
+        assertEquals(140, bits.busyCount())
+    }
+
+    @Test
+    fun setRangeOnExactWordEdges() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(64, 128)
+        assertFalse(bits.isBusy(63))
+        assertTrue(bits.isBusy(64))
+        assertTrue(bits.isBusy(127))
+        assertFalse(bits.isBusy(128))
+        assertEquals(64, bits.busyCount())
+    }
+
+    @Test
+    fun setRangeIsClippedToTheBitset() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(-30, 5)
+        bits.setRange(SIZE - 5, SIZE + 100)
+        bits.setRange(50, 50)
+        bits.setRange(80, 70)
+        assertEquals(10, bits.busyCount())
+        assertTrue(bits.isBusy(0))
+        assertTrue(bits.isBusy(SIZE - 1))
+    }
+
+    @Test
+    fun clearFreesEverything() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(0, SIZE)
+        assertEquals(SIZE, bits.busyCount())
+        bits.clear()
+        assertEquals(0, bits.busyCount())
+        assertEquals(0, bits.nextFree(0))
+        assertEquals(SIZE, bits.nextBusy(0))
+    }
+
+    @Test
+    fun scansFindTheNearestMinute() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(100, 300)
+        assertEquals(100, bits.nextBusy(0))
+        assertEquals(150, bits.nextBusy(150))
+        assertEquals(SIZE, bits.nextBusy(300))
+        assertEquals(300, bits.nextFree(100))
+        assertEquals(99, bits.nextFree(99))
+        assertEquals(299, bits.lastBusy(SIZE))
+        assertEquals(-1, bits.lastBusy(100))
+        assertEquals(100, bits.lastBusy(101))
+    }
+
+    @Test
+    fun earliestFreeSkipsRunsThatAreTooShort() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(0, 60)
+        bits.setRange(90, 200)
+        // 60..90 is only 30 minutes long
+        assertEquals(60, bits.earliestFree(0, 30))
+        assertEquals(200, bits.earliestFree(0, 31))
+        assertEquals(200, bits.earliestFree(70, 30))
+    }
+
+    @Test
+    fun earliestFreeRunsPastTheEnd() {
+        val bits = MinuteBitset(SIZE)
+        bits.setRange(0, SIZE - 10)
+        assertEquals(SIZE - 10, bits.earliestFree(0, 180))
+        bits.setRange(SIZE - 10, SIZE)
+        assertEquals(-1, bits.earliestFree(0, 1))
+    }
+
+    @Test
+    fun matchesAPlainArray() {
+        val random = Random(11)
+        repeat(200) {
+            val bits = MinuteBitset(SIZE)
+            val busy = BooleanArray(SIZE)
+            repeat(random.nextInt(1, 8)) {
+                val from = random.nextInt(-10, SIZE)
+                val to = from + random.nextInt(0, 240)
+                bits.setRange(from, to)
+                for (minute in maxOf(from, 0) until minOf(to, SIZE)) busy[minute] = true
+            }
+            assertEquals(busy.count { it }, bits.busyCount())
+            repeat(50) {
+                val from = random.nextInt(0, SIZE)
+                val length = random.nextInt(1, 200)
+                assertEquals(naiveNextBusy(busy, from), bits.nextBusy(from))
+                assertEquals(naiveNextFree(busy, from), bits.nextFree(from))
+                assertEquals(naiveEarliestFree(busy, from, length), bits.earliestFree(from, length))
+            }
+        }
+    }
+
+    private fun naiveNextBusy(busy: BooleanArray, from: Int): Int =
+        (from until busy.size).firstOrNull { busy[it] } ?: busy.size
+
+    private fun naiveNextFree(busy: BooleanArray, from: Int): Int =
+        (from until busy.size).firstOrNull { !busy[it] } ?: busy.size
+
+    private fun naiveEarliestFree(busy: BooleanArray, from: Int, length: Int): Int =
+        (from until busy.size).firstOrNull { start ->
+            (start until minOf(start + length, busy.size)).none { busy[it] }
+        } ?: -1
+
+    companion object {
+        // The booking window: 22 whole words and a half-used last one
+        private const val SIZE = AvailabilityGrid.WINDOW_MINUTES
+    }
+}
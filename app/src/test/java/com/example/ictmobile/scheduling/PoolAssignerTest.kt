@@ -0,0 +1,116 @@
+package com.example.ictmobile.scheduling
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class PoolAssignerTest {
+
+    private val grid = AvailabilityGrid(0L, listOf("w1", "w2", "w3"))
+    private val pool = intArrayOf(0, 1, 2)
+
+    @Test
+    fun firstFitTakesTheEarliestStart() {
+        holes(0, 100 until 150)
+        holes(1, 60 until 200)
+        holes(2, 60 until 120)
+        val assignment = assign(PoolAssigner.Policy.FIRST_FIT, duration = 40)
+        assertEquals(1, assignment.machineIndex)
+        assertEquals(60, assignment.startMinute)
+    }
+
+    @Test
+    fun firstFitBreaksTiesByPoolOrder() {
+        holes(0, 100 until 150)
+        holes(1, 100 until 140)
+        holes(2, 100 until 300)
+        val assignment = assign(PoolAssigner.Policy.FIRST_FIT, duration = 40)
+        assertEquals(0, assignment.machineIndex)
+        assertEquals(100, assignment.startMinute)
+    }
+
+    @Test
+    fun bestFitAvoidsStrandingAnUnsellableGap() {
+        // On w1 a 40-minute booking leaves 10 minutes nobody can book; w2 fits exactly
+        holes(0, 100 until 150)
+        holes(1, 200 until 240)
+        holes(2)
+        val assignment = assign(PoolAssigner.Policy.BEST_FIT, duration = 40)
+        assertEquals(1, assignment.machineIndex)
+        assertEquals(200, assignment.startMinute)
+
+        val first = assign(PoolAssigner.Policy.FIRST_FIT, duration = 40)
+        assertEquals(0, first.machineIndex)
+    }
+
+    @Test
+    fun bestFitPrefersTheTighterHoleAtEqualWaste() {
+        holes(0, 100 until 300)
+        holes(1, 400 until 460)
+        holes(2, 500 until 700)
+        val assignment = assign(PoolAssigner.Policy.BEST_FIT, duration = 60)
+        assertEquals(1, assignment.machineIndex)
+        assertEquals(400, assignment.startMinute)
+    }
+
+    @Test
+    fun bestFitPrefersTheEarlierStartAtEqualWasteAndHole() {
+        holes(0, 300 until 360)
+        holes(1, 100 until 160)
+        holes(2)
+        val assignment = assign(PoolAssigner.Policy.BEST_FIT, duration = 60)
+        assertEquals(1, assignment.machineIndex)
+        assertEquals(100, assignment.startMinute)
+    }
+
+    @Test
+    fun bestFitAlignsRightWhenThatStrandsLess() {
+        // From minute 110 a left-aligned booking strands 100..110; flush right strands nothing
+        holes(0, 100 until 190)
+        holes(1)
+        holes(2)
+        val assignment = assign(PoolAssigner.Policy.BEST_FIT, from = 110, duration = 50)
+        assertEquals(0, assignment.machineIndex)
+        assertEquals(140, assignment.startMinute)
+    }
+
+    @Test
+    fun bestFitPrefersAClosedHoleOverTheOpenEnd() {
+        val last = AvailabilityGrid.WINDOW_MINUTES
+        holes(0, last - 60 until last)
+        holes(1, 600 until 700)
+        holes(2)
+        val assignment = assign(PoolAssigner.Policy.BEST_FIT, duration = 60)
+        assertEquals(1, assignment.machineIndex)
+        assertEquals(600, assignment.startMinute)
+    }
+
+    @Test
+    fun noStartAfterTheLatestStart() {
+        holes(0, 300 until 400)
+        holes(1)
+        holes(2)
+        for (policy in PoolAssigner.Policy.values()) {
+            assertNull(PoolAssigner.assign(grid, pool, 0, 299, 60, policy))
+            assertNotNull(PoolAssigner.assign(grid, pool, 0, 300, 60, policy))
+        }
+    }
+
+    /** Makes [machine] busy for the whole window apart from [free]. */
+    private fun holes(machine: Int, vararg free: IntRange) {
+        val row = grid.row(machine)
+        var from = 0
+        for (hole in free) {
+            row.setRange(from, hole.first)
+            from = hole.last + 1
+        }
+        row.setRange(from, row.size)
+    }
+
+    private fun assign(policy: PoolAssigner.Policy, from: Int = 0, duration: Int): PoolAssigner.Assignment {
+        val assignment = PoolAssigner.assign(grid, pool, from, AvailabilityGrid.WINDOW_MINUTES - 1, duration, policy)
+        assertNotNull(assignment)
+        return assignment!!
+    }
+}
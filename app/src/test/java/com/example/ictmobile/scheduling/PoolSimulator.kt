@@ -0,0 +1,105 @@
+package com.example.ictmobile.scheduling
+
+import kotlin.random.Random
+
+/**
+ * Replays simulated days of "any machine" demand against one pool under each
+ * [PoolAssigner.Policy] and compares how much of the day gets sold.
+ *
+ * A request has a duration, a preferred start and [flexMinutes] of slack after it, and
+ * requests arrive in random order relative to their start times, as bookings do. Both
+ * policies see exactly the same requests.
+ *
+ * Kept with the unit tests so it never ships in the APK. Runs on a plain JVM, e.g.
+ * from the IDE:
+ *   PoolSimulator.main(arrayOf("6", "70", "500"))
+ */
+class PoolSimulator(
+    private val machines: Int,
+    private val requestsPerDay: Int,
+    private val flexMinutes: Int = 60
+) {
+
+    class Report(
+        val policy: PoolAssigner.Policy,
+        val days: Int,
+        val requests: Long,
+        val accepted: Long,
+        val bookedMinutes: Long,
+        val capacityMinutes: Long
+    ) {
+        val acceptRate: Double get() = accepted.toDouble() / requests
+        val utilization: Double get() = bookedMinutes.toDouble() / capacityMinutes
+
+        override fun toString(): String = String.format(
+            "%-9s accepted %.2f%%  utilization %.2f%%  (%d of %d requests over %d days)",
+            policy, acceptRate * 100, utilization * 100, accepted, requests, days
+        )
+    }
+
+    fun run(days: Int, seed: Long): List<Report> {
+        return PoolAssigner.Policy.values().map { policy -> runPolicy(policy, days, seed) }
+    }
+
+    private fun runPolicy(policy: PoolAssigner.Policy, days: Int, seed: Long): Report {
+        val grid = AvailabilityGrid(0L, List(machines) { "machine_$it" })
+        val pool = IntArray(machines) { it }
+        val durations = IntArray(requestsPerDay)
+        val starts = IntArray(requestsPerDay)
+        var accepted = 0L
+        var booked = 0L
+
+        for (day in 0 until days) {
+            // Same demand for every policy: the RNG depends only on the seed and the day
+            val random = Random(seed + day * DAY_SEED_STEP)
+            for (i in 0 until requestsPerDay) {
+                durations[i] = DURATIONS[random.nextInt(DURATIONS.size)]
+                starts[i] = random.nextInt(AvailabilityGrid.WINDOW_MINUTES - durations[i] - flexMinutes)
+            }
+
+            grid.clear()
+            for (i in 0 until requestsPerDay) {
+                val latestStart = starts[i] + flexMinutes
+                val assignment = PoolAssigner.assign(grid, pool, starts[i], latestStart, durations[i], policy)
+                    ?: continue
+                grid.row(assignment.machineIndex).setRange(assignment.startMinute, assignment.startMinute + durations[i])
+                accepted++
+                booked += durations[i]
+            }
+        }
+
+        return Report(
+            policy = policy,
+            days = days,
+            requests = days.toLong() * requestsPerDay,
+            accepted = accepted,
+            bookedMinutes = booked,
+            capacityMinutes = days.toLong() * machines * AvailabilityGrid.WINDOW_MINUTES
+        )
+    }
+
+    companion object {
+        // The booking screen's duration choices, with 1 hour listed twice as the common pick
+        private val DURATIONS = intArrayOf(30, 60, 60, 90, 120, 150, 180)
+        private const val DAY_SEED_STEP = -0x61c8864680b583ebL // golden ratio constant
+
+        @JvmStatic
+        fun main(args: Array<String>) {
+            val machines = args.getOrNull(0)?.toIntOrNull() ?: 6
+            val requests = args.getOrNull(1)?.toIntOrNull() ?: 70
+            val days = args.getOrNull(2)?.toIntOrNull() ?: 500
+            val seed = args.getOrNull(3)?.toLongOrNull() ?: 42L
+
+            val reports = PoolSimulator(machines, requests).run(days, seed)
+            println("machines=$machines requests/day=$requests days=$days")
+            reports.forEach { println(it) }
+            val first = reports.first { it.policy == PoolAssigner.Policy.FIRST_FIT }
+            val best = reports.first { it.policy == PoolAssigner.Policy.BEST_FIT }
+            println(String.format(
+                "best-fit vs first-fit: utilization %+.2f points, %+.2f%% more minutes sold",
+                (best.utilization - first.utilization) * 100,
+                (best.bookedMinutes.toDouble() / first.bookedMinutes - 1) * 100
+            ))
+        }
+    }
+}
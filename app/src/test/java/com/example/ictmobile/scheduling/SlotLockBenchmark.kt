@@ -0,0 +1,217 @@
+package com.example.ictmobile.scheduling
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Many concurrent bookers hammering one machine, to check the slot lock scheme.
+ *
+ * The store stands in for Firestore's client transactions: reads record a document
+ * version, the commit fails if any read document has changed since, and the booker
+ * retries with jittered exponential backoff up to [MAX_ATTEMPTS] times (the SDK
+ * default). The booking logic is the same [SlotLocks] code the app runs. A second mode
+ * replays the old check-then-insert flow against the same demand for comparison.
+ *
+ * Lives with the unit tests, outside the APK. Runs on a plain JVM, e.g. from the IDE:
+ *   SlotLockBenchmark.main(arrayOf("32", "25", "5", "72"))
+ */
+class SlotLockBenchmark(
+    private val bookers: Int,
+    private val bookingsPerBooker: Int,
+    private val rpcMillis: Long,
+    private val horizonHours: Int = 72
+) {
+
+    enum class Mode { SLOT_LOCKS, CHECK_THEN_INSERT }
+
+    class Report(
+        val mode: Mode,
+        val committed: Int,
+        val rejected: Int,
+        val exhausted: Int,
+        val overlaps: Int,
+        val attempts: IntArray,
+        val latenciesMs: LongArray
+    ) {
+        private fun percentile(p: Double): Long {
+            if (latenciesMs.isEmpty()) return 0
+            return latenciesMs[((latenciesMs.size - 1) * p).toInt()]
+        }
+
+        override fun toString(): String = buildString {
+            append(mode).append('\n')
+            append("  committed ").append(committed)
+                .append(", slot taken ").append(rejected)
+                .append(", gave up after retries ").append(exhausted).append('\n')
+            append("  overlapping bookings: ").append(overlaps).append('\n')
+            append("  attempts per booking:")
+            for (i in 1 until attempts.size) {
+                if (attempts[i] > 0) append(' ').append(i).append('x').append('=').append(attempts[i])
+            }
+            append('\n')
+            append(String.format(
+                "  latency ms p50 %d  p95 %d  p99 %d  max %d",
+                percentile(0.50), percentile(0.95), percentile(0.99), latenciesMs.lastOrNull() ?: 0
+            ))
+        }
+    }
+
+    private class Doc(val version: Long, val holds: Map<String, Any?>)
+
+    private enum class Outcome { COMMITTED, TAKEN, CONFLICT }
+
+    private val store = ConcurrentHashMap<String, Doc>()
+    private val commitLock = Any()
+
+    // Old flow: the machine's confirmed bookings, checked and then appended to in two steps
+    private val bookings = ConcurrentHashMap<String, LongArray>()
+
+    fun run(mode: Mode, seed: Long): Report {
+        store.clear()
+        bookings.clear()
+        val pool = Executors.newFixedThreadPool(bookers)
+        val start = CountDownLatch(1)
+        val done = CountDownLatch(bookers)
+        val attempts = IntArray(MAX_ATTEMPTS + 1)
+        val latencies = LongArray(bookers * bookingsPerBooker)
+        val outcomes = IntArray(3) // committed, taken, exhausted
+
+        for (b in 0 until bookers) {
+            pool.execute {
+                val random = Random(seed + b)
+                start.await()
+                for (k in 0 until bookingsPerBooker) {
+                    val orderId = "order_${b}_$k"
+                    val startMillis = random.nextInt(horizonHours * 60) * MINUTE_MILLIS
+                    val endMillis = startMillis + (30 + 30 * random.nextInt(6)) * MINUTE_MILLIS
+                    val began = System.nanoTime()
+
+                    var outcome = Outcome.CONFLICT
+                    var attempt = 0
+                    while (attempt < MAX_ATTEMPTS && outcome == Outcome.CONFLICT) {
+                        if (attempt > 0) {
+                            // Full jitter: uniform in [0, base * 1.5^(attempt - 1))
+                            val cap = (BACKOFF_BASE_MS * Math.pow(1.5, (attempt - 1).toDouble())).toLong()
+                            Thread.sleep(random.nextLong(cap + 1))
+                        }
+                        attempt++
+                        outcome = when (mode) {
+                            Mode.SLOT_LOCKS -> tryBook("machine_1", orderId, startMillis, endMillis)
+                            Mode.CHECK_THEN_INSERT -> checkThenInsert(orderId, startMillis, endMillis)
+                        }
+                    }
+
+                    val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began)
+                    synchronized(outcomes) {
+                        attempts[attempt]++
+                        latencies[b * bookingsPerBooker + k] = elapsed
+                        when (outcome) {
+                            Outcome.COMMITTED -> outcomes[0]++
+                            Outcome.TAKEN -> outcomes[1]++
+                            Outcome.CONFLICT -> outcomes[2]++
+                        }
+                    }
+                }
+                done.countDown()
+            }
+        }
+        start.countDown()
+        done.await()
+        pool.shutdown()
+
+        latencies.sort()
+        return Report(mode, outcomes[0], outcomes[1], outcomes[2], countOverlaps(mode), attempts, latencies)
+    }
+
+    /** One transaction attempt: read the lock documents, decide, commit if none changed. */
+    private fun tryBook(machineId: String, orderId: String, startMillis: Long, endMillis: Long): Outcome {
+        val lockIds = SlotLocks.lockIds(machineId, startMillis, endMillis)
+        val readVersions = LongArray(lockIds.size)
+        val readHolds = ArrayList<Map<String, Any?>>(lockIds.size)
+
+        Thread.sleep(rpcMillis) // reads
+        for (i in lockIds.indices) {
+            val doc = store[lockIds[i]]
+            readVersions[i] = doc?.version ?: 0L
+            readHolds.add(doc?.holds ?: emptyMap())
+            if (SlotLocks.conflictingHold(readHolds[i], startMillis, endMillis, Long.MIN_VALUE, null) != null) {
+                return Outcome.TAKEN
+            }
+        }
+
+        Thread.sleep(rpcMillis) // commit
+        synchronized(commitLock) {
+            for (i in lockIds.indices) {
+                if ((store[lockIds[i]]?.version ?: 0L) != readVersions[i]) {
+                    return Outcome.CONFLICT
+                }
+            }
+            for (i in lockIds.indices) {
+                val holds = HashMap(readHolds[i])
+                holds[orderId] = SlotLocks.hold(startMillis, endMillis)
+                store[lockIds[i]] = Doc(readVersions[i] + 1, holds)
+            }
+        }
+        return Outcome.COMMITTED
+    }
+
+    /** The old createOrder: scan the machine's bookings, then insert in a separate step. */
+    private fun checkThenInsert(orderId: String, startMillis: Long, endMillis: Long): Outcome {
+        Thread.sleep(rpcMillis) // availability query
+        for (interval in bookings.values) {
+            if (startMillis < interval[1] && interval[0] < endMillis) {
+                return Outcome.TAKEN
+            }
+        }
+        Thread.sleep(rpcMillis) // order insert
+        bookings[orderId] = longArrayOf(startMillis, endMillis)
+        return Outcome.COMMITTED
+    }
+
+    private fun countOverlaps(mode: Mode): Int {
+        val intervals = HashMap<String, LongArray>()
+        if (mode == Mode.CHECK_THEN_INSERT) {
+            intervals.putAll(bookings)
+        } else {
+            for (doc in store.values) {
+                for ((orderId, value) in doc.holds) {
+                    val hold = value as Map<*, *>
+                    intervals[orderId] = longArrayOf(
+                        (hold[SlotLocks.FIELD_START] as Number).toLong(),
+                        (hold[SlotLocks.FIELD_END] as Number).toLong()
+                    )
+                }
+            }
+        }
+        val sorted = intervals.values.sortedBy { it[0] }
+        var overlaps = 0
+        var latestEnd = Long.MIN_VALUE
+        for (interval in sorted) {
+            if (interval[0] < latestEnd) overlaps++
+            latestEnd = maxOf(latestEnd, interval[1])
+        }
+        return overlaps
+    }
+
+    companion object {
+        const val MAX_ATTEMPTS = 5
+        private const val BACKOFF_BASE_MS = 20L
+        private const val MINUTE_MILLIS = 60_000L
+
+        @JvmStatic
+        fun main(args: Array<String>) {
+            val bookers = args.getOrNull(0)?.toIntOrNull() ?: 32
+            val perBooker = args.getOrNull(1)?.toIntOrNull() ?: 25
+            val rpcMillis = args.getOrNull(2)?.toLongOrNull() ?: 5L
+            val horizonHours = args.getOrNull(3)?.toIntOrNull() ?: 72
+            val benchmark = SlotLockBenchmark(bookers, perBooker, rpcMillis, horizonHours)
+            println("bookers=$bookers bookings/booker=$perBooker rpc=${rpcMillis}ms, one machine, ${horizonHours}h of demand")
+            for (mode in Mode.values()) {
+                println(benchmark.run(mode, 42L))
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.ictmobile.scheduling
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SlotLocksTest {
+
+    private val now = 1_700_000_000_000L
+    private val hour = 60 * 60_000L
+
+    @Test
+    fun confirmedHoldConflictsWithAnOverlap() {
+        val holds = mapOf<String, Any?>("a" to SlotLocks.hold(now, now + hour))
+        assertEquals("a", SlotLocks.conflictingHold(holds, now + hour / 2, now + 2 * hour, now, null))
+        // Confirmed holds never lapse
+        assertEquals("a", SlotLocks.conflictingHold(holds, now, now + hour, now + 100 * hour, null))
+    }
+
+    @Test
+    fun touchingIntervalsDoNotConflict() {
+        val holds = mapOf<String, Any?>("a" to SlotLocks.hold(now, now + hour))
+        assertNull(SlotLocks.conflictingHold(holds, now + hour, now + 2 * hour, now, null))
+        assertNull(SlotLocks.conflictingHold(holds, now - hour, now, now, null))
+    }
+
+    @Test
+    fun liveLeaseConflictsUntilItExpires() {
+        val expiresAt = now + SlotLocks.LEASE_MILLIS
+        val holds = mapOf<String, Any?>("a" to SlotLocks.lease(now, now + hour, expiresAt))
+        assertEquals("a", SlotLocks.conflictingHold(holds, now, now + hour, expiresAt - 1, null))
+        assertNull(SlotLocks.conflictingHold(holds, now, now + hour, expiresAt, null))
+    }
+
+    @Test
+    fun expiredLeaseDoesNotHideAConfirmedHold() {
+        val holds = linkedMapOf<String, Any?>(
+            "lapsed" to SlotLocks.lease(now, now + hour, now - 1),
+            "paid" to SlotLocks.hold(now, now + hour)
+        )
+        assertEquals("paid", SlotLocks.conflictingHold(holds, now, now + hour, now, null))
+    }
+
+    @Test
+    fun ownHoldIsIgnored() {
+        val holds = mapOf<String, Any?>("a" to SlotLocks.hold(now, now + hour))
+        assertNull(SlotLocks.conflictingHold(holds, now, now + hour, now, "a"))
+        assertEquals("a", SlotLocks.conflictingHold(holds, now, now + hour, now, "b"))
+    }
+
+    @Test
+    fun malformedHoldsAreSkipped() {
+        val holds = mapOf<String, Any?>(
+            "deleted" to null,
+            "noEnd" to mapOf(SlotLocks.FIELD_START to now),
+            "text" to "not a hold"
+        )
+        assertNull(SlotLocks.conflictingHold(holds, now, now + hour, now, null))
+        assertNull(SlotLocks.conflictingHold(null, now, now + hour, now, null))
+    }
+
+    @Test
+    fun isExpiredOnlyForLapsedLeases() {
+        assertFalse(SlotLocks.isExpired(SlotLocks.hold(now, now + hour), Long.MAX_VALUE))
+        assertFalse(SlotLocks.isExpired(SlotLocks.lease(now, now + hour, now + 1), now))
+        assertTrue(SlotLocks.isExpired(SlotLocks.lease(now, now + hour, now), now))
+    }
+
+    @Test
+    fun lockIdsCoverEveryTouchedBucket() {
+        val bucketStart = SlotLocks.bucketOf(now) * SlotLocks.BUCKET_MILLIS
+        assertEquals(listOf("m_${SlotLocks.bucketOf(now)}"),
+            SlotLocks.lockIds("m", bucketStart, bucketStart + SlotLocks.BUCKET_MILLIS))
+        // Three hours that start mid-bucket touch seven buckets
+        assertEquals(7, SlotLocks.lockIds("m", bucketStart + 60_000L, bucketStart + 60_000L + 3 * hour).size)
+    }
+}
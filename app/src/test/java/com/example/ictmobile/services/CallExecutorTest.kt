@@ -0,0 +1,55 @@
+package com.example.ictmobile.services
+
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class CallExecutorTest {
+
+    private val policy = CallExecutor.Policy(10_000L, 8, 250L, 2_000L)
+
+    @Test
+    fun backoffStaysWithinTheJitterCeiling() {
+        val random = Random(42)
+        for (attempt in 1..8) {
+            val ceiling = minOf(policy.maxDelayMillis, policy.baseDelayMillis shl (attempt - 1))
+            repeat(SAMPLES) {
+                val delay = CallExecutor.backoffMillis(policy, attempt, random)
+                assertTrue("attempt $attempt gave $delay", delay in 0..ceiling)
+            }
+        }
+    }
+
+    @Test
+    fun backoffSpansTheWholeRange() {
+        val random = Random(7)
+        for (attempt in 1..4) {
+            val ceiling = policy.baseDelayMillis shl (attempt - 1)
+            var low = Long.MAX_VALUE
+            var high = Long.MIN_VALUE
+            repeat(SAMPLES) {
+                val delay = CallExecutor.backoffMillis(policy, attempt, random)
+                low = minOf(low, delay)
+                high = maxOf(high, delay)
+            }
+            // Full jitter: draws reach both ends, not just the top as with equal jitter
+            assertTrue("attempt $attempt low $low", low < ceiling / 20)
+            assertTrue("attempt $attempt high $high", high > ceiling * 19 / 20)
+        }
+    }
+
+    @Test
+    fun backoffCeilingIsCappedForLateAttempts() {
+        val random = Random(1)
+        var high = 0L
+        repeat(SAMPLES) {
+            high = maxOf(high, CallExecutor.backoffMillis(policy, 100, random))
+        }
+        assertTrue(high <= policy.maxDelayMillis)
+        assertTrue(high > policy.maxDelayMillis * 19 / 20)
+    }
+
+    companion object {
+        private const val SAMPLES = 10_000
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.ictmobile.services
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class CircuitBreakerTest {
+
+    private var now = 0L
+    private lateinit var breaker: CircuitBreaker
+
+    @Before
+    fun setUp() {
+        now = 1_000L
+        breaker = CircuitBreaker("test", THRESHOLD, OPEN_MILLIS) { now }
+    }
+
+    @Test
+    fun opensAfterThresholdConsecutiveFailures() {
+        repeat(THRESHOLD - 1) { breaker.onFailure() }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state())
+        assertTrue(breaker.allow())
+
+        breaker.onFailure()
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state())
+        assertFalse(breaker.allow())
+    }
+
+    @Test
+    fun successResetsTheFailureCount() {
+        repeat(THRESHOLD - 1) { breaker.onFailure() }
+        breaker.onSuccess()
+        repeat(THRESHOLD - 1) { breaker.onFailure() }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state())
+    }
+
+    @Test
+    fun ignoredOutcomesNeitherResetNorCount() {
+        repeat(THRESHOLD - 1) { breaker.onFailure() }
+        repeat(10) { breaker.onIgnored() }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state())
+
+        breaker.onFailure()
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state())
+    }
+
+    @Test
+    fun failsFastUntilOpenWindowEnds() {
+        open()
+        now += OPEN_MILLIS - 1
+        assertFalse(breaker.allow())
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state())
+
+        now += 1
+        assertTrue(breaker.allow())
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state())
+    }
+
+    @Test
+    fun halfOpenLetsOneTrialThrough() {
+        open()
+        now += OPEN_MILLIS
+        assertTrue(breaker.allow())
+        assertFalse(breaker.allow())
+        assertFalse(breaker.allow())
+    }
+
+    @Test
+    fun trialSuccessCloses() {
+        open()
+        now += OPEN_MILLIS
+        assertTrue(breaker.allow())
+        breaker.onSuccess()
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state())
+        assertTrue(breaker.allow())
+        assertTrue(breaker.allow())
+    }
+
+    @Test
+    fun trialFailureReopensForAnotherWindow() {
+        open()
+        now += OPEN_MILLIS
+        assertTrue(breaker.allow())
+        breaker.onFailure()
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state())
+
+        now += OPEN_MILLIS - 1
+        assertFalse(breaker.allow())
+        now += 1
+        assertTrue(breaker.allow())
+    }
+
+    @Test
+    fun ignoredTrialStaysHalfOpenAndFreesTheTrial() {
+        open()
+        now += OPEN_MILLIS
+        assertTrue(breaker.allow())
+        breaker.onIgnored()
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state())
+        assertTrue(breaker.allow())
+        assertFalse(breaker.allow())
+    }
+
+    private fun open() {
+        repeat(THRESHOLD) { breaker.onFailure() }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state())
+    }
+
+    companion object {
+        private const val THRESHOLD = 3
+        private const val OPEN_MILLIS = 30_000L
+    }
+}
@@ -0,0 +1,87 @@
+#!/usr/bin/env node
+/*
+ * Grants and revokes the `admin` custom claim that firestore.rules checks, and keeps the
+ * `role` field on /users/{uid} (which only drives the app's UI) in step with it.
+ *
+ *   node set-admin-claim.js grant <email|uid>
+ *   node set-admin-claim.js revoke <email|uid>
+ *   node set-admin-claim.js sync <email|uid>...   # exactly these users are admins
+ *
+ * Nothing is ever granted from the role field, which clients could write before the
+ * rules locked it; here it is only an output. sync takes the admins as an explicit list,
+ * grants those that lack the claim and revokes it from everyone else who has it.
+ *
+ * Against production, authenticate with GOOGLE_APPLICATION_CREDENTIALS. Against the
+ * local emulators (`firebase emulators:start` at the repo root), run through
+ * `npm run emulator -- <command>`, which points the Admin SDK at them; no credentials
+ * are needed there. Set GCLOUD_PROJECT to pick the project, for the emulators any id.
+ *
+ * A signed-in user picks up the change on their next token refresh; the app forces one
+ * when an admin's token lacks the claim.
+ */
+const admin = require('firebase-admin');
+
+admin.initializeApp({ projectId: process.env.GCLOUD_PROJECT || 'demo-ictmobile' });
+
+const auth = admin.auth();
+const db = admin.firestore();
+
+async function findUser(emailOrUid) {
+  return emailOrUid.includes('@') ? auth.getUserByEmail(emailOrUid) : auth.getUser(emailOrUid);
+}
+
+async function setAdmin(user, isAdmin) {
+  // Merge so other claims survive
+  const claims = Object.assign({}, user.customClaims);
+  if (isAdmin) {
+    claims.admin = true;
+  } else {
+    delete claims.admin;
+  }
+  await auth.setCustomUserClaims(user.uid, claims);
+  await db.collection('users').doc(user.uid).set({ role: isAdmin ? 'admin' : 'customer' }, { merge: true });
+  console.log(`${isAdmin ? 'Granted' : 'Revoked'} admin for ${user.email || user.uid}`);
+}
+
+/** Makes the listed users, and only them, admins. */
+async function sync(admins) {
+  const adminUids = new Set((await Promise.all(admins.map(findUser))).map((user) => user.uid));
+  let changed = 0;
+  for (const uid of adminUids) {
+    const user = await auth.getUser(uid);
+    if (!(user.customClaims && user.customClaims.admin === true)) {
+      await setAdmin(user, true);
+      changed++;
+    }
+  }
+
+  let pageToken;
+  do {
+    const page = await auth.listUsers(1000, pageToken);
+    for (const user of page.users) {
+      if (!adminUids.has(user.uid) && user.customClaims && user.customClaims.admin === true) {
+        await setAdmin(user, false);
+        changed++;
+      }
+    }
+    pageToken = page.pageToken;
+  } while (pageToken);
+  console.log(`Sync done, ${changed} user(s) changed`);
+}
+
+async function main() {
+  const [command, target, ...more] = process.argv.slice(2);
+  if (command === 'sync' && target) {
+    await sync([target, ...more]);
+  } else if ((command === 'grant' || command === 'revoke') && target) {
+    await setAdmin(await findUser(target), command === 'grant');
+  } else {
+    console.error('Usage: set-admin-claim.js grant|revoke <email|uid> | sync <email|uid>...');
+    process.exitCode = 2;
+  }
+}
+
+main().catch((error) => {
+  console.error(error.message);
+  process.exitCode = 1;
+});
@@ -0,0 +1,183 @@
+#!/usr/bin/env node
+/*
+ * Builds the machine catalog Firestore bundle the app loads at startup
+ * (FirebaseService.loadCatalogBundle) to seed its cache before the first server read.
+ *
+ *   node build-catalog-bundle.js [output]
+ *   node build-catalog-bundle.js --preset small-shop [--seed N] [output]
+ *
+ * Reads from the local Firestore emulator when FIRESTORE_EMULATOR_HOST is set (`npm run
+ * emulator`, or `./gradlew :app:buildCatalogBundle`), otherwise from the project named
+ * by GCLOUD_PROJECT with GOOGLE_APPLICATION_CREDENTIALS. Writes to the app's assets by
+ * default; pushing the file to the app's files/bundles directory instead refreshes the
+ * catalog on a device without a new build.
+ *
+ * With --preset nothing is read and no dependencies are needed: the machines are the
+ * ones tools/dataset generates for that preset and seed (1 by default), and the bundle
+ * is encoded here. The packaged asset is built this way (`npm run preset`).
+ *
+ * Named queries, resolved by the app with getNamedQuery():
+ *   machine-catalog   every machine
+ *   washers, dryers   machines of one type
+ */
+const fs = require('fs');
+const path = require('path');
+
+const DEFAULT_OUTPUT = path.join(__dirname, '..', '..', 'app', 'src', 'main', 'assets', 'bundles', 'machine-catalog.bundle');
+const PROJECT_ID = process.env.GCLOUD_PROJECT || 'demo-ictmobile';
+
+// The bundle id stays fixed; the app keeps whichever copy has the newer build time
+const BUNDLE_ID = 'machine-catalog';
+const QUERIES = [
+  { name: 'machine-catalog' },
+  { name: 'washers', type: 'washer' },
+  { name: 'dryers', type: 'dryer' },
+];
+
+function parseArgs(argv) {
+  const args = { output: DEFAULT_OUTPUT };
+  for (let i = 0; i < argv.length; i++) {
+    if (argv[i] === '--preset' || argv[i] === '--seed') {
+      args[argv[i].slice(2)] = argv[++i];
+    } else if (argv[i].startsWith('--')) {
+      throw new Error(`Unknown option ${argv[i]}`);
+    } else {
+      args.output = argv[i];
+    }
+  }
+  args.output = path.resolve(args.output);
+  return args;
+}
+
+/** Reads the named queries' results with the Admin SDK and lets it build the bundle. */
+async function readBundle() {
+  const admin = require('firebase-admin');
+  admin.initializeApp({ projectId: PROJECT_ID });
+  const db = admin.firestore();
+  const machines = db.collection('machines');
+  const snapshots = await Promise.all(QUERIES.map((query) =>
+    (query.type ? machines.where('type', '==', query.type) : machines).get()));
+  if (snapshots[0].empty) {
+    throw new Error('No machines found; seed the emulator first');
+  }
+
+  const builder = db.bundle(BUNDLE_ID);
+  QUERIES.forEach((query, i) => builder.add(query.name, snapshots[i]));
+  return { bundle: builder.build(), machines: snapshots[0].size };
+}
+
+/** The preset's machine documents by id, from the dataset generator's machine stream. */
+async function presetMachines(preset, seed) {
+  const { generate } = require('../dataset/dataset');
+  const profiles = require('../dataset/profiles');
+  if (!profiles[preset]) throw new Error(`Unknown preset ${preset}; one of ${Object.keys(profiles).join(', ')}`);
+
+  // Only machines are kept, and they do not depend on the dataset's present
+  const machines = new Map();
+  const sink = {
+    async put(collection, id, doc) {
+      if (collection === 'machines') machines.set(id, doc);
+    },
+    async close() {},
+  };
+  await generate(profiles[preset], seed, 0, sink);
+  return machines;
+}
+
+function timestamp(millis) {
+  return { seconds: String(Math.floor(millis / 1000)), nanos: (millis % 1000) * 1000000 };
+}
+
+/** A plain value as Firestore's JSON encoding, numbers typed as the Admin SDK types them. */
+function encodeValue(value) {
+  if (value === null || value === undefined) return { nullValue: null };
+  if (typeof value === 'boolean') return { booleanValue: value };
+  if (typeof value === 'number') {
+    return Number.isSafeInteger(value) ? { integerValue: String(value) } : { doubleValue: value };
+  }
+  if (typeof value === 'string') return { stringValue: value };
+  if (value instanceof Date) return { timestampValue: timestamp(value.getTime()) };
+  if (Array.isArray(value)) return { arrayValue: { values: value.map(encodeValue) } };
+  return { mapValue: { fields: encodeFields(value) } };
+}
+
+function encodeFields(doc) {
+  const fields = {};
+  for (const [key, value] of Object.entries(doc)) fields[key] = encodeValue(value);
+  return fields;
+}
+
+/** One bundle element: its UTF-8 length in decimal, then the JSON. */
+function element(json) {
+  const text = JSON.stringify(json);
+  return `${Buffer.byteLength(text)}${text}`;
+}
+
+/**
+ * Encodes [machines] as a bundle read at [readMillis], in the layout the Admin SDK's
+ * BundleBuilder writes: metadata, the named queries, then each document's metadata
+ * followed by the document. totalBytes counts everything after the metadata.
+ */
+function encodeBundle(machines, readMillis) {
+  const readTime = timestamp(readMillis);
+  const documents = `projects/${PROJECT_ID}/databases/(default)/documents`;
+
+  let body = '';
+  for (const query of QUERIES) {
+    const structuredQuery = { from: [{ collectionId: 'machines' }] };
+    if (query.type) {
+      structuredQuery.where = {
+        fieldFilter: { field: { fieldPath: 'type' }, op: 'EQUAL', value: { stringValue: query.type } },
+      };
+    }
+    body += element({
+      namedQuery: {
+        name: query.name,
+        bundledQuery: { parent: documents, structuredQuery, limitType: 'FIRST' },
+        readTime,
+      },
+    });
+  }
+
+  const ids = [...machines.keys()].sort();
+  for (const id of ids) {
+    const machine = machines.get(id);
+    const name = `${documents}/machines/${id}`;
+    const queries = QUERIES.filter((query) => !query.type || query.type === machine.type).map((query) => query.name);
+    body += element({ documentMetadata: { name, readTime, exists: true, queries } });
+    body += element({
+      document: { name, fields: encodeFields(machine), createTime: readTime, updateTime: readTime },
+    });
+  }
+
+  const metadata = element({
+    metadata: {
+      id: BUNDLE_ID,
+      createTime: readTime,
+      version: 1,
+      totalDocuments: ids.length,
+      totalBytes: String(Buffer.byteLength(body)),
+    },
+  });
+  return Buffer.from(metadata + body, 'utf8');
+}
+
+async function main() {
+  const args = parseArgs(process.argv.slice(2));
+  let built;
+  if (args.preset) {
+    const machines = await presetMachines(args.preset, Number(args.seed || 1));
+    built = { bundle: encodeBundle(machines, Date.now()), machines: machines.size };
+  } else {
+    built = await readBundle();
+  }
+
+  fs.mkdirSync(path.dirname(args.output), { recursive: true });
+  fs.writeFileSync(args.output, built.bundle);
+  console.log(`Wrote ${built.machines} machines (${built.bundle.length} bytes) to ${args.output}`);
+}
+
+main().catch((error) => {
+  console.error(error.message);
+  process.exitCode = 1;
+});
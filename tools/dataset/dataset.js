@@ -0,0 +1,466 @@
+/*
+ * Deterministic synthetic dataset: users, machines, orders, payments, tokens, minigame
+ * rounds, vouchers and the slot locks of bookings still running, shaped like the
+ * documents the app writes (Order.toMap plus the fields commitOrdersWithPayment and
+ * completePayment add, and settleRound's token, round and voucher writes).
+ *
+ * The same profile, seed and `now` always produce the same documents, ids included.
+ * Each entity kind draws from its own random stream, so changing one count does not
+ * reshuffle the others. Documents are handed to a sink as they are made, in time order,
+ * so only the state of bookings still open (machine availability, unspent vouchers,
+ * future slot locks) is held in memory, whatever the dataset size.
+ */
+
+const MINUTE = 60 * 1000;
+const HOUR = 60 * MINUTE;
+const DAY = 24 * HOUR;
+
+const BUCKET_MILLIS = 30 * MINUTE; // SlotLocks.BUCKET_MILLIS
+const TEMPERATURE_PRICE = { cold: 4.0, warm: 5.0, hot: 6.0 }; // per hour, as BookMachineActivity
+const PAYMENT_METHODS = ['credit_card', 'debit_card', 'e-wallet'];
+const VOUCHER_DAYS = 30;
+const VOUCHER_DISCOUNT = 5.0;
+
+// Cards.kt: a card is rank * 4 + suit, aces valued 11 until that would bust
+const RANKS = ['A', '2', '3', '4', '5', '6', '7', '8', '9', '10', 'J', 'Q', 'K'];
+const SUITS = ['clover', 'diamond', 'love', 'spade'];
+const RANK_VALUES = [11, 2, 3, 4, 5, 6, 7, 8, 9, 10, 10, 10, 10];
+
+const FIRST_NAMES = ['Aisyah', 'Haziq', 'Mei Ling', 'Arjun', 'Nurul', 'Wei Jie', 'Siti', 'Daniel',
+  'Priya', 'Farhan', 'Jia Hui', 'Kumar', 'Amirah', 'Jason', 'Hana', 'Irfan', 'Kavitha', 'Zul'];
+const LAST_NAMES = ['Rahman', 'Tan', 'Lim', 'Abdullah', 'Wong', 'Raj', 'Ismail', 'Lee', 'Ong',
+  'Hassan', 'Chong', 'Nair', 'Yusof', 'Ng', 'Ahmad', 'Goh'];
+const PICTURE = 'king.png'; // AvatarLoader.DEFAULT_PICTURE
+const ID_CHARS = 'ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789';
+
+/** mulberry32: small, fast, and good enough for synthetic data. */
+function rng(seed) {
+  let state = seed >>> 0;
+  const next = () => {
+    state = (state + 0x6d2b79f5) >>> 0;
+    let t = state;
+    t = Math.imul(t ^ (t >>> 15), t | 1);
+    t ^= t + Math.imul(t ^ (t >>> 7), t | 61);
+    return ((t ^ (t >>> 14)) >>> 0) / 4294967296;
+  };
+  next.int = (n) => Math.floor(next() * n);
+  next.pick = (items) => items[next.int(items.length)];
+  next.chance = (p) => next() < p;
+  /** Poisson sample (Knuth for small means, normal approximation above). */
+  next.poisson = (mean) => {
+    if (mean > 30) return Math.max(0, Math.round(mean + Math.sqrt(mean) * gaussian(next)));
+    const limit = Math.exp(-mean);
+    let k = 0;
+    for (let p = next(); p > limit; p *= next()) k++;
+    return k;
+  };
+  /** 20-character id shaped like a Firestore auto id. */
+  next.id = () => {
+    let id = '';
+    for (let i = 0; i < 20; i++) id += ID_CHARS[next.int(ID_CHARS.length)];
+    return id;
+  };
+  return next;
+}
+
+function gaussian(random) {
+  return Math.sqrt(-2 * Math.log(random() || 1e-12)) * Math.cos(2 * Math.PI * random());
+}
+
+/** FNV-1a, to derive one stream seed per entity kind from the dataset seed. */
+function streamSeed(seed, name) {
+  let hash = 0x811c9dc5;
+  for (const c of `${seed}:${name}`) {
+    hash ^= c.charCodeAt(0);
+    hash = Math.imul(hash, 0x01000193);
+  }
+  return hash >>> 0;
+}
+
+function handScore(hand) {
+  let score = 0;
+  let aces = 0;
+  for (const card of hand) {
+    if (card >> 2 === 0) aces++;
+    score += RANK_VALUES[card >> 2];
+  }
+  while (score > 21 && aces > 0) {
+    score -= 10;
+    aces--;
+  }
+  return { score, soft: aces > 0 };
+}
+
+/** PlayerStrategy.BASIC: hit/stand basic strategy against the dealer's up card. */
+function basicHit({ score, soft }, upCard) {
+  const up = RANK_VALUES[upCard >> 2];
+  if (soft) return score < 18 || (score === 18 && up >= 9);
+  if (score >= 17) return false;
+  if (score >= 13) return up >= 7;
+  if (score === 12) return up < 4 || up >= 7;
+  return true;
+}
+
+/**
+ * One round as BlackjackEngine.playRound plays it: a fresh deck, two cards each (the
+ * dealer's second is the up card), 21 on the deal stands, a bust loses without the
+ * dealer drawing, and the dealer hits below 17. Returns the round document's fields.
+ */
+function playRound(random) {
+  const deck = Array.from({ length: 52 }, (_, i) => i);
+  let top = deck.length;
+  const deal = () => {
+    const j = random.int(top--);
+    const card = deck[j];
+    deck[j] = deck[top];
+    deck[top] = card;
+    return card;
+  };
+  const player = [deal()];
+  const dealer = [deal()];
+  player.push(deal());
+  dealer.push(deal());
+
+  let playerScore = handScore(player);
+  if (playerScore.score < 21) {
+    while (playerScore.score <= 21 && basicHit(playerScore, dealer[1])) {
+      player.push(deal());
+      playerScore = handScore(player);
+    }
+  }
+  let dealerScore = handScore(dealer).score;
+  let result;
+  if (playerScore.score > 21) {
+    result = 'lose';
+  } else {
+    while (dealerScore < 17) {
+      dealer.push(deal());
+      dealerScore = handScore(dealer).score;
+    }
+    if (dealerScore > 21 || playerScore.score > dealerScore) result = 'win';
+    else if (playerScore.score < dealerScore) result = 'lose';
+    else result = 'push';
+  }
+  const cards = (hand) => hand.map((card) => ({ rank: RANKS[card >> 2], suit: SUITS[card & 3] }));
+  return {
+    result,
+    player_hand: cards(player),
+    dealer_hand: cards(dealer),
+    player_score: playerScore.score,
+    dealer_score: dealerScore,
+  };
+}
+
+/** Relative demand for each hour of the day. */
+function hourWeights(profile) {
+  const weights = new Array(24).fill(1);
+  for (let h = 0; h < profile.openHour; h++) weights[h] = profile.nightWeight;
+  for (const [from, to] of profile.peakHours) {
+    for (let h = from; h < to; h++) weights[h] = profile.peakFactor;
+  }
+  const total = weights.reduce((a, b) => a + b, 0);
+  return weights.map((w) => w / total);
+}
+
+/**
+ * Zipf-like user popularity: a few regulars book often, most users rarely. Returns a
+ * sampler over user indexes backed by one cumulative array.
+ */
+function userSampler(count, random) {
+  const cumulative = new Float64Array(count);
+  let total = 0;
+  for (let i = 0; i < count; i++) {
+    total += 1 / Math.pow(i + 1, 0.8);
+    cumulative[i] = total;
+  }
+  return () => {
+    const target = random() * total;
+    let lo = 0;
+    let hi = count - 1;
+    while (lo < hi) {
+      const mid = (lo + hi) >>> 1;
+      if (cumulative[mid] < target) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  };
+}
+
+/**
+ * Writes the dataset for `profile` into `sink` (`put(collection, id, doc)` returning a
+ * promise, `close()`), and returns counts per collection plus the demand that found no
+ * free machine.
+ */
+async function generate(profile, seed, now, sink, onProgress = () => {}) {
+  const streams = {};
+  const stream = (name) => streams[name] || (streams[name] = rng(streamSeed(seed, name)));
+  const counts = {
+    users: 0, machines: 0, orders: 0, payments: 0, tokens: 0, minigame_rounds: 0, vouchers: 0, slot_locks: 0, lost_demand: 0,
+  };
+  const put = async (collection, id, doc) => {
+    counts[collection]++;
+    await sink.put(collection, id, doc);
+    if (++counts.total % 50000 === 0) onProgress(counts);
+  };
+  counts.total = 0;
+
+  // Users: admins first, then customers
+  const users = [];
+  const userRandom = stream('users');
+  for (let i = 0; i < profile.users + profile.admins; i++) {
+    const id = userRandom.id();
+    const first = userRandom.pick(FIRST_NAMES);
+    const last = userRandom.pick(LAST_NAMES);
+    const admin = i < profile.admins;
+    const username = `${first.toLowerCase().replace(/ /g, '')}${i}`;
+    users.push(id);
+    await put('users', id, {
+      id,
+      name: `${first} ${last}`,
+      email: admin ? `admin${i + 1}@example.test` : `${username}@example.test`,
+      username,
+      phone: `01${userRandom.int(10)}-${String(1000000 + userRandom.int(9000000))}`,
+      role: admin ? 'admin' : 'customer',
+      profile_picture: PICTURE,
+    });
+  }
+  const customers = users.slice(profile.admins);
+  const pickCustomer = userSampler(customers.length, stream('popularity'));
+
+  // Machines; single-outlet ids follow the app's washer_1 / dryer_1 convention
+  const outlets = [];
+  const machineRandom = stream('machines');
+  for (let o = 0; o < profile.outlets; o++) {
+    const outlet = { washer: [], dryer: [] };
+    for (const type of ['washer', 'dryer']) {
+      const count = type === 'washer' ? profile.washersPerOutlet : profile.dryersPerOutlet;
+      for (let n = 1; n <= count; n++) {
+        const prefix = profile.outlets > 1 ? `o${String(o + 1).padStart(2, '0')}_` : '';
+        const label = `${type === 'washer' ? 'Washer' : 'Dryer'} ${n}`;
+        const machine = {
+          id: `${prefix}${type}_${n}`,
+          name: profile.outlets > 1 ? `Outlet ${o + 1} ${label}` : label,
+          freeAt: 0,
+        };
+        outlet[type].push(machine);
+        await put('machines', machine.id, {
+          id: machine.id,
+          machine_name: machine.name,
+          type,
+          price: type === 'washer' ? 5.0 : 4.0,
+          status: machineRandom.chance(0.03) ? 'maintenance' : 'available',
+        });
+      }
+    }
+    outlets.push(outlet);
+  }
+
+  const weights = hourWeights(profile);
+  const machineCount = profile.outlets * (profile.washersPerOutlet + profile.dryersPerOutlet);
+  const demand = stream('demand');
+  const booking = stream('orders');
+  const ids = stream('ids');
+  const payment = stream('payments');
+  const game = stream('minigame');
+
+  const vouchers = new Map(); // user id -> unspent vouchers, emitted once spent or at the end
+  const locks = new Map(); // slot lock id -> doc, for bookings that have not ended by `now`
+
+  const firstFree = (machines, at) => {
+    let best = null;
+    for (const machine of machines) {
+      if (machine.freeAt <= at && (best === null || machine.freeAt < best.freeAt)) best = machine;
+    }
+    return best;
+  };
+
+  const addLocks = (machine, orderId, start, end) => {
+    for (let bucket = Math.floor(start / BUCKET_MILLIS); bucket <= Math.floor((end - 1) / BUCKET_MILLIS); bucket++) {
+      const lockId = `${machine.id}_${bucket}`;
+      let lock = locks.get(lockId);
+      if (!lock) {
+        lock = { machine_id: machine.id, bucket_start: new Date(bucket * BUCKET_MILLIS), holds: {}, order_ids: [] };
+        locks.set(lockId, lock);
+      }
+      // The rules require order_ids to list every hold the document carries
+      lock.holds[orderId] = { start_ms: start, end_ms: end };
+      lock.order_ids.push(orderId);
+    }
+  };
+
+  /** A voucher of the user's that is already issued, unspent and unexpired at `at`, or null. */
+  const findVoucher = (userId, at) => {
+    const held = vouchers.get(userId);
+    return held ? held.find((voucher) => voucher.issued_at <= at && voucher.expires_at.getTime() > at) || null : null;
+  };
+
+  const spendVoucher = async (userId, voucher) => {
+    const held = vouchers.get(userId);
+    held.splice(held.indexOf(voucher), 1);
+    if (!held.length) vouchers.delete(userId);
+    await put('vouchers', voucher.id, voucher.doc());
+  };
+
+  /** Emits vouchers that expired unspent before `at`, so only live ones stay in memory. */
+  const expireVouchers = async (at) => {
+    for (const [userId, held] of vouchers) {
+      const expired = held.filter((voucher) => voucher.expires_at.getTime() <= at);
+      if (!expired.length) continue;
+      for (const voucher of expired) await put('vouchers', voucher.id, voucher.doc());
+      if (expired.length === held.length) vouchers.delete(userId);
+      else vouchers.set(userId, held.filter((voucher) => voucher.expires_at.getTime() > at));
+    }
+  };
+
+  const firstDay = Math.floor(now / DAY) * DAY - (profile.days - 1) * DAY;
+  for (let day = firstDay; day < now + DAY; day += DAY) {
+    await expireVouchers(day);
+    const weekday = new Date(day).getUTCDay();
+    const dayDemand = profile.ordersPerMachineDay * machineCount *
+      (weekday === 0 || weekday === 6 ? profile.weekendFactor : 1);
+
+    for (let hour = 0; hour < 24; hour++) {
+      const arrivals = [];
+      const n = demand.poisson(dayDemand * weights[hour]);
+      for (let i = 0; i < n; i++) arrivals.push(day + hour * HOUR + demand.int(60) * MINUTE);
+      arrivals.sort((a, b) => a - b);
+
+      for (const arrival of arrivals) {
+        // Bookings start on the minute they were asked for, some ahead of time
+        const leadMinutes = booking.chance(0.6) ? 0 : Math.floor(-Math.log(booking() || 1e-9) * 90);
+        const createdAt = arrival - leadMinutes * MINUTE;
+        if (createdAt > now) continue;
+
+        const outlet = outlets[booking.int(outlets.length)];
+        const userId = customers[pickCustomer()];
+        const temperature = booking.pick(['cold', 'warm', 'warm', 'hot']);
+        const chained = booking.chance(profile.cartShare);
+        const firstType = chained || booking.chance(0.6) ? 'washer' : 'dryer';
+
+        const washMinutes = booking.pick([30, 30, 60, 60, 90]);
+        const first = firstFree(outlet[firstType], arrival);
+        if (!first) {
+          counts.lost_demand++;
+          continue;
+        }
+        const parts = [{ machine: first, start: arrival, end: arrival + washMinutes * MINUTE }];
+        if (chained) {
+          const dryStart = parts[0].end;
+          const dryer = firstFree(outlet.dryer, dryStart);
+          if (dryer) parts.push({ machine: dryer, start: dryStart, end: dryStart + booking.pick([30, 60, 60, 90]) * MINUTE });
+        }
+
+        const cancelled = booking.chance(profile.cancelShare);
+        const paymentId = ids.id();
+        const orderIds = parts.map(() => ids.id());
+        let total = 0;
+        for (let i = 0; i < parts.length; i++) {
+          const part = parts[i];
+          const amount = TEMPERATURE_PRICE[temperature] * (part.end - part.start) / HOUR;
+          total += amount;
+          let status;
+          if (cancelled) status = 'cancelled';
+          else if (part.end <= now) status = 'completed';
+          else if (part.start <= now) status = 'active';
+          else status = 'pending';
+          if (!cancelled) {
+            part.machine.freeAt = part.end;
+            if (part.end > now) addLocks(part.machine, orderIds[i], part.start, part.end);
+          }
+          await put('orders', orderIds[i], {
+            user_id: userId,
+            machine_id: part.machine.id,
+            temperature,
+            start_time: new Date(part.start),
+            end_time: new Date(part.end),
+            status,
+            total_amount: amount,
+            created_at: new Date(createdAt),
+            machine_name: part.machine.name,
+            payment_id: paymentId,
+            paid: !cancelled,
+          });
+
+          if (!cancelled) {
+            // completePayment issues one minigame token per paid order, keyed by the order
+            const token = { user_id: userId, order_id: orderIds[i], used: false };
+            const playedAt = part.end + game.int(3 * DAY);
+            if (part.end <= now && game.chance(0.7) && playedAt <= now) {
+              // settleRound spends the token, records the round and, on a win, issues a voucher
+              const roundId = ids.id();
+              const round = Object.assign({ user_id: userId }, playRound(game), {
+                token_id: orderIds[i],
+                played_at: new Date(playedAt),
+              });
+              token.used = true;
+              token.round_id = roundId;
+              if (round.result === 'win') {
+                const voucher = {
+                  id: ids.id(),
+                  used: false,
+                  issued_at: playedAt,
+                  expires_at: new Date(playedAt + VOUCHER_DAYS * DAY),
+                  doc() {
+                    const doc = {
+                      user_id: userId, type: 'rm5_off', used: this.used, round_id: roundId,
+                      created_at: new Date(playedAt), expires_at: this.expires_at,
+                    };
+                    if (this.order_id) doc.order_id = this.order_id;
+                    return doc;
+                  },
+                };
+                round.voucher_id = voucher.id;
+                if (!vouchers.has(userId)) vouchers.set(userId, []);
+                vouchers.get(userId).push(voucher);
+              }
+              await put('minigame_rounds', roundId, round);
+            }
+            await put('tokens', orderIds[i], token);
+          }
+        }
+
+        const paymentDoc = { order_id: orderIds[0], amount: total, status: cancelled ? 'pending' : 'completed' };
+        if (orderIds.length > 1) paymentDoc.order_ids = orderIds;
+        if (!cancelled) {
+          const paidAt = createdAt + (1 + payment.int(8)) * MINUTE;
+          const voucher = payment.chance(0.5) ? findVoucher(userId, paidAt) : null;
+          if (voucher) {
+            voucher.used = true;
+            voucher.order_id = orderIds[0];
+            paymentDoc.amount = Math.max(0, total - VOUCHER_DISCOUNT);
+            paymentDoc.voucher_id = voucher.id;
+            await spendVoucher(userId, voucher);
+          }
+          paymentDoc.payment_method = payment.pick(PAYMENT_METHODS);
+          paymentDoc.transaction_id = `TXN-${ids.id().toUpperCase()}`;
+          paymentDoc.paid_at = new Date(paidAt);
+        }
+        await put('payments', paymentId, paymentDoc);
+      }
+    }
+  }
+
+  for (const held of vouchers.values()) {
+    for (const voucher of held) await put('vouchers', voucher.id, voucher.doc());
+  }
+  for (const [lockId, lock] of locks) await put('slot_locks', lockId, lock);
+  await sink.close();
+  onProgress(counts);
+  return counts;
+}
+
+/** Keeps everything in maps, for measuring the generator or feeding local tests. */
+class MemoryStore {
+  constructor() {
+    this.collections = new Map();
+  }
+
+  async put(collection, id, doc) {
+    if (!this.collections.has(collection)) this.collections.set(collection, new Map());
+    this.collections.get(collection).set(id, doc);
+  }
+
+  async close() {}
+}
+
+module.exports = { generate, MemoryStore, rng };
@@ -0,0 +1,128 @@
+#!/usr/bin/env node
+/*
+ * Generates a synthetic dataset (see dataset.js) and loads it into the local Firestore
+ * emulator or an in-memory store.
+ *
+ *   node generate-dataset.js --preset busy-campus --seed 7 --target emulator
+ *   node generate-dataset.js --preset small-shop --target memory --days 30
+ *
+ * Options:
+ *   --preset small-shop|busy-campus|multi-outlet   profile to start from (small-shop)
+ *   --seed N          random seed (1); same seed and --now give identical documents
+ *   --now ISO-DATE    the dataset's present (default: today, 00:00 UTC)
+ *   --scale X         multiplies users and demand
+ *   --days N, --users N, --outlets N, --orders-per-machine-day N
+ *   --peak-hours 7-9,17-22  --peak-factor X      when demand peaks, and how much
+ *   --target emulator|memory                       where documents go (memory)
+ *   --batch-size N    writes per batch (500, Firestore's maximum)
+ *   --concurrency N   batches in flight (8)
+ *
+ * The emulator target refuses to run unless FIRESTORE_EMULATOR_HOST is set, so it can
+ * never write to a real project; `npm run emulator -- <options>` sets it.
+ */
+const { generate, MemoryStore } = require('./dataset');
+const profiles = require('./profiles');
+
+function parseArgs(argv) {
+  const args = {};
+  for (let i = 0; i < argv.length; i++) {
+    if (!argv[i].startsWith('--')) throw new Error(`Unexpected argument ${argv[i]}`);
+    args[argv[i].slice(2)] = argv[i + 1];
+    i++;
+  }
+  return args;
+}
+
+function buildProfile(args) {
+  const name = args.preset || 'small-shop';
+  if (!profiles[name]) throw new Error(`Unknown preset ${name}; one of ${Object.keys(profiles).join(', ')}`);
+  const profile = Object.assign({}, profiles[name]);
+  if (args.days) profile.days = Number(args.days);
+  if (args.users) profile.users = Number(args.users);
+  if (args.outlets) profile.outlets = Number(args.outlets);
+  if (args['orders-per-machine-day']) profile.ordersPerMachineDay = Number(args['orders-per-machine-day']);
+  if (args['peak-factor']) profile.peakFactor = Number(args['peak-factor']);
+  if (args['peak-hours']) {
+    profile.peakHours = args['peak-hours'].split(',').map((range) => range.split('-').map(Number));
+  }
+  if (args.scale) {
+    const scale = Number(args.scale);
+    profile.users = Math.max(1, Math.round(profile.users * scale));
+    profile.ordersPerMachineDay *= scale;
+  }
+  return { name, profile };
+}
+
+/** Parallel batched writes: up to `concurrency` batches of `batchSize` in flight. */
+class EmulatorSink {
+  constructor(db, batchSize, concurrency) {
+    this.db = db;
+    this.batchSize = batchSize;
+    this.concurrency = concurrency;
+    this.batch = db.batch();
+    this.size = 0;
+    this.inFlight = new Set();
+    this.error = null;
+  }
+
+  async put(collection, id, doc) {
+    if (this.error) throw this.error;
+    this.batch.set(this.db.collection(collection).doc(id), doc);
+    if (++this.size >= this.batchSize) await this.flush();
+  }
+
+  async flush() {
+    if (this.size === 0) return;
+    const commit = this.batch.commit()
+      .catch((error) => {
+        this.error = this.error || error;
+      })
+      .finally(() => this.inFlight.delete(commit));
+    this.inFlight.add(commit);
+    this.batch = this.db.batch();
+    this.size = 0;
+    // Backpressure: the generator waits while the emulator is behind
+    while (this.inFlight.size >= this.concurrency) await Promise.race(this.inFlight);
+    if (this.error) throw this.error;
+  }
+
+  async close() {
+    await this.flush();
+    await Promise.all(this.inFlight);
+    if (this.error) throw this.error;
+  }
+}
+
+function openSink(args) {
+  const target = args.target || 'memory';
+  if (target === 'memory') return new MemoryStore();
+  if (target !== 'emulator') throw new Error(`Unknown target ${target}`);
+  if (!process.env.FIRESTORE_EMULATOR_HOST) {
+    throw new Error('FIRESTORE_EMULATOR_HOST is not set; refusing to write outside the emulator');
+  }
+  const admin = require('firebase-admin');
+  admin.initializeApp({ projectId: process.env.GCLOUD_PROJECT || 'demo-ictmobile' });
+  return new EmulatorSink(admin.firestore(), Number(args['batch-size'] || 500), Number(args.concurrency || 8));
+}
+
+async function main() {
+  const args = parseArgs(process.argv.slice(2));
+  const { name, profile } = buildProfile(args);
+  const seed = Number(args.seed || 1);
+  const now = args.now ? Date.parse(args.now) : Math.floor(Date.now() / 86400000) * 86400000;
+  if (Number.isNaN(now)) throw new Error(`Bad --now ${args.now}`);
+
+  const sink = openSink(args);
+  const started = Date.now();
+  console.error(`Generating ${name} (seed ${seed}, now ${new Date(now).toISOString()}) into ${args.target || 'memory'}`);
+  const counts = await generate(profile, seed, now, sink, (progress) => {
+    const seconds = (Date.now() - started) / 1000;
+    console.error(`  ${progress.total} documents, ${Math.round(progress.total / seconds)}/s`);
+  });
+  console.log(JSON.stringify(counts, null, 2));
+}
+
+main().catch((error) => {
+  console.error(error.message);
+  process.exitCode = 1;
+});
@@ -0,0 +1,60 @@
+/*
+ * Preset dataset profiles. Demand is given per machine per day and spread over the
+ * opening hours by weight: peak hours weigh `peakFactor`, other open hours 1, and the
+ * night (before `openHour`) `nightWeight`. Any field can be overridden from the CLI.
+ */
+module.exports = {
+  // One laundromat: a few hundred regulars, ~18k documents
+  'small-shop': {
+    outlets: 1,
+    washersPerOutlet: 6,
+    dryersPerOutlet: 4,
+    users: 400,
+    admins: 1,
+    days: 90,
+    ordersPerMachineDay: 6,
+    openHour: 7,
+    peakHours: [[8, 10], [18, 22]],
+    peakFactor: 3,
+    nightWeight: 0.05,
+    weekendFactor: 1.4,
+    cartShare: 0.15,
+    cancelShare: 0.04,
+  },
+
+  // Residential college laundry rooms: heavy evening and weekend peaks, ~1.5M documents
+  'busy-campus': {
+    outlets: 4,
+    washersPerOutlet: 20,
+    dryersPerOutlet: 14,
+    users: 20000,
+    admins: 3,
+    days: 365,
+    ordersPerMachineDay: 9,
+    openHour: 6,
+    peakHours: [[7, 9], [17, 23]],
+    peakFactor: 4,
+    nightWeight: 0.2,
+    weekendFactor: 1.8,
+    cartShare: 0.3,
+    cancelShare: 0.06,
+  },
+
+  // Forty outlets over two years, ~16M documents
+  'multi-outlet': {
+    outlets: 40,
+    washersPerOutlet: 12,
+    dryersPerOutlet: 8,
+    users: 250000,
+    admins: 10,
+    days: 730,
+    ordersPerMachineDay: 7,
+    openHour: 7,
+    peakHours: [[8, 10], [17, 21]],
+    peakFactor: 3,
+    nightWeight: 0.05,
+    weekendFactor: 1.5,
+    cartShare: 0.2,
+    cancelShare: 0.05,
+  },
+};
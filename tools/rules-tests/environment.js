@@ -0,0 +1,72 @@
+/*
+ * Shared setup for the rules tests: loads firestore.rules into the Firestore emulator
+ * (FIRESTORE_EMULATOR_HOST, else the port in firebase.json) and reads back the
+ * emulator's rule coverage report to count document lookups.
+ */
+const fs = require('fs');
+const path = require('path');
+const { initializeTestEnvironment } = require('@firebase/rules-unit-testing');
+
+const RULES = fs.readFileSync(path.join(__dirname, '..', '..', 'firestore.rules'), 'utf8');
+const FIREBASE_JSON = JSON.parse(fs.readFileSync(path.join(__dirname, '..', '..', 'firebase.json'), 'utf8'));
+
+const CLAIM_CHECK = 'request.auth.token.admin == true';
+const ROLE_READ = "get(/databases/$(database)/documents/users/$(request.auth.uid)).data.role == 'admin'";
+
+/** The current rules with isAdmin() reading /users/{uid} again, as before the admin claim. */
+function roleReadRules() {
+  if (!RULES.includes(CLAIM_CHECK)) {
+    throw new Error('isAdmin() no longer checks the admin claim; update roleReadRules()');
+  }
+  return RULES.replace(CLAIM_CHECK, ROLE_READ);
+}
+
+function emulator() {
+  const [host, port] = (process.env.FIRESTORE_EMULATOR_HOST
+    || `127.0.0.1:${FIREBASE_JSON.emulators.firestore.port}`).split(':');
+  return { host, port: Number(port) };
+}
+
+/** A test environment on its own project, so its coverage report is its own. */
+function environment(projectId, rules = RULES) {
+  return initializeTestEnvironment({ projectId, firestore: { rules, ...emulator() } });
+}
+
+const LOOKUP = /^(get|exists|getAfter|existsAfter)\s*\(/;
+
+/**
+ * Document lookups evaluated so far in projectId, summed from the coverage report:
+ * every get(), exists(), getAfter() and existsAfter() expression with how often it ran.
+ */
+async function lookupCount(projectId) {
+  const { host, port } = emulator();
+  const response = await fetch(`http://${host}:${port}/emulator/v1/projects/${projectId}:ruleCoverage`);
+  if (!response.ok) {
+    throw new Error(`Coverage report failed: ${response.status}`);
+  }
+  const coverage = await response.json();
+  const content = coverage.rules.files[0].content;
+
+  let count = 0;
+  const visit = (node) => {
+    if (Array.isArray(node)) {
+      node.forEach(visit);
+      return;
+    }
+    if (!node || typeof node !== 'object') {
+      return;
+    }
+    const position = node.sourcePosition;
+    if (position && Array.isArray(node.values)
+        && LOOKUP.test(content.slice(position.currentOffset, position.endOffset))) {
+      for (const value of node.values) {
+        count += Number(value.count || 0);
+      }
+    }
+    visit(node.children);
+  };
+  visit(coverage.report);
+  return count;
+}
+
+module.exports = { environment, roleReadRules, lookupCount };
@@ -0,0 +1,63 @@
+/*
+ * Documents the rules tests start from: alice's paid washer booking tomorrow with its
+ * holds in the slot locks, an unused token of hers, and an unpaid order of hers with
+ * its pending payment. Layouts follow the app's models
+ * and SlotLocks.kt.
+ */
+const { Timestamp, doc, setDoc } = require('firebase/firestore');
+
+const HOUR = 60 * 60 * 1000;
+const BUCKET = 30 * 60 * 1000;
+
+// Bucket-aligned, so a one-hour booking holds exactly two locks
+const START = Math.ceil((Date.now() + 24 * HOUR) / BUCKET) * BUCKET;
+const END = START + HOUR;
+
+function lockId(machineId, millis) {
+  return `${machineId}_${Math.floor(millis / BUCKET)}`;
+}
+
+function order(userId, start = START, end = END, fields = {}) {
+  return {
+    user_id: userId,
+    machine_id: 'washer_1',
+    machine_name: 'Washer 1',
+    temperature: 'warm',
+    start_time: Timestamp.fromMillis(start),
+    end_time: Timestamp.fromMillis(end),
+    status: 'pending',
+    total_amount: 5,
+    paid: true,
+    payment_id: `${userId}_payment`,
+    created_at: Timestamp.now(),
+    ...fields,
+  };
+}
+
+function hold(start = START, end = END) {
+  return { start_ms: start, end_ms: end };
+}
+
+/** Seeds the starting documents with the rules off. */
+async function seed(env) {
+  await env.clearFirestore();
+  await env.withSecurityRulesDisabled(async (context) => {
+    const db = context.firestore();
+    await setDoc(doc(db, 'users/admin'), { email: 'admin@example.com', role: 'admin' });
+    await setDoc(doc(db, 'users/mallory'), { email: 'mallory@example.com', role: 'admin' });
+    await setDoc(doc(db, 'machines/washer_1'), { machine_name: 'Washer 1', type: 'washer', status: 'available', price: 5 });
+    await setDoc(doc(db, 'orders/alice_order'), order('alice'));
+    for (const millis of [START, START + BUCKET]) {
+      await setDoc(doc(db, 'slot_locks', lockId('washer_1', millis)), {
+        machine_id: 'washer_1',
+        bucket_start: Timestamp.fromMillis(Math.floor(millis / BUCKET) * BUCKET),
+        holds: { alice_order: hold() },
+      });
+    }
+    await setDoc(doc(db, 'tokens/alice_token'), { user_id: 'alice', order_id: 'alice_token', used: false });
+    await setDoc(doc(db, 'orders/alice_unpaid'), order('alice', START, END, { paid: false, payment_id: 'alice_unpaid_payment' }));
+    await setDoc(doc(db, 'payments/alice_unpaid_payment'), { order_id: 'alice_unpaid', amount: 5, status: 'pending' });
+  });
+}
+
+module.exports = { HOUR, BUCKET, START, END, lockId, order, hold, seed };
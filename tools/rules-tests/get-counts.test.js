@@ -0,0 +1,52 @@
+/*
+ * Document lookups the rules make for admin-gated requests, with isAdmin() checking the
+ * admin claim (the rules as they are) and reading /users/{uid} (as before the claim).
+ * The same requests run against both, each on its own emulator project, and the
+ * counts are taken from the emulator's rule coverage report.
+ */
+const { test, after } = require('node:test');
+const assert = require('node:assert');
+const { assertFails, assertSucceeds } = require('@firebase/rules-unit-testing');
+const { deleteDoc, doc, getDoc, setDoc, updateDoc } = require('firebase/firestore');
+const { environment, roleReadRules, lookupCount } = require('./environment');
+const { START, END, HOUR, order, seed } = require('./fixtures');
+
+const environments = [];
+
+after(() => Promise.all(environments.map((env) => env.cleanup())));
+
+/** Machine writes and non-owner order reads, updates and deletes, by an admin and a customer. */
+async function adminRequests(env) {
+  const admin = env.authenticatedContext('admin', { admin: true }).firestore();
+  const bob = env.authenticatedContext('bob').firestore();
+  await env.withSecurityRulesDisabled((context) =>
+    setDoc(doc(context.firestore(), 'orders/old_order'), order('alice', START - 48 * HOUR, END - 48 * HOUR, { status: 'completed' })));
+
+  await assertSucceeds(setDoc(doc(admin, 'machines/dryer_1'), { machine_name: 'Dryer 1', type: 'dryer', status: 'available', price: 4 }));
+  await assertSucceeds(updateDoc(doc(admin, 'machines/washer_1'), { status: 'maintenance' }));
+  await assertFails(updateDoc(doc(bob, 'machines/washer_1'), { price: 0 }));
+  await assertSucceeds(getDoc(doc(admin, 'orders/alice_order')));
+  await assertFails(getDoc(doc(bob, 'orders/alice_order')));
+  await assertSucceeds(updateDoc(doc(admin, 'orders/alice_order'), { status: 'active' }));
+  await assertFails(updateDoc(doc(bob, 'orders/alice_order'), { temperature: 'hot' }));
+  await assertSucceeds(deleteDoc(doc(admin, 'orders/old_order')));
+  await assertSucceeds(deleteDoc(doc(admin, 'machines/dryer_1')));
+}
+
+async function countLookups(projectId, rules) {
+  const env = await environment(projectId, rules);
+  environments.push(env);
+  await seed(env);
+  const before = await lookupCount(projectId);
+  await adminRequests(env);
+  return (await lookupCount(projectId)) - before;
+}
+
+test('admin checks read no documents', async () => {
+  const roleRead = await countLookups('demo-rules-lookups-role', roleReadRules());
+  const claim = await countLookups('demo-rules-lookups-claim');
+  console.log(`Document lookups for 9 admin-gated requests: ${roleRead} reading /users, ${claim} with the claim`);
+
+  assert.ok(roleRead > 0, 'the /users role check should show up as lookups');
+  assert.strictEqual(claim, 0);
+});
@@ -0,0 +1,249 @@
+/*
+ * Who may read and write what under firestore.rules. Run with `npm test`, which starts
+ * the Firestore emulator, or `npm run test:running` against one already running.
+ */
+const { describe, test, before, after, beforeEach } = require('node:test');
+const { assertFails, assertSucceeds } = require('@firebase/rules-unit-testing');
+const {
+  FieldPath, Timestamp, collection, deleteDoc, deleteField, doc, getDoc, getDocs, query,
+  setDoc, updateDoc, where, writeBatch,
+} = require('firebase/firestore');
+const { environment } = require('./environment');
+const { HOUR, BUCKET, START, END, lockId, order, hold, seed } = require('./fixtures');
+
+let env;
+
+before(async () => {
+  env = await environment('demo-rules-tests');
+});
+
+after(() => env.cleanup());
+
+beforeEach(() => seed(env));
+
+const as = (uid, claims) => env.authenticatedContext(uid, claims).firestore();
+const alice = () => as('alice');
+const bob = () => as('bob');
+const admin = () => as('admin', { admin: true });
+// Has role 'admin' on her users document but no claim
+const mallory = () => as('mallory');
+
+/** Stages dropping orderId's hold from both of alice's booking locks. */
+function releaseHold(batch, db, orderId) {
+  for (const millis of [START, START + BUCKET]) {
+    batch.update(doc(db, 'slot_locks', lockId('washer_1', millis)),
+      new FieldPath('holds', orderId), deleteField(),
+      'order_ids', [orderId]);
+  }
+}
+
+/** Stages a new order for uid right after alice's, with its leased holds. */
+function book(db, uid, orderId, holdValue = { ...hold(END, END + HOUR), lease_expires_ms: Date.now() + 600000 }) {
+  const batch = writeBatch(db);
+  batch.set(doc(db, 'orders', orderId), order(uid, END, END + HOUR, { paid: false }));
+  for (const millis of [END, END + BUCKET]) {
+    batch.set(doc(db, 'slot_locks', lockId('washer_1', millis)), {
+      machine_id: 'washer_1',
+      bucket_start: Timestamp.fromMillis(millis),
+      holds: { [orderId]: holdValue },
+      order_ids: [orderId],
+    }, { merge: true });
+  }
+  return batch;
+}
+
+describe('users', () => {
+  test('a user can edit their profile but not their role', async () => {
+    const db = alice();
+    await assertSucceeds(setDoc(doc(db, 'users/alice'), { name: 'Alice', email: 'alice@example.com', role: 'customer' }));
+    await assertSucceeds(updateDoc(doc(db, 'users/alice'), { phone: '0123456789' }));
+    await assertFails(updateDoc(doc(db, 'users/alice'), { role: 'admin' }));
+  });
+
+  test('a new user cannot sign up as an admin', async () => {
+    await assertFails(setDoc(doc(bob(), 'users/bob'), { name: 'Bob', email: 'bob@example.com', role: 'admin' }));
+  });
+});
+
+describe('machines', () => {
+  test('signed-in users can read, signed-out cannot', async () => {
+    await assertSucceeds(getDoc(doc(alice(), 'machines/washer_1')));
+    await assertFails(getDoc(doc(env.unauthenticatedContext().firestore(), 'machines/washer_1')));
+  });
+
+  test('admins can create, update and delete', async () => {
+    const db = admin();
+    await assertSucceeds(setDoc(doc(db, 'machines/dryer_1'), { machine_name: 'Dryer 1', type: 'dryer', status: 'available', price: 4 }));
+    await assertSucceeds(updateDoc(doc(db, 'machines/washer_1'), { status: 'maintenance' }));
+    await assertSucceeds(deleteDoc(doc(db, 'machines/washer_1')));
+  });
+
+  test('customers cannot create, update or delete', async () => {
+    const db = alice();
+    await assertFails(setDoc(doc(db, 'machines/dryer_1'), { machine_name: 'Dryer 1', type: 'dryer', status: 'available', price: 4 }));
+    await assertFails(updateDoc(doc(db, 'machines/washer_1'), { price: 0 }));
+    await assertFails(deleteDoc(doc(db, 'machines/washer_1')));
+  });
+
+  test('the role field alone does not make an admin', async () => {
+    await assertFails(updateDoc(doc(mallory(), 'machines/washer_1'), { price: 0 }));
+  });
+});
+
+describe('orders', () => {
+  test('the owner and admins can read an order, other customers cannot', async () => {
+    await assertSucceeds(getDoc(doc(alice(), 'orders/alice_order')));
+    await assertSucceeds(getDoc(doc(admin(), 'orders/alice_order')));
+    await assertFails(getDoc(doc(bob(), 'orders/alice_order')));
+  });
+
+  test('customers can only list their own orders', async () => {
+    await assertSucceeds(getDocs(query(collection(alice(), 'orders'), where('user_id', '==', 'alice'))));
+    await assertFails(getDocs(collection(bob(), 'orders')));
+    await assertFails(getDocs(query(collection(bob(), 'orders'), where('end_time', '>', Timestamp.now()))));
+  });
+
+  test('the owner and admins can update an order, other customers cannot', async () => {
+    await assertSucceeds(updateDoc(doc(alice(), 'orders/alice_order'), { temperature: 'cold' }));
+    await assertSucceeds(updateDoc(doc(admin(), 'orders/alice_order'), { status: 'active' }));
+    await assertFails(updateDoc(doc(bob(), 'orders/alice_order'), { temperature: 'hot' }));
+  });
+
+  test('cancelling must release the hold in the same write', async () => {
+    const db = alice();
+    await assertFails(updateDoc(doc(db, 'orders/alice_order'), { status: 'cancelled' }));
+
+    const batch = writeBatch(db);
+    batch.update(doc(db, 'orders/alice_order'), { status: 'cancelled' });
+    releaseHold(batch, db, 'alice_order');
+    await assertSucceeds(batch.commit());
+  });
+
+  test('other customers cannot cancel or delete an order', async () => {
+    const db = bob();
+    const batch = writeBatch(db);
+    batch.update(doc(db, 'orders/alice_order'), { status: 'cancelled' });
+    releaseHold(batch, db, 'alice_order');
+    await assertFails(batch.commit());
+    await assertFails(deleteDoc(doc(db, 'orders/alice_order')));
+  });
+
+  test('deleting a live booking must release its hold, a cancelled one need not', async () => {
+    await assertFails(deleteDoc(doc(alice(), 'orders/alice_order')));
+
+    const db = admin();
+    const batch = writeBatch(db);
+    batch.delete(doc(db, 'orders/alice_order'));
+    releaseHold(batch, db, 'alice_order');
+    await assertSucceeds(batch.commit());
+
+    await env.withSecurityRulesDisabled((context) =>
+      setDoc(doc(context.firestore(), 'orders/old_order'), order('alice', START - 48 * HOUR, END - 48 * HOUR, { status: 'cancelled' })));
+    await assertSucceeds(deleteDoc(doc(alice(), 'orders/old_order')));
+  });
+});
+
+describe('payments', () => {
+  /** Stages completing alice's pending payment, flipping its order and issuing the token. */
+  function pay(db) {
+    const batch = writeBatch(db);
+    batch.update(doc(db, 'payments/alice_unpaid_payment'), { status: 'completed', payment_method: 'card', paid_at: Timestamp.now() });
+    batch.update(doc(db, 'orders/alice_unpaid'), { paid: true });
+    batch.set(doc(db, 'tokens/alice_unpaid'), { user_id: 'alice', order_id: 'alice_unpaid', used: false });
+    return batch;
+  }
+
+  test('an order cannot be created or marked paid without completing its payment', async () => {
+    const db = alice();
+    await assertFails(setDoc(doc(db, 'orders/free_order'), order('alice', START, END, { paid: true })));
+
+    const batch = writeBatch(db);
+    batch.update(doc(db, 'orders/alice_unpaid'), { paid: true });
+    batch.set(doc(db, 'tokens/alice_unpaid'), { user_id: 'alice', order_id: 'alice_unpaid', used: false });
+    await assertFails(batch.commit());
+  });
+
+  test('completing the payment marks its order paid and issues one token', async () => {
+    await assertSucceeds(pay(alice()).commit());
+    await assertFails(pay(alice()).commit());
+  });
+
+  test("a customer cannot complete someone else's payment", async () => {
+    await assertFails(updateDoc(doc(bob(), 'payments/alice_unpaid_payment'), { status: 'completed' }));
+  });
+
+  test('an order keeps its owner and payment', async () => {
+    await assertFails(updateDoc(doc(alice(), 'orders/alice_unpaid'), { payment_id: 'other_payment' }));
+    await assertFails(updateDoc(doc(alice(), 'orders/alice_unpaid'), { user_id: 'bob' }));
+  });
+});
+
+describe('slot locks', () => {
+  test('a customer can book a free slot with their own order', async () => {
+    await assertSucceeds(book(bob(), 'bob', 'bob_order').commit());
+  });
+
+  test('a hold must match its order', async () => {
+    await assertFails(book(bob(), 'bob', 'bob_order', hold(START, END + HOUR)).commit());
+  });
+
+  test("a customer cannot drop or rewrite someone else's hold", async () => {
+    const db = bob();
+    const drop = writeBatch(db);
+    releaseHold(drop, db, 'alice_order');
+    await assertFails(drop.commit());
+
+    await assertFails(updateDoc(doc(db, 'slot_locks', lockId('washer_1', START)),
+      new FieldPath('holds', 'alice_order'), hold(START, START + 1), 'order_ids', ['alice_order']));
+  });
+
+  test('every changed hold must be listed in order_ids', async () => {
+    const db = bob();
+    const batch = book(db, 'bob', 'bob_order');
+    batch.update(doc(db, 'slot_locks', lockId('washer_1', START)),
+      new FieldPath('holds', 'alice_order'), deleteField(), 'order_ids', ['bob_order']);
+    await assertFails(batch.commit());
+  });
+});
+
+describe('minigame', () => {
+  /** Stages spending alice's token on roundId and recording the round. */
+  function playRound(db, roundId, result, voucherId) {
+    const batch = writeBatch(db);
+    batch.update(doc(db, 'tokens/alice_token'), { used: true, round_id: roundId });
+    const round = { user_id: 'alice', result, token_id: 'alice_token', created_at: Timestamp.now() };
+    if (voucherId) {
+      round.voucher_id = voucherId;
+      batch.set(doc(db, 'vouchers', voucherId), {
+        user_id: 'alice', type: 'rm5_off', used: false, round_id: roundId, created_at: Timestamp.now(),
+      });
+    }
+    batch.set(doc(db, 'minigame_rounds', roundId), round);
+    return batch;
+  }
+
+  test('a voucher cannot be created without a winning round', async () => {
+    await assertFails(setDoc(doc(alice(), 'vouchers/free'), { user_id: 'alice', type: 'rm5_off', used: false, round_id: 'none' }));
+  });
+
+  test('a winning round that spends a token issues its voucher', async () => {
+    await assertSucceeds(playRound(alice(), 'round_1', 'win', 'voucher_1').commit());
+  });
+
+  test('a token pays for one round only', async () => {
+    await assertSucceeds(playRound(alice(), 'round_1', 'lose').commit());
+    await assertFails(playRound(alice(), 'round_2', 'win', 'voucher_2').commit());
+  });
+
+  test('only a win may name a voucher', async () => {
+    await assertFails(playRound(alice(), 'round_1', 'lose', 'voucher_1').commit());
+  });
+
+  test("a customer cannot spend someone else's token", async () => {
+    const db = bob();
+    const batch = writeBatch(db);
+    batch.update(doc(db, 'tokens/alice_token'), { used: true, round_id: 'round_1' });
+    batch.set(doc(db, 'minigame_rounds/round_1'), { user_id: 'bob', result: 'lose', token_id: 'alice_token' });
+    await assertFails(batch.commit());
+  });
+});
@@ -0,0 +1,115 @@
+#!/usr/bin/env node
+/*
+ * Writes a confirmed hold into slot_locks for every paid, uncancelled order that has not
+ * ended yet. Orders paid before slot locks existed have no holds, so until this has run
+ * the booking transaction cannot see them and their slots can be booked again. Run it
+ * once before rolling out the app version that books through slot locks; it is safe to
+ * run again, since an order that already has a hold is left as it is. Orders written
+ * before the `paid` field existed count as paid when their payment is completed.
+ *
+ *   node backfill-slot-locks.js [--dry-run]
+ *
+ * Against production, authenticate with GOOGLE_APPLICATION_CREDENTIALS. Against the
+ * local emulator, run through `npm run emulator -- [--dry-run]`. Set GCLOUD_PROJECT to
+ * pick the project, for the emulator any id.
+ *
+ * Uses the layout in app/src/main/java/com/example/ictmobile/scheduling/SlotLocks.kt.
+ */
+const admin = require('firebase-admin');
+
+const BUCKET_MILLIS = 30 * 60 * 1000;
+const PAGE_SIZE = 500;
+
+admin.initializeApp({ projectId: process.env.GCLOUD_PROJECT || 'demo-ictmobile' });
+const db = admin.firestore();
+
+function lockId(machineId, bucket) {
+  return `${machineId}_${bucket}`;
+}
+
+/**
+ * Whether the order is paid. Legacy orders carry no `paid` field, so their payment's
+ * status decides: the one named by payment_id, or else any payment made for the order.
+ */
+async function isPaid(orderDoc) {
+  const paid = orderDoc.get('paid');
+  if (typeof paid === 'boolean') {
+    return paid;
+  }
+  const paymentId = orderDoc.get('payment_id');
+  if (paymentId) {
+    const paymentDoc = await db.collection('payments').doc(paymentId).get();
+    return paymentDoc.exists && paymentDoc.get('status') === 'completed';
+  }
+  const payments = await db.collection('payments')
+    .where('order_id', '==', orderDoc.id)
+    .where('status', '==', 'completed')
+    .limit(1)
+    .get();
+  return !payments.empty;
+}
+
+/** Adds the order's hold to each lock it maps to, unless that lock already has it. */
+async function backfillOrder(writer, orderDoc, dryRun) {
+  const machineId = orderDoc.get('machine_id');
+  const start = orderDoc.get('start_time').toMillis();
+  const end = orderDoc.get('end_time').toMillis();
+  const refs = [];
+  for (let bucket = Math.floor(start / BUCKET_MILLIS); bucket <= Math.floor((end - 1) / BUCKET_MILLIS); bucket++) {
+    refs.push({ bucket, ref: db.collection('slot_locks').doc(lockId(machineId, bucket)) });
+  }
+  const locks = await db.getAll(...refs.map((lock) => lock.ref));
+
+  let written = 0;
+  for (let i = 0; i < refs.length; i++) {
+    const holds = (locks[i].exists && locks[i].get('holds')) || {};
+    if (holds[orderDoc.id]) {
+      continue;
+    }
+    written++;
+    if (!dryRun) {
+      writer.set(refs[i].ref, {
+        machine_id: machineId,
+        bucket_start: admin.firestore.Timestamp.fromMillis(refs[i].bucket * BUCKET_MILLIS),
+        holds: { [orderDoc.id]: { start_ms: start, end_ms: end } },
+      }, { merge: true });
+    }
+  }
+  return written;
+}
+
+async function main() {
+  const dryRun = process.argv.includes('--dry-run');
+  const writer = db.bulkWriter();
+  const query = db.collection('orders')
+    .where('end_time', '>', admin.firestore.Timestamp.now())
+    .orderBy('end_time')
+    .limit(PAGE_SIZE);
+
+  let orders = 0;
+  let locks = 0;
+  let last;
+  do {
+    const page = await (last ? query.startAfter(last) : query).get();
+    for (const orderDoc of page.docs) {
+      if (orderDoc.get('status') === 'cancelled' || !orderDoc.get('machine_id')
+          || !orderDoc.get('start_time') || !orderDoc.get('end_time') || !(await isPaid(orderDoc))) {
+        continue;
+      }
+      const written = await backfillOrder(writer, orderDoc, dryRun);
+      if (written > 0) {
+        orders++;
+        locks += written;
+      }
+    }
+    last = page.size === PAGE_SIZE ? page.docs[page.size - 1] : null;
+  } while (last);
+  await writer.close();
+
+  console.log(`${dryRun ? 'Would backfill' : 'Backfilled'} ${orders} order(s), ${locks} lock write(s)`);
+}
+
+main().catch((error) => {
+  console.error(error.message);
+  process.exitCode = 1;
+});